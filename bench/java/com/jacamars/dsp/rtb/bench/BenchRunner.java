@@ -0,0 +1,161 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the bid path micro-benchmarks and compares the scores against a baseline, so a change that slows the
+ * hot path down shows up as a failed run rather than as lost bids in production. The results are JMH's JSON,
+ * and a baseline is just a results file kept from an earlier run.
+ * <p>
+ * Usage: mvn -Pjmh compile exec:exec -Dbench.args="[-i regex] [-o results.json] [-b baseline.json] [-t tolerance] [-w] [-f forks]"
+ * <br>
+ * -w copies the results to the baseline file instead of comparing. Exits 1 if any benchmark is slower than its
+ * baseline by more than the tolerance, 0.15 (15%) by default.
+ *
+ * This is for testing, this is not operational code.
+ */
+public class BenchRunner {
+
+	static final ObjectMapper mapper = new ObjectMapper();
+
+	public static void main(String[] args) throws Exception {
+		String include = "com.jacamars.dsp.rtb.bench.*";
+		String results = "target/jmh.json";
+		String baseline = null;
+		double tolerance = 0.15;
+		boolean write = false;
+		int forks = -1;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-i":
+				include = args[i + 1];
+				i += 2;
+				break;
+			case "-o":
+				results = args[i + 1];
+				i += 2;
+				break;
+			case "-b":
+				baseline = args[i + 1];
+				i += 2;
+				break;
+			case "-t":
+				tolerance = Double.parseDouble(args[i + 1]);
+				i += 2;
+				break;
+			case "-w":
+				write = true;
+				i++;
+				break;
+			case "-f":
+				forks = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("[-i regex] [-o results.json] [-b baseline.json] [-t tolerance] [-w] [-f forks]");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		File out = new File(results);
+		if (out.getParentFile() != null)
+			out.getParentFile().mkdirs();
+		ChainedOptionsBuilder opts = new OptionsBuilder().include(include).resultFormat(ResultFormatType.JSON)
+				.result(results);
+		if (forks >= 0)
+			opts.forks(forks);
+		new Runner(opts.build()).run();
+
+		if (baseline == null)
+			return;
+		if (write) {
+			mapper.writerWithDefaultPrettyPrinter().writeValue(new File(baseline), mapper.readTree(out));
+			System.out.println("Baseline written to " + baseline);
+			return;
+		}
+		if (!new File(baseline).exists()) {
+			System.out.println("No baseline at " + baseline + ", run with -w to make one");
+			System.exit(1);
+		}
+
+		List<String> regressions = compare(scores(mapper.readTree(new File(baseline))), scores(mapper.readTree(out)),
+				tolerance);
+		for (String r : regressions)
+			System.out.println("REGRESSION: " + r);
+		if (regressions.size() != 0)
+			System.exit(1);
+		System.out.println("No regressions against " + baseline);
+	}
+
+	/**
+	 * Return the scores in a JMH JSON results file.
+	 * @param root JsonNode. The results.
+	 * @return Map. The benchmark name, with its parameters, to its score and mode.
+	 */
+	public static Map<String, Object[]> scores(JsonNode root) {
+		Map<String, Object[]> scores = new HashMap<String, Object[]>();
+		for (JsonNode run : root) {
+			StringBuilder key = new StringBuilder(run.get("benchmark").asText());
+			JsonNode params = run.get("params");
+			if (params != null) {
+				Iterator<Map.Entry<String, JsonNode>> it = params.fields();
+				while (it.hasNext()) {
+					Map.Entry<String, JsonNode> e = it.next();
+					key.append(':').append(e.getKey()).append('=').append(e.getValue().asText());
+				}
+			}
+			JsonNode metric = run.get("primaryMetric");
+			scores.put(key.toString(), new Object[] { metric.get("score").asDouble(), run.get("mode").asText(),
+					metric.get("scoreUnit").asText() });
+		}
+		return scores;
+	}
+
+	/**
+	 * Compare scores against the baseline. For time per operation higher is worse, for throughput lower is.
+	 * Benchmarks missing from either side are skipped.
+	 * @param baseline Map. The baseline's scores.
+	 * @param current Map. This run's scores.
+	 * @param tolerance double. The fraction a score can get worse by.
+	 * @return List. A line for each regression.
+	 */
+	public static List<String> compare(Map<String, Object[]> baseline, Map<String, Object[]> current,
+			double tolerance) {
+		List<String> regressions = new ArrayList<String>();
+		for (Map.Entry<String, Object[]> e : current.entrySet()) {
+			Object[] was = baseline.get(e.getKey());
+			if (was == null || !was[1].equals(e.getValue()[1]))
+				continue;
+			double before = (Double) was[0];
+			double now = (Double) e.getValue()[0];
+			if (before == 0)
+				continue;
+			double change = (now - before) / before;
+			if ("thrpt".equals(e.getValue()[1]))
+				change = -change;
+			if (change > tolerance)
+				regressions.add(String.format("%s %.3f -> %.3f %s (%+.1f%%)", e.getKey(), before, now,
+						e.getValue()[2], change * 100));
+		}
+		regressions.sort(null);
+		return regressions;
+	}
+}
@@ -0,0 +1,77 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.exchanges.C1X;
+import com.jacamars.dsp.rtb.exchanges.Fyber;
+import com.jacamars.dsp.rtb.exchanges.Nexage;
+import com.jacamars.dsp.rtb.exchanges.Smaato;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * Parsing a bid request, per exchange, from the SampleBids.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BidRequestBench {
+
+	@Param({ "nexage", "smaato", "fyber", "c1x" })
+	public String exchange;
+
+	byte[] bytes;
+
+	@Setup
+	public void setup() throws Exception {
+		Fixtures.server();
+		switch (exchange) {
+		case "nexage":
+			bytes = Fixtures.read(Fixtures.NEXAGE);
+			break;
+		case "smaato":
+			bytes = Fixtures.read("SampleBids/smaato.json");
+			break;
+		case "fyber":
+			bytes = Fixtures.read("SampleBids/fyberMobileInApp.txt");
+			break;
+		case "c1x":
+			bytes = Fixtures.read("SampleBids/c1x.txt");
+			break;
+		default:
+			throw new Exception("Unknown exchange: " + exchange);
+		}
+	}
+
+	@Benchmark
+	public BidRequest parse() throws Exception {
+		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+		switch (exchange) {
+		case "nexage":
+			return new Nexage(in);
+		case "smaato":
+			return new Smaato(in);
+		case "fyber":
+			return new Fyber(in);
+		default:
+			return new C1X(in);
+		}
+	}
+}
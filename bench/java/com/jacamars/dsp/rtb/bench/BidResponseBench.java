@@ -0,0 +1,57 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.BidResponse;
+import com.jacamars.dsp.rtb.tools.DbTools;
+
+/**
+ * Building the bid response for the nexage sample, and serializing it the way the bid is logged.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BidResponseBench {
+
+	BidRequest br;
+	Campaign camp;
+	Creative creat;
+	BidResponse response;
+
+	@Setup
+	public void setup() throws Exception {
+		camp = Fixtures.campaigns(1, 1).get(0);
+		creat = camp.creatives.get(0);
+		br = Fixtures.nexage();
+		response = build();
+	}
+
+	@Benchmark
+	public BidResponse build() throws Exception {
+		return new BidResponse(br, br.getImpression(0), camp, creat, br.id, creat.price, null, 0);
+	}
+
+	@Benchmark
+	public String serialize() throws Exception {
+		return DbTools.mapper.writeValueAsString(response);
+	}
+}
@@ -0,0 +1,61 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.bidder.SelectedCreative;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.probe.Probe;
+import com.jacamars.dsp.rtb.tools.MacroProcessing;
+
+/**
+ * Matching a creative to the nexage sample's impression, and substituting its macros.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreativeBench {
+
+	BidRequest br;
+	Campaign camp;
+	Creative creat;
+	Probe probe;
+
+	@Setup
+	public void setup() throws Exception {
+		camp = Fixtures.campaigns(1, 1).get(0);
+		creat = camp.creatives.get(0);
+		br = Fixtures.nexage();
+		probe = new Probe();
+	}
+
+	@Benchmark
+	public SelectedCreative process() throws Exception {
+		return creat.process(br, camp.stringId, null, probe);
+	}
+
+	@Benchmark
+	public StringBuilder macros() throws Exception {
+		StringBuilder sb = new StringBuilder(creat.unencodedAdm == null ? creat.forwardurl : creat.unencodedAdm);
+		MacroProcessing.replace(creat.macros, br, creat, br.getImpression(0), camp.stringId, sb, new StringBuilder(),
+				null);
+		return sb;
+	}
+}
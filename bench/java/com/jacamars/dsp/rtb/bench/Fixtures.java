@@ -0,0 +1,148 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.jacamars.dsp.rtb.bidder.RTBServer;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Configuration;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Dimension;
+import com.jacamars.dsp.rtb.common.Dimensions;
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.exchanges.Nexage;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.shared.FrequencyGoverner;
+
+/**
+ * The fixtures the benchmarks share: the sample bid requests, a bidder started on Campaigns/payday.json the
+ * way the JUnit tests start one, and generated campaigns. Everything is made once per benchmark JVM.
+ * @author Ben M. Faul
+ *
+ */
+public class Fixtures {
+
+	/** The configuration the bidder is started with */
+	public static final String CONFIG = "./Campaigns/payday.json";
+
+	/** The bid request most benchmarks use, a 320x50 banner from the USA */
+	public static final String NEXAGE = "SampleBids/nexage.txt";
+
+	// Sizes the generated creatives come in, the nexage sample is 320x50
+	static final int[][] SIZES = { { 320, 50 }, { 300, 250 }, { 728, 90 }, { 160, 600 } };
+
+	static RTBServer server;
+
+	/**
+	 * Read a sample file.
+	 * @param fileName String. The file, relative to the top of the repo.
+	 * @return byte[]. The contents.
+	 * @throws Exception on file errors.
+	 */
+	public static byte[] read(String fileName) throws Exception {
+		return Files.readAllBytes(Paths.get(fileName));
+	}
+
+	/**
+	 * Start the bidder, if it isn't already. The benchmarks that need the configuration, the macros or the
+	 * shared maps call this.
+	 * @throws Exception if the bidder doesn't start.
+	 */
+	public static synchronized void server() throws Exception {
+		if (server != null)
+			return;
+		FrequencyGoverner.silent = true;
+		server = new RTBServer(CONFIG);
+		int wait = 0;
+		while (!server.isReady() && wait < 10) {
+			Thread.sleep(1000);
+			wait++;
+		}
+		if (wait == 10)
+			throw new Exception("Bidder never started");
+	}
+
+	/**
+	 * Return the nexage sample as a bid request.
+	 * @return BidRequest. The request.
+	 * @throws Exception on parsing errors.
+	 */
+	public static BidRequest nexage() throws Exception {
+		return new Nexage(new ByteArrayInputStream(read(NEXAGE)));
+	}
+
+	/**
+	 * Make a banner creative, with the usual macros in its markup. Its campaign encodes it.
+	 * @param id String. The creative's impid.
+	 * @param size int[]. The width and height.
+	 * @param price double. The bid price.
+	 * @return Creative. The creative.
+	 */
+	public static Creative creative(String id, int[] size, double price) {
+		Creative c = new Creative();
+		c.impid = id;
+		c.isBanner = true;
+		c.w = size[0];
+		c.h = size[1];
+		c.dimensions = new Dimensions();
+		c.dimensions.add(new Dimension(size[0], size[1]));
+		c.price = price;
+		c.forwardurl = "<a href='{redirect_url}/{campaign_ad_id}/{creative_id}?url=http://example.com'>"
+				+ "<img src='{pixel_url}/{exchange}/{ad_id}/{creative_id}/{bid_id}/${AUCTION_PRICE}' "
+				+ "width='{creative_ad_width}' height='{creative_ad_height}'></a>";
+		return c;
+	}
+
+	/**
+	 * Generate campaigns. Each has a few targeting nodes and a few creatives of random sizes, the first one
+	 * the nexage sample's 320x50. About a quarter of them target a country other than the sample's, so not
+	 * every campaign bids.
+	 * The bidder is started first, the creatives' macros come from its configuration.
+	 * @param n int. The number of campaigns.
+	 * @param seed long. The random seed, the same seed makes the same campaigns.
+	 * @return List. The campaigns.
+	 * @throws Exception on encoding errors.
+	 */
+	public static List<Campaign> campaigns(int n, long seed) throws Exception {
+		server();
+		Random rand = new Random(seed);
+		List<Campaign> list = new ArrayList<Campaign>();
+		for (int i = 0; i < n; i++) {
+			Campaign camp = new Campaign();
+			camp.id = 100000 + i;
+			camp.stringId = "" + camp.id;
+			camp.name = "bench-" + i;
+			String country = rand.nextInt(4) == 0 ? "CAN" : "USA";
+			camp.attributes.add(new Node("country", "device.geo.country", Node.EQUALS, country));
+			camp.attributes.add(new Node("devicetype", "device.devicetype", Node.MEMBER, Arrays.asList(1, 4, 5)));
+			camp.attributes.add(new Node("bcat", "site.cat", Node.NOT_INTERSECTS, Arrays.asList("IAB25", "IAB26")));
+			int k = 1 + rand.nextInt(4);
+			for (int j = 0; j < k; j++)
+				camp.creatives.add(creative("bench-" + i + "-" + j, SIZES[j == 0 ? 0 : rand.nextInt(SIZES.length)],
+						0.5 + rand.nextInt(300) / 100.0));
+			camp.encodeAttributes();
+			camp.encodeIfNeeded();
+			list.add(camp);
+		}
+		return list;
+	}
+
+	/**
+	 * Replace the bidder's campaigns with generated ones.
+	 * @param n int. The number of campaigns.
+	 * @throws Exception on encoding errors.
+	 */
+	public static void load(int n) throws Exception {
+		List<Campaign> list = campaigns(n, 1);
+		Configuration config = Configuration.getInstance();
+		config.clearCampaigns();
+		for (Campaign camp : list)
+			config.addCampaign(camp);
+		config.recompile();
+	}
+}
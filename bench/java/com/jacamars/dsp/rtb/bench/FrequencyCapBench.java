@@ -0,0 +1,55 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.bidder.Controller;
+import com.jacamars.dsp.rtb.bidder.RTBServer;
+import com.jacamars.dsp.rtb.common.FrequencyCap;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.shared.BidCachePool;
+
+/**
+ * The frequency cap check, keyed on the device's IP, against the bidder's shared cache.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrequencyCapBench {
+
+	BidRequest br;
+	FrequencyCap cap;
+
+	@Setup
+	public void setup() throws Exception {
+		Fixtures.server();
+		if (Controller.bidCachePool == null)
+			Controller.bidCachePool = BidCachePool.getInstance(RTBServer.getSharedInstance());
+		br = Fixtures.nexage();
+		cap = new FrequencyCap(Arrays.asList("device.ip"), 5, 60, "seconds");
+	}
+
+	@Benchmark
+	public boolean isCapped() throws Exception {
+		Map<String, String> specs = new HashMap<String, String>();
+		return cap.isCapped(br, specs, "bench");
+	}
+}
@@ -0,0 +1,74 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.blocks.Bloom;
+import com.jacamars.dsp.rtb.blocks.NavMap;
+
+/**
+ * The list lookups the targeting nodes make: a CIDR range map and a bloom filter, each with a hit and a miss.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBench {
+
+	static final String IP_HIT = "45.33.224.7";
+	static final String IP_MISS = "166.137.138.18";
+	static final String COOKIE_HIT = "842AAB10FBA04247B3A9CE00C9172350";
+	static final String COOKIE_MISS = "00000000000000000000000000000000";
+
+	NavMap cidr;
+	Bloom bloom;
+	long hit;
+	long miss;
+
+	@Setup
+	public void setup() throws Exception {
+		cidr = new NavMap("$METHBOT", "data/METHBOT.txt", "cidr");
+		bloom = new Bloom("$COOKIES", "data/c1x_cookies.csv");
+		hit = NavMap.ipToLong(IP_HIT);
+		miss = NavMap.ipToLong(IP_MISS);
+	}
+
+	@Benchmark
+	public boolean cidrHit() {
+		return cidr.contains(IP_HIT);
+	}
+
+	@Benchmark
+	public boolean cidrMiss() {
+		return cidr.contains(IP_MISS);
+	}
+
+	@Benchmark
+	public boolean cidrSearch() {
+		return cidr.search(hit) | cidr.search(miss);
+	}
+
+	@Benchmark
+	public boolean bloomHit() {
+		return bloom.isMember(COOKIE_HIT);
+	}
+
+	@Benchmark
+	public boolean bloomMiss() {
+		return bloom.isMember(COOKIE_MISS);
+	}
+}
@@ -0,0 +1,90 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * One Node.test() per operator, against the nexage sample.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBench {
+
+	@Param({ "EQUALS", "NOT_EQUALS", "MEMBER", "NOT_MEMBER", "INTERSECTS", "NOT_INTERSECTS", "LESS_THAN",
+			"GREATER_THAN", "EXISTS", "NOT_EXISTS", "DOMAIN", "STRINGIN", "REGEX", "INRANGE" })
+	public String operator;
+
+	BidRequest br;
+	Node node;
+
+	@Setup
+	public void setup() throws Exception {
+		Fixtures.server();
+		br = Fixtures.nexage();
+		node = node(operator);
+	}
+
+	static Node node(String name) throws Exception {
+		int op = Node.OPS.get(name);
+		switch (name) {
+		case "EQUALS":
+		case "NOT_EQUALS":
+			return new Node(name, "device.geo.country", op, "USA");
+		case "MEMBER":
+		case "NOT_MEMBER":
+			return new Node(name, "device.geo.country", op, Arrays.asList("CAN", "MEX", "USA"));
+		case "INTERSECTS":
+		case "NOT_INTERSECTS":
+			return new Node(name, "site.cat", op, Arrays.asList("IAB3", "IAB25", "IAB26"));
+		case "LESS_THAN":
+		case "GREATER_THAN":
+			return new Node(name, "device.devicetype", op, 4);
+		case "EXISTS":
+		case "NOT_EXISTS":
+			return new Node(name, "user.id", op, null);
+		case "DOMAIN":
+			return new Node(name, "site.domain", op, Arrays.asList("example.com", "junk1.com", "junk2.com"));
+		case "STRINGIN":
+			return new Node(name, "site.page", op, "nexage");
+		case "REGEX":
+			return new Node(name, "site.domain", op, "^junk[0-9]+\\.com$");
+		case "INRANGE":
+			// 20 km around Waltham, MA
+			Map<String, Double> fence = new HashMap<String, Double>();
+			fence.put("lat", 42.37);
+			fence.put("lon", -71.23);
+			fence.put("range", 20000.0);
+			return new Node(name, "device.geo", op, Arrays.asList(fence));
+		default:
+			throw new Exception("No fixture for " + name);
+		}
+	}
+
+	@Benchmark
+	public boolean test() throws Exception {
+		return node.test(br, null);
+	}
+}
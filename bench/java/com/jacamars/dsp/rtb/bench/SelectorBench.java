@@ -0,0 +1,51 @@
+package com.jacamars.dsp.rtb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jacamars.dsp.rtb.bidder.CampaignSelector;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.BidResponse;
+
+/**
+ * Selecting the campaigns that bid on the nexage sample, by the number of campaigns loaded.
+ * @author Ben M. Faul
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectorBench {
+
+	@Param({ "10", "100", "1000" })
+	public int campaigns;
+
+	BidRequest br;
+
+	@Setup
+	public void setup() throws Exception {
+		Fixtures.load(campaigns);
+		br = Fixtures.nexage();
+		if (CampaignSelector.getInstance().getMaxConnections(br) == null)
+			throw new Exception("No campaign bids on " + Fixtures.NEXAGE);
+	}
+
+	@Benchmark
+	public BidResponse select() throws Exception {
+		return CampaignSelector.getInstance().getMaxConnections(br);
+	}
+}
@@ -11,6 +11,7 @@ import com.hazelcast.core.HazelcastInstance;
 import com.jacamars.dsp.crosstalk.budget.Crosstalk;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
 import com.jacamars.dsp.rtb.blocks.LookingGlass;
+import com.jacamars.dsp.rtb.blocks.SymbolStore;
 import com.jacamars.dsp.rtb.common.Campaign;
 import com.jacamars.dsp.rtb.common.Configuration;
 import com.jacamars.dsp.rtb.shared.BidCachePool;
@@ -64,6 +65,13 @@ public class ListBigDataCmd extends ApiCommand {
 					m.put("file", x.fileName);
 					m.put("s3",x.s3);
 					m.put("size", "" + x.getMembers());
+					m.put("bytes", "" + x.getMemoryEstimate());
+					SymbolStore.Stats stats = SymbolStore.getStats(key);
+					if (stats != null) {
+						m.put("version", "" + stats.version);
+						m.put("loadms", "" + stats.loadMillis);
+						m.put("deltas", "" + stats.deltas);
+					}
 					catalog.add(m);
 					hazelcast = new TreeMap<>(BidCachePool.getStats());
 				});
@@ -1,7 +1,9 @@
 package com.jacamars.dsp.crosstalk.api;
 
 import com.google.common.hash.BloomFilter;
+import com.jacamars.dsp.rtb.blocks.Bloom;
 import com.jacamars.dsp.rtb.blocks.LookingGlass;
+import com.jacamars.dsp.rtb.blocks.MappedSymbols;
 import com.jacamars.dsp.rtb.blocks.Membership;
 import com.jacamars.dsp.rtb.blocks.NavMap;
 import com.jacamars.dsp.rtb.blocks.SimpleSet;
@@ -76,6 +78,12 @@ public class QuerySymbolCmd extends ApiCommand {
 				if (x instanceof BloomFilter) {
 					BloomFilter f = (BloomFilter) x;
 					rets = f.mightContain(value);
+				} else if (x instanceof Bloom) {
+					Bloom f = (Bloom) x;
+					rets = f.mightContain(value);
+				} else if (x instanceof MappedSymbols) {
+					MappedSymbols f = (MappedSymbols) x;
+					rets = f.contains(value);
 				} else if (x instanceof Membership) {
 					Membership f = (Membership) x;
 					if (f.get(value) == null)
@@ -50,12 +50,25 @@ public class SetWeightsCmd extends ApiCommand {
 			return;
 		}
 
-		c.weights = pe;
 		try {
+			apply(c);
 			Crosstalk.getInstance().update(c, true);
 		} catch (Exception e) {
 			error = true;
 			message = e.getMessage();
 		}
 	}
+
+	/**
+	 * Set the weights on the campaign. They go through Campaign.setWeights(), so the rotation and the
+	 * weight assignment the bidders get stay in step with them.
+	 * @param c Campaign. The campaign.
+	 * @throws Exception on parsing errors.
+	 */
+	public void apply(Campaign c) throws Exception {
+		if (weights == null && pe != null)
+			c.setWeights(pe.assignment());
+		else
+			c.setWeights(weights);
+	}
 }
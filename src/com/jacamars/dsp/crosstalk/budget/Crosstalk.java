@@ -44,11 +44,13 @@ import com.hazelcast.map.IMap;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
 import com.jacamars.dsp.rtb.common.Campaign;
 import com.jacamars.dsp.rtb.common.Configuration;
+import com.jacamars.dsp.rtb.common.StartupSnapshot;
 import com.jacamars.dsp.rtb.jmq.EventIF;
 import com.jacamars.dsp.rtb.jmq.Subscriber;
 import com.jacamars.dsp.rtb.jmq.ZPublisher;
 
 import com.jacamars.dsp.rtb.shared.CampaignCache;
+import com.jacamars.dsp.rtb.shared.PacingCache;
 import com.jacamars.dsp.rtb.shared.TokenData;
 import com.jacamars.dsp.rtb.tools.DbTools;
 import com.jacamars.dsp.rtb.tools.JdbcTools;
@@ -140,8 +142,22 @@ public enum Crosstalk {
 		signals = new Subscriber(RTBServer.getSharedInstance(), new Controller(), "hazelcast://topic=rtbcommands");
 
 		CampaignCache.getInstance();
+		PacingCache.getInstance();
 		
-		if (RTBServer.isLeader())
+		List<Campaign> preload = StartupSnapshot.getInstance().getCampaigns();
+		if (preload != null) {
+			// Bid with the snapshot's campaigns, RTBServer starts the catch-up with the cache once it is up
+			shadow.preload(preload);
+			logger.info("*** Started with {} campaigns from the snapshot", shadow.size());
+			StartupSnapshot.getInstance().catchUp(() -> {
+				if (RTBServer.isLeader())
+					INSTANCE.refresh();
+				else
+					shadow.refresh();
+				Configuration.getInstance().recompile();
+				return shadow.size();
+			});
+		} else if (RTBServer.isLeader())
 			INSTANCE.refresh(); // Load campaigns.
 		else {
 			shadow.refresh();
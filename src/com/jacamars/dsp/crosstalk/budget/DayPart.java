@@ -20,11 +20,17 @@ import java.util.*;
  *}
  *
  * If present day of week * 24 + hourOfDay is in the set in "parts" , then it is active, else it is not active.
+ * The same hours are compiled into a 168 bit week mask, so asking whether a time is active is a shift and a bit
+ * test, with no Calendar.
  */
 public class DayPart {
     /** Reader for the json used to build this */
     static ObjectMapper mapper = new ObjectMapper();
     static final List<String> DAYSOFWEEK = new ArrayList<>();
+    /** Milliseconds in an hour */
+    public static final long HOUR = 3600000;
+    /** Hours in a week */
+    public static final int WEEK = 168;
     static {
         DAYSOFWEEK.add("sunday");
         DAYSOFWEEK.add("monday");
@@ -37,6 +43,9 @@ public class DayPart {
 
     /** The daypart set */
     transient Set<Integer> parts = new HashSet();
+
+    /** The same hours as bits, hour of the week n is bit n % 64 of word n / 64 */
+    transient long[] mask = new long[3];
     
     Map<String,List<Integer>> map;
 
@@ -65,6 +74,7 @@ public class DayPart {
                 int hour = list.get(time);
                 if (hour == 1) {
                     parts.add((i*24)+time);
+                    mask[((i*24)+time) >>> 6] |= 1L << ((i*24)+time);
                 }
             }
         }
@@ -76,17 +86,27 @@ public class DayPart {
      * @return boolean. Returns true if now time is active, else false
      */
     public boolean isActive() {
-        Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
-        //Calendar c = Calendar.getInstance();
-        int dayOfWeek = c.get(Calendar.DAY_OF_WEEK) - 1;
-        int thisHourOfDay = c.get(Calendar.HOUR_OF_DAY);
-
-        int hour = 24 * dayOfWeek + thisHourOfDay;
+        return isActive(System.currentTimeMillis());
+    }
 
-        if (parts.contains(hour))
-            return true;
+    /**
+     * Is this daypart active at a given time?
+     * @param time long. The time, in milliseconds since the epoch.
+     * @return boolean. Returns true if that time is active, else false
+     */
+    public boolean isActive(long time) {
+        int hour = hourOfWeek(time);
+        return (mask[hour >>> 6] & (1L << hour)) != 0;
+    }
 
-        return false;
+    /**
+     * Return the UTC hour of the week, sunday midnight is 0.
+     * @param time long. The time, in milliseconds since the epoch.
+     * @return int. The hour of the week, 0 to 167.
+     */
+    public static int hourOfWeek(long time) {
+        // The epoch was a thursday
+        return (int) Math.floorMod(Math.floorDiv(time, HOUR) + 4 * 24, (long) WEEK);
     }
 
     /**
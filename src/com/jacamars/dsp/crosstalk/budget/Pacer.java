@@ -0,0 +1,138 @@
+package com.jacamars.dsp.crosstalk.budget;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+
+import com.jacamars.dsp.rtb.common.Budget;
+
+/**
+ * Closed loop spend pacing for one campaign. Each accounting pass feeds it the campaign's total spend, and it
+ * returns the fraction of bid requests the campaign should take part in, so the spend comes in at the rate
+ * that uses up the remaining budget at the end of the window, instead of all at once until a cap trips.
+ * <p>
+ * The controller is a PI controller on the log of the target rate over the measured rate. Working in logs
+ * makes the loop gain the same whether the campaign sees twice or a hundred times the traffic it can afford:
+ * participation times demand is spend, so the log of participation moves by the same step either way.
+ * The integral term holds the steady state participation, the proportional term reacts to bursts.
+ * <p>
+ * The target rate is the smallest of the hourly, daily and total budgets' remaining spend over the time left
+ * in their windows. The budget caps still apply, pacing only spreads the spend out below them.
+ * @author Ben M. Faul
+ *
+ */
+public class Pacer {
+
+	/** Proportional gain, on the log of target over measured rate */
+	public static volatile double KP = 0.3;
+	/** Integral gain, per minute */
+	public static volatile double KI = 0.2;
+	/** Smoothing of the measured rate, the weight of the newest sample */
+	public static volatile double ALPHA = 0.5;
+	/** Participation never goes below this, so there is always some spend to measure */
+	public static volatile double FLOOR = 0.001;
+	/** The largest error, in logs, a single sample can contribute */
+	static final double LIMIT = 4;
+
+	static final double MINUTE = 60000;
+
+	// The log of the steady state participation
+	double integral;
+	// The smoothed measured rate, per minute, negative until the first sample
+	double rate = -1;
+	double lastSpend;
+	long lastTime;
+	boolean started;
+	double participation = 1;
+
+	/**
+	 * Feed the controller a sample.
+	 * @param now long. The time, in milliseconds since the epoch.
+	 * @param spend double. The total spend so far.
+	 * @param target double. The spend per minute that would use up the budget on time, Double.MAX_VALUE if
+	 *        unlimited.
+	 * @return double. The participation, 0 to 1.
+	 */
+	public double update(long now, double spend, double target) {
+		if (!started || spend < lastSpend) {
+			started = true;
+			lastSpend = spend;
+			lastTime = now;
+			return participation;
+		}
+		double minutes = (now - lastTime) / MINUTE;
+		if (minutes <= 0)
+			return participation;
+
+		double measured = (spend - lastSpend) / minutes;
+		lastSpend = spend;
+		lastTime = now;
+		rate = rate < 0 ? measured : rate + ALPHA * (measured - rate);
+
+		if (target == Double.MAX_VALUE) {
+			integral = 0;
+			participation = 1;
+			return participation;
+		}
+		if (target <= 0) {
+			participation = 0;
+			return participation;
+		}
+
+		double error = rate <= 0 ? LIMIT : Math.max(-LIMIT, Math.min(LIMIT, Math.log(target / rate)));
+		integral = Math.max(Math.log(FLOOR), Math.min(0, integral + KI * error * minutes));
+		participation = Math.max(FLOOR, Math.min(1, Math.exp(integral + KP * error)));
+		return participation;
+	}
+
+	/**
+	 * Return the last participation worked out.
+	 * @return double. The participation, 0 to 1.
+	 */
+	public double getParticipation() {
+		return participation;
+	}
+
+	/**
+	 * Return the smoothed spend rate.
+	 * @return double. The spend per minute, 0 before the first sample.
+	 */
+	public double getRate() {
+		return Math.max(0, rate);
+	}
+
+	/**
+	 * Return the spend per minute that uses up the tightest budget at the end of its window.
+	 * @param budget Budget. The budget, null for unlimited.
+	 * @param now long. The time, in milliseconds since the epoch.
+	 * @param zone ZoneId. The zone the hours and days turn over in.
+	 * @return double. The target rate, Double.MAX_VALUE if there is no budget to pace against.
+	 */
+	public static double targetRate(Budget budget, long now, ZoneId zone) {
+		double target = Double.MAX_VALUE;
+		if (budget == null)
+			return target;
+
+		ZonedDateTime time = Instant.ofEpochMilli(now).atZone(zone);
+		if (budget.hourlyBudget.doubleValue() != 0) {
+			long end = time.truncatedTo(ChronoUnit.HOURS).plusHours(1).toInstant().toEpochMilli();
+			target = Math.min(target, rate(budget.hourlyBudget.doubleValue() - budget.hourlyCost.doubleValue(),
+					end - now));
+		}
+		if (budget.dailyBudget.doubleValue() != 0) {
+			long end = time.toLocalDate().plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+			target = Math.min(target, rate(budget.dailyBudget.doubleValue() - budget.dailyCost.doubleValue(),
+					end - now));
+		}
+		if (budget.totalBudget.doubleValue() != 0 && budget.expire_time > now) {
+			target = Math.min(target, rate(budget.totalBudget.doubleValue() - budget.totalCost.doubleValue(),
+					budget.expire_time - now));
+		}
+		return target;
+	}
+
+	static double rate(double remaining, long millis) {
+		return Math.max(0, remaining) / Math.max(1, millis / MINUTE);
+	}
+}
@@ -39,6 +39,24 @@ public class Shadow {
 		Preshuffle.getInstance().compile();
 	}
 
+	/**
+	 * Start with campaigns from the startup snapshot. They are only made local, the cache is left alone, the
+	 * refresh that follows replaces them with the cache's.
+	 * @param list List. The campaigns.
+	 */
+	public void preload(List<Campaign> list) {
+		synchronized (lock) {
+			for (Campaign camp : list) {
+				try {
+					if (camp.isActive() && camp.isRunnable())
+						scampaigns.put("" + camp.id, camp);
+				} catch (Exception error) {
+					error.printStackTrace();
+				}
+			}
+		}
+	}
+
 	public Campaign get(String key) {
 		return scampaigns.get(key);
 	}
@@ -104,10 +122,13 @@ public class Shadow {
 
 	public void refresh() {
 		synchronized (lock) {
-			scampaigns.clear();
+			// Replace in place, the bid path never sees an empty list
+			Set<String> keys = new HashSet<>();
 			campaigns.entrySet().forEach(entry -> {
 				scampaigns.put(entry.getKey(), entry.getValue());
+				keys.add(entry.getKey());
 			});
+			scampaigns.keySet().retainAll(keys);
 		}
 	}
 }
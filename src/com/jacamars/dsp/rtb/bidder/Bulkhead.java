@@ -0,0 +1,161 @@
+package com.jacamars.dsp.rtb.bidder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how many of the server's threads one exchange's bid requests can hold. Each exchange with a bulkhead
+ * gets a fixed number of permits. A request that finds none free waits for one up to its queue budget, and
+ * is then answered with the exchange's no-bid at once. A slow or bursty exchange fills its own bulkhead, not
+ * the thread pool the others share.
+ * <p>
+ * Configured in the exchange's seat, for example:
+ * <pre>
+ * { "name": "adx", "bid": "/rtb/bids/adx=...", "bulkhead": { "permits": 64, "queue": 10 } }
+ * </pre>
+ * Instead of "queue", the milliseconds a request may wait, the seat can give the exchange's "tmax", and the
+ * request may wait QUEUE_SHARE of it. Without either a request that finds no permit is not bid at all.
+ * @author Ben M. Faul
+ *
+ */
+public class Bulkhead {
+
+	static final Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+	/** The share of the exchange's tmax a request may wait for a permit */
+	public static volatile double QUEUE_SHARE = 0.1;
+
+	// The bulkheads by exchange, for the summary
+	static final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+	/** The exchange */
+	public final String exchange;
+
+	/** The number of requests that can run at once */
+	public final int permits;
+
+	/** Milliseconds a request waits for a permit */
+	public final long queueMillis;
+
+	final Semaphore semaphore;
+
+	// Requests let in, and of those, the ones that had to wait
+	final LongAdder admitted = new LongAdder();
+	final LongAdder waited = new LongAdder();
+
+	// Requests turned away, at once with no queue budget, or after waiting it out
+	final LongAdder rejected = new LongAdder();
+	final LongAdder timedOut = new LongAdder();
+
+	final AtomicInteger active = new AtomicInteger();
+	final AtomicInteger peak = new AtomicInteger();
+
+	/**
+	 * Make a bulkhead.
+	 * @param exchange String. The exchange.
+	 * @param permits int. The number of requests that can run at once.
+	 * @param queueMillis long. Milliseconds a request waits for a permit, 0 for none.
+	 */
+	public Bulkhead(String exchange, int permits, long queueMillis) {
+		this.exchange = exchange;
+		this.permits = permits;
+		this.queueMillis = queueMillis;
+		semaphore = new Semaphore(permits);
+	}
+
+	/**
+	 * Make the bulkhead of an exchange from its seat's "bulkhead" object, and register it.
+	 * @param exchange String. The exchange.
+	 * @param m Map. The "bulkhead" object, with permits, and queue or tmax.
+	 * @return Bulkhead. The bulkhead, or null if it has no permits.
+	 */
+	public static Bulkhead configure(String exchange, Map<?, ?> m) {
+		Number permits = (Number) m.get("permits");
+		if (permits == null || permits.intValue() <= 0) {
+			bulkheads.remove(exchange);
+			return null;
+		}
+		long queue = 0;
+		if (m.get("queue") != null)
+			queue = ((Number) m.get("queue")).longValue();
+		else if (m.get("tmax") != null)
+			queue = (long) (((Number) m.get("tmax")).longValue() * QUEUE_SHARE);
+		Bulkhead b = new Bulkhead(exchange, permits.intValue(), queue);
+		bulkheads.put(exchange, b);
+		logger.info("*** Bulkhead for {}: {} permits, {} ms queue", exchange, b.permits, b.queueMillis);
+		return b;
+	}
+
+	/**
+	 * Take a permit, waiting up to the queue budget for one.
+	 * @return boolean. True if the request can go on, it must call release() when done. False if it must not
+	 *         be bid.
+	 */
+	public boolean acquire() {
+		if (!semaphore.tryAcquire()) {
+			if (queueMillis <= 0) {
+				rejected.increment();
+				return false;
+			}
+			try {
+				if (!semaphore.tryAcquire(queueMillis, TimeUnit.MILLISECONDS)) {
+					timedOut.increment();
+					return false;
+				}
+			} catch (InterruptedException error) {
+				Thread.currentThread().interrupt();
+				timedOut.increment();
+				return false;
+			}
+			waited.increment();
+		}
+		admitted.increment();
+		peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+		return true;
+	}
+
+	/**
+	 * Give back the permit taken by acquire().
+	 */
+	public void release() {
+		active.decrementAndGet();
+		semaphore.release();
+	}
+
+	/**
+	 * Return the counts.
+	 * @return Map. Permits, queue, active, peak, admitted, waited, rejected and timedout.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("permits", permits);
+		m.put("queue", queueMillis);
+		m.put("active", active.get());
+		m.put("peak", peak.get());
+		m.put("admitted", admitted.sum());
+		m.put("waited", waited.sum());
+		m.put("rejected", rejected.sum());
+		m.put("timedout", timedOut.sum());
+		return m;
+	}
+
+	/**
+	 * Return the counts of all the bulkheads.
+	 * @return Map. Exchange to counts.
+	 */
+	public static Map<String, Map<String, Object>> getAllStats() {
+		Map<String, Map<String, Object>> m = new TreeMap<String, Map<String, Object>>();
+		for (Map.Entry<String, Bulkhead> e : bulkheads.entrySet())
+			m.put(e.getKey(), e.getValue().getStats());
+		return m;
+	}
+}
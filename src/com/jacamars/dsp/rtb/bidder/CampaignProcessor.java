@@ -1,6 +1,7 @@
 package com.jacamars.dsp.rtb.bidder;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -14,12 +15,13 @@ import com.fasterxml.jackson.databind.node.MissingNode;
 import com.jacamars.dsp.rtb.common.Campaign;
 import com.jacamars.dsp.rtb.common.Configuration;
 import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Eligibility;
 import com.jacamars.dsp.rtb.common.Node;
 import com.jacamars.dsp.rtb.exchanges.appnexus.Appnexus;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.probe.Probe;
+import com.jacamars.dsp.rtb.tools.RandomSource;
 
-import edu.emory.mathcs.backport.java.util.Collections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +74,10 @@ public class CampaignProcessor implements Runnable {
 	static final Logger logger = LoggerFactory.getLogger(CampaignProcessor.class);
 
 	StringBuilder err;
+
+	/** Evaluates the creatives on every impression, null if the request has one */
+	ImpressionEvaluator evaluator;
+
 	/**
 	 * Constructor.
 	 * 
@@ -146,6 +152,19 @@ public class CampaignProcessor implements Runnable {
 				return;
 			} */
 
+			Eligibility eligibility = Eligibility.getInstance();
+			if (!eligibility.campaign(camp)) {
+				probe.process(br.getExchange(), camp.name, Probe.GLOBAL, Probe.CAMPAIGN_NOTACTIVE);
+				err.append(Probe.CAMPAIGN_NOTACTIVE);
+				if (printNoBidReason)
+					logger.info("camp.adId {} is not eligible", camp.name);
+				done = true;
+				if (latch != null)
+					latch.countNull();
+				selected = null;
+				return;
+			}
+
 			Node n = null;
 			try {
 				for (int i = 0; i < camp.attributes.size(); i++) {
@@ -185,15 +204,42 @@ public class CampaignProcessor implements Runnable {
 			///////////////////////////
 
 			List<Creative> creatives = new ArrayList<Creative>(camp.creatives);
-			Collections.shuffle(creatives);
+			Collections.shuffle(creatives, RandomSource.random());
 			StringBuilder xerr = new StringBuilder();
 			for (int i=0; i<creatives.size();i++) {
 			    Creative create = creatives.get(i);
+				if (!eligibility.creative(create)) {
+					probe.process(br.getExchange(), camp.name, create.impid, Probe.CREATIVE_NOTACTIVE);
+					if (printNoBidReason) {
+						xerr.append(camp.name);
+						xerr.append("/");
+						xerr.append(create.impid);
+						xerr.append(" ===> ");
+						xerr.append(Probe.CREATIVE_NOTACTIVE);
+					}
+					continue;
+				}
 				SelectedCreative sc = null;
-				if ((sc = create.process(br, camp.name, err, probe)) != null) {
-					sc.campaign = this.camp;
+				List<SelectedCreative> multi = null;
+				if (evaluator == null)
+					sc = create.process(br, camp.name, err, probe);
+				else {
+					// One candidate for each impression the creative fits
+					multi = evaluator.evaluate(create, camp.name, err, probe);
+					if (multi.size() != 0)
+						sc = multi.get(0);
+				}
+				if (sc != null) {
 					probe.process(br.getExchange(), camp.name, sc.impid);
-					selected.add(sc);
+					if (multi == null) {
+						sc.campaign = this.camp;
+						selected.add(sc);
+					} else {
+						for (SelectedCreative x : multi) {
+							x.campaign = this.camp;
+							selected.add(x);
+						}
+					}
 
 					// Will select the first at random if campaign algorithm is null, otherwise it will
                     // keep processing all the creatives that could match
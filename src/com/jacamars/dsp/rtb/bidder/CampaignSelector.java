@@ -13,6 +13,7 @@ import com.jacamars.dsp.rtb.common.*;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.pojo.BidResponse;
 import com.jacamars.dsp.rtb.probe.Probe;
+import com.jacamars.dsp.rtb.shared.PacingCache;
 import com.jacamars.dsp.rtb.tools.Performance;
 
 import edu.emory.mathcs.backport.java.util.Collections;
@@ -47,6 +48,12 @@ public class CampaignSelector {
 	// Time high water mark in ms.
 	public static volatile int highWaterMark = 100;
 
+	/**
+	 * Run the selection on the calling thread, in one pass with no time limit. The Replay tool sets this, so the
+	 * decisions don't depend on thread timing and the request's CPU time is all on one thread.
+	 */
+	public static volatile boolean inline = false;
+
 	// Executor for handling creative attributes.
 	static ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
 
@@ -142,21 +149,23 @@ public class CampaignSelector {
 		boolean exchangeIsAdx = br.getExchange().equals("adx");
 
 		int nThreads = Configuration.concurrency;
+		boolean inline = CampaignSelector.inline;
 
-		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
 		int start, stop;
 		int howMany = list.size() / nThreads;
 		int remainder = list.size() % nThreads;
 
-		if (list.size() < Performance.getCores()) {
+		if (inline || list.size() < Performance.getCores()) {
 			howMany = list.size();
 			remainder = 0;
 			nThreads = 1;
 		}
+		ExecutorService executor = inline ? null : Executors.newFixedThreadPool(nThreads);
 
 		List<SelectionWorker> workers = new ArrayList<SelectionWorker>();
 		start = 0;
 		MutableBoolean flag = new MutableBoolean(false);
+		ImpressionEvaluator evaluator = br.getImpressions() > 1 ? new ImpressionEvaluator(br) : null;
 		
 		CountDownLatch latch = new CountDownLatch(nThreads);
 		for (int i = 0; i < nThreads; i++) {
@@ -164,13 +173,18 @@ public class CampaignSelector {
 			if (i == nThreads - 1)
 				stop += remainder;
 			SelectionWorker w = new SelectionWorker(start, stop, list, br, exchangeIsAdx, flag, xtest, latch);
+			w.evaluator = evaluator;
 			start = stop;
-			executor.execute(w);
+			if (inline)
+				w.run();
+			else
+				executor.execute(w);
 			workers.add(w);
 		}
 
-		executor.shutdownNow();
-		if (xtest)
+		if (executor != null)
+			executor.shutdownNow();
+		if (xtest || inline)
 			latch.await(300, TimeUnit.SECONDS);
 		else
 			latch.await(50, TimeUnit.MILLISECONDS);
@@ -198,8 +212,13 @@ public class CampaignSelector {
 
 		if (!br.multibid) {
 			SelectedCreative cr = WeightedSelector.applyAlgorithm(br, candidates);
+			// The size picked for the impression goes with it, the creative is shared
+			cr.getImpression().strW = cr.strW;
+			cr.getImpression().strH = cr.strH;
 			winner = br.buildNewBidResponse(cr.getImpression(), cr.getCampaign(), cr.getCreative(), cr.getPrice(),
 					cr.getDealId(), (int) xtime);
+		} else if (evaluator != null) {
+			winner = br.buildNewBidResponse(evaluator.optimize(candidates), (int) xtime);
 		} else {
 			winner = br.buildNewBidResponse(candidates, (int) xtime);
 		}
@@ -248,6 +267,8 @@ class SelectionWorker implements Runnable {
 	CountDownLatch latch;
 	boolean test;
 	StringBuffer err;
+	/** Evaluates the creatives on every impression, null if the request has one */
+	ImpressionEvaluator evaluator;
 
 	public SelectionWorker(int start, int stop, final List<Campaign> list, final BidRequest br,
 			final boolean exchangeIsAdx, MutableBoolean flag, boolean test, CountDownLatch latch) {
@@ -295,7 +316,16 @@ class SelectionWorker implements Runnable {
 
 				if (test.isAdx == exchangeIsAdx) {
 
-					if (test.isGoverned(br)) {
+					if (!PacingCache.participate(test)) {
+						if (Configuration.getInstance().printNoBidReason || this.test)
+							logger.info("This campaign is paced: {}, participation: {}", test.name,
+									PacingCache.participation(test));
+						try {
+							CampaignProcessor.probe.process(br.getExchange(), test.name, Probe.GLOBAL, Probe.PACED);
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					} else if (test.isGoverned(br)) {
 						if (Configuration.getInstance().printNoBidReason || this.test)
 							logger.info("This campaign is governed: {}, spec: {}", test.name, br.synthkey);
 						try {
@@ -306,6 +336,7 @@ class SelectionWorker implements Runnable {
 						}
 					} else {
 						CampaignProcessor p = new CampaignProcessor(test, br, null, null);
+						p.evaluator = evaluator;
 						p.run();
 
 						select = p.getSelectedCreative();
@@ -26,6 +26,7 @@ import com.jacamars.dsp.rtb.jmq.Ping;
 import com.jacamars.dsp.rtb.jmq.ZPublisher;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.pojo.BidResponse;
+import com.jacamars.dsp.rtb.pojo.CapturedRequest;
 import com.jacamars.dsp.rtb.pojo.NobidResponse;
 import com.jacamars.dsp.rtb.pojo.WinObject;
 import com.jacamars.dsp.rtb.shared.AccountingCache;
@@ -204,6 +205,10 @@ public enum Controller {
 	 * Queue for sending nobid reasons
 	 */
 	static ZPublisher reasonsQueue;
+	/**
+	 * Queue for captured bid requests
+	 */
+	static ZPublisher captureQueue;
 	/**
 	 * Queue for video events
 	 */
@@ -284,6 +289,20 @@ public enum Controller {
 			if (config.FORENSIQ_CHANNEL != null) {
 				forensiqsQueue = new ZPublisher(RTBServer.getSharedInstance(), config.FORENSIQ_CHANNEL);
 			}
+			if (config.CAPTURE_CHANNEL != null) {
+				captureQueue = new ZPublisher(RTBServer.getSharedInstance(), config.CAPTURE_CHANNEL);
+			}
+
+			// Key bids, wins, clicks and pixels on the bid id, so everything about one bid lands on the same
+			// partition in order. A key= option on the channel address takes precedence.
+			if (bidQueue != null)
+				bidQueue.setKey("oidStr");
+			if (winsQueue != null)
+				winsQueue.setKey("hash");
+			if (clicksQueue != null)
+				clicksQueue.setKey("bid_id");
+			if (pixelsQueue != null)
+				pixelsQueue.setKey("bid_id");
 		}
 
 		return INSTANCE;
@@ -323,6 +342,7 @@ public enum Controller {
 		m.logtype = c.logtype;
 		String results;
 		RTBServer.exchanges.remove(c.target);
+		Router.getInstance().compile(RTBServer.exchanges);
 		m.msg = "ok";
 		m.name = "DeleteSSP Response";
 
@@ -900,6 +920,23 @@ public enum Controller {
 			nobidQueue.add(nobid);
 	}
 
+	/**
+	 * Is the capture channel configured?
+	 * @return boolean. True if the raw requests are to be captured.
+	 */
+	public boolean isCapturing() {
+		return captureQueue != null;
+	}
+
+	/**
+	 * Send a raw bid request out on the capture channel.
+	 * @param request CapturedRequest. The request as it arrived.
+	 */
+	public void sendCapture(CapturedRequest request) {
+		if (captureQueue != null)
+			captureQueue.add(request);
+	}
+
 	/**
 	 * Inject a feedback message into the request log
 	 *
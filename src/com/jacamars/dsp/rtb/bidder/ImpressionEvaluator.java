@@ -0,0 +1,350 @@
+package com.jacamars.dsp.rtb.bidder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Deal;
+import com.jacamars.dsp.rtb.common.FixedNodeAppOrSite;
+import com.jacamars.dsp.rtb.common.FixedNodeDoAudio;
+import com.jacamars.dsp.rtb.common.FixedNodeDoSize;
+import com.jacamars.dsp.rtb.common.FixedNodeIsBanner;
+import com.jacamars.dsp.rtb.common.FixedNodeIsNative;
+import com.jacamars.dsp.rtb.common.FixedNodeIsVideo;
+import com.jacamars.dsp.rtb.common.FixedNodeNonStandard;
+import com.jacamars.dsp.rtb.common.FixedNodeRequiresDeal;
+import com.jacamars.dsp.rtb.common.FixedNodeStatus;
+import com.jacamars.dsp.rtb.common.FormatIndex;
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.Impression;
+import com.jacamars.dsp.rtb.probe.Probe;
+
+/**
+ * Evaluates creatives against every impression of a multi impression request, and picks at most one
+ * bid per impression.
+ * <p>
+ * Creative.process() runs all the fixed nodes on every impression, fails the creative if any
+ * impression fails one, and then returns the first impression the creative fits. Here the nodes are
+ * split. The nodes that don't look at the impression (status, non standard, requires deal, app or site)
+ * and the creative's attributes, which test the request as a whole, run once per creative. The
+ * impression nodes (size, type, deals) run once per impression the creative could fit, and the creative
+ * gets a candidate on every one of them.
+ * <p>
+ * The impression types and bid floors are flattened into arrays once per request, so the first pass over
+ * a creative is a plain loop over primitives that drops the impressions of the wrong type or with a floor
+ * above the price, and then those FormatIndex rules out, before any node is run. Requests with at least
+ * parallelThreshold impressions run the impression nodes on the common fork join pool.
+ * <p>
+ * For multibid exchanges, optimize() then runs the auction: the highest priced candidates win first, one
+ * per impression, as long as the campaign's remaining budget covers what it has already won in this
+ * request.
+ * @author Ben M. Faul
+ *
+ */
+public class ImpressionEvaluator {
+
+	static final Logger logger = LoggerFactory.getLogger(ImpressionEvaluator.class);
+
+	/** Requests with at least this many impressions are evaluated in parallel */
+	public static volatile int parallelThreshold = 8;
+
+	/** The request being evaluated */
+	final BidRequest br;
+	/** The impressions of the request */
+	final Impression[] imps;
+	/** The type bits of each impression */
+	final int[] type;
+	/** The bid floor of each impression, 0 if it has none */
+	final double[] floor;
+
+	/**
+	 * Flatten the impressions of the request.
+	 * @param br BidRequest. The request, with more than one impression.
+	 */
+	public ImpressionEvaluator(BidRequest br) {
+		this.br = br;
+		int n = br.getImpressions();
+		imps = new Impression[n];
+		type = new int[n];
+		floor = new double[n];
+		for (int i = 0; i < n; i++) {
+			Impression imp = br.getImpression(i);
+			imps[i] = imp;
+			type[i] = FormatIndex.type(imp);
+			floor[i] = imp.bidFloor == null ? 0 : imp.bidFloor;
+		}
+	}
+
+	/**
+	 * Return the number of impressions.
+	 * @return int. The impression count.
+	 */
+	public int size() {
+		return imps.length;
+	}
+
+	/**
+	 * Return true if the fixed node looks at the request only, not the impression.
+	 * @param n Node. A fixed node of a creative.
+	 * @return boolean. True if the answer is the same for every impression.
+	 */
+	static boolean requestLevel(Node n) {
+		return n instanceof FixedNodeStatus || n instanceof FixedNodeNonStandard || n instanceof FixedNodeRequiresDeal
+				|| n instanceof FixedNodeAppOrSite;
+	}
+
+	/**
+	 * Find the impression type the creative's type nodes insist on.
+	 * @param creative Creative. The creative.
+	 * @return int. The type bits, 0 if any type will do.
+	 */
+	static int needs(Creative creative) {
+		int need = 0;
+		for (int i = 0; i < creative.fixedNodes.size(); i++) {
+			Node n = creative.fixedNodes.get(i);
+			if (n instanceof FixedNodeIsVideo && creative.isVideo())
+				need |= FormatIndex.VIDEO;
+			else if (n instanceof FixedNodeIsNative && creative.isNative())
+				need |= FormatIndex.NATIVE;
+			else if (n instanceof FixedNodeIsBanner && creative.isBanner)
+				need |= FormatIndex.BANNER;
+			else if (n instanceof FixedNodeDoAudio)
+				need |= FormatIndex.AUDIO;
+		}
+		return need;
+	}
+
+	/**
+	 * Evaluate a creative against every impression.
+	 * @param creative Creative. The creative to test.
+	 * @param adId String. The campaign name, for the probe.
+	 * @param errorString StringBuilder. The reasons the creative failed, or null.
+	 * @param probe Probe. The probe to record the reasons in.
+	 * @return List. A SelectedCreative for each impression the creative fits, in impression order. Empty
+	 *         if none.
+	 * @throws Exception on probe errors.
+	 */
+	public List<SelectedCreative> evaluate(Creative creative, String adId, StringBuilder errorString, Probe probe)
+			throws Exception {
+		List<SelectedCreative> selected = new ArrayList<SelectedCreative>();
+		List<Deal> list = new ArrayList<Deal>();
+
+		/**
+		 * The request level fixed nodes, once.
+		 */
+		for (int j = 0; j < creative.fixedNodes.size(); j++) {
+			Node node = creative.fixedNodes.get(j);
+			if (requestLevel(node) && !node.test(br, creative, adId, imps[0], errorString, probe, list))
+				return selected;
+		}
+
+		/**
+		 * The creative's attributes test the request, not the impression, so also once. The price is the
+		 * creative's, or the first deal's, the same as Creative.xproc().
+		 */
+		String dealId = null;
+		double price = creative.price;
+		Node n = null;
+		try {
+			for (int i = 0; i < creative.attributes.size(); i++) {
+				n = creative.attributes.get(i);
+				if (!n.test(br, creative, adId, imps[0], errorString, probe, creative.deals)) {
+					if (n.hierarchy == null) {
+						if (errorString != null) {
+							errorString.append("Creative mismatch: ");
+							if (n.operator == Node.OR)
+								errorString.append("OR failed on all branches\n");
+							else
+								errorString.append(n.hierarchy);
+						}
+						probe.process(br.getExchange(), adId, creative.impid, Probe.CREATIVE_MISMATCH + n.hierarchy);
+					}
+					return selected;
+				}
+				if (creative.deals.size() != 0) {
+					dealId = creative.deals.get(0).id;
+					price = creative.deals.get(0).price;
+				}
+			}
+		} catch (Exception error) {
+			error.printStackTrace();
+			if (errorString != null) {
+				errorString.append("Internal error processing bid request with: " + n.name);
+				errorString.append(error.toString());
+				errorString.append("\n");
+			}
+			return selected;
+		}
+
+		/**
+		 * Drop the impressions of the wrong type, and those whose floor is over the price, then those the
+		 * format index says the creative's size can't fit.
+		 */
+		FormatIndex formats = FormatIndex.getInstance();
+		int need = needs(creative);
+		boolean checkFloor = dealId == null;
+		int count = imps.length;
+		boolean[] fits = new boolean[count];
+		int survivors = 0;
+		for (int i = 0; i < count; i++) {
+			boolean fit = (type[i] & need) == need && !(checkFloor && price < floor[i])
+					&& formats.accepts(imps[i], creative);
+			fits[i] = fit;
+			survivors += fit ? 1 : 0;
+		}
+
+		if (survivors == 0) {
+			// Record why, on the first impression, the way Creative.process() does
+			if (test(creative, adId, 0, errorString, probe) != null && checkFloor && price < floor[0]) {
+				if (errorString != null) {
+					errorString.append("Price of creative: ");
+					errorString.append(price);
+					errorString.append(" < bidfloor: ");
+					errorString.append(floor[0]);
+				}
+				probe.process(br.getExchange(), adId, creative.impid, Probe.BID_FLOOR);
+			}
+			return selected;
+		}
+
+		/**
+		 * The impression nodes, on the impressions that are left.
+		 */
+		SelectedCreative[] results = new SelectedCreative[count];
+		StringBuilder[] errors = new StringBuilder[count];
+		String xdealId = dealId;
+		double xprice = price;
+		if (survivors >= parallelThreshold) {
+			IntStream.range(0, count).parallel().forEach(i -> {
+				if (fits[i]) {
+					errors[i] = errorString == null ? null : new StringBuilder();
+					results[i] = select(creative, adId, i, xdealId, xprice, errors[i], probe);
+				}
+			});
+		} else {
+			for (int i = 0; i < count; i++) {
+				if (fits[i]) {
+					errors[i] = errorString == null ? null : new StringBuilder();
+					results[i] = select(creative, adId, i, xdealId, xprice, errors[i], probe);
+				}
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			if (results[i] != null)
+				selected.add(results[i]);
+			else if (errors[i] != null)
+				errorString.append(errors[i]);
+		}
+		return selected;
+	}
+
+	/**
+	 * Run the impression nodes of a creative on one impression and make the candidate.
+	 * @return SelectedCreative. The candidate, or null if a node failed.
+	 */
+	SelectedCreative select(Creative creative, String adId, int i, String dealId, double price,
+			StringBuilder errorString, Probe probe) {
+		String[] size = test(creative, adId, i, errorString, probe);
+		if (size == null)
+			return null;
+		SelectedCreative sc = new SelectedCreative(creative, dealId, price, creative.impid);
+		sc.setImpression(imps[i]);
+		sc.strW = size[0];
+		sc.strH = size[1];
+		return sc;
+	}
+
+	/**
+	 * Run the impression nodes of a creative on one impression. The size node picks the creative's size
+	 * for the impression and leaves it in the creative, so it runs under the creative's lock and the size
+	 * is returned.
+	 * @return String[]. The width and height picked for the impression, or null if a node failed.
+	 */
+	String[] test(Creative creative, String adId, int i, StringBuilder errorString, Probe probe) {
+		List<Deal> list = new ArrayList<Deal>();
+		String[] size = new String[2];
+		try {
+			for (int j = 0; j < creative.fixedNodes.size(); j++) {
+				Node node = creative.fixedNodes.get(j);
+				if (requestLevel(node))
+					continue;
+				if (node instanceof FixedNodeDoSize) {
+					synchronized (creative) {
+						if (!node.test(br, creative, adId, imps[i], errorString, probe, list))
+							return null;
+						size[0] = creative.strW;
+						size[1] = creative.strH;
+					}
+				} else if (!node.test(br, creative, adId, imps[i], errorString, probe, list))
+					return null;
+			}
+		} catch (Exception error) {
+			logger.warn("Creative {}/{} impression {} error: {}", adId, creative.impid, i, error.toString());
+			return null;
+		}
+		return size;
+	}
+
+	/**
+	 * Pick at most one candidate per impression. The highest price wins first, a tie goes to the one found
+	 * first. A candidate is skipped if its campaign's remaining budget wouldn't cover it on top of what the
+	 * campaign already won in this request.
+	 * @param candidates List. The candidates of every campaign.
+	 * @return List. The winners, in impression order.
+	 */
+	public List<SelectedCreative> optimize(List<SelectedCreative> candidates) {
+		List<SelectedCreative> sorted = new ArrayList<SelectedCreative>(candidates);
+		sorted.sort(Comparator.comparingDouble((SelectedCreative sc) -> sc.price).reversed());
+
+		Map<Impression, SelectedCreative> won = new HashMap<Impression, SelectedCreative>();
+		Map<Campaign, Double> spent = new HashMap<Campaign, Double>();
+		for (SelectedCreative sc : sorted) {
+			Impression imp = sc.getImpression();
+			if (won.containsKey(imp))
+				continue;
+			Campaign camp = sc.getCampaign();
+			double cost = sc.price / 1000;
+			double total = spent.getOrDefault(camp, 0.0) + cost;
+			if (total > remaining(camp))
+				continue;
+			spent.put(camp, total);
+			won.put(imp, sc);
+		}
+
+		List<SelectedCreative> winners = new ArrayList<SelectedCreative>();
+		for (Impression imp : imps) {
+			SelectedCreative sc = won.get(imp);
+			if (sc != null)
+				winners.add(sc);
+		}
+		return winners;
+	}
+
+	/**
+	 * Return what the campaign has left to spend, the least of its total, daily and hourly budgets.
+	 * @param camp Campaign. The campaign.
+	 * @return double. The remaining budget, infinite if it has none.
+	 */
+	static double remaining(Campaign camp) {
+		double left = Double.POSITIVE_INFINITY;
+		if (camp == null || camp.budget == null)
+			return left;
+		if (camp.budget.totalBudget.doubleValue() != 0)
+			left = Math.min(left, camp.budget.totalBudget.doubleValue() - camp.budget.totalCost.doubleValue());
+		if (camp.budget.dailyBudget.doubleValue() != 0)
+			left = Math.min(left, camp.budget.dailyBudget.doubleValue() - camp.budget.dailyCost.doubleValue());
+		if (camp.budget.hourlyBudget.doubleValue() != 0)
+			left = Math.min(left, camp.budget.hourlyBudget.doubleValue() - camp.budget.hourlyCost.doubleValue());
+		return left;
+	}
+}
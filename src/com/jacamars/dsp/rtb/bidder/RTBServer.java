@@ -1,6 +1,7 @@
 package com.jacamars.dsp.rtb.bidder;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
 
@@ -13,7 +14,6 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -60,7 +60,11 @@ import com.jacamars.dsp.rtb.commands.Echo;
 import com.jacamars.dsp.rtb.common.Campaign;
 import com.jacamars.dsp.rtb.common.Configuration;
 import com.jacamars.dsp.rtb.common.SSL;
+import com.jacamars.dsp.rtb.common.StartupReport;
+import com.jacamars.dsp.rtb.common.StartupSnapshot;
 import com.jacamars.dsp.rtb.fraud.ForensiqClient;
+import com.jacamars.dsp.rtb.fraud.FraudCheck;
+import com.jacamars.dsp.rtb.geo.IpIntelligence;
 
 import com.jacamars.dsp.rtb.logtap.WebMQPublisher;
 
@@ -451,6 +455,7 @@ public class RTBServer implements Runnable {
 	 */
 	public RTBServer(String fileName) throws Exception {
 
+		StartupReport.getInstance().begin();
 		Configuration.reset(); // this resquired so that when the server is
 		// restarted, the old config won't stick around.
 		AddShutdownHook hook = new AddShutdownHook();
@@ -474,6 +479,7 @@ public class RTBServer implements Runnable {
 	public RTBServer(String fileName, String shard, String exchanges) throws Exception {
 
 		try {
+			StartupReport.getInstance().begin();
 			Configuration.reset(); // this required so that when the server is
 			// restarted, the old config won't stick
 			// around.
@@ -507,6 +513,16 @@ public class RTBServer implements Runnable {
 		return ready;
 	}
 
+	/**
+	 * Returns whether the campaigns are the cache's. After a snapshot start they are the snapshot's until the
+	 * catch-up succeeds.
+	 *
+	 * @return boolean. Returns true if caught up with the campaign cache.
+	 */
+	public boolean isCaughtUp() {
+		return StartupSnapshot.getInstance().isCaughtUp();
+	}
+
 	public static void panicStop() {
 		try {
 			logger.error("PanicStop", "Bidder is shutting down *** NOW ****");
@@ -608,6 +624,10 @@ public class RTBServer implements Runnable {
 		m.put("instance", Configuration.instanceName);
 		m.put("avgbidtime", avgBidTime);
 		m.put("avgnobidtime", avgNoBidTime);
+		m.put("ipintel", IpIntelligence.getStats());
+		m.put("fraudcheck", FraudCheck.getStats());
+		m.put("startup", StartupReport.getInstance().getReport());
+		m.put("bulkheads", Bulkhead.getAllStats());
 
 		return DbTools.mapper.writeValueAsString(m);
 	}
@@ -670,6 +690,11 @@ public class RTBServer implements Runnable {
 
 		try {
 			BidRequest.compile();
+			StartupReport.getInstance().mark("compile");
+			int warm = StartupSnapshot.getInstance().warmup();
+			if (warm != 0)
+				logger.info("Warm-up ran {} requests", warm);
+			StartupReport.getInstance().mark("warmup");
 			SessionHandler sh = new SessionHandler(); // org.eclipse.jetty.server.session.SessionHandler
 			sh.setHandler(handler);
 			server.setHandler(sh); // set session handle
@@ -685,6 +710,10 @@ public class RTBServer implements Runnable {
 			Thread.sleep(500);
 
 			ready = true;
+			StartupReport.getInstance().ready("listen");
+			logger.info("Startup: {}", StartupReport.getInstance());
+			StartupSnapshot.getInstance().startCatchUp();
+			StartupSnapshot.getInstance().startWriter();
 			deltaTime = System.currentTimeMillis(); // qps timer
 
 			if (Controller.responseQueue != null)
@@ -1110,8 +1139,8 @@ class Handler extends AbstractHandler {
 	Random rand = new Random();
 
 	/**
-	 * Handle the HTTP request. Basically a list of if statements that encapsulate
-	 * the various HTTP requests to be handled. The server makes no distinction
+	 * Handle the HTTP request. The Router finds the endpoint, then a list of if
+	 * statements encapsulate the various HTTP requests to be handled. The server makes no distinction
 	 * between POST and GET and ignores DELETE>
 	 * <p>
 	 * >
@@ -1161,14 +1190,19 @@ class Handler extends AbstractHandler {
 		 * This set of if's handle the bid request transactions.
 		 */
 		BidRequest x = null;
+		Bulkhead held = null;
 		try {
 			/**
-			 * Convert the uri to a bid request object based on the exchange..
+			 * Find the endpoint, and for a bid the exchange's prototype, in one pass over the uri.
 			 */
+			Router.Route route = Router.getInstance().route(target);
+			int endpoint = route.endpoint;
 
-			if (target.contains("/rtb/bids")) {
+			if (endpoint == Router.BIDS) {
 				BidResponse bresp = null;
-				x = RTBServer.exchanges.get(target);
+				x = route.exchange;
+				if (x == null)
+					x = RTBServer.exchanges.get(target);
 
 				if (x != null) {
 
@@ -1182,6 +1216,22 @@ class Handler extends AbstractHandler {
 						return;
 					}
 
+					/**
+					 * Over the exchange's limit, its no-bid now, before the request is even read
+					 */
+					if (x.bulkhead != null) {
+						if (!x.bulkhead.acquire()) {
+							RTBServer.nobid++;
+							baseRequest.setHandled(true);
+							response.setHeader("X-REASON", "Exchange over its limit");
+							response.setContentType(x.returnContentType());
+							response.setStatus(x.returnNoBidCode());
+							x.writeNoBid(response, System.currentTimeMillis() - time);
+							return;
+						}
+						held = x.bulkhead;
+					}
+
 					RTBServer.request++;
 
 					/*************
@@ -1204,6 +1254,12 @@ class Handler extends AbstractHandler {
 					if (isGzip)
 						body = new GZIPInputStream(body);
 
+					if (Controller.getInstance().isCapturing()) {
+						byte[] raw = body.readAllBytes();
+						Controller.getInstance().sendCapture(new CapturedRequest(target, x.getExchange(), request, raw, time));
+						body = new ByteArrayInputStream(raw);
+					}
+
 					br = x.copy(body);
 					
 					// System.out.println(br.toString());
@@ -1263,6 +1319,9 @@ class Handler extends AbstractHandler {
 						return;
 					}
 
+					// The fraud check runs while the campaigns are selected
+					br.startFraudCheck();
+
 					if (Configuration.getInstance().getCampaignsList().size() == 0) {
 						logger.debug("No campaigns loaded");
 						json = br.returnNoBid("No campaigns loaded");
@@ -1299,6 +1358,14 @@ class Handler extends AbstractHandler {
 							RTBServer.nobid++;
 							Controller.getInstance().sendRequest(br, false);
 							Controller.getInstance().sendNobid(new NobidResponse(br.id, br.getExchange()));
+						} else if (!bresp.isNoBid() && !fraudPassed(br)) {
+							code = RTBServer.NOBID_CODE;
+							json = br.returnNoBid("Fraud check");
+							bresp = null;
+							RTBServer.nobid++;
+							RTBServer.fraud++;
+							Controller.getInstance().sendRequest(br, false);
+							Controller.getInstance().sendNobid(new NobidResponse(br.id, br.getExchange()));
 						} else {
 							code = RTBServer.BID_CODE;
 							if (!bresp.isNoBid()) {
@@ -1358,7 +1425,7 @@ class Handler extends AbstractHandler {
 			}
 
 			// //////////////////////////////////////////////////////////////////////
-			if (target.contains("/rtb/win")) {
+			if (endpoint == Router.WIN) {
 
 				System.out.println("******************* WIN *****************");
 				StringBuffer url = request.getRequestURL();
@@ -1388,12 +1455,12 @@ class Handler extends AbstractHandler {
 				return;
 			}
 
-			if (target.contains("/ready")) {
+			if (endpoint == Router.READY) {
 				response.getWriter().println("1");
 				return;
 			}
 
-			if (target.contains("/callback")) {
+			if (endpoint == Router.CALLBACK) {
 				response.setContentType("image/bmp;charset=utf-8");
 				response.setStatus(HttpServletResponse.SC_OK);
 				baseRequest.setHandled(true);
@@ -1438,12 +1505,10 @@ class Handler extends AbstractHandler {
 				case "redirect":
 					cookie = GetRtbCookie(debug, request, response, false);
 					String queryString = request.getQueryString();
-					String params[] = null;
-					if (queryString != null)
-						params = queryString.split("url=");
-					if (params != null) {
-						response.sendRedirect(URLDecoder.decode(params[1], "UTF-8"));
-						Controller.getInstance().publishClick(params[0], cookie);
+					int url = WinUrl.redirect(queryString);
+					if (url >= 0) {
+						response.sendRedirect(WinUrl.redirectUrl(queryString, url));
+						Controller.getInstance().publishClick(queryString.substring(0, url), cookie);
 					}
 					RTBServer.clicks++;
 					return;
@@ -1460,7 +1525,7 @@ class Handler extends AbstractHandler {
 				return;
 			}
 
-			if (target.contains("/pixel")) {
+			if (endpoint == Router.PIXEL) {
 				String cookie = GetRtbCookie(false, request, response, true);
 				String starget = baseRequest.getOriginalURI();
 				Controller.getInstance().publishPixel(starget, cookie);
@@ -1472,7 +1537,7 @@ class Handler extends AbstractHandler {
 				return;
 			}
 
-			if (target.contains("/delpixel")) {
+			if (endpoint == Router.DELPIXEL) {
 				String pixel = DeleteRtbCookie(request, response);
 				response.setContentType("text/html;charset=utf-8");
 				response.setStatus(HttpServletResponse.SC_OK);
@@ -1485,7 +1550,7 @@ class Handler extends AbstractHandler {
 			/**
 			 * Handle install (among other) postbacks
 			 */
-			if (target.contains("/postback")) {
+			if (endpoint == Router.POSTBACK) {
 				String cookie = GetRtbCookie(false, request, response, false);
 				Controller.getInstance().publishPostbackEvent(target, cookie);
 				response.setContentType("image/bmp;charset=utf-8");
@@ -1499,7 +1564,7 @@ class Handler extends AbstractHandler {
 			/**
 			 * Handle vide events
 			 */
-			if (target.contains("/track")) {
+			if (endpoint == Router.TRACK) {
 				String cookie = GetRtbCookie(false, request, response, false);
 				Controller.getInstance().publishVideoEvent(request, cookie);
 				response.setContentType("image/bmp;charset=utf-8");
@@ -1512,7 +1577,7 @@ class Handler extends AbstractHandler {
 			/**
 			 * Handle the vast retrieve
 			 */
-			if (target.contains("/vast")) {
+			if (endpoint == Router.VAST) {
 				String vast = Controller.getInstance().getVastVideo(request);
 				response.setContentType("text/xml; charset=UTF-8");
 				response.setStatus(HttpServletResponse.SC_OK);
@@ -1521,26 +1586,24 @@ class Handler extends AbstractHandler {
 				return;
 			}
 
-			if (target.contains("/redirect")) {
+			if (endpoint == Router.REDIRECT) {
 				String starget = baseRequest.getOriginalURI();
 				String cookie = GetRtbCookie(false, request, response, false);
 
 				String queryString = request.getQueryString();
-				String params[] = null;
-				if (queryString != null) 
-					params = queryString.split("url=");
+				int url = WinUrl.redirect(queryString);
 
 				baseRequest.setHandled(true);
 				Controller.getInstance().publishClick(target, cookie);
 				
-				if (params != null) {
-					response.sendRedirect(URLDecoder.decode(params[1], "UTF-8"));
+				if (url >= 0) {
+					response.sendRedirect(WinUrl.redirectUrl(queryString, url));
 				}
 				RTBServer.clicks++;
 				return;
 			}
 
-			if (target.contains("pinger")) {
+			if (endpoint == Router.PINGER) {
 				response.setStatus(200);
 				response.setContentType("text/html;charset=utf-8");
 				baseRequest.setHandled(true);
@@ -1549,7 +1612,7 @@ class Handler extends AbstractHandler {
 
 			}
 
-			if (target.contains("crossdomain.xml")) {
+			if (endpoint == Router.CROSSDOMAIN) {
 				response.setStatus(200);
 				response.setContentType("text/html;charset=utf-8");
 				baseRequest.setHandled(true);
@@ -1557,7 +1620,7 @@ class Handler extends AbstractHandler {
 				return;
 			}
 
-			if (target.contains("summary")) {
+			if (endpoint == Router.SUMMARY) {
 				response.setContentType("text/javascript;charset=utf-8");
 				response.setStatus(HttpServletResponse.SC_OK);
 				baseRequest.setHandled(true);
@@ -1565,7 +1628,7 @@ class Handler extends AbstractHandler {
 				return;
 			}
 
-			if (target.contains("favicon")) {
+			if (endpoint == Router.FAVICON) {
 				RTBServer.handled--; // don't count this useless turd.
 				response.setStatus(HttpServletResponse.SC_OK);
 				baseRequest.setHandled(true);
@@ -1614,6 +1677,9 @@ class Handler extends AbstractHandler {
 			} // else
 				// error.printStackTrace();
 			response.setStatus(RTBServer.NOBID_CODE);
+		} finally {
+			if (held != null)
+				held.release();
 		}
 	}
 
@@ -1855,6 +1921,24 @@ class Handler extends AbstractHandler {
 		return x < RTBServer.percentage.intValue();
 	}
 
+	/**
+	 * Join the fraud check of a request that is about to be bid on. A bot is published to the fraud
+	 * channel. Errors and timeouts already had bidOnError applied by the bid request.
+	 *
+	 * @param br BidRequest. The request.
+	 * @return boolean. True if the bid can go out.
+	 */
+	boolean fraudPassed(BidRequest br) {
+		try {
+			if (br.forensiqPassed())
+				return true;
+			Controller.getInstance().publishFraud(br.fraudRecord);
+		} catch (Exception error) {
+			logger.debug("Fraud check failed: {}", error.toString());
+		}
+		return false;
+	}
+
 	/**
 	 * Return the IP address of this
 	 *
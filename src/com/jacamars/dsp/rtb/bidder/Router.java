@@ -0,0 +1,183 @@
+package com.jacamars.dsp.rtb.bidder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * Routes the targets of the bid handler. The endpoints' prefixes and the exact uri of each exchange are
+ * compiled into a character trie, so one pass over the target finds the endpoint and, for a bid, the
+ * exchange's prototype. The trie is compiled again whenever an exchange is added or removed.
+ * <p>
+ * A target that starts with none of the prefixes is routed the way the handler always did, by the first of
+ * the patterns it contains: "/foo/summary" is still the summary. A target that starts with a prefix goes to
+ * that endpoint even if it contains an earlier endpoint's pattern further on, "/redirect/12/track" is a
+ * redirect, not a video event.
+ * @author Ben M. Faul
+ *
+ */
+public enum Router {
+
+	INSTANCE;
+
+	public static final int BIDS = 0;
+	public static final int WIN = 1;
+	public static final int READY = 2;
+	public static final int CALLBACK = 3;
+	public static final int PIXEL = 4;
+	public static final int DELPIXEL = 5;
+	public static final int POSTBACK = 6;
+	public static final int TRACK = 7;
+	public static final int VAST = 8;
+	public static final int REDIRECT = 9;
+	public static final int PINGER = 10;
+	public static final int CROSSDOMAIN = 11;
+	public static final int SUMMARY = 12;
+	public static final int FAVICON = 13;
+	/** Everything else, the admin handler and the files */
+	public static final int OTHER = 14;
+
+	/** What the handler looked for in the target, by endpoint, in the order it looked */
+	static final String[] PATTERNS = { "/rtb/bids", "/rtb/win", "/ready", "/callback", "/pixel", "/delpixel",
+			"/postback", "/track", "/vast", "/redirect", "pinger", "crossdomain.xml", "summary", "favicon" };
+
+	/** The prefixes compiled into the trie, by endpoint */
+	static final String[] PREFIXES = { "/rtb/bids", "/rtb/win", "/ready", "/callback", "/pixel", "/delpixel",
+			"/postback", "/track", "/vast", "/redirect", "/pinger", "/crossdomain.xml", "/summary", "/favicon" };
+
+	/**
+	 * Where a target goes.
+	 */
+	public static final class Route {
+		/** The endpoint, BIDS to OTHER */
+		public final int endpoint;
+		/** The exchange's prototype, for a bid to a configured exchange, else null */
+		public final BidRequest exchange;
+
+		Route(int endpoint, BidRequest exchange) {
+			this.endpoint = endpoint;
+			this.exchange = exchange;
+		}
+	}
+
+	// The routes that have no exchange, by endpoint
+	static final Route[] ROUTES = new Route[OTHER + 1];
+	static {
+		for (int i = 0; i <= OTHER; i++)
+			ROUTES[i] = new Route(i, null);
+	}
+
+	/**
+	 * A node of the trie. The children are kept in sorted arrays, there are only a few of them.
+	 */
+	static final class Node {
+		char[] keys = new char[0];
+		Node[] next = new Node[0];
+		/** The route of a target this node is a prefix of */
+		Route prefix;
+		/** The route of a target that ends here */
+		Route exact;
+
+		Node child(char c) {
+			char[] k = keys;
+			for (int i = 0; i < k.length; i++) {
+				if (k[i] == c)
+					return next[i];
+				if (k[i] > c)
+					return null;
+			}
+			return null;
+		}
+
+		Node add(char c) {
+			int i = Arrays.binarySearch(keys, c);
+			if (i >= 0)
+				return next[i];
+			i = -i - 1;
+			char[] k = new char[keys.length + 1];
+			Node[] n = new Node[next.length + 1];
+			System.arraycopy(keys, 0, k, 0, i);
+			System.arraycopy(next, 0, n, 0, i);
+			System.arraycopy(keys, i, k, i + 1, keys.length - i);
+			System.arraycopy(next, i, n, i + 1, next.length - i);
+			k[i] = c;
+			n[i] = new Node();
+			keys = k;
+			next = n;
+			return n[i];
+		}
+	}
+
+	// The compiled trie, replaced whole
+	volatile Node root;
+
+	/**
+	 * Return the router.
+	 * @return Router. The singleton.
+	 */
+	public static Router getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Compile the trie from the endpoints and the exchanges.
+	 * @param exchanges Map. The exchanges, uri to prototype.
+	 */
+	public synchronized void compile(Map<String, BidRequest> exchanges) {
+		Node top = new Node();
+		for (int i = 0; i < PREFIXES.length; i++)
+			insert(top, PREFIXES[i]).prefix = ROUTES[i];
+		for (Map.Entry<String, BidRequest> e : new HashMap<String, BidRequest>(exchanges).entrySet()) {
+			if (contains(e.getKey()) == BIDS)
+				insert(top, e.getKey()).exact = new Route(BIDS, e.getValue());
+		}
+		root = top;
+	}
+
+	static Node insert(Node top, String key) {
+		Node n = top;
+		for (int i = 0; i < key.length(); i++)
+			n = n.add(key.charAt(i));
+		return n;
+	}
+
+	/**
+	 * Route a target.
+	 * @param target String. The target, the path of the uri.
+	 * @return Route. Where it goes, never null.
+	 */
+	public Route route(String target) {
+		Node n = root;
+		if (n == null) {
+			compile(RTBServer.exchanges);
+			n = root;
+		}
+		Route best = null;
+		int len = target.length();
+		for (int i = 0; i < len && n != null; i++) {
+			n = n.child(target.charAt(i));
+			if (n != null && n.prefix != null)
+				best = n.prefix;
+		}
+		if (n != null && n.exact != null)
+			return n.exact;
+		if (best != null)
+			return best;
+		return ROUTES[contains(target)];
+	}
+
+	/**
+	 * Route a target the old way, by the first pattern it contains.
+	 * @param target String. The target.
+	 * @return int. The endpoint.
+	 */
+	static int contains(String target) {
+		for (int i = 0; i < PATTERNS.length; i++) {
+			if (target.contains(PATTERNS[i]))
+				return i;
+		}
+		return OTHER;
+	}
+}
@@ -23,6 +23,8 @@ public class SelectedCreative {
 	Creative creative;
 	/** The adjusted weight, applied from an algorithm */
 	int weight;
+	/** The width and height picked for the impression, null if the creative's own */
+	public String strW, strH;
 	
 	/**
 	 * Return the campaign of the selection.
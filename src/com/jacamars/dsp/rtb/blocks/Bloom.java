@@ -6,6 +6,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collection;
 
 
 import com.amazonaws.services.s3.model.S3Object;
@@ -38,10 +39,10 @@ public class Bloom extends LookingGlass {
 		fileName = file;
 		long size = f.length();
 		bloomFilter = BloomFilter.create(Funnels.stringFunnel(Charset.forName("UTF-8")), size,fpp);
-		symbols.put(name, this);
 		
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		makeFilter(br,size);
+		register(name);
 	}
 	
 
@@ -56,11 +57,9 @@ public class Bloom extends LookingGlass {
 		this.fileName = fileName;
 		BufferedReader br = new BufferedReader(new FileReader(fileName));
 		bloomFilter = BloomFilter.create(Funnels.stringFunnel(Charset.forName("UTF-8")), size,fpp);
-		symbols.put(name, this);
 		
 		makeFilter(br,size);
-		
-		symbols.put(name, bloomFilter);
+		register(name);
 	}
 	
 	/**
@@ -72,12 +71,12 @@ public class Bloom extends LookingGlass {
 	public Bloom(String name, S3Object object, long size) throws Exception {
 		s3 = object.getBucketName() + "/" + object.getKey();
 		bloomFilter = BloomFilter.create(Funnels.stringFunnel(Charset.forName("UTF-8")), size,fpp);
-		symbols.put(name, this);
 
 		InputStream objectData = object.getObjectContent();
 		BufferedReader br=new BufferedReader(new InputStreamReader(objectData));
 		makeFilter(br,size);
-		
+		register(name);
+
 	}
 	
 	/**
@@ -165,6 +164,32 @@ public class Bloom extends LookingGlass {
 		return isMember(key);
 	}
 	
+	/**
+	 * Add keys to the filter. Keys can't be removed from a bloom filter.
+	 * @param adds Collection. Keys to add.
+	 * @param removes Collection. Must be empty.
+	 * @throws Exception if removes are requested.
+	 */
+	@Override
+	public void applyDelta(Collection<String> adds, Collection<String> removes) throws Exception {
+		if (!removes.isEmpty())
+			throw new Exception("Can't remove keys from bloom filter");
+		for (String key : adds) {
+			bloomFilter.put(key);
+			size++;
+		}
+	}
+
+	/**
+	 * Estimate the size of the bit array.
+	 * @return long. Bytes used by the filter.
+	 */
+	@Override
+	public long getMemoryEstimate() {
+		double n = Math.max(1, bloomFilter.approximateElementCount());
+		return (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)) / 8);
+	}
+
 	/**
 	 * Returns the number of elements.
 	 * @return int. The number of elements in the filter.
@@ -135,6 +135,64 @@ public class CIDRUtils {
     	return addr.getValue().longValue();
     }
     
+    /**
+     * Parse a dotted decimal IPv4 address without going through IPAddressString or InetAddress.
+     * @param ipAddress CharSequence. The address to parse.
+     * @return long. The address as a long, or -1 if it is not a valid IPv4 address.
+     */
+    public static long parseIPv4(CharSequence ipAddress) {
+    	if (ipAddress == null)
+    		return -1;
+    	int len = ipAddress.length();
+    	long result = 0;
+    	int octet = 0;
+    	int digits = 0;
+    	int dots = 0;
+    	for (int i = 0; i < len; i++) {
+    		char c = ipAddress.charAt(i);
+    		if (c >= '0' && c <= '9') {
+    			octet = octet * 10 + (c - '0');
+    			if (++digits > 3 || octet > 255)
+    				return -1;
+    		} else if (c == '.') {
+    			if (digits == 0 || ++dots > 3)
+    				return -1;
+    			result = (result << 8) | octet;
+    			octet = 0;
+    			digits = 0;
+    		} else
+    			return -1;
+    	}
+    	if (dots != 3 || digits == 0)
+    		return -1;
+    	return (result << 8) | octet;
+    }
+
+    /**
+     * Return the inclusive range covered by an IPv4 CIDR, or a single address.
+     * @param cidr String. The address in a.b.c.d/n or a.b.c.d form.
+     * @return long[]. The low and high addresses, or null if malformed.
+     */
+    public static long[] cidrToRange(String cidr) {
+    	int slash = cidr.indexOf('/');
+    	long base = parseIPv4(slash < 0 ? cidr : cidr.substring(0, slash));
+    	if (base < 0)
+    		return null;
+    	int bits = 32;
+    	if (slash >= 0) {
+    		try {
+    			bits = Integer.parseInt(cidr.substring(slash + 1));
+    		} catch (NumberFormatException error) {
+    			return null;
+    		}
+    		if (bits < 0 || bits > 32)
+    			return null;
+    	}
+    	long mask = bits == 0 ? 0 : (0xffffffffL << (32 - bits)) & 0xffffffffL;
+    	long low = base & mask;
+    	return new long[] { low, low | (~mask & 0xffffffffL) };
+    }
+
     /**
      * Given an ip address in long form, return the string dotted decimal equivalent.
      * @param ipAddress long. The long address.
@@ -32,6 +32,51 @@ public class LookingGlass {
 		
 	}
 
+	/**
+	 * Place a fully loaded object in the symbol table. When called on a SymbolStore loader thread the
+	 * object is staged instead, and the store swaps it in after validation.
+	 * @param name String. The symbol name.
+	 * @param value Object. The value, normally this.
+	 */
+	protected static void register(String name, Object value) {
+		if (!SymbolStore.stage(name, value))
+			symbols.put(name, value);
+	}
+
+	/**
+	 * Place this object in the symbol table once it is loaded.
+	 * @param name String. The symbol name.
+	 */
+	protected void register(String name) {
+		register(name, this);
+	}
+
+	/**
+	 * Apply a delta to the loaded data. Only sets that can change in place support this.
+	 * @param adds Collection. Keys to add.
+	 * @param removes Collection. Keys to remove.
+	 * @throws Exception if this kind of symbol does not support deltas.
+	 */
+	public void applyDelta(Collection<String> adds, Collection<String> removes) throws Exception {
+		throw new Exception(getClass().getSimpleName() + " does not support delta updates");
+	}
+
+	/**
+	 * Called by the SymbolStore after this object was replaced and in-flight requests have drained.
+	 * Release off-heap resources here.
+	 */
+	public void retire() {
+
+	}
+
+	/**
+	 * A rough estimate of the heap used by this symbol, in bytes.
+	 * @return long. The estimated size.
+	 */
+	public long getMemoryEstimate() {
+		return getMembers() * 96;
+	}
+
     /**
      * Evict a symbol
      * @param key String. The symbol name to remove.
@@ -49,7 +94,6 @@ public class LookingGlass {
 	public LookingGlass(String name, String file) throws Exception {
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		fileName = file;
-		symbols.put(name, this);
 		String[] parts = null;	
 		String message = "Initialize Simple Map: " + file + " as " + name;
 		for (String line; (line = br.readLine()) != null;) {
@@ -60,11 +104,11 @@ public class LookingGlass {
 			myMap.put(parts[0], parts);
 		}
 		br.close();
+		register(name);
 		logger.info("{}",message);
 	}
 	
 	public LookingGlass(String name, S3Object obj) throws Exception {
-		symbols.put(name, this);
 		s3 = obj.getBucketName() + "/" + obj.getKey();
 		InputStream objectData = obj.getObjectContent();
 		BufferedReader br = new BufferedReader(new InputStreamReader(objectData));
@@ -80,6 +124,7 @@ public class LookingGlass {
 			myMap.put(parts[0], parts);
 		}
 		br.close();
+		register(name);
 		logger.info("{}",message);
 	}
 	
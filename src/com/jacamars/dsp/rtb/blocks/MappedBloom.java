@@ -0,0 +1,101 @@
+package com.jacamars.dsp.rtb.blocks;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A memory mapped bloom filter. Unlike Bloom, nothing is rebuilt at startup, the bit array is used
+ * directly from the mapped file. The hash is computed over the UTF-16 chars so lookups don't allocate.
+ * @author Ben M. Faul
+ *
+ */
+public class MappedBloom extends MappedSymbols {
+
+	// Number of hash functions
+	final int hashes;
+	// Number of bits
+	final long bits;
+	// The bit array
+	final ByteBuffer words;
+
+	MappedBloom(SymbolFile file) {
+		super(file);
+		ByteBuffer p = file.getPayload();
+		hashes = p.getInt(0);
+		bits = p.getLong(4);
+		p.position(12);
+		words = p.slice();
+	}
+
+	@Override
+	public boolean contains(String key) {
+		if (key == null)
+			return false;
+		long h1 = hash(key, 0x9E3779B97F4A7C15L);
+		long h2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+		long combined = h1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = (combined & Long.MAX_VALUE) % bits;
+			if ((words.getLong((int) (bit >>> 6) * 8) & (1L << bit)) == 0)
+				return false;
+			combined += h2;
+		}
+		return true;
+	}
+
+	/**
+	 * Same semantics as Bloom.
+	 * @param key String. The key to test for.
+	 * @return boolean. False if not in the filter, true if it possibly is.
+	 */
+	public boolean mightContain(String key) {
+		return contains(key);
+	}
+
+	/**
+	 * Set the bits for a key, used by the compiler.
+	 * @param words long[]. The bit array.
+	 * @param bits long. The number of bits in use.
+	 * @param hashes int. The number of hash functions.
+	 * @param key String. The key to add.
+	 */
+	static void put(long[] words, long bits, int hashes, String key) {
+		long h1 = hash(key, 0x9E3779B97F4A7C15L);
+		long h2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+		long combined = h1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = (combined & Long.MAX_VALUE) % bits;
+			words[(int) (bit >>> 6)] |= 1L << bit;
+			combined += h2;
+		}
+	}
+
+	/**
+	 * A 64 bit hash of the chars of a string.
+	 * @param s String. The string to hash.
+	 * @param seed long. The seed.
+	 * @return long. The hash.
+	 */
+	static long hash(String s, long seed) {
+		long h = seed ^ s.length();
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001B3L;
+			h = Long.rotateLeft(h, 23);
+		}
+		return mix(h);
+	}
+
+	/**
+	 * The murmur3 finalizer.
+	 * @param h long. The value to mix.
+	 * @return long. The mixed value.
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
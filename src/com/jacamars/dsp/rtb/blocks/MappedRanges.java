@@ -0,0 +1,60 @@
+package com.jacamars.dsp.rtb.blocks;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A memory mapped table of merged IPv4 ranges, compiled from CIDR or range lists. Replaces the
+ * NavMap trie for large block lists.
+ * @author Ben M. Faul
+ *
+ */
+public class MappedRanges extends MappedSymbols {
+
+	// (low, high) pairs
+	final ByteBuffer ranges;
+	// Number of pairs
+	final int size;
+
+	MappedRanges(SymbolFile file) {
+		super(file);
+		ranges = file.getPayload();
+		size = (int) file.getCount();
+	}
+
+	@Override
+	public boolean contains(String key) {
+		long ip = CIDRUtils.parseIPv4(key);
+		if (ip < 0)
+			return false;
+		return search(ip);
+	}
+
+	/**
+	 * Determine if the address is within one of the ranges.
+	 * @param ip long. The IPv4 address as a long.
+	 * @return boolean. Returns true if found in a range.
+	 */
+	public boolean search(long ip) {
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long low = ranges.getLong(mid * 16);
+			if (ip < low) {
+				hi = mid - 1;
+			} else if (ip > ranges.getLong(mid * 16 + 8)) {
+				lo = mid + 1;
+			} else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the number of merged ranges.
+	 * @return int. The number of ranges.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,89 @@
+package com.jacamars.dsp.rtb.blocks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A memory mapped sorted string table. Lookups are a binary search over the mapped bytes.
+ * @author Ben M. Faul
+ *
+ */
+public class MappedStringTable extends MappedSymbols {
+
+	// Offsets table, int[count+1]
+	final ByteBuffer offsets;
+	// UTF-8 data area
+	final ByteBuffer data;
+	// Number of strings
+	final int size;
+
+	MappedStringTable(SymbolFile file) {
+		super(file);
+		size = (int) file.getCount();
+		ByteBuffer p = file.getPayload();
+		p.limit(4 * (size + 1));
+		offsets = p.slice();
+		p = file.getPayload();
+		p.position(4 * (size + 1));
+		data = p.slice();
+	}
+
+	@Override
+	public boolean contains(String key) {
+		if (key == null)
+			return false;
+		byte[] k = key.getBytes(StandardCharsets.UTF_8);
+		int lo = 0;
+		int hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = compare(mid, k);
+			if (c < 0)
+				lo = mid + 1;
+			else if (c > 0)
+				hi = mid - 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Compare the entry at index with the key, unsigned byte order.
+	 * @param index int. The entry index.
+	 * @param k byte[]. The UTF-8 key.
+	 * @return int. Negative if the entry sorts before the key, 0 if equal, else positive.
+	 */
+	int compare(int index, byte[] k) {
+		int start = offsets.getInt(index * 4);
+		int len = offsets.getInt(index * 4 + 4) - start;
+		int n = Math.min(len, k.length);
+		for (int i = 0; i < n; i++) {
+			int c = (data.get(start + i) & 0xff) - (k[i] & 0xff);
+			if (c != 0)
+				return c;
+		}
+		return len - k.length;
+	}
+
+	/**
+	 * Return the string at index.
+	 * @param index int. The entry index.
+	 * @return String. The decoded entry.
+	 */
+	public String get(int index) {
+		int start = offsets.getInt(index * 4);
+		int len = offsets.getInt(index * 4 + 4) - start;
+		byte[] b = new byte[len];
+		data.get(start, b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Return the number of strings.
+	 * @return int. The size of the table.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,132 @@
+package com.jacamars.dsp.rtb.blocks;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import com.amazonaws.services.s3.model.S3Object;
+
+/**
+ * Base class of the symbol table entries backed by a memory mapped, precompiled SymbolFile.
+ * The entry is placed into the symbol table only after the file is mapped and its checksum
+ * verified, so replacing a symbol with a new file is a single reference swap.
+ * @author Ben M. Faul
+ *
+ */
+public abstract class MappedSymbols extends LookingGlass {
+
+	// The mapped file
+	protected final SymbolFile file;
+
+	/**
+	 * Create the entry from a mapped file.
+	 * @param file SymbolFile. The mapped and verified file.
+	 */
+	protected MappedSymbols(SymbolFile file) {
+		this.file = file;
+		myMap = null;
+	}
+
+	/**
+	 * Determine if the key is in the set. Blooms may return false positives.
+	 * @param key String. The key to look for.
+	 * @return boolean. Returns true if the key is a member.
+	 */
+	public abstract boolean contains(String key);
+
+	/**
+	 * Map a compiled file and return the matching symbol object. Does not register it.
+	 * @param fileName String. The name of the compiled file.
+	 * @return MappedSymbols. The set, range table or bloom filter.
+	 * @throws Exception on I/O, format or checksum errors.
+	 */
+	public static MappedSymbols open(String fileName) throws Exception {
+		SymbolFile sf = new SymbolFile(fileName);
+		MappedSymbols x;
+		switch (sf.getKind()) {
+		case SymbolFile.STRINGS:
+			x = new MappedStringTable(sf);
+			break;
+		case SymbolFile.RANGES:
+			x = new MappedRanges(sf);
+			break;
+		case SymbolFile.BLOOM:
+			x = new MappedBloom(sf);
+			break;
+		default:
+			throw new Exception(fileName + " has unknown kind " + sf.getKind());
+		}
+		x.fileName = fileName;
+		return x;
+	}
+
+	/**
+	 * Map a compiled file and swap it into the symbol table under name.
+	 * @param name String. The symbol name.
+	 * @param fileName String. The name of the compiled file.
+	 * @return MappedSymbols. The new symbol object.
+	 * @throws Exception on I/O, format or checksum errors. The old symbol is left in place.
+	 */
+	public static MappedSymbols load(String name, String fileName) throws Exception {
+		MappedSymbols x = open(fileName);
+		register(name, x);
+		logger.info("Initialize compiled symbols: {} as {}, entries = {}", fileName, name, x.getMembers());
+		return x;
+	}
+
+	/**
+	 * Copy a compiled file from S3 to the local directory and map it. The copy is what gets
+	 * shared between the bidders on this host.
+	 * @param name String. The symbol name.
+	 * @param object S3Object. The compiled file in S3.
+	 * @param dir String. The local directory to cache the file in.
+	 * @return MappedSymbols. The new symbol object.
+	 * @throws Exception on S3, I/O, format or checksum errors.
+	 */
+	public static MappedSymbols load(String name, S3Object object, String dir) throws Exception {
+		File local = new File(dir, new File(object.getKey()).getName());
+		// Each bidder on the host downloads to a file of its own, the last one moved in wins
+		File tmp = Files.createTempFile(Paths.get(dir), local.getName(), ".part").toFile();
+		try (InputStream is = object.getObjectContent()) {
+			Files.copy(is, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp.toPath(), local.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+		MappedSymbols x = load(name, local.getPath());
+		x.s3 = object.getBucketName() + "/" + object.getKey();
+		return x;
+	}
+
+	/**
+	 * Return the checksum of the mapped file.
+	 * @return long. The CRC32 of the payload.
+	 */
+	public long getCrc() {
+		return file.getCrc();
+	}
+
+	/**
+	 * The mapped file is off heap and shared with the other bidders on the host.
+	 * @return long. The size of the mapped payload.
+	 */
+	@Override
+	public long getMemoryEstimate() {
+		return file.getPayload().capacity();
+	}
+
+	@Override
+	public Object query(String key) {
+		if (key == null)
+			return null;
+		return contains(key) ? key : null;
+	}
+
+	@Override
+	public long getMembers() {
+		return file.getCount();
+	}
+}
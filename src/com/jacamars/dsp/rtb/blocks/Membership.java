@@ -41,7 +41,6 @@ public class Membership extends LookingGlass {
 	 * @throws Exception on File I/O errors.
 	 */
 	public Membership(String name, String file) throws Exception {
-		symbols.put(name, this);
 		fileName = file;
 		this.name = name;
 		myMap = null;
@@ -49,6 +48,7 @@ public class Membership extends LookingGlass {
 		BufferedReader br = new BufferedReader(new FileReader(file));
 
 		readData(br);
+		register(name);
 	}
 	
 	/**
@@ -64,6 +64,7 @@ public class Membership extends LookingGlass {
 		InputStream objectData = object.getObjectContent();
 		BufferedReader br=new BufferedReader(new InputStreamReader(objectData));
 		readData(br);
+		register(name);
 	}
 	
 	/**
@@ -43,14 +43,14 @@ public class NavMap extends LookingGlass implements Set {
 	public NavMap(String name, String file, String type) throws Exception {
 		this.name = name;
 		fileName = file;
-		symbols.put(name, this);
+		BufferedReader br = new BufferedReader(new FileReader(file));
 		if (type.equalsIgnoreCase("cidr")) {
-			BufferedReader br = new BufferedReader(new FileReader(file));
 			doCidr(br);
 		} else {
-			BufferedReader br = new BufferedReader(new FileReader(file));
 			doRanges(br);
 		}
+		br.close();
+		register(name);
 	}
 
 	/**
@@ -77,7 +77,7 @@ public class NavMap extends LookingGlass implements Set {
 		} else
 			throw new Exception(file + " Not in range or CIDR form");
 		
-		symbols.put(name, this);
+		register(name);
 	}
 
 	/**
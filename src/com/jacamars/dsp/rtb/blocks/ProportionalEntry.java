@@ -1,24 +1,149 @@
 package com.jacamars.dsp.rtb.blocks;
 
 import java.io.Serializable;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.Random;
-import java.util.TreeMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jacamars.dsp.rtb.tools.RandomSource;
 
 /**
- * A Navmap of creatives and their weights.
+ * A weighted set of creatives. Each creative gets an ordinal, 0 to size() - 1, in the order added.
+ * <p>
+ * By default a creative is picked at random in proportion to its weight, with a Walker/Vose alias table:
+ * one random slot and one coin flip, the same cost no matter how many creatives there are. The table is
+ * rebuilt when a creative is added, which happens when the weights are set, not while bidding.
+ * <p>
+ * Weights that start with "smooth:", for example "smooth:c1=5,c2=1,c3=1", use smooth weighted round robin
+ * instead: the order is worked out once and the bidders step through it with an atomic cursor, so every
+ * total weight worth of picks has exactly the weights' ratios, spread out rather than in runs.
  */
 public class ProportionalEntry implements Serializable {
-    private final NavigableMap<Double, String> map = new TreeMap<Double, String>();
-    private Random random = new Random();
-    private double total = 0;
+    /** Prefix of the smooth weighted round robin weights */
+    public static final String SMOOTH = "smooth:";
+    /** Longest smooth schedule, larger weights are scaled down to fit */
+    static final int MAX_SCHEDULE = 65536;
+
+    /**
+     * The tables for one set of weights, replaced as a whole when a creative is added.
+     */
+    static final class Table implements Serializable {
+        final String[] names;
+        final int[] weights;
+        final double total;
+        /** Alias method: the chance to keep a slot, else its alias */
+        final double[] prob;
+        final int[] alias;
+        /** Smooth weighted round robin order, null if random */
+        final int[] schedule;
+
+        Table(String[] names, int[] weights, boolean smooth) {
+            this.names = names;
+            this.weights = weights;
+            int n = weights.length;
+            double sum = 0;
+            for (int w : weights)
+                sum += w;
+            total = sum;
+
+            // Vose: split the slots into those under and over the average, pair each small with a large
+            prob = new double[n];
+            alias = new int[n];
+            double[] scaled = new double[n];
+            Deque<Integer> small = new ArrayDeque<Integer>();
+            Deque<Integer> large = new ArrayDeque<Integer>();
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / total;
+                if (scaled[i] < 1)
+                    small.push(i);
+                else
+                    large.push(i);
+            }
+            while (!small.isEmpty() && !large.isEmpty()) {
+                int s = small.pop();
+                int l = large.pop();
+                prob[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1;
+                if (scaled[l] < 1)
+                    small.push(l);
+                else
+                    large.push(l);
+            }
+            while (!large.isEmpty())
+                prob[large.pop()] = 1;
+            while (!small.isEmpty())
+                prob[small.pop()] = 1;
+
+            schedule = smooth ? schedule(weights) : null;
+        }
+
+        /**
+         * Work out the smooth weighted round robin order: each step every creative gains its weight, the
+         * one with the most is picked and loses the total.
+         */
+        static int[] schedule(int[] weights) {
+            int n = weights.length;
+            if (n == 0)
+                return new int[0];
+            int[] w = weights.clone();
+            int gcd = 0;
+            for (int x : w)
+                gcd = gcd(gcd, x);
+            long length = 0;
+            for (int i = 0; i < n; i++) {
+                w[i] /= gcd;
+                length += w[i];
+            }
+            if (length > MAX_SCHEDULE) {
+                double scale = (double) MAX_SCHEDULE / length;
+                length = 0;
+                for (int i = 0; i < n; i++) {
+                    w[i] = Math.max(1, (int) Math.round(w[i] * scale));
+                    length += w[i];
+                }
+            }
+
+            int[] order = new int[(int) length];
+            long[] current = new long[n];
+            for (int step = 0; step < order.length; step++) {
+                int best = 0;
+                for (int i = 0; i < n; i++) {
+                    current[i] += w[i];
+                    if (current[i] > current[best])
+                        best = i;
+                }
+                current[best] -= length;
+                order[step] = best;
+            }
+            return order;
+        }
+
+        static int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+    }
+
+    private volatile Table table = new Table(new String[0], new int[0], false);
+    private boolean smooth;
+    private final AtomicLong cursor = new AtomicLong();
 
     public ProportionalEntry() {
 
     }
 
     public ProportionalEntry(String weights) throws Exception {
+        weights = weights.trim();
+        if (weights.startsWith(SMOOTH)) {
+            smooth = true;
+            weights = weights.substring(SMOOTH.length());
+        }
         String [] parts = weights.split(",");
         for (String s : parts) {
             s = s.trim();
@@ -28,37 +153,129 @@ public class ProportionalEntry implements Serializable {
             add(weight,crid);
         }
     }
+
     /**
      * Add a creative to the weighted collection
      * @param weight Integer. The weight of the creative being added.
      * @param creativeName String. The name of this creative.
      * @return double. The current weight tally.
      */
-    public double add(Integer weight, String creativeName) {
-        if (weight <= 0) return total;
-        total += weight;
-        map.put(total, creativeName);
-        return total;
+    public synchronized double add(Integer weight, String creativeName) {
+        Table t = table;
+        if (weight <= 0) return t.total;
+        int n = t.names.length;
+        String[] names = Arrays.copyOf(t.names, n + 1);
+        int[] weights = Arrays.copyOf(t.weights, n + 1);
+        names[n] = creativeName;
+        weights[n] = weight;
+        table = new Table(names, weights, smooth);
+        return table.total;
     }
 
     /**
-     * Return the next higher entry. This is a random selection of creatives where the heavier ones
-     * are selected proportional to the total weight.
-     * @return String. The next campaign selected.
+     * Return the next creative. This is a random selection of creatives where the heavier ones
+     * are selected proportional to the total weight, or the next in the smooth round robin.
+     * @return String. The next creative selected.
      */
     public String next() {
-        double value = random.nextDouble() * total;
-        return map.higherEntry(value).getValue();
+        Table t = table;
+        if (t.names.length == 0)
+            return null;
+        return t.names[nextOrdinal(t)];
+    }
+
+    /**
+     * Return the ordinal of the next creative.
+     * @return int. The ordinal, -1 if there are no creatives.
+     */
+    public int nextOrdinal() {
+        Table t = table;
+        if (t.names.length == 0)
+            return -1;
+        return nextOrdinal(t);
+    }
+
+    int nextOrdinal(Table t) {
+        if (t.schedule != null)
+            return t.schedule[(int) (cursor.getAndIncrement() % t.schedule.length)];
+        int i = RandomSource.nextInt(t.prob.length);
+        return RandomSource.nextDouble() < t.prob[i] ? i : t.alias[i];
+    }
+
+    /**
+     * Return the number of creatives.
+     * @return int. The number of creatives with a weight.
+     */
+    public int size() {
+        return table.names.length;
+    }
+
+    /**
+     * Return the name of a creative.
+     * @param ordinal int. The creative's ordinal.
+     * @return String. Its name.
+     */
+    public String name(int ordinal) {
+        return table.names[ordinal];
+    }
+
+    /**
+     * Return the weight of a creative.
+     * @param ordinal int. The creative's ordinal.
+     * @return int. Its weight.
+     */
+    public int weight(int ordinal) {
+        return table.weights[ordinal];
+    }
+
+    /**
+     * Return the ordinal of a creative.
+     * @param name String. The creative's name.
+     * @return int. Its ordinal, -1 if it has no weight.
+     */
+    public int ordinal(String name) {
+        String[] names = table.names;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Is this a smooth weighted round robin?
+     * @return boolean. True for round robin, false for random.
+     */
+    public boolean smooth() {
+        return smooth;
+    }
+
+    /**
+     * Return the weights in the form the constructor takes, "c1=80,c2=20", prefixed with smooth: if smooth.
+     * @return String. The weight assignment.
+     */
+    public String assignment() {
+        Table t = table;
+        StringBuilder str = new StringBuilder(smooth ? SMOOTH : "");
+        for (int i = 0; i < t.names.length; i++) {
+            if (i > 0)
+                str.append(",");
+            str.append(t.names[i]).append("=").append(t.weights[i]);
+        }
+        return str.toString();
     }
 
     @Override
     public String toString() {
-        String str = "";
+        Table t = table;
+        StringBuilder str = new StringBuilder(smooth ? SMOOTH : "");
         double d = 0;
-        for(Map.Entry<Double, String> entry: map.entrySet()) {
-            str += entry.getValue() + ":" + entry.getKey() + ",";
+        for (int i = 0; i < t.names.length; i++) {
+            d += t.weights[i];
+            if (i > 0)
+                str.append(",");
+            str.append(t.names[i]).append(":").append(d);
         }
-        str = str.substring(0,str.length()-1);
-        return str;
+        return str.toString();
     }
 }
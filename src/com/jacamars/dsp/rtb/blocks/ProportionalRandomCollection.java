@@ -43,7 +43,7 @@ public class ProportionalRandomCollection extends LookingGlass implements Serial
         fileName = file;
         String message = "Initialize ProportionalRandomCollection: " + file + " as " + name;
         makeFilter(br);
-        symbols.put(name, this);
+        register(name);
         logger.info("{}", message);
     }
 
@@ -60,7 +60,7 @@ public class ProportionalRandomCollection extends LookingGlass implements Serial
         String message = "Initialize ProportionalRandomCollection: " + object.getBucketName() + " as " + name;
         BufferedReader br = new BufferedReader(new InputStreamReader(objectData));
         makeFilter(br);
-        symbols.put(name, this);
+        register(name);
         logger.info("{}", message);
     }
 
@@ -72,7 +72,7 @@ public class ProportionalRandomCollection extends LookingGlass implements Serial
      */
     public ProportionalRandomCollection(String name) throws Exception {
         String message = "Initialize ProportionalRandomCollection: " + name + " as " + name;
-        symbols.put(name, this);
+        register(name);
         logger.info("{}", message);
         dbMap = (HTreeMap<String, ProportionalEntry>) db.hashMap("scratch").create();
         dbMap.clear();
@@ -208,7 +208,12 @@ public class ProportionalRandomCollection extends LookingGlass implements Serial
     public String query(String key) {
         return next((String)key);
     }
-}
-
-
 
+    /**
+     * Close the off-heap store once nothing can still be reading it.
+     */
+    @Override
+    public void retire() {
+        db.close();
+    }
+}
@@ -30,7 +30,6 @@ public class SimpleMultiset extends LookingGlass {
 	 * @throws Exception on File Errors.
 	 */
 	public SimpleMultiset(String name, String file) throws Exception {
-		symbols.put(name, ms);
 		fileName = file;
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		System.out.print("Initialize  Multiset: " + name + " from " + file + ", enttries = ");
@@ -41,6 +40,7 @@ public class SimpleMultiset extends LookingGlass {
 		
 		br = new BufferedReader(new FileReader(file));
 		makeFilter(br);
+		register(name, ms);
 		System.out.println(ms.size() +  " elements");
 	}
 	
@@ -51,11 +51,11 @@ public class SimpleMultiset extends LookingGlass {
 	 * @throws Exception on S3 errors.
 	 */
 	public SimpleMultiset(String name, S3Object object) throws Exception {
-		symbols.put(name, ms);
 		s3 = object.getBucketName() + "/" + object.getKey();
 		InputStream objectData = object.getObjectContent();
 		BufferedReader br=new BufferedReader(new InputStreamReader(objectData));
 		makeFilter(br);
+		register(name, ms);
 		System.out.println(size + " elements");
 	}
 	
@@ -4,10 +4,11 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.amazonaws.services.s3.model.S3Object;
-import com.google.common.collect.Sets;
 
 /**
  * A guava set. Reads a file or S3 object and shoves the lines into a guava set.
@@ -15,7 +16,7 @@ import com.google.common.collect.Sets;
  *
  */
 public class SimpleSet extends LookingGlass {
-	Set<String> set = Sets.newHashSet();
+	Set<String> set = ConcurrentHashMap.newKeySet();
 	String message;
 
 	/**
@@ -25,12 +26,12 @@ public class SimpleSet extends LookingGlass {
 	 * @throws Exception on I/O errors.
 	 */
 	public SimpleSet(String name, String file) throws Exception {
-		symbols.put(name,set);
 		fileName  = file;
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		message = "Initialize Simple Membership: " + file + " as " + name;
 
 		makeSet(br);
+		register(name);
 	}
 	
 	/**
@@ -40,12 +41,12 @@ public class SimpleSet extends LookingGlass {
 	 * @throws Exception on S3 or I/O options.
 	 */
 	public SimpleSet(String name, S3Object object) throws Exception {
-		symbols.put(name, this);
 		s3 = object.getBucketName() + "/" + object.getKey();
 		InputStream objectData = object.getObjectContent();
 		BufferedReader br=new BufferedReader(new InputStreamReader(objectData));
 		message = "Initialize Simple Membership: " + object.getBucketName() + " as " + name;
 		makeSet(br);
+		register(name);
 	}
 	
 	/**
@@ -82,6 +83,17 @@ public class SimpleSet extends LookingGlass {
 		return set;
 	}
 	
+	/**
+	 * Add and remove keys in place. Each key changes atomically, readers never see a partial set.
+	 * @param adds Collection. Keys to add.
+	 * @param removes Collection. Keys to remove.
+	 */
+	@Override
+	public void applyDelta(Collection<String> adds, Collection<String> removes) {
+		set.addAll(adds);
+		set.removeAll(removes);
+	}
+
 	@Override
 	public long getMembers() {
 		return set.size();
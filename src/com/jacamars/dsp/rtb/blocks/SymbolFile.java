@@ -0,0 +1,257 @@
+package com.jacamars.dsp.rtb.blocks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The versioned binary format for precompiled symbol lists. Files are produced offline by
+ * tools.CompileSymbols and memory mapped read-only by the bidder, so several bidders on one host
+ * share the same pages and nothing is parsed at startup.
+ * <p>
+ * Layout, all big endian:
+ * <pre>
+ * int   magic        'RTBS'
+ * short version      1
+ * short kind         1 = sorted string table, 2 = packed IPv4 ranges, 3 = bloom filter
+ * long  count        number of entries
+ * long  length       payload length in bytes
+ * long  crc          CRC32 of the payload
+ * byte[length]       payload
+ * </pre>
+ * String table payload: int[count+1] offsets into the data area, then the UTF-8 data sorted by unsigned byte order.
+ * Range payload: long[count*2] of merged, sorted (low, high) pairs.
+ * Bloom payload: int hashes, long bits, then long[(bits+63)/64] words.
+ * @author Ben M. Faul
+ *
+ */
+public class SymbolFile {
+
+	/** File magic, 'RTBS' */
+	public static final int MAGIC = 0x52544253;
+	/** Current format version */
+	public static final short VERSION = 1;
+	/** Size of the fixed header */
+	public static final int HEADER_SIZE = 32;
+
+	/** Sorted string table */
+	public static final short STRINGS = 1;
+	/** Packed IPv4 ranges */
+	public static final short RANGES = 2;
+	/** Bloom filter */
+	public static final short BLOOM = 3;
+
+	// The mapped file
+	final MappedByteBuffer buffer;
+	// The kind of payload
+	final short kind;
+	// Number of entries
+	final long count;
+	// The payload, positioned at 0
+	final ByteBuffer payload;
+	// The checksum
+	final long crc;
+
+	/**
+	 * Memory map a compiled symbol file read only, verify the header and the checksum.
+	 * @param fileName String. The name of the compiled file.
+	 * @throws Exception on I/O errors, bad magic, unknown version or checksum mismatch.
+	 */
+	public SymbolFile(String fileName) throws Exception {
+		try (RandomAccessFile raf = new RandomAccessFile(fileName, "r"); FileChannel ch = raf.getChannel()) {
+			if (ch.size() < HEADER_SIZE)
+				throw new Exception(fileName + " is not a compiled symbol file");
+			buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		if (buffer.getInt(0) != MAGIC)
+			throw new Exception(fileName + " is not a compiled symbol file");
+		short version = buffer.getShort(4);
+		if (version != VERSION)
+			throw new Exception(fileName + " has unsupported version " + version);
+		kind = buffer.getShort(6);
+		count = buffer.getLong(8);
+		long length = buffer.getLong(16);
+		crc = buffer.getLong(24);
+		if (length != buffer.capacity() - HEADER_SIZE)
+			throw new Exception(fileName + " is truncated, expected " + length + " payload bytes");
+
+		buffer.position(HEADER_SIZE);
+		payload = buffer.slice();
+		buffer.position(0);
+
+		CRC32 check = new CRC32();
+		check.update(payload.duplicate());
+		if (check.getValue() != crc)
+			throw new Exception(fileName + " fails checksum");
+	}
+
+	/**
+	 * Return the kind of payload.
+	 * @return short. One of STRINGS, RANGES or BLOOM.
+	 */
+	public short getKind() {
+		return kind;
+	}
+
+	/**
+	 * Return the number of entries.
+	 * @return long. The entry count from the header.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Return the payload checksum.
+	 * @return long. The CRC32 of the payload.
+	 */
+	public long getCrc() {
+		return crc;
+	}
+
+	/**
+	 * Return a read only view of the payload.
+	 * @return ByteBuffer. The payload positioned at 0.
+	 */
+	public ByteBuffer getPayload() {
+		return payload.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Write a sorted string table.
+	 * @param fileName String. The file to create.
+	 * @param values Collection. The strings, duplicates are removed.
+	 * @throws Exception on I/O errors.
+	 */
+	public static void writeStrings(String fileName, Collection<String> values) throws Exception {
+		List<byte[]> list = new ArrayList<byte[]>(values.size());
+		for (String s : values)
+			list.add(s.getBytes(StandardCharsets.UTF_8));
+		list.sort(Arrays::compareUnsigned);
+
+		List<byte[]> unique = new ArrayList<byte[]>(list.size());
+		byte[] last = null;
+		for (byte[] b : list) {
+			if (last == null || !Arrays.equals(last, b))
+				unique.add(b);
+			last = b;
+		}
+
+		long data = 0;
+		for (byte[] b : unique)
+			data += b.length;
+		long length = 4L * (unique.size() + 1) + data;
+		if (length > Integer.MAX_VALUE)
+			throw new Exception("String table too large: " + length);
+
+		ByteBuffer bb = ByteBuffer.allocate((int) length);
+		int offset = 0;
+		for (byte[] b : unique) {
+			bb.putInt(offset);
+			offset += b.length;
+		}
+		bb.putInt(offset);
+		for (byte[] b : unique)
+			bb.put(b);
+
+		write(fileName, STRINGS, unique.size(), bb.array());
+	}
+
+	/**
+	 * Write a packed range table. Ranges are sorted and overlapping or adjacent ranges are merged.
+	 * @param fileName String. The file to create.
+	 * @param ranges List. Each entry is a long[2] of low and high address, inclusive.
+	 * @throws Exception on I/O errors.
+	 */
+	public static void writeRanges(String fileName, List<long[]> ranges) throws Exception {
+		List<long[]> sorted = new ArrayList<long[]>(ranges);
+		sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+
+		List<long[]> merged = new ArrayList<long[]>();
+		long[] current = null;
+		for (long[] r : sorted) {
+			if (current != null && r[0] <= current[1] + 1) {
+				current[1] = Math.max(current[1], r[1]);
+			} else {
+				current = new long[] { r[0], r[1] };
+				merged.add(current);
+			}
+		}
+
+		ByteBuffer bb = ByteBuffer.allocate(merged.size() * 16);
+		for (long[] r : merged) {
+			bb.putLong(r[0]);
+			bb.putLong(r[1]);
+		}
+		write(fileName, RANGES, merged.size(), bb.array());
+	}
+
+	/**
+	 * Write a bloom filter sized for the number of values and the false positive probability.
+	 * @param fileName String. The file to create.
+	 * @param values Collection. The members of the filter.
+	 * @param fpp double. The desired false positive probability.
+	 * @throws Exception on I/O errors.
+	 */
+	public static void writeBloom(String fileName, Collection<String> values, double fpp) throws Exception {
+		long n = Math.max(1, values.size());
+		long bits = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		bits = Math.max(64, bits);
+		int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+		long[] words = new long[(int) ((bits + 63) >>> 6)];
+		for (String s : values)
+			MappedBloom.put(words, bits, hashes, s);
+
+		ByteBuffer bb = ByteBuffer.allocate(12 + words.length * 8);
+		bb.putInt(hashes);
+		bb.putLong(bits);
+		for (long w : words)
+			bb.putLong(w);
+		write(fileName, BLOOM, values.size(), bb.array());
+	}
+
+	/**
+	 * Write the header and payload. The file is written to a temporary file of its own and renamed, so a
+	 * bidder mapping the old file never sees a partial one, and two writers on the host never share one.
+	 * @param fileName String. The file to create.
+	 * @param kind short. The kind of payload.
+	 * @param count long. The number of entries.
+	 * @param payload byte[]. The payload.
+	 * @throws Exception on I/O errors.
+	 */
+	static void write(String fileName, short kind, long count, byte[] payload) throws Exception {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+
+		File target = new File(fileName).getAbsoluteFile();
+		File tmp = Files.createTempFile(target.getParentFile().toPath(), target.getName(), ".tmp").toFile();
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeShort(VERSION);
+				out.writeShort(kind);
+				out.writeLong(count);
+				out.writeLong(payload.length);
+				out.writeLong(crc.getValue());
+				out.write(payload);
+			}
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+}
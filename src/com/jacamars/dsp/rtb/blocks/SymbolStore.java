@@ -0,0 +1,363 @@
+package com.jacamars.dsp.rtb.blocks;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads new versions of the LookingGlass symbols off the bid path. Loads run side by side on a pool of
+ * low priority background threads, deltas one at a time on a thread of their own. While a load runs, the
+ * constructors of the symbol classes stage their objects here instead of writing LookingGlass.symbols, so
+ * a half built list is never visible. After the load completes the staged objects are validated and
+ * swapped in with one put each. The replaced objects are kept for drainMillis, so requests that already
+ * fetched them finish, and then retired.
+ * @author Ben M. Faul
+ *
+ */
+public class SymbolStore {
+
+	static final Logger logger = LoggerFactory.getLogger(SymbolStore.class);
+
+	/** How long a replaced symbol is kept before retire() is called, must exceed the longest request */
+	public static volatile long drainMillis = 5000;
+
+	// Objects staged by the current loader thread, null when not loading
+	static final ThreadLocal<Map<String, Object>> staging = new ThreadLocal<Map<String, Object>>();
+
+	// Load statistics by symbol name
+	static final Map<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	// Replaced objects waiting for in-flight requests to drain
+	static final ConcurrentLinkedQueue<Retired> retired = new ConcurrentLinkedQueue<Retired>();
+
+	/** Number of loader threads */
+	public static final int LOADERS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+	// The loaders, low priority daemon threads
+	static final ExecutorService loader = Executors.newFixedThreadPool(LOADERS, daemon("symbol-loader"));
+
+	// Deltas change a live symbol in place, they run one at a time
+	static final ExecutorService updater = Executors.newSingleThreadExecutor(daemon("symbol-delta"));
+
+	// Retires the replaced symbols, so a long load does not hold them up
+	static final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(daemon("symbol-drain"));
+
+	static {
+		drainer.scheduleWithFixedDelay(() -> drain(), 1, 1, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Make the low priority daemon threads of the store.
+	 * @param name String. The thread name.
+	 * @return ThreadFactory. The factory.
+	 */
+	static ThreadFactory daemon(String name) {
+		return r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		};
+	}
+
+	/**
+	 * Load statistics for one symbol. Written by the loader threads under the object's lock, read by the
+	 * api commands.
+	 */
+	public static class Stats {
+		/** The class of the loaded object */
+		public volatile String type;
+		/** Number of full loads */
+		public volatile long version;
+		/** Number of deltas applied since the last full load */
+		public volatile long deltas;
+		/** Time the last full load took */
+		public volatile long loadMillis;
+		/** Time the last delta took */
+		public volatile long deltaMillis;
+		/** Members after the last load or delta */
+		public volatile long members;
+		/** Estimated bytes used */
+		public volatile long bytes;
+		/** Checksum of the source, if known */
+		public volatile String crc;
+		/** When the current version was swapped in */
+		public volatile long loaded;
+
+		/**
+		 * Return the stats as a map, for the api commands.
+		 * @return Map. The fields by name.
+		 */
+		public Map<String, Object> toMap() {
+			Map<String, Object> m = new LinkedHashMap<String, Object>();
+			m.put("type", type);
+			m.put("version", version);
+			m.put("deltas", deltas);
+			m.put("loadms", loadMillis);
+			m.put("deltams", deltaMillis);
+			m.put("members", members);
+			m.put("bytes", bytes);
+			m.put("crc", crc);
+			m.put("loaded", loaded);
+			return m;
+		}
+	}
+
+	/**
+	 * An object that was replaced and is waiting for its readers to finish.
+	 */
+	static class Retired {
+		final String name;
+		final Object value;
+		final long time;
+
+		Retired(String name, Object value) {
+			this.name = name;
+			this.value = value;
+			this.time = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Called by LookingGlass.register(). Stages the object if the calling thread is loading.
+	 * @param name String. The symbol name.
+	 * @param value Object. The object to stage.
+	 * @return boolean. True if staged, false if the caller should put it in the symbol table.
+	 */
+	static boolean stage(String name, Object value) {
+		Map<String, Object> m = staging.get();
+		if (m == null)
+			return false;
+		m.put(name, value);
+		return true;
+	}
+
+	/**
+	 * Load on a loader thread. The builder constructs the symbol objects in the usual way, or returns the
+	 * object to swap in under name. Submit all the lists before waiting on any, so they load side by side.
+	 * @param name String. The symbol name, used for the statistics.
+	 * @param crc String. Checksum of the source, or null.
+	 * @param builder Callable. Creates the objects.
+	 * @return Future. Completes when the new objects are visible, or with the load error.
+	 */
+	public static Future<Map<String, Object>> submit(String name, String crc, Callable<?> builder) {
+		return loader.submit(() -> load(name, crc, builder));
+	}
+
+	/**
+	 * Wait for a submitted load or delta.
+	 * @param future Future. The value returned by submit() or delta().
+	 * @return T. The result of the load.
+	 * @throws Exception the load error, unwrapped.
+	 */
+	public static <T> T await(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException error) {
+			if (error.getCause() instanceof Exception)
+				throw (Exception) error.getCause();
+			throw error;
+		}
+	}
+
+	/**
+	 * Load on the calling thread, with the same staging, validation and swap as submit().
+	 * @param name String. The symbol name, used for the statistics.
+	 * @param crc String. Checksum of the source, or null.
+	 * @param builder Callable. Creates the objects.
+	 * @return Map. The objects that were swapped in.
+	 * @throws Exception if the build or the validation fails. The old symbols stay in place.
+	 */
+	public static Map<String, Object> load(String name, String crc, Callable<?> builder) throws Exception {
+		Map<String, Object> staged = new HashMap<String, Object>();
+		Map<String, Object> previous = staging.get();
+		staging.set(staged);
+		long time = System.currentTimeMillis();
+		try {
+			Object x = builder.call();
+			if (staged.isEmpty() && x != null)
+				staged.put(name, x);
+		} finally {
+			staging.set(previous);
+		}
+		time = System.currentTimeMillis() - time;
+
+		for (Map.Entry<String, Object> e : staged.entrySet())
+			validate(e.getKey(), e.getValue());
+
+		for (Map.Entry<String, Object> e : staged.entrySet()) {
+			Object old = LookingGlass.symbols.put(e.getKey(), e.getValue());
+			if (old != null && old != e.getValue())
+				retired.add(new Retired(e.getKey(), old));
+
+			Stats s = stats.computeIfAbsent(e.getKey(), k -> new Stats());
+			synchronized (s) {
+				s.type = e.getValue().getClass().getSimpleName();
+				s.version++;
+				s.deltas = 0;
+				s.loadMillis = time;
+				s.crc = crc;
+				s.loaded = System.currentTimeMillis();
+				measure(s, e.getValue());
+			}
+			logger.info("Swapped in symbol {}, version {}, members {}, {} bytes, loaded in {} ms", e.getKey(),
+					s.version, s.members, s.bytes, time);
+		}
+		return staged;
+	}
+
+	/**
+	 * Apply a delta file to a loaded symbol on the delta thread. Lines starting with '-' remove
+	 * the key, lines starting with '+' or anything else add it.
+	 * @param name String. The symbol name.
+	 * @param br BufferedReader. The delta, it is closed when done.
+	 * @return Future. Completes when the delta is applied.
+	 */
+	public static Future<?> delta(String name, BufferedReader br) {
+		return updater.submit(() -> {
+			List<String> adds = new ArrayList<String>();
+			List<String> removes = new ArrayList<String>();
+			try (BufferedReader r = br) {
+				for (String line; (line = r.readLine()) != null;) {
+					line = line.trim();
+					if (line.length() == 0 || line.startsWith("#"))
+						continue;
+					if (line.charAt(0) == '-')
+						removes.add(line.substring(1).trim());
+					else if (line.charAt(0) == '+')
+						adds.add(line.substring(1).trim());
+					else
+						adds.add(line);
+				}
+			}
+			delta(name, adds, removes);
+			return null;
+		});
+	}
+
+	/**
+	 * Apply a delta to a loaded symbol on the calling thread.
+	 * @param name String. The symbol name.
+	 * @param adds List. Keys to add.
+	 * @param removes List. Keys to remove.
+	 * @throws Exception if there is no such symbol or it does not support deltas.
+	 */
+	public static void delta(String name, List<String> adds, List<String> removes) throws Exception {
+		Object x = LookingGlass.symbols.get(name);
+		if (!(x instanceof LookingGlass))
+			throw new Exception("No symbol for delta: " + name);
+		long time = System.currentTimeMillis();
+		((LookingGlass) x).applyDelta(adds, removes);
+		time = System.currentTimeMillis() - time;
+
+		Stats s = stats.computeIfAbsent(name, k -> new Stats());
+		synchronized (s) {
+			s.deltas++;
+			s.deltaMillis = time;
+			measure(s, x);
+		}
+		logger.info("Applied delta to {}, +{} -{}, members {}, in {} ms", name, adds.size(), removes.size(),
+				s.members, time);
+	}
+
+	/**
+	 * Reject objects that are obviously broken, an empty list replacing a populated one is almost
+	 * always a truncated download.
+	 * @param name String. The symbol name.
+	 * @param value Object. The new object.
+	 * @throws Exception if the object should not be swapped in.
+	 */
+	static void validate(String name, Object value) throws Exception {
+		if (!(value instanceof LookingGlass))
+			return;
+		Object old = LookingGlass.symbols.get(name);
+		if (((LookingGlass) value).getMembers() == 0 && old instanceof LookingGlass
+				&& ((LookingGlass) old).getMembers() > 0)
+			throw new Exception("Refusing to replace " + name + " with an empty list");
+	}
+
+	/**
+	 * Update the member and memory figures.
+	 * @param s Stats. The stats to update.
+	 * @param value Object. The symbol.
+	 */
+	static void measure(Stats s, Object value) {
+		if (value instanceof LookingGlass) {
+			LookingGlass lg = (LookingGlass) value;
+			s.members = lg.getMembers();
+			s.bytes = lg.getMemoryEstimate();
+		}
+	}
+
+	/**
+	 * Retire the replaced objects whose drain period is over.
+	 */
+	static void drain() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Retired> it = retired.iterator(); it.hasNext();) {
+			Retired r = it.next();
+			if (now - r.time < drainMillis)
+				continue;
+			it.remove();
+			try {
+				if (r.value instanceof LookingGlass)
+					((LookingGlass) r.value).retire();
+			} catch (Exception error) {
+				logger.warn("Error retiring {}: {}", r.name, error.toString());
+			}
+		}
+	}
+
+	/**
+	 * Compute the CRC32 of a file, in hex.
+	 * @param fileName String. The file.
+	 * @return String. The checksum.
+	 * @throws Exception on I/O errors.
+	 */
+	public static String checksum(String fileName) throws Exception {
+		CRC32 crc = new CRC32();
+		byte[] buf = new byte[65536];
+		try (InputStream is = new FileInputStream(fileName)) {
+			for (int n; (n = is.read(buf)) > 0;)
+				crc.update(buf, 0, n);
+		}
+		return Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * Return the statistics for one symbol.
+	 * @param name String. The symbol name.
+	 * @return Stats. The stats or null if never loaded through the store.
+	 */
+	public static Stats getStats(String name) {
+		return stats.get(name);
+	}
+
+	/**
+	 * Return all statistics.
+	 * @return Map. Stats by symbol name.
+	 */
+	public static Map<String, Stats> getStats() {
+		return stats;
+	}
+}
@@ -8,6 +8,7 @@ import com.jacamars.dsp.rtb.common.Creative;
 import com.jacamars.dsp.rtb.common.Weighted;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.tools.AmalgamatedKey;
+import com.jacamars.dsp.rtb.tools.RandomSource;
 
 import org.slf4j.LoggerFactory;
 
@@ -56,7 +57,9 @@ public class WeightedSelector extends LookingGlass {
     }
 
     /**
-     * Select a rotating creative, based on the algorithm found in the first creative in the list.
+     * Select a rotating creative, based on the weights of the campaign of the first creative in the list.
+     * The weights pick a creative by its ordinal, and the campaign maps that to the creative; if the pick
+     * didn't bid on this request, one of those that did is chosen by weight.
      * @param br BidRequest. This is the bid request being considered.
      * @param list List. A list of selected creatives. If its a proportional, then the list is only 1 deep and
      *             contains the proxy and all its consituents.
@@ -66,17 +69,41 @@ public class WeightedSelector extends LookingGlass {
     public static SelectedCreative applyAlgorithm(BidRequest br, List<SelectedCreative> list) throws Exception {
 
         Campaign c = list.get(0).getCampaign();
-        if (c.weights == null)
+        ProportionalEntry weights = c.weights;
+        if (weights == null || weights.size() == 0)
             return list.get(0);
 
-        String crid = c.weights.next();
+        // Usually the pick bid, draw a few times and match by identity
+        int tries = Math.max(4, weights.size());
+        for (int t = 0; t < tries; t++) {
+            Creative want = c.rotation(weights.nextOrdinal());
+            if (want == null)
+                continue;
+            for (int i=0;i<list.size();i++) {
+                SelectedCreative cr = list.get(i);
+                if (cr.getCreative() == want && cr.getCampaign() == c)
+                    return cr;
+            }
+        }
+
+        // None of the picks bid, choose among those that did, by their weights
+        int total = 0;
+        int [] w = new int[list.size()];
         for (int i=0;i<list.size();i++) {
             SelectedCreative cr = list.get(i);
-            if (cr.impid.equals(crid))
-                return cr;
+            int ordinal = cr.getCampaign() == c ? c.rotationOrdinal(cr.getCreative()) : -1;
+            w[i] = ordinal < 0 ? 0 : weights.weight(ordinal);
+            total += w[i];
         }
-        return null;
-
+        if (total == 0)
+            return list.get(0);
+        int random = RandomSource.nextInt(total);
+        for (int i=0;i<w.length;i++) {
+            random -= w[i];
+            if (random < 0)
+                return list.get(i);
+        }
+        return list.get(0);
     }
 
     public static SelectedCreative applyAlgorithmTBD(BidRequest br, List<SelectedCreative> list) throws Exception {
@@ -159,8 +186,7 @@ public class WeightedSelector extends LookingGlass {
         do {
             // Pick a random point.
             //int random = (int) (Math.random() * total);
-            Random rr = new Random();
-            int random = rr.nextInt(total -  1) + 1;
+            int random = RandomSource.nextInt(total -  1) + 1;
             // Pick one from the list.
             Weighted picked = null;
             int pos = 0;
@@ -195,7 +221,7 @@ public class WeightedSelector extends LookingGlass {
         // Take each at random - weighted by it's weight.
         int which = 0;
         // Pick a random point.
-        int random = (int) (Math.random() * total);
+        int random = RandomSource.nextInt(total);
         // Pick one from the list.
         SelectedCreative picked = null;
         int pos = 0;
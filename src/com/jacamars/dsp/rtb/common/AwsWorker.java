@@ -32,32 +32,10 @@ public class AwsWorker implements Runnable {
     @Override
     public void run() {
         try {
-            switch (type) {
-                case "range":
-                case "cidr":
-                    NavMap map = new NavMap(name, object, type);
-                    message = "Added NavMap " + name + ": has " + map.size() + " members";
-                    break;
-                case "set":
-                    SimpleSet set = new SimpleSet(name, object);
-                    message = "Initialize Set: " + name + " from S3, entries = " + set.size();
-                    break;
-                case "bloom":
-                    Bloom b = new Bloom(name, object, size);
-                    message = "Initialize Bloom Filter: " + name + " from S3, members = " + b.getMembers();
-                    break;
-                case "multiset":
-                    SimpleMultiset ms = new SimpleMultiset(name, object);
-                    message = "Initialize Multiset " + name + " from S3, entries = " + ms.getMembers();
-                    break;
-                case "algoirthm:proportional":
-                    ProportionalRandomCollection prc = new ProportionalRandomCollection(name,object);
-                    message = "Initialize ProportionalRandomCollection " + name + " from S3, entries = " + prc.getMembers();
-                    break;
-
-                default:
-                    message = "Unknown type: " + type;
-            }
+            SymbolStore.load(name, object.getObjectMetadata().getETag(), () -> {
+                build();
+                return null;
+            });
         } catch (Exception error) {
             logger.error("Error reading {}, problem: {}", name, error.toString());
         } finally {
@@ -72,6 +50,43 @@ public class AwsWorker implements Runnable {
 
     }
 
+    /**
+     * Construct the symbol object. Runs staged, the SymbolStore swaps it in when complete.
+     * @throws Exception on S3 or I/O errors.
+     */
+    void build() throws Exception {
+        switch (type) {
+            case "range":
+            case "cidr":
+                NavMap map = new NavMap(name, object, type);
+                message = "Added NavMap " + name + ": has " + map.size() + " members";
+                break;
+            case "set":
+                SimpleSet set = new SimpleSet(name, object);
+                message = "Initialize Set: " + name + " from S3, entries = " + set.size();
+                break;
+            case "bloom":
+                Bloom b = new Bloom(name, object, size);
+                message = "Initialize Bloom Filter: " + name + " from S3, members = " + b.getMembers();
+                break;
+            case "compiled":
+                MappedSymbols ms0 = MappedSymbols.load(name, object, System.getProperty("java.io.tmpdir"));
+                message = "Initialize compiled symbols " + name + " from S3, entries = " + ms0.getMembers();
+                break;
+            case "multiset":
+                SimpleMultiset ms = new SimpleMultiset(name, object);
+                message = "Initialize Multiset " + name + " from S3, entries = " + ms.getMembers();
+                break;
+            case "algoirthm:proportional":
+                ProportionalRandomCollection prc = new ProportionalRandomCollection(name,object);
+                message = "Initialize ProportionalRandomCollection " + name + " from S3, entries = " + prc.getMembers();
+                break;
+
+            default:
+                message = "Unknown type: " + type;
+        }
+    }
+
     @Override
     public String toString(){
         return message;
@@ -8,6 +8,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -42,6 +43,7 @@ import com.jacamars.dsp.crosstalk.budget.CampaignBuilderWorker;
 import com.jacamars.dsp.crosstalk.budget.Crosstalk;
 import com.jacamars.dsp.crosstalk.budget.CrosstalkConfig;
 import com.jacamars.dsp.crosstalk.budget.DayPart;
+import com.jacamars.dsp.crosstalk.budget.Pacer;
 
 import com.jacamars.dsp.crosstalk.budget.Targeting;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
@@ -51,6 +53,7 @@ import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.shared.AccountingCache;
 import com.jacamars.dsp.rtb.shared.CampaignCache;
 import com.jacamars.dsp.rtb.shared.FrequencyGoverner;
+import com.jacamars.dsp.rtb.shared.PacingCache;
 import com.jacamars.dsp.rtb.shared.PortableJsonFactory;
 import com.jacamars.dsp.rtb.shared.TokenData;
 import com.jacamars.dsp.rtb.tools.ChattyErrors;
@@ -115,7 +118,13 @@ public class Campaign implements Comparable, Portable {
 	/** Set to runnable to make it actually loadable in the bidder. */
 	public String status = "offline";
 
+	/** The weights of the creatives, change them with setWeights(), it rebuilds the rotation */
 	public ProportionalEntry weights;
+	/** The creatives by their ordinal in the weights, null where no creative has the name */
+	transient Creative[] rotation;
+
+	/** Spend pacing, run where the budgets are accounted */
+	transient Pacer pacer;
 
 	public Long activate_time;
 	public Long expire_time;
@@ -606,10 +615,50 @@ public class Campaign implements Comparable, Portable {
 		if (weight == null || weight.length() == 0) {
 			weightAssignment = null;
 			weights = null;
+			rotation = null;
 			return;
 		}
 		weightAssignment = weight;
-		weights = new ProportionalEntry(weightAssignment);
+		ProportionalEntry entry = new ProportionalEntry(weightAssignment);
+		Creative[] list = new Creative[entry.size()];
+		for (int i = 0; i < list.length && creatives != null; i++) {
+			for (Creative c : creatives) {
+				if (entry.name(i).equals(c.impid))
+					list[i] = c;
+			}
+		}
+		rotation = list;
+		weights = entry;
+	}
+
+	/**
+	 * Return the creative of a weight.
+	 * 
+	 * @param ordinal int. The ordinal from the weights.
+	 * @return Creative. The creative, or null if there is none by that name.
+	 */
+	public Creative rotation(int ordinal) {
+		Creative[] list = rotation;
+		if (list == null || ordinal < 0 || ordinal >= list.length)
+			return null;
+		return list[ordinal];
+	}
+
+	/**
+	 * Return the ordinal of a creative in the weights.
+	 * 
+	 * @param creative Creative. The creative.
+	 * @return int. Its ordinal, -1 if it has no weight.
+	 */
+	public int rotationOrdinal(Creative creative) {
+		Creative[] list = rotation;
+		if (list == null)
+			return -1;
+		for (int i = 0; i < list.length; i++) {
+			if (list[i] == creative)
+				return i;
+		}
+		return -1;
 	}
 
 	/**
@@ -776,14 +825,35 @@ public class Campaign implements Comparable, Portable {
 
 				currentHour = Crosstalk.getInstance().getHour();
 				currentDay = Crosstalk.getInstance().getDay();
+
+				// Spend moved, or the hour rolled over
+				Eligibility.getInstance().update(this);
 			}
 
+			pace(System.currentTimeMillis());
+
 		} catch (Exception error) {
 			var msg = "BUDGETING is not accessible, no accounting data is possible for: " + name;
 			ChattyErrors.printErrorEveryHour(logger, msg);
 		}
 	}
 
+	/**
+	 * Run the pacing controller on the spend just accounted, and publish the campaign's participation to the
+	 * bidders. A campaign without a budget is not paced.
+	 * 
+	 * @param now long. The time, in milliseconds since the epoch.
+	 */
+	void pace(long now) {
+		if (budget == null)
+			return;
+		if (pacer == null)
+			pacer = new Pacer();
+		double participation = pacer.update(now, budget.totalCost.doubleValue(),
+				Pacer.targetRate(budget, now, ZoneId.systemDefault()));
+		PacingCache.getInstance().publish(this, participation);
+	}
+
 	public double costAsDouble() {
 		return budget.totalCost.doubleValue();
 	}
@@ -822,8 +892,6 @@ public class Campaign implements Comparable, Portable {
 	}
 
 	public boolean isActive() throws Exception {
-		Date date = new Date();
-
 		if (creatives.size() == 0) {
 			return false;
 		}
@@ -834,29 +902,30 @@ public class Campaign implements Comparable, Portable {
 			}
 		}
 
-		if (budgetExceeded()) {
-			logger.debug("BUDGET EXCEEDED: {}", name);
+		boolean active = isEligible(System.currentTimeMillis());
+		logger.debug("{}: {}", active ? "IS ACTIVE" : "NOT ACTIVE", name);
+		return active;
+	}
+
+	/**
+	 * Can the campaign bid at a given time, as far as its budget, bid window and daypart go? This is the part of
+	 * isActive() that changes over time, the eligibility bitmap keeps the answer.
+	 * 
+	 * @param time long. The time, in milliseconds since the epoch.
+	 * @return boolean. Returns true if the budget isn't spent, the time is in the bid window and the daypart.
+	 * @throws Exception on budget errors.
+	 */
+	public boolean isEligible(long time) throws Exception {
+		if (budgetExceeded())
 			return false;
-		}
 
 		if (budget == null)
 			return true;
 
-		if ((date.getTime() >= budget.activate_time) && (date.getTime() <= budget.expire_time)) {
-
-			if (budget.daypart != null) {
-				if (budget.daypart.isActive() != true) {
-					logger.debug("Daypart is not active: {}", name);
-					return false;
-				}
-			}
-
-			logger.debug("IS ACTIVE: {}", name);
-			return true;
-		} else {
-			logger.debug("ACTIVATION TIME NOT IN RANGE: {}", name);
+		if (time < budget.activate_time || time > budget.expire_time)
 			return false;
-		}
+
+		return budget.daypart == null || budget.daypart.isActive(time);
 	}
 
 	public boolean budgetExceeded() throws Exception {
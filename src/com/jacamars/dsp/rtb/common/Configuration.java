@@ -7,6 +7,7 @@ import java.io.BufferedReader;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
@@ -17,8 +18,10 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
@@ -47,24 +50,31 @@ import com.jacamars.dsp.crosstalk.budget.CommandController;
 import com.jacamars.dsp.crosstalk.budget.Crosstalk;
 import com.jacamars.dsp.crosstalk.budget.CrosstalkConfig;
 import com.jacamars.dsp.crosstalk.budget.Shadow;
+import com.jacamars.dsp.rtb.bidder.Bulkhead;
 import com.jacamars.dsp.rtb.bidder.DeadmanSwitch;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
+import com.jacamars.dsp.rtb.bidder.Router;
 
 import com.jacamars.dsp.rtb.blocks.Bloom;
 import com.jacamars.dsp.rtb.blocks.LookingGlass;
+import com.jacamars.dsp.rtb.blocks.MappedSymbols;
 import com.jacamars.dsp.rtb.blocks.Membership;
 import com.jacamars.dsp.rtb.blocks.NavMap;
 import com.jacamars.dsp.rtb.blocks.ProportionalEntry;
 import com.jacamars.dsp.rtb.blocks.SimpleMultiset;
 import com.jacamars.dsp.rtb.blocks.SimpleSet;
+import com.jacamars.dsp.rtb.blocks.SymbolStore;
 
 import com.jacamars.dsp.rtb.exchanges.adx.AdxGeoCodes;
 import com.jacamars.dsp.rtb.exchanges.appnexus.Appnexus;
 import com.jacamars.dsp.rtb.fraud.AnuraClient;
 import com.jacamars.dsp.rtb.fraud.ForensiqClient;
+import com.jacamars.dsp.rtb.fraud.FraudCheck;
 import com.jacamars.dsp.rtb.fraud.FraudIF;
 import com.jacamars.dsp.rtb.fraud.MMDBClient;
 import com.jacamars.dsp.rtb.geo.GeoTag;
+import com.jacamars.dsp.rtb.geo.IpIntelligence;
+import com.jacamars.dsp.rtb.jmq.KafkaConfig;
 import com.jacamars.dsp.rtb.jmq.Subscriber;
 import com.jacamars.dsp.rtb.jmq.ZPublisher;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
@@ -236,6 +246,8 @@ public class Configuration {
 	public volatile String PERF_CHANNEL = null;
 	/** The channel trasnmitting pixels */
 	public volatile String PIXELS_CHANNEL = null;
+	/** The channel the raw bid requests are captured on, for replay */
+	public volatile String CAPTURE_CHANNEL = null;
 	/** The channel the bidder receives responses for commands on */
 	public volatile static String RESPONSES_RECEIVE = null;
 
@@ -400,11 +412,19 @@ public class Configuration {
 		//////////////////////////////////////////////////////////////
 
 		seats = new HashMap<String, String>();
+
+		/**
+		 * Read the startup snapshot before the lists, the compiled lists in it are used in their place
+		 */
+		if (m.get("snapshot") != null)
+			StartupSnapshot.getInstance().configure((Map) m.get("snapshot"));
+		StartupReport.getInstance().mark("configuration");
 		
 		if (m.get("lists") != null) {
 			filesList = (List) m.get("lists");
 			initializeLookingGlass(filesList);
 		}
+		StartupReport.getInstance().mark("symbols");
 		
 		/**
 		 * Check for @MASTERCIDR after the files are loaded, or, duh, it's not there
@@ -469,6 +489,11 @@ public class Configuration {
 				hzConfig = (Map) hazel.get("hzConfig");
 			}
 		}	
+
+		//////////////////// KAFKA PRODUCER AND CONSUMER DEFAULTS ////////////////////////////////////
+		if (m.get("kafka") != null) {
+			KafkaConfig.setDefaults((Map) m.get("kafka"));
+		}
 		
         //////////////////////////////////////////////////////////////////////////////////////////////
 		/**
@@ -524,6 +549,21 @@ public class Configuration {
 				}
 				forensiq = fy;
 			}
+			
+			/**
+			 * Deadline for the fraud verdict, overall and by exchange, in ms, and how long verdicts are
+			 * reused, in seconds.
+			 */
+			Map fraudx = fraud;
+			if (fraudx.get("deadline") != null)
+				FraudCheck.deadline = Long.parseLong(fraudx.get("deadline").toString());
+			if (fraudx.get("ttl") != null)
+				FraudCheck.ttl = Long.parseLong(fraudx.get("ttl").toString()) * 1000;
+			if (fraudx.get("deadlines") != null) {
+				Map<String, Object> dx = (Map) fraudx.get("deadlines");
+				for (Map.Entry<String, Object> e : dx.entrySet())
+					FraudCheck.deadlines.put(e.getKey(), Long.parseLong(e.getValue().toString()));
+			}
 		} else {
 			logger.info("*** NO Fraud detection");
 		}
@@ -534,6 +574,11 @@ public class Configuration {
 		var crosstalk = (Map)m.get("crosstalk");
 		m = (Map) m.get("app");
 		
+		if (m.get("ipcache") != null) {
+			IpIntelligence.setCapacity((Integer) m.get("ipcache"));
+			logger.info("*** IP CACHE holds {} /24 blocks", m.get("ipcache"));
+		}
+
 		if (m.get("geopatch") != null) {
 			String fileName = (String)m.get("geopatch");
 			if (!fileName.equals("")) {
@@ -689,6 +734,9 @@ public class Configuration {
 		if ((value = pubsub.get("reasons")) != null)
 			REASONS_CHANNEL = value;
 
+		if ((value = pubsub.get("capture")) != null)
+			CAPTURE_CHANNEL = value;
+
 		/////////////////////////////////////////////////////////////////////
 
 		if (pubsub.get("requeststrategy") != null) {
@@ -748,7 +796,9 @@ public class Configuration {
 		}
 		
 		
+        StartupReport.getInstance().mark("settings");
         RTBServer.getSharedInstance();
+        StartupReport.getInstance().mark("hazelcast");
         
 		// Check deadman switch before crosstalk, otherwise crosstalk might fail
 	//	Map app = (Map)m.get("app");
@@ -767,6 +817,7 @@ public class Configuration {
 		CrosstalkConfig.getInstance(crosstalk);
 		
 		shadow = Crosstalk.getInstance().shadow;
+		StartupReport.getInstance().mark("campaigns");
         
         ////////////////////// START HAZELCAST, DON'T CONTINUE UNTIL THEY ARE INITIALIZED ////////////
         for (int i=0;i<10;i++) {
@@ -779,6 +830,7 @@ public class Configuration {
         	logger.error("Hazelcast structures in the BidCachePool are not ready");
         	System.exit(1);
         }
+        StartupReport.getInstance().mark("cluster");
         /////////////////////////////////////////////////////////////////////////////////////////////
         
 		if (deadmanKey != null) {
@@ -1228,6 +1280,10 @@ public class Configuration {
 
 			RTBServer.exchanges.put(uri, br);
 
+			Map bulkhead = (Map) x.get("bulkhead");
+			if (bulkhead != null)
+				br.bulkhead = Bulkhead.configure(name, bulkhead);
+
 			if (parts[0] != null) {
 				for (int ind = 1; ind < parts.length; ind++) {
 					String option = parts[ind];
@@ -1276,6 +1332,7 @@ public class Configuration {
 				RTBServer.exchanges.put(uri + "/delivered", new Appnexus(Appnexus.DELIVERED));
 				Appnexus.seatId = seatId;
 			}
+			Router.getInstance().compile(RTBServer.exchanges);
 
 		} catch (Exception error) {
 			System.err.println("Error configuring exchange: " + name + ", error = ");
@@ -1296,11 +1353,17 @@ public class Configuration {
 	}
 
 	public void initializeLookingGlass(List<Map> list)  {
+		// The lists load side by side on the SymbolStore loaders, deltas go on top of them, in order, after
+		Map<Map, List<Future<?>>> loads = new LinkedHashMap<Map, List<Future<?>>>();
+		List<Map> deltas = new ArrayList<Map>();
 		for (Map m : list) {
 			Boolean lazyload = (Boolean)m.get("lazyload");
-			if (lazyload == null || !lazyload)
-				configureObject(m);
-			else {
+			if (lazyload == null || !lazyload) {
+				if (Boolean.TRUE.equals(m.get("delta")))
+					deltas.add(m);
+				else
+					loads.put(m, submitObject(m));
+			} else {
 				Runnable lazy = () -> {
 					logger.info("Lazyloading start; {}",m);
 					configureObject(m);
@@ -1309,40 +1372,54 @@ public class Configuration {
 				new Thread(lazy).start();
 			}
 		}
+		for (Map.Entry<Map, List<Future<?>>> e : loads.entrySet())
+			awaitObject(e.getKey(), e.getValue());
+		for (Map m : deltas)
+			configureObject(m);
 	}
 		
 	public static String configureObject(Map m) {
-		String fileName = null;
-		String bucket = null;
-			try {
-			fileName = (String) m.get("filename");
+		return awaitObject(m, submitObject(m));
+	}
+
+	/**
+	 * Start loading a list on the SymbolStore, or applying its delta.
+	 * @param m Map. The list's configuration.
+	 * @return List. The loads, one for the file and one for the s3 object, as configured. A failed one
+	 *         completes with its error.
+	 */
+	static List<Future<?>> submitObject(Map m) {
+		List<Future<?>> loads = new ArrayList<Future<?>>();
+		try {
+			String fileName = (String) m.get("filename");
+			Boolean delta = (Boolean) m.get("delta");
 			if (fileName != null && !fileName.equals("")) {
 				String name = (String) m.get("name");
 				String type = (String) m.get("type");
 				if (name.startsWith("@") == false)
 					name = "@" + name;
 				
-				if (type.toLowerCase().contains("cidr") || type.contains("range")) {
-					new NavMap(name, fileName, type); // file uses ranges	
-				} else if (type.toLowerCase().contains("adxgeocodes")) {
-					new AdxGeoCodes(name, fileName);
-				} else if (type.toLowerCase().contains("iso2")) {
-					new IsoTwo2Iso3(name,fileName);
-				} else if (type.toLowerCase().contains("lookingglass")) {
-					new LookingGlass(name, fileName);
-				} else if (type.toLowerCase().contains("bloom")) {
-					Number records = (Number)m.get("size");
-					new Bloom(name, fileName, records.longValue());
-				} else if (type.toLowerCase().contains("membershp")) {
-					new Membership(name, fileName);
+				String crc = SymbolStore.checksum(fileName);
+				String expected = (String) m.get("crc");
+				if (expected != null && !expected.equalsIgnoreCase(crc))
+					throw new Exception("Checksum mismatch, expected " + expected + " but got " + crc);
+
+				final String sname = name;
+				final String sfile = fileName;
+				final String compiled = StartupSnapshot.getInstance().compiled(name, crc);
+				if (delta != null && delta) {
+					loads.add(SymbolStore.delta(name, new BufferedReader(new FileReader(fileName))));
+				} else if (compiled != null) {
+					loads.add(SymbolStore.submit(name, crc, () -> {
+						MappedSymbols.load(sname, compiled); // compiled by the startup snapshot
+						return null;
+					}));
 				} else {
-					// Ok, load it by class name
-					Class cl = Class.forName(type);
-					Constructor<?> cons = cl.getConstructor(String.class, String.class);
-					cons.newInstance(name, fileName);
+					loads.add(SymbolStore.submit(name, crc, () -> {
+						loadObject(sname, type, sfile, m);
+						return null;
+					}));
 				}
-				logger.info("*** Configuration Initialized {} with {}", name, fileName);
-				
 			}
 			var is3 = (String)m.get("s3");
 			if (is3 != null) {
@@ -1351,45 +1428,116 @@ public class Configuration {
 				String name = (String) m.get("name");
 				String type = (String) m.get("type");
 				
-				fileName = map.get("key");
 				GetObjectRequest rangeObjectRequest = new GetObjectRequest(map.get("bucket"), map.get("key"));
 	            S3Object s3o = s3.getObject(rangeObjectRequest);
 				
-				if (type.toLowerCase().contains("cidr") || type.contains("range")) {
-					new NavMap(name, s3o, type); // file uses ranges
-				} else if (type.toLowerCase().contains("adxgeocodes")) {
-					new AdxGeoCodes(name, s3o);
-				} else if (type.toLowerCase().contains("lookingglass")) {
-					new LookingGlass(name, s3o);
-				} else if (type.toLowerCase().contains("iso2")) {
-					new IsoTwo2Iso3(name,s3o);
-				} else if (type.toLowerCase().contains("bloom")) {
-					Number records = (Number)m.get("size");
-					new Bloom(name, s3o, records.longValue());
-				} else if (type.toLowerCase().contains("membershp")) {
-						new Membership(type, s3o);
+				if (delta != null && delta) {
+					loads.add(SymbolStore.delta(name, new BufferedReader(new InputStreamReader(s3o.getObjectContent()))));
 				} else {
-					// Ok, load it by class name
-					Class cl = Class.forName(type);
-					Long size = (Long)m.get("size");
-					Constructor<?> cons = null;
-					if (size == null) {
-						cons = cl.getConstructor(String.class, S3Object.class);
-						cons.newInstance(name, s3o);
-					} else {
-						cons = cl.getConstructor(String.class, S3Object.class, Long.class);
-						cons.newInstance(name, s3o, size);
-					}
+					loads.add(SymbolStore.submit(name, s3o.getObjectMetadata().getETag(), () -> {
+						loadObject(name, type, s3o, m);
+						return null;
+					}));
 				}
-				logger.info("*** Configuration Initialized {} with {}", name, fileName);
 			}
-				
-			} catch (Exception error) {
-				logger.error("Error initializing: {}, {}: {}", bucket, fileName,error.getMessage());
-				return "Error initializing: " + bucket + ", " + fileName + ", " + error.getMessage();
+		} catch (Exception error) {
+			loads.add(CompletableFuture.failedFuture(error));
+		}
+		return loads;
+	}
+
+	/**
+	 * Wait for the loads of a list.
+	 * @param m Map. The list's configuration.
+	 * @param loads List. The value returned by submitObject().
+	 * @return String. Null if it loaded, else the error.
+	 */
+	static String awaitObject(Map m, List<Future<?>> loads) {
+		String fileName = (String) m.get("filename");
+		if (fileName == null || fileName.equals(""))
+			fileName = (String) m.get("s3");
+		try {
+			for (Future<?> f : loads)
+				SymbolStore.await(f);
+			if (loads.size() > 0)
+				logger.info("*** Configuration Initialized {} with {}", m.get("name"), fileName);
+		} catch (Exception error) {
+			logger.error("Error initializing: {}: {}", fileName, error.getMessage());
+			return "Error initializing: " + fileName + ", " + error.getMessage();
+		}
+		return null;
+	}
+
+	/**
+	 * Construct a symbol object from a local file. Runs on the SymbolStore loader.
+	 * @param name String. The symbol name.
+	 * @param type String. The type of object.
+	 * @param fileName String. The file to load.
+	 * @param m Map. The configuration of the object.
+	 * @throws Exception on I/O or format errors.
+	 */
+	static void loadObject(String name, String type, String fileName, Map m) throws Exception {
+		if (type.toLowerCase().contains("compiled")) {
+			MappedSymbols.load(name, fileName); // precompiled with tools.CompileSymbols
+		} else if (type.toLowerCase().contains("cidr") || type.contains("range")) {
+			new NavMap(name, fileName, type); // file uses ranges	
+		} else if (type.toLowerCase().contains("adxgeocodes")) {
+			new AdxGeoCodes(name, fileName);
+		} else if (type.toLowerCase().contains("iso2")) {
+			new IsoTwo2Iso3(name,fileName);
+		} else if (type.toLowerCase().contains("lookingglass")) {
+			new LookingGlass(name, fileName);
+		} else if (type.toLowerCase().contains("bloom")) {
+			Number records = (Number)m.get("size");
+			new Bloom(name, fileName, records.longValue());
+		} else if (type.toLowerCase().contains("membershp")) {
+			new Membership(name, fileName);
+		} else {
+			// Ok, load it by class name
+			Class cl = Class.forName(type);
+			Constructor<?> cons = cl.getConstructor(String.class, String.class);
+			cons.newInstance(name, fileName);
+		}
+	}
+
+	/**
+	 * Construct a symbol object from an S3 object. Runs on the SymbolStore loader.
+	 * @param name String. The symbol name.
+	 * @param type String. The type of object.
+	 * @param s3o S3Object. The object to load.
+	 * @param m Map. The configuration of the object.
+	 * @throws Exception on S3, I/O or format errors.
+	 */
+	static void loadObject(String name, String type, S3Object s3o, Map m) throws Exception {
+		if (type.toLowerCase().contains("compiled")) {
+			MappedSymbols.load(name, s3o, System.getProperty("java.io.tmpdir"));
+		} else if (type.toLowerCase().contains("cidr") || type.contains("range")) {
+			new NavMap(name, s3o, type); // file uses ranges
+		} else if (type.toLowerCase().contains("adxgeocodes")) {
+			new AdxGeoCodes(name, s3o);
+		} else if (type.toLowerCase().contains("lookingglass")) {
+			new LookingGlass(name, s3o);
+		} else if (type.toLowerCase().contains("iso2")) {
+			new IsoTwo2Iso3(name,s3o);
+		} else if (type.toLowerCase().contains("bloom")) {
+			Number records = (Number)m.get("size");
+			new Bloom(name, s3o, records.longValue());
+		} else if (type.toLowerCase().contains("membershp")) {
+				new Membership(type, s3o);
+		} else {
+			// Ok, load it by class name
+			Class cl = Class.forName(type);
+			Long size = (Long)m.get("size");
+			Constructor<?> cons = null;
+			if (size == null) {
+				cons = cl.getConstructor(String.class, S3Object.class);
+				cons.newInstance(name, s3o);
+			} else {
+				cons = cl.getConstructor(String.class, S3Object.class, Long.class);
+				cons.newInstance(name, s3o, size);
 			}
-			return null;
 		}
+	}
 
 	/**
 	 * Purpose is to test if the Cache2k system is usable with the win URL specified
@@ -1652,6 +1800,9 @@ public class Configuration {
 		// RTBServer.percentage = new AtomicLong(0); // throttle the bidder to 0
 		BidRequest.compile(); // modify the Map of bid request components.
 		Preshuffle.getInstance().compile();
+		DealIndex.getInstance().compile();
+		FormatIndex.getInstance().compile();
+		Eligibility.getInstance().compile();
 		// RTBServer.percentage = new AtomicLong(percentage); // restore the old
 		// percentage
 	}
@@ -1353,6 +1353,14 @@ public class Creative implements Serializable {
 		int n = br.getImpressions();
 		for (int i = 0; i < n; i++) {
 			var imp = br.getImpression(i);
+			// Wrong type or size, no need to run the nodes
+			String reason = FormatIndex.getInstance().reject(imp, this);
+			if (reason != null) {
+				probe.process(br.getExchange(), adId, impid, reason);
+				if (errorString != null)
+					errorString.append(reason);
+				return null;
+			}
 			for (int j = 0; j < fixedNodes.size(); j++) {
 				var node = fixedNodes.get(j);
 				if (!node.test(br, this, adId, imp, errorString, probe, list))
@@ -1567,6 +1575,17 @@ public class Creative implements Serializable {
 	}
 
 	public boolean checkCreativeBudgets(Campaign c) {
+		return checkCreativeBudgets(c, System.currentTimeMillis());
+	}
+
+	/**
+	 * Determine if the budget was exceeded, or the daypart is not active, at a given time.
+	 * 
+	 * @param c    Campaign. The campaign this creative belongs to.
+	 * @param time long. The time, in milliseconds since the epoch.
+	 * @return boolean. Returns true if the creative can't bid at that time.
+	 */
+	public boolean checkCreativeBudgets(Campaign c, long time) {
 		double spend;
 		double bdget;
 		try {
@@ -1600,7 +1619,7 @@ public class Creative implements Serializable {
 				
 				if (budget.daypart != null) {
 					String reason = null;
-					if (budget.daypart.isActive() != true) {
+					if (budget.daypart.isActive(time) != true) {
 						logger.debug("Creative Daypart not active -->ID: {}. HOURLY {}/{}, budet: {} vs spend: {}", c.id, id, type,
 								budget, spend);
 						return true;
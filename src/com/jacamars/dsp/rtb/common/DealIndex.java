@@ -0,0 +1,228 @@
+package com.jacamars.dsp.rtb.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jacamars.dsp.rtb.pojo.Impression;
+import com.jacamars.dsp.rtb.tools.RandomSource;
+
+/**
+ * Singleton index of the private marketplace deals of all the campaigns. Maps each deal id to the
+ * creatives that carry it, the postings, and is rebuilt with the preshuffled campaigns whenever the
+ * campaigns change.
+ * <p>
+ * An impression with pmp deals is joined against the index once, on first use: each of its deal ids is
+ * probed, and the postings found are gathered per creative. After that, finding a creative's deal for the
+ * impression is one lookup, no matter how many deals either side has. The answer is the same as
+ * Deals.findDealHighestList(): the creative's highest priced deal among the impression's deal ids, a random
+ * one of them on a tie, and only if its price meets the floor the impression gives that deal.
+ * <p>
+ * Creatives the index doesn't know, or whose deals changed since it was built, fall back to
+ * Deals.findDealHighestList().
+ * @author Ben M. Faul
+ *
+ */
+public enum DealIndex {
+
+	// Instance of the singleton
+	INSTANCE;
+
+	/**
+	 * A creative carrying a deal.
+	 */
+	static final class Posting {
+		final Creative creative;
+		final Deal deal;
+
+		Posting(Creative creative, Deal deal) {
+			this.creative = creative;
+			this.deal = deal;
+		}
+	}
+
+	/**
+	 * The deals of the index as of one compile.
+	 */
+	static final class Postings {
+		/** Deal id to the creatives that carry it */
+		final Map<String, Posting[]> deals;
+		/** The deals each creative was indexed with, to spot changes */
+		final Map<Creative, Deals> indexed;
+		/** The size of those deals */
+		final Map<Creative, Integer> sizes;
+
+		Postings(Map<String, Posting[]> deals, Map<Creative, Deals> indexed, Map<Creative, Integer> sizes) {
+			this.deals = deals;
+			this.indexed = indexed;
+			this.sizes = sizes;
+		}
+	}
+
+	/**
+	 * A creative's deals that the impression asked for, the ones at the highest price.
+	 */
+	static final class Match {
+		Deal[] ties = new Deal[2];
+		/** Does the impression's floor for the deal let it through */
+		boolean[] pass = new boolean[2];
+		int count;
+
+		/**
+		 * Offer a deal of the creative that the impression has, at the impression's floor for it.
+		 */
+		void offer(Deal deal, double floor) {
+			if (count != 0 && deal.price < ties[0].price)
+				return;
+			if (count != 0 && deal.price > ties[0].price)
+				count = 0;
+			for (int i = 0; i < count; i++) {
+				if (ties[i] == deal) {
+					pass[i] |= deal.price >= floor;
+					return;
+				}
+			}
+			if (count == ties.length) {
+				Deal[] t = new Deal[count * 2];
+				boolean[] p = new boolean[count * 2];
+				System.arraycopy(ties, 0, t, 0, count);
+				System.arraycopy(pass, 0, p, 0, count);
+				ties = t;
+				pass = p;
+			}
+			ties[count] = deal;
+			pass[count] = deal.price >= floor;
+			count++;
+		}
+	}
+
+	/**
+	 * The result of joining one impression's deals against the index.
+	 */
+	public static final class Join {
+		final Postings postings;
+		final Map<Creative, Match> matches;
+
+		Join(Postings postings, Map<Creative, Match> matches) {
+			this.postings = postings;
+			this.matches = matches;
+		}
+	}
+
+	// The current index, empty until the campaigns are compiled
+	volatile Postings current = new Postings(new HashMap<String, Posting[]>(),
+			new IdentityHashMap<Creative, Deals>(), new IdentityHashMap<Creative, Integer>());
+
+	/**
+	 * Return the instance of the deal index.
+	 * @return DealIndex. This instance.
+	 */
+	public static DealIndex getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Compile the index from the effective campaigns.
+	 */
+	public void compile() {
+		compile(Configuration.getInstance().getCampaignsList());
+	}
+
+	/**
+	 * Compile the index from a list of campaigns.
+	 * @param campaigns List. The campaigns to index.
+	 */
+	public void compile(List<Campaign> campaigns) {
+		Map<String, List<Posting>> lists = new HashMap<String, List<Posting>>();
+		Map<Creative, Deals> indexed = new IdentityHashMap<Creative, Deals>();
+		Map<Creative, Integer> sizes = new IdentityHashMap<Creative, Integer>();
+		for (Campaign campaign : campaigns) {
+			if (campaign.creatives == null)
+				continue;
+			for (Creative creative : campaign.creatives) {
+				Deals deals = creative.deals;
+				if (deals == null || deals.size() == 0 || indexed.containsKey(creative))
+					continue;
+				indexed.put(creative, deals);
+				sizes.put(creative, deals.size());
+
+				// The last deal with an id wins, the same as in Deals
+				Map<String, Deal> byId = new LinkedHashMap<String, Deal>();
+				for (int i = 0; i < deals.size(); i++)
+					byId.put(deals.get(i).id, deals.get(i));
+				for (Deal deal : byId.values())
+					lists.computeIfAbsent(deal.id, k -> new ArrayList<Posting>()).add(new Posting(creative, deal));
+			}
+		}
+
+		Map<String, Posting[]> map = new HashMap<String, Posting[]>(lists.size() * 2);
+		lists.forEach((id, list) -> map.put(id, list.toArray(new Posting[list.size()])));
+		current = new Postings(map, indexed, sizes);
+	}
+
+	/**
+	 * Return the number of deal ids in the index.
+	 * @return int. The number of distinct deal ids.
+	 */
+	public int size() {
+		return current.deals.size();
+	}
+
+	/**
+	 * Find the creative's deal for the impression, see Deals.findDealHighestList().
+	 * @param imp Impression. The impression, with its pmp deals.
+	 * @param creative Creative. The creative, with its deals.
+	 * @return Deal. The creative's deal, or null if none fits.
+	 */
+	public Deal findDealHighest(Impression imp, Creative creative) {
+		if (imp.deals == null || creative.deals == null || creative.deals.size() == 0)
+			return null;
+
+		Postings postings = current;
+		Integer size = postings.sizes.get(creative);
+		if (postings.indexed.get(creative) != creative.deals || size == null || size != creative.deals.size())
+			return creative.deals.findDealHighestList(imp.deals);
+
+		Join join = imp.dealJoin;
+		if (join == null || join.postings != postings) {
+			join = join(postings, imp.deals);
+			imp.dealJoin = join;
+		}
+
+		Match match = join.matches.get(creative);
+		if (match == null)
+			return null;
+		int i = match.count == 1 ? 0 : RandomSource.nextInt(match.count);
+		return match.pass[i] ? match.ties[i] : null;
+	}
+
+	/**
+	 * Join an impression's deals against the index.
+	 * @param postings Postings. The index.
+	 * @param deals List. The impression's deals, the price is the floor.
+	 * @return Join. The creatives that have one of the deals, with their best deals.
+	 */
+	static Join join(Postings postings, List<Deal> deals) {
+		Map<Creative, Match> matches = new IdentityHashMap<Creative, Match>();
+		for (int i = 0; i < deals.size(); i++) {
+			Deal want = deals.get(i);
+			if (want == null)
+				continue;
+			Posting[] list = postings.deals.get(want.id);
+			if (list == null)
+				continue;
+			for (Posting p : list) {
+				Match match = matches.get(p.creative);
+				if (match == null) {
+					match = new Match();
+					matches.put(p.creative, match);
+				}
+				match.offer(p.deal, want.price);
+			}
+		}
+		return new Join(postings, matches);
+	}
+}
@@ -2,12 +2,13 @@ package com.jacamars.dsp.rtb.common;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import com.jacamars.dsp.rtb.tools.XORShiftRandom;
+import com.jacamars.dsp.rtb.tools.RandomSource;
 
 /**
  * A class that chooses deals. For duplicates you can choose random or highest (and random of dup highest). It extends
@@ -20,9 +21,6 @@ public class Deals extends ArrayList<Deal> {
 	// Serialize id
 	private static final long serialVersionUID = 1L;
 
-	// Random number generator
-	private static XORShiftRandom rand = new XORShiftRandom();
-	
 	// A map of the deals
 	private Map<String,Deal> map = new HashMap<String,Deal>();
 	// Set of ids in the deals list
@@ -46,7 +44,7 @@ public class Deals extends ArrayList<Deal> {
 		if (intersection.size()==0)
 			return null;
 		
-		int x = rand.random(intersection.size());
+		int x = RandomSource.nextInt(intersection.size());
 		List<String> nameList = new ArrayList<String>(intersection);
 		String key = nameList.get(x);
 		return map.get(key);
@@ -58,11 +56,12 @@ public class Deals extends ArrayList<Deal> {
      * @return
      */
 	public Deal findDealHighestList(List<Deal> deals) {
-		List<String> list = new ArrayList<String>();
-		for (int i=0;i<deals.size();i++) {
-			list.add(deals.get(i).id);
+		Highest h = highest.get();
+		for (int i = 0; i < deals.size(); i++) {
+			Deal test = deals.get(i);
+			h.offer(map.get(test.id));
 		}
-		Deal me =  findDealHighest(list);
+		Deal me = h.pick();
 		if (me == null)
 		    return null;
 
@@ -83,31 +82,55 @@ public class Deals extends ArrayList<Deal> {
 	 * @return Deal. The highest price deal that matches.
 	 */
 	public Deal findDealHighest(List<String> ids) {
-		Set<String> intersection = new HashSet<String>(ids); // use the copy constructor
-		intersection.retainAll(s2);
-		if (intersection.size()==0)
-			return null;
-		
-		List<String> nameList = new ArrayList<String>(intersection);
-		List<Deal> candidates = new ArrayList<Deal>();
-		Deal x = null;
-		for (int i=0;i< nameList.size();i++) {
-			String key = nameList.get(i);
-			Deal test = map.get(key);
-			if (x == null || x.price < test.price) {
-				x = test;
-				candidates.clear();
-				candidates.add(x);
-			} else {
-				if (x.price == test.price)
-					candidates.add(test);
+		Highest h = highest.get();
+		for (int i = 0; i < ids.size(); i++)
+			h.offer(map.get(ids.get(i)));
+		return h.pick();
+	}
+
+	/**
+	 * The deals tied at the highest price so far, one per thread so nothing is allocated per request.
+	 */
+	static final class Highest {
+		Deal[] ties = new Deal[8];
+		int count;
+
+		/**
+		 * Offer a matching deal, null if the id didn't match.
+		 */
+		void offer(Deal test) {
+			if (test == null)
+				return;
+			if (count == 0 || ties[0].price < test.price) {
+				ties[0] = test;
+				count = 1;
+				return;
 			}
+			if (ties[0].price != test.price)
+				return;
+			for (int i = 0; i < count; i++) {
+				if (ties[i] == test)
+					return;
+			}
+			if (count == ties.length)
+				ties = Arrays.copyOf(ties, count * 2);
+			ties[count++] = test;
 		}
-		if (candidates.size()==1)
+
+		/**
+		 * Return one of the highest at random and reset.
+		 */
+		Deal pick() {
+			if (count == 0)
+				return null;
+			Deal x = count == 1 ? ties[0] : ties[RandomSource.nextInt(count)];
+			Arrays.fill(ties, 0, count, null);
+			count = 0;
 			return x;
-		int r = rand.random(candidates.size());
-		return candidates.get(r);
+		}
 	}
+
+	private static final ThreadLocal<Highest> highest = ThreadLocal.withInitial(Highest::new);
 	
 	@Override
 	public boolean add(Deal d) {
@@ -0,0 +1,306 @@
+package com.jacamars.dsp.rtb.common;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jacamars.dsp.crosstalk.budget.DayPart;
+
+/**
+ * Singleton bitmap of the campaigns and creatives that can bid right now, as far as budgets, bid windows and
+ * dayparts go. The answers only change when spend moves, the hour rolls over, or an activation or expiry time
+ * passes, so they are worked out then and not per bid request:
+ * <ul>
+ * <li>when the campaigns are compiled, every campaign and creative is evaluated,</li>
+ * <li>when a campaign's spend is accounted, that campaign and its creatives are evaluated again,</li>
+ * <li>and a timer fires at the next hour boundary, or at the next activation or expiry if that is sooner, and
+ * evaluates everything.</li>
+ * </ul>
+ * The bid path then asks with one bit test. A campaign or creative that wasn't compiled is always eligible.
+ * <p>
+ * Replay freezes the clock: the timer is stopped, and spend and compiles are evaluated at the frozen time, so
+ * the same capture gives the same answers whenever it is run.
+ * <p>
+ * Campaign eligibility is Campaign.isEligible(), the budget, window and daypart part of isActive(). Creative
+ * eligibility is the check the campaign uses to park and unpark its creatives, Creative.budgetExceeded().
+ * @author Ben M. Faul
+ *
+ */
+public enum Eligibility {
+
+	// Instance of the singleton
+	INSTANCE;
+
+	static final Logger logger = LoggerFactory.getLogger(Eligibility.class);
+
+	/**
+	 * The campaigns and creatives as of one compile.
+	 */
+	static final class Slots {
+		/** Campaign to its slot, and back */
+		final Map<Campaign, Integer> campaigns;
+		final Campaign[] campaignList;
+		/** Creative to its slot, back, and the campaign it was found in */
+		final Map<Creative, Integer> creatives;
+		final Creative[] creativeList;
+		final Campaign[] owners;
+		/** A set bit is eligible */
+		final AtomicLongArray campaignBits;
+		final AtomicLongArray creativeBits;
+
+		Slots(Map<Campaign, Integer> campaigns, Campaign[] campaignList, Map<Creative, Integer> creatives,
+				Creative[] creativeList, Campaign[] owners) {
+			this.campaigns = campaigns;
+			this.campaignList = campaignList;
+			this.creatives = creatives;
+			this.creativeList = creativeList;
+			this.owners = owners;
+			campaignBits = new AtomicLongArray((campaignList.length + 63) >>> 6);
+			creativeBits = new AtomicLongArray((creativeList.length + 63) >>> 6);
+		}
+	}
+
+	// The current bitmap, empty until the campaigns are compiled
+	volatile Slots current = new Slots(new IdentityHashMap<Campaign, Integer>(), new Campaign[0],
+			new IdentityHashMap<Creative, Integer>(), new Creative[0], new Campaign[0]);
+
+	// Fires at the next time the answers could change
+	ScheduledExecutorService timer;
+	ScheduledFuture<?> pending;
+
+	// The frozen time, 0 for the wall clock
+	volatile long frozen;
+
+	/**
+	 * Return the instance of the eligibility bitmap.
+	 * @return Eligibility. This instance.
+	 */
+	public static Eligibility getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Compile the bitmap from the effective campaigns, and start the timer.
+	 */
+	public void compile() {
+		long now = now();
+		compile(Configuration.getInstance().getCampaignsList(), now);
+		schedule(now);
+	}
+
+	/**
+	 * Compile the bitmap from a list of campaigns, evaluated at a given time. Does not touch the timer.
+	 * @param campaigns List. The campaigns.
+	 * @param time long. The time, in milliseconds since the epoch.
+	 */
+	public void compile(List<Campaign> campaigns, long time) {
+		Map<Campaign, Integer> campaignSlots = new IdentityHashMap<Campaign, Integer>();
+		List<Campaign> campaignList = new ArrayList<Campaign>();
+		Map<Creative, Integer> creativeSlots = new IdentityHashMap<Creative, Integer>();
+		List<Creative> creativeList = new ArrayList<Creative>();
+		List<Campaign> owners = new ArrayList<Campaign>();
+		for (Campaign campaign : campaigns) {
+			if (campaignSlots.containsKey(campaign))
+				continue;
+			campaignSlots.put(campaign, campaignList.size());
+			campaignList.add(campaign);
+			if (campaign.creatives == null)
+				continue;
+			for (Creative creative : campaign.creatives) {
+				if (!creativeSlots.containsKey(creative)) {
+					creativeSlots.put(creative, creativeList.size());
+					creativeList.add(creative);
+					owners.add(campaign);
+				}
+			}
+		}
+
+		Slots slots = new Slots(campaignSlots, campaignList.toArray(new Campaign[0]), creativeSlots,
+				creativeList.toArray(new Creative[0]), owners.toArray(new Campaign[0]));
+		evaluate(slots, time);
+		current = slots;
+	}
+
+	/**
+	 * Evaluate every campaign and creative again.
+	 * @param time long. The time, in milliseconds since the epoch.
+	 */
+	public void refresh(long time) {
+		evaluate(current, time);
+	}
+
+	/**
+	 * A campaign's spend changed, evaluate it and its creatives again.
+	 * @param campaign Campaign. The campaign.
+	 */
+	public void update(Campaign campaign) {
+		update(campaign, now());
+	}
+
+	/**
+	 * A campaign's spend changed, evaluate it and its creatives again at a given time.
+	 * @param campaign Campaign. The campaign.
+	 * @param time long. The time, in milliseconds since the epoch.
+	 */
+	public void update(Campaign campaign, long time) {
+		Slots slots = current;
+		Integer slot = slots.campaigns.get(campaign);
+		if (slot == null)
+			return;
+		set(slots.campaignBits, slot, campaign(campaign, time));
+		if (campaign.creatives == null)
+			return;
+		for (Creative creative : campaign.creatives) {
+			slot = slots.creatives.get(creative);
+			if (slot != null)
+				set(slots.creativeBits, slot, creative(slots.owners[slot], creative, time));
+		}
+	}
+
+	/**
+	 * Freeze the clock at a given time, or go back to the wall clock. While frozen the timer doesn't run, the
+	 * caller refreshes when the frozen time passes nextEvent(). Going back evaluates everything at once.
+	 * @param time long. The time, in milliseconds since the epoch, 0 for the wall clock.
+	 */
+	public synchronized void freeze(long time) {
+		frozen = time;
+		if (time != 0) {
+			if (pending != null)
+				pending.cancel(false);
+			pending = null;
+		} else {
+			long now = System.currentTimeMillis();
+			refresh(now);
+			schedule(now);
+		}
+	}
+
+	/**
+	 * Return the time the answers are evaluated at.
+	 * @return long. The frozen time, or the wall clock.
+	 */
+	public long now() {
+		long time = frozen;
+		return time != 0 ? time : System.currentTimeMillis();
+	}
+
+	/**
+	 * Is the campaign eligible? One bit test.
+	 * @param campaign Campaign. The campaign.
+	 * @return boolean. True if it can bid, or if it wasn't compiled.
+	 */
+	public boolean campaign(Campaign campaign) {
+		Slots slots = current;
+		Integer slot = slots.campaigns.get(campaign);
+		return slot == null || test(slots.campaignBits, slot);
+	}
+
+	/**
+	 * Is the creative eligible? One bit test.
+	 * @param creative Creative. The creative.
+	 * @return boolean. True if it can bid, or if it wasn't compiled.
+	 */
+	public boolean creative(Creative creative) {
+		Slots slots = current;
+		Integer slot = slots.creatives.get(creative);
+		return slot == null || test(slots.creativeBits, slot);
+	}
+
+	/**
+	 * Return the next time any answer could change without spend moving: the next hour boundary, where the
+	 * dayparts and hourly budgets turn over, or the next campaign activation or expiry, whichever is first.
+	 * @param time long. The time, in milliseconds since the epoch.
+	 * @return long. The next time to evaluate everything again.
+	 */
+	public long nextEvent(long time) {
+		long next = (Math.floorDiv(time, DayPart.HOUR) + 1) * DayPart.HOUR;
+		for (Campaign campaign : current.campaignList) {
+			Budget budget = campaign.budget;
+			if (budget == null)
+				continue;
+			if (budget.activate_time > time && budget.activate_time < next)
+				next = budget.activate_time;
+			// Expired is after the expire time
+			if (budget.expire_time + 1 > time && budget.expire_time + 1 < next)
+				next = budget.expire_time + 1;
+		}
+		return next;
+	}
+
+	/**
+	 * The timer fired, evaluate everything and wait for the next event. Not while frozen, and a freeze waits
+	 * for a tick that already started.
+	 */
+	synchronized void tick() {
+		if (frozen != 0)
+			return;
+		long now = System.currentTimeMillis();
+		try {
+			refresh(now);
+		} catch (Exception error) {
+			logger.error("Eligibility refresh failed: {}", error.toString());
+		}
+		schedule(now);
+	}
+
+	/**
+	 * Schedule the timer for the next event after a given time, replacing the one pending.
+	 * @param time long. The time, in milliseconds since the epoch.
+	 */
+	synchronized void schedule(long time) {
+		if (frozen != 0)
+			return;
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "eligibility");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		if (pending != null)
+			pending.cancel(false);
+		long delay = Math.max(0, nextEvent(time) - System.currentTimeMillis());
+		pending = timer.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+	}
+
+	void evaluate(Slots slots, long time) {
+		for (int i = 0; i < slots.campaignList.length; i++)
+			set(slots.campaignBits, i, campaign(slots.campaignList[i], time));
+		for (int i = 0; i < slots.creativeList.length; i++)
+			set(slots.creativeBits, i, creative(slots.owners[i], slots.creativeList[i], time));
+	}
+
+	static boolean campaign(Campaign campaign, long time) {
+		try {
+			return campaign.isEligible(time);
+		} catch (Exception error) {
+			logger.error("Campaign: {}, eligibility error: {}", campaign.name, error.toString());
+			return false;
+		}
+	}
+
+	static boolean creative(Campaign campaign, Creative creative, long time) {
+		return creative.budget == null || !creative.checkCreativeBudgets(campaign, time);
+	}
+
+	static boolean test(AtomicLongArray bits, int slot) {
+		return (bits.get(slot >>> 6) & (1L << slot)) != 0;
+	}
+
+	static void set(AtomicLongArray bits, int slot, boolean on) {
+		long bit = 1L << slot;
+		if (on)
+			bits.getAndUpdate(slot >>> 6, word -> word | bit);
+		else
+			bits.getAndUpdate(slot >>> 6, word -> word & ~bit);
+	}
+}
@@ -0,0 +1,880 @@
+package com.jacamars.dsp.rtb.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * A small expression language for campaign nodes, in place of JavaScript run through the script engine.
+ * The text is parsed once, when the campaign is compiled, into a tree of closures. Evaluating the tree
+ * against a bid request does not parse, lock or, for comparisons and arithmetic, allocate, and the tree
+ * holds no state, so any number of threads can share it.
+ * <p>
+ * The language:
+ * <ul>
+ * <li>Literals: numbers, 'strings' or "strings", true, false, null (or undefined).</li>
+ * <li>Fields: dotted names looked up in the bid request, the same as a node's hierarchy, for example
+ * device.geo.country or imp.0.bidfloor. br.interrogate("a.b") and br.a.b mean the same as a.b.</li>
+ * <li>Arithmetic: + - * / %, with + joining strings.</li>
+ * <li>Comparisons: == != &lt; &lt;= &gt; &gt;=, also === and !==.</li>
+ * <li>Membership: x in [1, 2, 3], x not in ['a', 'b'], x in some.array.field. An array on the left is in the
+ * set if any of its members is.</li>
+ * <li>Logic: &amp;&amp; || ! and the words and, or, not. The words bind looser than comparisons.</li>
+ * </ul>
+ * Literals have a type, fields are typed when they are read. Mixing types where it can never be right, a
+ * number compared to a string literal, arithmetic on a string, a list of mixed types, is an error at compile
+ * time. A missing field is null: it equals null, and any other comparison with it is false.
+ * <p>
+ * translate() takes the JavaScript the nodes used to carry: a single expression, optionally with return
+ * and a trailing semicolon. Scripts outside of that translate to null.
+ * @author Ben M. Faul
+ *
+ */
+public abstract class Expression {
+
+	/**
+	 * The type of an expression, as far as it is known at compile time.
+	 */
+	public enum Type {
+		NUMBER, STRING, BOOLEAN, LIST, ANY
+	}
+
+	/** The type of this expression */
+	public final Type type;
+
+	Expression(Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * Evaluate the expression.
+	 * @param br BidRequest. The bid request to read the fields from.
+	 * @return Object. A Number, String, Boolean, JsonNode, List or null.
+	 */
+	public abstract Object eval(BidRequest br);
+
+	/**
+	 * Evaluate the expression as a number.
+	 * @param br BidRequest. The bid request.
+	 * @return double. The value, NaN if it is not a number.
+	 */
+	public double number(BidRequest br) {
+		return number(eval(br));
+	}
+
+	/**
+	 * Evaluate the expression as a condition.
+	 * @param br BidRequest. The bid request.
+	 * @return boolean. The value, JavaScript style: null, false, 0, NaN and "" are false.
+	 */
+	public boolean test(BidRequest br) {
+		return truthy(eval(br));
+	}
+
+	/**
+	 * Compile an expression.
+	 * @param text String. The expression.
+	 * @return Expression. The compiled expression.
+	 * @throws Exception on syntax and type errors.
+	 */
+	public static Expression compile(String text) throws Exception {
+		Parser parser = new Parser(text);
+		Expression e = parser.or();
+		if (parser.peek() != null)
+			throw parser.error("Unexpected " + parser.peek());
+		return e;
+	}
+
+	/**
+	 * Translate a node's JavaScript into an expression.
+	 * @param script String. The script.
+	 * @return Expression. The compiled expression, or null if the script is not in the language.
+	 */
+	public static Expression translate(String script) {
+		String text = script.trim();
+		while (text.endsWith(";"))
+			text = text.substring(0, text.length() - 1).trim();
+		if (text.startsWith("return ") || text.startsWith("return("))
+			text = text.substring(6).trim();
+		try {
+			return compile(text);
+		} catch (Exception error) {
+			return null;
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Convert a value to a number.
+	 */
+	static double number(Object o) {
+		if (o instanceof Number)
+			return ((Number) o).doubleValue();
+		if (o instanceof JsonNode) {
+			JsonNode n = (JsonNode) o;
+			if (n.isNumber())
+				return n.doubleValue();
+			if (n.isBoolean())
+				return n.booleanValue() ? 1 : 0;
+			if (n.isTextual())
+				return parse(n.textValue());
+			return Double.NaN;
+		}
+		if (o instanceof Boolean)
+			return ((Boolean) o) ? 1 : 0;
+		if (o instanceof String)
+			return parse((String) o);
+		return Double.NaN;
+	}
+
+	static double parse(String s) {
+		try {
+			return Double.parseDouble(s);
+		} catch (Exception error) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Convert a value to a string, null for containers and missing values.
+	 */
+	static String text(Object o) {
+		if (o instanceof String)
+			return (String) o;
+		if (o instanceof JsonNode) {
+			JsonNode n = (JsonNode) o;
+			if (n.isTextual())
+				return n.textValue();
+			if (n.isValueNode() && !n.isNull())
+				return n.asText();
+			return null;
+		}
+		if (o instanceof Double && ((Double) o) == Math.rint((Double) o) && !Double.isInfinite((Double) o))
+			return Long.toString(((Double) o).longValue());
+		if (o == null || o instanceof List)
+			return null;
+		return o.toString();
+	}
+
+	static boolean truthy(Object o) {
+		if (o == null)
+			return false;
+		if (o instanceof Boolean)
+			return (Boolean) o;
+		if (o instanceof JsonNode) {
+			JsonNode n = (JsonNode) o;
+			if (n.isMissingNode() || n.isNull())
+				return false;
+			if (n.isBoolean())
+				return n.booleanValue();
+			if (n.isNumber()) {
+				double d = n.doubleValue();
+				return d != 0 && !Double.isNaN(d);
+			}
+			if (n.isTextual())
+				return n.textValue().length() > 0;
+			return true;
+		}
+		if (o instanceof Number) {
+			double d = ((Number) o).doubleValue();
+			return d != 0 && !Double.isNaN(d);
+		}
+		if (o instanceof String)
+			return ((String) o).length() > 0;
+		return true;
+	}
+
+	static boolean isNumber(Object o) {
+		return o instanceof Number || (o instanceof JsonNode && ((JsonNode) o).isNumber());
+	}
+
+	static boolean isNull(Object o) {
+		return o == null || (o instanceof JsonNode && (((JsonNode) o).isMissingNode() || ((JsonNode) o).isNull()));
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * A constant.
+	 */
+	static final class Literal extends Expression {
+		final Object value;
+		final double number;
+		final boolean truth;
+
+		Literal(Type type, Object value) {
+			super(type);
+			this.value = value;
+			this.number = number(value);
+			this.truth = truthy(value);
+		}
+
+		public Object eval(BidRequest br) {
+			return value;
+		}
+
+		public double number(BidRequest br) {
+			return number;
+		}
+
+		public boolean test(BidRequest br) {
+			return truth;
+		}
+	}
+
+	/**
+	 * A field of the bid request. Looked up the same as BidRequest.interrogate(), with the path split once.
+	 */
+	static final class Field extends Expression {
+		final String path;
+		final List<String> parts;
+		final boolean builtIn;
+
+		Field(String path) {
+			super(Type.ANY);
+			this.path = path;
+			this.parts = List.of(path.split("\\."));
+			this.builtIn = path.equals("domain") || path.equals("exchange");
+		}
+
+		public Object eval(BidRequest br) {
+			Object o = builtIn ? br.interrogate(path) : br.database.get(path);
+			if (o == null && !builtIn)
+				o = br.walkTree(parts);
+			if (o instanceof JsonNode && ((JsonNode) o).isMissingNode())
+				return null;
+			return o;
+		}
+	}
+
+	/**
+	 * Arithmetic on two numbers.
+	 */
+	static final class Arithmetic extends Expression {
+		final char op;
+		final Expression left, right;
+
+		Arithmetic(char op, Expression left, Expression right) {
+			super(Type.NUMBER);
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object eval(BidRequest br) {
+			return number(br);
+		}
+
+		public double number(BidRequest br) {
+			double a = left.number(br);
+			double b = right.number(br);
+			switch (op) {
+			case '+':
+				return a + b;
+			case '-':
+				return a - b;
+			case '*':
+				return a * b;
+			case '/':
+				return a / b;
+			default:
+				return a % b;
+			}
+		}
+
+		public boolean test(BidRequest br) {
+			double d = number(br);
+			return d != 0 && !Double.isNaN(d);
+		}
+	}
+
+	/**
+	 * + when a side may be a string: joins them if either is, adds them otherwise.
+	 */
+	static final class Plus extends Expression {
+		final Expression left, right;
+
+		Plus(Type type, Expression left, Expression right) {
+			super(type);
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object eval(BidRequest br) {
+			Object a = left.eval(br);
+			Object b = right.eval(br);
+			if (isNumber(a) && isNumber(b))
+				return number(a) + number(b);
+			return String.valueOf(text(a)) + String.valueOf(text(b));
+		}
+	}
+
+	/**
+	 * A comparison.
+	 */
+	static final class Compare extends Expression {
+		final String op;
+		final Expression left, right;
+		/** Both sides are numbers, or both strings, at compile time */
+		final boolean numeric, textual;
+
+		Compare(String op, Expression left, Expression right) {
+			super(Type.BOOLEAN);
+			this.op = op;
+			this.left = left;
+			this.right = right;
+			numeric = (left.type == Type.NUMBER && right.type != Type.STRING)
+					|| (right.type == Type.NUMBER && left.type != Type.STRING);
+			textual = left.type == Type.STRING && right.type == Type.STRING;
+		}
+
+		public Object eval(BidRequest br) {
+			return test(br);
+		}
+
+		public boolean test(BidRequest br) {
+			if (numeric && !isNullLiteral(left) && !isNullLiteral(right))
+				return numbers(left.number(br), right.number(br));
+
+			Object a = left.eval(br);
+			Object b = right.eval(br);
+			if (isNull(a) || isNull(b)) {
+				boolean same = isNull(a) && isNull(b);
+				if (op.equals("=="))
+					return same;
+				if (op.equals("!="))
+					return !same;
+				return false;
+			}
+			if (!textual && (isNumber(a) || isNumber(b)))
+				return numbers(number(a), number(b));
+			if (a instanceof Boolean || b instanceof Boolean)
+				return numbers(number(a), number(b));
+			String x = text(a);
+			String y = text(b);
+			if (x == null || y == null) {
+				if (op.equals("=="))
+					return a.equals(b);
+				if (op.equals("!="))
+					return !a.equals(b);
+				return false;
+			}
+			return strings(x.compareTo(y));
+		}
+
+		boolean numbers(double a, double b) {
+			switch (op) {
+			case "==":
+				return a == b;
+			case "!=":
+				return a != b;
+			case "<":
+				return a < b;
+			case "<=":
+				return a <= b;
+			case ">":
+				return a > b;
+			default:
+				return a >= b;
+			}
+		}
+
+		boolean strings(int c) {
+			switch (op) {
+			case "==":
+				return c == 0;
+			case "!=":
+				return c != 0;
+			case "<":
+				return c < 0;
+			case "<=":
+				return c <= 0;
+			case ">":
+				return c > 0;
+			default:
+				return c >= 0;
+			}
+		}
+
+		static boolean isNullLiteral(Expression e) {
+			return e instanceof Literal && ((Literal) e).value == null;
+		}
+	}
+
+	/**
+	 * Membership in a literal list: a sorted array of numbers or a set of strings.
+	 */
+	static final class InList extends Expression {
+		final Expression left;
+		final double[] numbers;
+		final Set<String> strings;
+		final boolean negate;
+
+		InList(Expression left, double[] numbers, Set<String> strings, boolean negate) {
+			super(Type.BOOLEAN);
+			this.left = left;
+			this.numbers = numbers;
+			this.strings = strings;
+			this.negate = negate;
+		}
+
+		public Object eval(BidRequest br) {
+			return test(br);
+		}
+
+		public boolean test(BidRequest br) {
+			if (numbers != null && left.type == Type.NUMBER)
+				return Arrays.binarySearch(numbers, left.number(br)) >= 0 != negate;
+			Object o = left.eval(br);
+			if (o instanceof JsonNode && ((JsonNode) o).isArray()) {
+				for (JsonNode n : (JsonNode) o) {
+					if (contains(n))
+						return !negate;
+				}
+				return negate;
+			}
+			if (o instanceof List) {
+				for (Object x : (List<?>) o) {
+					if (contains(x))
+						return !negate;
+				}
+				return negate;
+			}
+			return contains(o) != negate;
+		}
+
+		boolean contains(Object o) {
+			if (isNull(o))
+				return false;
+			if (numbers != null)
+				return Arrays.binarySearch(numbers, number(o)) >= 0;
+			String s = text(o);
+			return s != null && strings.contains(s);
+		}
+	}
+
+	/**
+	 * Membership in an array field of the bid request.
+	 */
+	static final class InField extends Expression {
+		final Expression left, right;
+		final boolean negate;
+
+		InField(Expression left, Expression right, boolean negate) {
+			super(Type.BOOLEAN);
+			this.left = left;
+			this.right = right;
+			this.negate = negate;
+		}
+
+		public Object eval(BidRequest br) {
+			return test(br);
+		}
+
+		public boolean test(BidRequest br) {
+			Object a = left.eval(br);
+			Object b = right.eval(br);
+			if (isNull(a) || isNull(b))
+				return negate;
+			boolean numeric = isNumber(a);
+			double d = numeric ? number(a) : 0;
+			String s = numeric ? null : text(a);
+			if (b instanceof JsonNode && ((JsonNode) b).isArray()) {
+				for (JsonNode n : (JsonNode) b) {
+					if (numeric ? n.isNumber() && n.doubleValue() == d : s != null && s.equals(text(n)))
+						return !negate;
+				}
+			} else if (b instanceof List) {
+				for (Object o : (List<?>) b) {
+					if (numeric ? isNumber(o) && number(o) == d : s != null && s.equals(text(o)))
+						return !negate;
+				}
+			}
+			return negate;
+		}
+	}
+
+	/**
+	 * && and ||.
+	 */
+	static final class Logic extends Expression {
+		final boolean and;
+		final Expression left, right;
+
+		Logic(boolean and, Expression left, Expression right) {
+			super(Type.BOOLEAN);
+			this.and = and;
+			this.left = left;
+			this.right = right;
+		}
+
+		public Object eval(BidRequest br) {
+			return test(br);
+		}
+
+		public boolean test(BidRequest br) {
+			return and ? left.test(br) && right.test(br) : left.test(br) || right.test(br);
+		}
+	}
+
+	/**
+	 * ! and unary minus.
+	 */
+	static final class Unary extends Expression {
+		final boolean not;
+		final Expression operand;
+
+		Unary(boolean not, Expression operand) {
+			super(not ? Type.BOOLEAN : Type.NUMBER);
+			this.not = not;
+			this.operand = operand;
+		}
+
+		public Object eval(BidRequest br) {
+			if (not)
+				return test(br);
+			return number(br);
+		}
+
+		public double number(BidRequest br) {
+			if (not)
+				return test(br) ? 1 : 0;
+			return -operand.number(br);
+		}
+
+		public boolean test(BidRequest br) {
+			if (not)
+				return !operand.test(br);
+			double d = number(br);
+			return d != 0 && !Double.isNaN(d);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Recursive descent parser, one method per precedence level.
+	 */
+	static final class Parser {
+		final String text;
+		final List<String> tokens = new ArrayList<String>();
+		final List<Integer> positions = new ArrayList<Integer>();
+		int at;
+
+		Parser(String text) throws Exception {
+			this.text = text;
+			tokenize();
+		}
+
+		void tokenize() throws Exception {
+			int i = 0;
+			int n = text.length();
+			while (i < n) {
+				char c = text.charAt(i);
+				int start = i;
+				if (Character.isWhitespace(c)) {
+					i++;
+					continue;
+				}
+				if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(text.charAt(i + 1)))) {
+					while (i < n && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.'))
+						i++;
+					if (i < n && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+						i++;
+						if (i < n && (text.charAt(i) == '+' || text.charAt(i) == '-'))
+							i++;
+						while (i < n && Character.isDigit(text.charAt(i)))
+							i++;
+					}
+				} else if (c == '\'' || c == '"') {
+					i++;
+					while (i < n && text.charAt(i) != c) {
+						if (text.charAt(i) == '\\')
+							i++;
+						i++;
+					}
+					if (i >= n)
+						throw error(start, "Unterminated string");
+					i++;
+				} else if (Character.isJavaIdentifierStart(c)) {
+					while (i < n && (Character.isJavaIdentifierPart(text.charAt(i)) || text.charAt(i) == '.'
+							|| text.charAt(i) == '*'))
+						i++;
+				} else if (text.startsWith("===", i) || text.startsWith("!==", i)) {
+					i += 3;
+				} else if (text.startsWith("==", i) || text.startsWith("!=", i) || text.startsWith("<=", i)
+						|| text.startsWith(">=", i) || text.startsWith("&&", i) || text.startsWith("||", i)) {
+					i += 2;
+				} else if ("<>!+-*/%()[],".indexOf(c) >= 0) {
+					i++;
+				} else
+					throw error(start, "Unexpected character '" + c + "'");
+				tokens.add(text.substring(start, i));
+				positions.add(start);
+			}
+		}
+
+		String peek() {
+			return at < tokens.size() ? tokens.get(at) : null;
+		}
+
+		boolean accept(String token) {
+			if (token.equals(peek())) {
+				at++;
+				return true;
+			}
+			return false;
+		}
+
+		void expect(String token) throws Exception {
+			if (!accept(token))
+				throw error("Expected " + token + (peek() == null ? " at end" : " not " + peek()));
+		}
+
+		Exception error(String message) {
+			return error(at < positions.size() ? positions.get(at) : text.length(), message);
+		}
+
+		Exception error(int position, String message) {
+			return new Exception(message + " at " + position + " in: " + text);
+		}
+
+		Expression or() throws Exception {
+			Expression e = and();
+			while (accept("||") || accept("or"))
+				e = new Logic(false, e, and());
+			return e;
+		}
+
+		Expression and() throws Exception {
+			Expression e = not();
+			while (accept("&&") || accept("and"))
+				e = new Logic(true, e, not());
+			return e;
+		}
+
+		Expression not() throws Exception {
+			if (accept("not"))
+				return new Unary(true, not());
+			return comparison();
+		}
+
+		Expression comparison() throws Exception {
+			Expression e = sum();
+			String op = peek();
+			if (op == null)
+				return e;
+			switch (op) {
+			case "===":
+				op = "==";
+			case "==":
+				break;
+			case "!==":
+				op = "!=";
+			case "!=":
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				break;
+			case "in":
+				at++;
+				return in(e, false);
+			case "not":
+				if (at + 1 < tokens.size() && tokens.get(at + 1).equals("in")) {
+					at += 2;
+					return in(e, true);
+				}
+				return e;
+			default:
+				return e;
+			}
+			int position = positions.get(at);
+			at++;
+			Expression right = sum();
+			if ((e.type == Type.NUMBER && right.type == Type.STRING)
+					|| (e.type == Type.STRING && right.type == Type.NUMBER))
+				throw error(position, "Can't compare a number with a string");
+			if (e.type == Type.LIST || right.type == Type.LIST)
+				throw error(position, "Can't compare a list, use in");
+			return new Compare(op, e, right);
+		}
+
+		Expression in(Expression left, boolean negate) throws Exception {
+			int position = at < positions.size() ? positions.get(at) : text.length();
+			if (!accept("[")) {
+				Expression right = sum();
+				if (right.type != Type.ANY)
+					throw error(position, "in needs a list or a field");
+				return new InField(left, right, negate);
+			}
+			List<Literal> list = new ArrayList<Literal>();
+			if (!accept("]")) {
+				do {
+					Expression x = sum();
+					if (!(x instanceof Literal) || x.type == Type.ANY)
+						throw error(position, "A list holds numbers or strings only");
+					list.add((Literal) x);
+				} while (accept(","));
+				expect("]");
+			}
+			Type type = list.isEmpty() ? Type.STRING : list.get(0).type;
+			for (Literal x : list) {
+				if (x.type != type)
+					throw error(position, "A list can't mix types");
+			}
+			if (type == Type.NUMBER) {
+				if (left.type == Type.STRING)
+					throw error(position, "Can't look for a string in a list of numbers");
+				double[] numbers = new double[list.size()];
+				for (int i = 0; i < numbers.length; i++)
+					numbers[i] = list.get(i).number;
+				Arrays.sort(numbers);
+				return new InList(left, numbers, null, negate);
+			}
+			if (type != Type.STRING)
+				throw error(position, "A list holds numbers or strings only");
+			if (left.type == Type.NUMBER && !list.isEmpty())
+				throw error(position, "Can't look for a number in a list of strings");
+			Set<String> strings = new HashSet<String>();
+			for (Literal x : list)
+				strings.add((String) x.value);
+			return new InList(left, null, strings, negate);
+		}
+
+		Expression sum() throws Exception {
+			Expression e = product();
+			while (true) {
+				int position = at < positions.size() ? positions.get(at) : 0;
+				if (accept("+")) {
+					Expression right = product();
+					if (e.type == Type.NUMBER && right.type == Type.NUMBER)
+						e = new Arithmetic('+', e, right);
+					else {
+						checkArithmetic(position, e, right, e.type == Type.STRING || right.type == Type.STRING);
+						e = new Plus(e.type == Type.STRING || right.type == Type.STRING ? Type.STRING : Type.ANY, e,
+								right);
+					}
+				} else if (accept("-")) {
+					Expression right = product();
+					checkArithmetic(position, e, right, false);
+					e = new Arithmetic('-', e, right);
+				} else
+					return e;
+			}
+		}
+
+		Expression product() throws Exception {
+			Expression e = unary();
+			while (true) {
+				int position = at < positions.size() ? positions.get(at) : 0;
+				String op = peek();
+				if (!"*".equals(op) && !"/".equals(op) && !"%".equals(op))
+					return e;
+				at++;
+				Expression right = unary();
+				checkArithmetic(position, e, right, false);
+				e = new Arithmetic(op.charAt(0), e, right);
+			}
+		}
+
+		void checkArithmetic(int position, Expression a, Expression b, boolean strings) throws Exception {
+			for (Expression x : new Expression[] { a, b }) {
+				if (x.type == Type.LIST || x.type == Type.BOOLEAN || (x.type == Type.STRING && !strings))
+					throw error(position, "Arithmetic needs numbers");
+			}
+		}
+
+		Expression unary() throws Exception {
+			int position = at < positions.size() ? positions.get(at) : 0;
+			if (accept("-")) {
+				Expression e = unary();
+				if (e.type != Type.NUMBER && e.type != Type.ANY)
+					throw error(position, "Arithmetic needs numbers");
+				if (e instanceof Literal)
+					return new Literal(Type.NUMBER, -((Literal) e).number);
+				return new Unary(false, e);
+			}
+			if (accept("!"))
+				return new Unary(true, unary());
+			return primary();
+		}
+
+		Expression primary() throws Exception {
+			String token = peek();
+			if (token == null)
+				throw error("Unexpected end");
+			int position = positions.get(at);
+			at++;
+			char c = token.charAt(0);
+			if (token.equals("(")) {
+				Expression e = or();
+				expect(")");
+				return e;
+			}
+			if (Character.isDigit(c) || c == '.') {
+				try {
+					return new Literal(Type.NUMBER, Double.parseDouble(token));
+				} catch (NumberFormatException error) {
+					throw error(position, "Bad number " + token);
+				}
+			}
+			if (c == '\'' || c == '"')
+				return new Literal(Type.STRING, unquote(token));
+			if (Character.isJavaIdentifierStart(c)) {
+				switch (token) {
+				case "true":
+					return new Literal(Type.BOOLEAN, Boolean.TRUE);
+				case "false":
+					return new Literal(Type.BOOLEAN, Boolean.FALSE);
+				case "null":
+				case "undefined":
+					return new Literal(Type.ANY, null);
+				case "br.interrogate":
+					expect("(");
+					String path = peek();
+					if (path == null || (path.charAt(0) != '\'' && path.charAt(0) != '"'))
+						throw error("br.interrogate needs a string");
+					at++;
+					expect(")");
+					return new Field(unquote(path));
+				}
+				String path = token.startsWith("br.") ? token.substring(3) : token;
+				for (String part : path.split("\\.", -1)) {
+					if (part.length() == 0)
+						throw error(position, "Bad field " + token);
+				}
+				if ("(".equals(peek()))
+					throw error(position, "Unknown function " + token);
+				return new Field(path);
+			}
+			throw error(position, "Unexpected " + token);
+		}
+
+		static String unquote(String token) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 1; i < token.length() - 1; i++) {
+				char c = token.charAt(i);
+				if (c == '\\' && i + 1 < token.length() - 1) {
+					c = token.charAt(++i);
+					switch (c) {
+					case 'n':
+						c = '\n';
+						break;
+					case 't':
+						c = '\t';
+						break;
+					}
+				}
+				sb.append(c);
+			}
+			return sb.toString();
+		}
+	}
+}
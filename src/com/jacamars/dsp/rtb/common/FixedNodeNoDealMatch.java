@@ -35,7 +35,7 @@ public class FixedNodeNoDealMatch extends Node implements Serializable {
                 /**
                  * Ok, find a deal!
                  */
-                deal = creative.deals.findDealHighestList(imp.deals);
+                deal = DealIndex.getInstance().findDealHighest(imp, creative);
                 if (deal == null && creative.price == 0) {
                     probe.process(br.getExchange(), adId, creative.impid, Probe.PRIVATE_AUCTION_LIMITED);
                     if (errorString != null)
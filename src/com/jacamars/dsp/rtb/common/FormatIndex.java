@@ -0,0 +1,312 @@
+package com.jacamars.dsp.rtb.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jacamars.dsp.rtb.pojo.Format;
+import com.jacamars.dsp.rtb.pojo.Impression;
+import com.jacamars.dsp.rtb.probe.Probe;
+
+/**
+ * Singleton index of the creatives by impression type and size, rebuilt with the preshuffled campaigns
+ * whenever the campaigns change. Each creative gets a slot in a bitset. An impression looks up the set of
+ * creatives that could fit it once, on first use, and after that a creative that can't fit is turned
+ * away with one bit test, before any node runs.
+ * <p>
+ * The set is never smaller than what the fixed nodes would let through. Creatives are keyed:
+ * <ul>
+ * <li>by the impression types they need, the same as FixedNodeIsBanner, IsVideo, IsNative and DoAudio,</li>
+ * <li>by exact width and height, for their w and h and for their single size dimensions,</li>
+ * <li>as flexible, for width or height ranges, which are tested against the impression directly,</li>
+ * <li>and as any size, for creatives with no dimensions.</li>
+ * </ul>
+ * The impressions FixedNodeDoSize can't decide on size alone, interstitials and impressions with no size
+ * or a native part, are filtered on type only.
+ * @author Ben M. Faul
+ *
+ */
+public enum FormatIndex {
+
+	// Instance of the singleton
+	INSTANCE;
+
+	// Impression types, as bits
+	public static final int BANNER = 1, VIDEO = 2, AUDIO = 4, NATIVE = 8;
+
+	/**
+	 * The creatives as of one compile.
+	 */
+	static final class Slots {
+		/** Creative to its slot */
+		final Map<Creative, Integer> slots;
+		/** For each combination of impression types, the creatives that fit it */
+		final long[][] types;
+		/** Creatives with no dimensions, and those with no w and no dimensions */
+		final long[] anySize, anyFormat;
+		/** Exact size to the creatives of that size */
+		final Map<Long, int[]> exact;
+		/** Creatives with ranges, and their dimensions */
+		final int[] flexible;
+		final Dimensions[] ranges;
+
+		Slots(Map<Creative, Integer> slots, long[][] types, long[] anySize, long[] anyFormat, Map<Long, int[]> exact,
+				int[] flexible, Dimensions[] ranges) {
+			this.slots = slots;
+			this.types = types;
+			this.anySize = anySize;
+			this.anyFormat = anyFormat;
+			this.exact = exact;
+			this.flexible = flexible;
+			this.ranges = ranges;
+		}
+	}
+
+	/**
+	 * The creatives that could fit one impression.
+	 */
+	public static final class Candidates {
+		final Slots slots;
+		final long[] bits;
+
+		Candidates(Slots slots, long[] bits) {
+			this.slots = slots;
+			this.bits = bits;
+		}
+	}
+
+	// The current index, empty until the campaigns are compiled
+	volatile Slots current = new Slots(new IdentityHashMap<Creative, Integer>(), new long[16][0], new long[0],
+			new long[0], new HashMap<Long, int[]>(), new int[0], new Dimensions[0]);
+
+	/**
+	 * Return the instance of the format index.
+	 * @return FormatIndex. This instance.
+	 */
+	public static FormatIndex getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Compile the index from the effective campaigns.
+	 */
+	public void compile() {
+		compile(Configuration.getInstance().getCampaignsList());
+	}
+
+	/**
+	 * Compile the index from a list of campaigns.
+	 * @param campaigns List. The campaigns to index.
+	 */
+	public void compile(List<Campaign> campaigns) {
+		List<Creative> creatives = new ArrayList<Creative>();
+		Map<Creative, Integer> slots = new IdentityHashMap<Creative, Integer>();
+		for (Campaign campaign : campaigns) {
+			if (campaign.creatives == null)
+				continue;
+			for (Creative creative : campaign.creatives) {
+				if (!slots.containsKey(creative)) {
+					slots.put(creative, creatives.size());
+					creatives.add(creative);
+				}
+			}
+		}
+
+		int words = (creatives.size() + 63) >>> 6;
+		long[][] types = new long[16][words];
+		long[] anySize = new long[words];
+		long[] anyFormat = new long[words];
+		Map<Long, List<Integer>> exact = new HashMap<Long, List<Integer>>();
+		List<Integer> flexible = new ArrayList<Integer>();
+		for (int slot = 0; slot < creatives.size(); slot++) {
+			Creative creative = creatives.get(slot);
+			int need = needs(creative);
+			for (int t = 0; t < 16; t++) {
+				if ((t & need) == need)
+					set(types[t], slot);
+			}
+
+			Dimensions dims = creative.dimensions;
+			if (dims == null || dims.size() == 0)
+				set(anySize, slot);
+			if (dims == null && creative.w == null)
+				set(anyFormat, slot);
+			if (creative.w != null && creative.h != null)
+				exact.computeIfAbsent(key(creative.w, creative.h), k -> new ArrayList<Integer>()).add(slot);
+			if (dims == null)
+				continue;
+			boolean ranged = false;
+			for (Dimension d : dims) {
+				if (d.leftX >= 0 && d.leftX == d.rightX && d.leftY >= 0 && d.leftY == d.rightY) {
+					List<Integer> list = exact.computeIfAbsent(key(d.leftX, d.leftY), k -> new ArrayList<Integer>());
+					if (list.isEmpty() || list.get(list.size() - 1) != slot)
+						list.add(slot);
+				} else
+					ranged = true;
+			}
+			if (ranged)
+				flexible.add(slot);
+		}
+
+		Map<Long, int[]> map = new HashMap<Long, int[]>(exact.size() * 2);
+		exact.forEach((k, list) -> map.put(k, list.stream().mapToInt(Integer::intValue).toArray()));
+		int[] flex = flexible.stream().mapToInt(Integer::intValue).toArray();
+		Dimensions[] ranges = new Dimensions[flex.length];
+		for (int i = 0; i < flex.length; i++)
+			ranges[i] = creatives.get(flex[i]).dimensions;
+		current = new Slots(slots, types, anySize, anyFormat, map, flex, ranges);
+	}
+
+	/**
+	 * Return the number of creatives in the index.
+	 * @return int. The number of creatives.
+	 */
+	public int size() {
+		return current.slots.size();
+	}
+
+	/**
+	 * Return the impression types the creative needs, the ones its type nodes check.
+	 * @param creative Creative. The creative.
+	 * @return int. The type bits, 0 if any type will do.
+	 */
+	public static int needs(Creative creative) {
+		int need = 0;
+		if (creative.isBanner)
+			need |= BANNER;
+		if (creative.isVideo && creative.isVideo())
+			need |= VIDEO;
+		if (creative.isNative && creative.isNative())
+			need |= NATIVE;
+		if (creative.isAudio)
+			need |= AUDIO;
+		return need;
+	}
+
+	/**
+	 * Return the types of an impression.
+	 * @param imp Impression. The impression.
+	 * @return int. The type bits.
+	 */
+	public static int type(Impression imp) {
+		int type = imp.isBanner() ? BANNER : 0;
+		if (imp.video != null)
+			type |= VIDEO;
+		if (imp.audio != null)
+			type |= AUDIO;
+		if (imp.nativePart != null)
+			type |= NATIVE;
+		return type;
+	}
+
+	/**
+	 * Could the creative fit the impression?
+	 * @param imp Impression. The impression.
+	 * @param creative Creative. The creative.
+	 * @return boolean. False if the fixed nodes would turn it away, true if they might not.
+	 */
+	public boolean accepts(Impression imp, Creative creative) {
+		Slots slots = current;
+		Integer slot = slots.slots.get(creative);
+		if (slot == null) {
+			int need = needs(creative);
+			return (type(imp) & need) == need;
+		}
+		Candidates candidates = imp.formats;
+		if (candidates == null || candidates.slots != slots) {
+			candidates = new Candidates(slots, candidates(slots, imp));
+			imp.formats = candidates;
+		}
+		return (candidates.bits[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	/**
+	 * Return why the creative can't fit the impression, or null if it might.
+	 * @param imp Impression. The impression.
+	 * @param creative Creative. The creative.
+	 * @return String. The probe reason, or null.
+	 */
+	public String reject(Impression imp, Creative creative) {
+		if (accepts(imp, creative))
+			return null;
+		int missing = needs(creative) & ~type(imp);
+		if ((missing & VIDEO) != 0)
+			return Probe.BID_CREAT_IS_VIDEO;
+		if ((missing & NATIVE) != 0)
+			return Probe.BID_CREAT_IS_NATIVE;
+		if ((missing & BANNER) != 0)
+			return Probe.BID_CREAT_IS_BANNER;
+		if ((missing & AUDIO) != 0)
+			return Probe.BID_CREAT_IS_AUDIO;
+		return imp.format != null ? Probe.FORMAT_NOMATCH : Probe.WH_MATCH;
+	}
+
+	/**
+	 * Make the set of creatives that could fit an impression.
+	 */
+	static long[] candidates(Slots slots, Impression imp) {
+		long[] types = slots.types[type(imp)];
+		boolean sized = imp.w != null && imp.h != null;
+		boolean instl = imp.instl != null && imp.instl.intValue() == 1;
+		if (imp.nativePart != null || (imp.format == null && !sized) || (imp.format != null && instl)
+				|| (!sized && instl))
+			return types;
+
+		long[] bits;
+		if (imp.format != null) {
+			bits = slots.anyFormat.clone();
+			for (Format f : imp.format)
+				add(bits, slots.exact.get(key(f.w, f.h)));
+			if (sized)
+				add(bits, slots.exact.get(key(imp.w, imp.h)));
+			for (int i = 0; i < slots.flexible.length; i++) {
+				for (Format f : imp.format) {
+					if (slots.ranges[i].getBestFit(f.w, f.h) != null) {
+						set(bits, slots.flexible[i]);
+						break;
+					}
+				}
+			}
+		} else {
+			bits = slots.anySize.clone();
+			add(bits, slots.exact.get(key(imp.w, imp.h)));
+			for (int i = 0; i < slots.flexible.length; i++) {
+				if (slots.ranges[i].getBestFit(imp.w, imp.h) != null)
+					set(bits, slots.flexible[i]);
+			}
+		}
+		for (int i = 0; i < bits.length; i++)
+			bits[i] &= types[i];
+		return bits;
+	}
+
+	static long key(int w, int h) {
+		return ((long) w << 32) | (h & 0xffffffffL);
+	}
+
+	static void set(long[] bits, int slot) {
+		bits[slot >>> 6] |= 1L << slot;
+	}
+
+	static void add(long[] bits, int[] slots) {
+		if (slots == null)
+			return;
+		for (int slot : slots)
+			set(bits, slot);
+	}
+
+	/**
+	 * Return the number of creatives in a candidate set, for testing.
+	 * @param imp Impression. An impression that has been looked up.
+	 * @return int. The number of creatives that could fit it.
+	 */
+	public static int count(Impression imp) {
+		Candidates candidates = imp.formats;
+		if (candidates == null)
+			return -1;
+		return Arrays.stream(candidates.bits).mapToInt(Long::bitCount).sum();
+	}
+}
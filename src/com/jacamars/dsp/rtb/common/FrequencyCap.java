@@ -63,6 +63,9 @@ public class FrequencyCap implements Serializable, com.hazelcast.nio.serializati
 
 	protected static final Logger logger = LoggerFactory.getLogger(FrequencyCap.class);
 
+    /** When set, the cap counts come from here and not the bid cache, cap key to count. The Replay tool sets it */
+    public static volatile Map<String, Number> snapshot;
+
     /** Cap specification, a list of cap specification keys, e.q. ["device.ip"] */
     public List<String> capSpecification;
     
@@ -210,6 +213,11 @@ public class FrequencyCap implements Serializable, com.hazelcast.nio.serializati
      * @return int. The Integer value of the capSpec
      */
     public static int getCapValue(String capSpec) throws Exception {
+        Map<String, Number> frozen = snapshot;
+        if (frozen != null) {
+            Number cap = frozen.get(capSpec);
+            return cap != null ? cap.intValue() : -1;
+        }
         Number cap = (Number)Controller.bidCachePool.get(capSpec);
         return cap != null? cap.intValue() : -1;
     }
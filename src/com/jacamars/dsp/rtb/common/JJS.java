@@ -3,14 +3,35 @@ package com.jacamars.dsp.rtb.common;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
 /**
- * A class that encapsulates a Nashhorn script engine.
+ * A class that encapsulates a Nashhorn script engine. Nashorn is gone from the JDK since 15, so unless it is
+ * added to the classpath there is no engine. Node code goes through Expression first, and only what doesn't
+ * translate comes here.
  * @author Ben M. Faul
  *
  */
 public class JJS {
-	/** The script engine */
+	/** The script engine, null if there is none */
 	static ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+
+	/**
+	 * Is there a script engine?
+	 * @return boolean. True if Nashorn is on the classpath.
+	 */
+	public static boolean isAvailable() {
+		return engine != null;
+	}
+
+	/**
+	 * Compile code into an expression if it is in the expression language.
+	 * @param code String. The code.
+	 * @return Expression. The compiled code, or null if it needs the script engine.
+	 */
+	public static Expression compile(String code) {
+		return Expression.translate(code);
+	}
 	
 	
 	/**
@@ -48,8 +69,6 @@ public class JJS {
 	 * @throws Exception if the evaluation throws an exception in the script engine.
 	 */
 	public Object callExec(Object in) throws Exception{
-		String str = ("exec("+in+");");
-		System.out.println(str);
 		return engine.eval("exec("+in+");");
 	}
 	
@@ -62,5 +81,19 @@ public class JJS {
 	public Object exec(String str) throws Exception {
 		return engine.eval(str);
 	}
+
+	/**
+	 * Execute code with the bid request bound to br. The engine is shared, so this serializes.
+	 * @param str String. The code to execute.
+	 * @param br BidRequest. The bid request.
+	 * @return Object. The value of the code.
+	 * @throws Exception if the evaluation throws an exception in the script engine.
+	 */
+	public Object exec(String str, BidRequest br) throws Exception {
+		synchronized (engine) {
+			engine.put("br", br);
+			return engine.eval(str);
+		}
+	}
 	
 }
@@ -34,11 +34,14 @@ import com.jacamars.dsp.crosstalk.budget.CrosstalkConfig;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
 import com.jacamars.dsp.rtb.blocks.Bloom;
 import com.jacamars.dsp.rtb.blocks.LookingGlass;
+import com.jacamars.dsp.rtb.blocks.MappedSymbols;
 import com.jacamars.dsp.rtb.blocks.NavMap;
 import com.jacamars.dsp.rtb.blocks.SimpleSet;
+import com.jacamars.dsp.rtb.geo.GeoIndex;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.pojo.Impression;
 import com.jacamars.dsp.rtb.probe.Probe;
+import com.jacamars.dsp.rtb.tools.IABCategories;
 import com.jacamars.dsp.rtb.tools.JdbcTools;
 
 import org.slf4j.Logger;
@@ -157,6 +160,8 @@ public class Node implements Serializable {
 	
 	/** If this node contains geo information, it will be found here */
 	transient List<Point> points = new ArrayList<Point>();
+	/** Spatial index over points, built with the node */
+	transient GeoIndex fences;
 	/**
 	 * A convenient map to turn string operator references to their int conterparts
 	 */
@@ -244,6 +249,8 @@ public class Node implements Serializable {
 	transient String sval = null;
 	/** when the value is a set */
 	transient Set qval = null;
+	/** when the value is a list of categories, as a bitset */
+	transient long[] categoryBits = null;
 	/** when the value is a map */
 	transient Map mval = null;
 	/** When the value is a list */
@@ -251,6 +258,8 @@ public class Node implements Serializable {
 
 	/** if present will execute this JavaScript code */
 	protected String code = null;
+	/** the code compiled, null if it needs the script engine */
+	transient Expression expression = null;
 	/** context to execute in */
 	public JJS shell = null;
 	/** text name of the operator */
@@ -568,6 +577,11 @@ public class Node implements Serializable {
 			value = list;
 		}
 
+		categoryBits = null;
+		if ((operator == INTERSECTS || operator == NOT_INTERSECTS) && IABCategories.isPath(hierarchy)
+				&& value instanceof List && ((List) value).stream().allMatch(x -> x instanceof String))
+			categoryBits = IABCategories.bits((List<String>) value);
+
 		if (value instanceof Integer || value instanceof Double) {
 			ival = (Number) value;
 		}
@@ -656,6 +670,7 @@ public class Node implements Serializable {
 					points.add(p);
 				}
 			}
+			fences = buildFences(points);
 		}
 		/////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -726,15 +741,46 @@ public class Node implements Serializable {
 	 * @param operator  int. The operator to apply to this operation.
 	 * @param value     Object. The constant to test the value of the hierarchy
 	 *                  against.
-	 * @param code      String. The Java code to execute if node evaluates true.
+	 * @param code      String. The code to execute if node evaluates true, the
+	 *                  node is only true if the code is too. See Expression.
 	 * @param shell     JJS. the encapsulated Nashhorn context to use for this
-	 *                  operation.
-	 * @throws Exception if the value object is not recognized.
+	 *                  operation, if the code is not an expression.
+	 * @throws Exception if the value object is not recognized, or the code
+	 *                   doesn't compile.
 	 */
 	public Node(String name, String heirarchy, String operator, Object value, String code, JJS shell) throws Exception {
 		this(name, heirarchy, operator, value);
 		this.code = code;
 		this.shell = shell;
+		compileCode();
+	}
+
+	/**
+	 * Compile the code into an expression, once, when the campaign is compiled. Code outside of the expression
+	 * language is left to the script engine, if there is one.
+	 * @throws Exception if the code doesn't compile and there is no script engine.
+	 */
+	void compileCode() throws Exception {
+		expression = null;
+		if (code == null)
+			return;
+		expression = JJS.compile(code);
+		if (expression == null && (shell == null || !JJS.isAvailable()))
+			throw new Exception("Node " + name + " code is not an expression and there is no script engine: " + code);
+	}
+
+	/**
+	 * Run the code, if any, after the node tested true.
+	 * @param br BidRequest. The bid request.
+	 * @return boolean. True if there is no code or the code is true.
+	 * @throws Exception on script engine errors.
+	 */
+	boolean testCode(BidRequest br) throws Exception {
+		if (code == null)
+			return true;
+		if (expression != null)
+			return expression.test(br);
+		return Expression.truthy(shell.exec(code, br));
 	}
 
 	/**
@@ -798,7 +844,10 @@ public class Node implements Serializable {
 				b |= node.test(br, errorString);
 				if (b) {
 					operator = oldOperator;
-					return true;
+					if (testCode(br))
+						return true;
+					falseCount.incrementAndGet();
+					return false;
 				}
 			}
 			operator = oldOperator;
@@ -813,6 +862,10 @@ public class Node implements Serializable {
 			Map map = (Map) value;
 			brValue = map.get(key);
 			test = testInternal(brValue);
+		} else if (categoryBits != null && (operator == INTERSECTS || operator == NOT_INTERSECTS)
+				&& br.categories != null && br.categories.get(hierarchy) != null) {
+			boolean intersects = IABCategories.intersects(br.categories.get(hierarchy), categoryBits);
+			test = operator == INTERSECTS ? intersects : !intersects;
 		} else {
 			try {
 				if (hierarchy == null) {
@@ -833,6 +886,8 @@ public class Node implements Serializable {
 			}
 		}
 		operator = oldOperator;
+		if (test)
+			test = testCode(br);
 		if (!test) {
 			if (errorString != null) {
 				errorString.append(hierarchy + " resolved false");
@@ -992,6 +1047,9 @@ public class Node implements Serializable {
 					} else if (x instanceof SimpleSet) {
 						SimpleSet set = (SimpleSet) x;
 						t = set.getSet().contains(svalue);
+					} else if (x instanceof MappedSymbols) {
+						MappedSymbols ms = (MappedSymbols) x;
+						t = ms.contains(svalue);
 					}
 					
 					else {
@@ -1267,6 +1325,9 @@ public class Node implements Serializable {
 	public boolean computeInRange(Map<String, Double> pos) {
 		double plat = pos.get("lat");
 		double plon = pos.get("lon");
+		GeoIndex index = fences;
+		if (index != null && index.size() == points.size())
+			return index.inRange(plat, plon);
 		for (int i = 0; i < points.size(); i++) {
 			Point p = points.get(i);
 			double dist = getRange(p.lat, p.lon, plat, plon);
@@ -1276,6 +1337,24 @@ public class Node implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Build the spatial index of the geo fences, so INRANGE doesn't have to test every point.
+	 * @param points List. The fence centers and ranges.
+	 * @return GeoIndex. The index of the points.
+	 */
+	static GeoIndex buildFences(List<Point> points) {
+		double[] lat = new double[points.size()];
+		double[] lon = new double[points.size()];
+		double[] range = new double[points.size()];
+		for (int i = 0; i < points.size(); i++) {
+			Point p = points.get(i);
+			lat[i] = p.lat;
+			lon[i] = p.lon;
+			range[i] = p.range;
+		}
+		return new GeoIndex(lat, lon, range);
+	}
+
 	/**
 	 * Compute distance in meters between xlat,xlon and ylat,ylon
 	 * 
@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import com.jacamars.dsp.rtb.tools.XORShiftRandom;
+import com.jacamars.dsp.rtb.tools.RandomSource;
 
 /**
  * Singleton class to hold preshuffled campaigns.
@@ -16,8 +16,6 @@ public enum Preshuffle {
 
     // Shuffled list of campaigns
     volatile List<List<Campaign>> list = new ArrayList<List<Campaign>>();
-    // Fast random numbers
-    XORShiftRandom xor = new XORShiftRandom();
 
     /**
      * Return the instance of the pre shuffled campaigns.
@@ -38,7 +36,7 @@ public enum Preshuffle {
 
         for (int i=0; i<org.size();i++) {
             List<Campaign> x = new ArrayList<Campaign>(org);
-            Collections.shuffle(x);
+            Collections.shuffle(x, RandomSource.random());
             list.add(x);
         }
     }
@@ -48,10 +46,10 @@ public enum Preshuffle {
      * @return List. A list of campaigns to use in selection of a campaign.
      */
     public List<Campaign> getPreShuffledCampaignList() {
-        int x = xor.random(list.size());
-        if (list.size()==0)
+        List<List<Campaign>> lists = list;
+        if (lists.size()==0)
             return null;
 
-        return list.get(x);
+        return lists.get(RandomSource.nextInt(lists.size()));
     }
 }
@@ -0,0 +1,125 @@
+package com.jacamars.dsp.rtb.common;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How long each phase of the bidder's startup took: the JVM, reading the configuration, the symbol lists,
+ * joining the cluster, loading the campaigns, compiling, warming up and starting the listener. Phases are
+ * marked in order as they end. The campaign catch-up after a snapshot start runs after the bidder is ready,
+ * it is recorded separately and is not part of the total. Until it succeeds the report has caughtup false.
+ * @author Ben M. Faul
+ *
+ */
+public enum StartupReport {
+
+	INSTANCE;
+
+	// When the current phase started
+	long last;
+
+	// When the startup began, the JVM start
+	long start;
+
+	// When the bidder reported ready, 0 until then
+	long ready;
+
+	// Phase name to milliseconds, in order
+	final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+	// Phases that ran off the startup path
+	final Map<String, Long> background = new LinkedHashMap<String, Long>();
+
+	/**
+	 * Return the report.
+	 * @return StartupReport. The singleton.
+	 */
+	public static StartupReport getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Start over, the time since the JVM started is the "jvm" phase. Called when the bidder is constructed.
+	 */
+	public synchronized void begin() {
+		phases.clear();
+		background.clear();
+		ready = 0;
+		start = ManagementFactory.getRuntimeMXBean().getStartTime();
+		last = start;
+		mark("jvm");
+	}
+
+	/**
+	 * End a phase, it took the time since the last phase ended. Marking the same phase again adds to it.
+	 * @param phase String. The name of the phase.
+	 */
+	public synchronized void mark(String phase) {
+		long now = System.currentTimeMillis();
+		if (last == 0)
+			last = now;
+		phases.merge(phase, now - last, Long::sum);
+		last = now;
+	}
+
+	/**
+	 * End the last phase, the bidder is taking traffic.
+	 * @param phase String. The name of the last phase.
+	 */
+	public synchronized void ready(String phase) {
+		mark(phase);
+		ready = last;
+	}
+
+	/**
+	 * Record a phase that ran in the background.
+	 * @param phase String. The name of the phase.
+	 * @param millis long. How long it took.
+	 */
+	public synchronized void background(String phase, long millis) {
+		background.put(phase, millis);
+	}
+
+	/**
+	 * Return the phases, in order.
+	 * @return Map. Phase to milliseconds.
+	 */
+	public synchronized Map<String, Long> getPhases() {
+		return new LinkedHashMap<String, Long>(phases);
+	}
+
+	/**
+	 * Return the time to ready.
+	 * @return long. Milliseconds from the JVM start to ready, or to the last phase if not ready yet.
+	 */
+	public synchronized long getTotal() {
+		return (ready == 0 ? last : ready) - start;
+	}
+
+	/**
+	 * Return the report, as it appears in the summary.
+	 * @return Map. The phases, the total and the background phases.
+	 */
+	public synchronized Map<String, Object> getReport() {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("phases", new LinkedHashMap<String, Long>(phases));
+		m.put("total", getTotal());
+		m.put("ready", ready != 0);
+		m.put("caughtup", StartupSnapshot.getInstance().isCaughtUp());
+		if (background.size() != 0)
+			m.put("background", new LinkedHashMap<String, Long>(background));
+		return m;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Long> e : phases.entrySet())
+			sb.append(e.getKey()).append(" ").append(e.getValue()).append(" ms, ");
+		sb.append("total ").append(getTotal()).append(" ms");
+		for (Map.Entry<String, Long> e : background.entrySet())
+			sb.append(", ").append(e.getKey()).append(" ").append(e.getValue()).append(" ms in the background");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,442 @@
+package com.jacamars.dsp.rtb.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.jacamars.dsp.rtb.bidder.CampaignProcessor;
+import com.jacamars.dsp.rtb.bidder.CampaignSelector;
+import com.jacamars.dsp.rtb.bidder.RTBServer;
+import com.jacamars.dsp.rtb.blocks.SymbolStore;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.BidResponse;
+import com.jacamars.dsp.rtb.tools.CompileSymbols;
+import com.jacamars.dsp.rtb.tools.DbTools;
+
+/**
+ * A local snapshot of what the bidder needs before it can bid, so a new bidder doesn't wait on the database
+ * or the cluster. The snapshot holds the running campaigns, in the JSON form the campaign cache uses, and the
+ * CIDR, range and set lists compiled to memory mapped symbol files. A bidder started with a snapshot loads
+ * the compiled lists whose source checksum still matches, starts with the snapshot's campaigns, and catches
+ * up with the cache in the background once it is taking traffic. A catch-up that fails is retried, backing
+ * off up to retry seconds between tries, and until it succeeds the startup report says the bidder is not
+ * caught up. Before it reports ready it runs the configured sample requests through the bid path, so the
+ * first real requests don't run interpreted.
+ * <p>
+ * Configured in the config file as:
+ * <pre>
+ * "snapshot": {
+ *     "file": "data/bidder.snapshot",
+ *     "interval": 300,
+ *     "maxage": 900,
+ *     "retry": 60,
+ *     "rounds": 1000,
+ *     "warmup": { "/rtb/bids/nexage": "SampleBids/nexage.txt" }
+ * }
+ * </pre>
+ * The running bidder rewrites the file every interval seconds. A snapshot older than maxage seconds, or of
+ * another version, is ignored and the bidder starts the slow way. The snapshot's campaigns are bid on until
+ * the catch-up succeeds, so keep maxage a few intervals, not a day.
+ * @author Ben M. Faul
+ *
+ */
+public enum StartupSnapshot {
+
+	INSTANCE;
+
+	/** The snapshot format, a snapshot of another version is ignored */
+	public static final int VERSION = 1;
+
+	static final Logger logger = LoggerFactory.getLogger(StartupSnapshot.class);
+
+	/** The snapshot file, null if there is none */
+	public volatile String fileName;
+
+	/** Seconds between writes of the snapshot, 0 to never write it */
+	public volatile long interval = 300;
+
+	/** Milliseconds a snapshot is good for, three write intervals */
+	public volatile long maxAge = 900 * 1000L;
+
+	/** Longest wait between catch-up tries, in milliseconds */
+	public volatile long retry = 60 * 1000L;
+
+	/** How many times each warm-up request is run */
+	public volatile int rounds = 1000;
+
+	/** Warm-up requests, endpoint to sample file */
+	public final Map<String, String> warmup = new LinkedHashMap<String, String>();
+
+	// The snapshot read at startup, null if none
+	volatile JsonNode loaded;
+
+	// Writes the snapshot
+	ScheduledExecutorService writer;
+
+	// The catch-up with the campaign cache, null if there is none to run
+	Callable<?> catchup;
+
+	// False from a snapshot start until the catch-up succeeds
+	volatile boolean caughtUp = true;
+
+	/**
+	 * Return the snapshot.
+	 * @return StartupSnapshot. The singleton.
+	 */
+	public static StartupSnapshot getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Configure from the "snapshot" object of the config file, and read the snapshot if there is one.
+	 * @param m Map. The snapshot configuration.
+	 */
+	public void configure(Map<?, ?> m) {
+		fileName = (String) m.get("file");
+		if (m.get("interval") != null)
+			interval = ((Number) m.get("interval")).longValue();
+		if (m.get("maxage") != null)
+			maxAge = ((Number) m.get("maxage")).longValue() * 1000;
+		if (m.get("rounds") != null)
+			rounds = ((Number) m.get("rounds")).intValue();
+		if (m.get("retry") != null)
+			retry = ((Number) m.get("retry")).longValue() * 1000;
+		warmup.clear();
+		if (m.get("warmup") != null) {
+			Map<?, ?> w = (Map<?, ?>) m.get("warmup");
+			for (Map.Entry<?, ?> e : w.entrySet())
+				warmup.put(e.getKey().toString(), e.getValue().toString());
+		}
+		if (fileName != null)
+			read(fileName);
+	}
+
+	/**
+	 * Read a snapshot.
+	 * @param file String. The snapshot file.
+	 * @return boolean. True if it can be used, false if it is missing, stale, of another version or corrupt.
+	 */
+	public synchronized boolean read(String file) {
+		loaded = null;
+		File f = new File(file);
+		if (!f.exists()) {
+			logger.info("*** No startup snapshot at {}", file);
+			return false;
+		}
+		try (InputStream is = new GZIPInputStream(new FileInputStream(f))) {
+			JsonNode root = DbTools.mapper.readTree(is);
+			if (root.path("version").asInt() != VERSION) {
+				logger.warn("*** Startup snapshot {} is version {}, expected {}, ignored", file,
+						root.path("version").asInt(), VERSION);
+				return false;
+			}
+			long age = System.currentTimeMillis() - root.path("created").asLong();
+			if (maxAge > 0 && age > maxAge) {
+				logger.warn("*** Startup snapshot {} is {} seconds old, ignored", file, age / 1000);
+				return false;
+			}
+			loaded = root;
+			logger.info("*** Startup snapshot {}, {} campaigns, {} compiled symbols, {} seconds old", file,
+					root.path("campaigns").size(), root.path("symbols").size(), age / 1000);
+			return true;
+		} catch (Exception error) {
+			logger.warn("*** Startup snapshot {} is unusable: {}", file, error.toString());
+			return false;
+		}
+	}
+
+	/**
+	 * Is there a snapshot to start from?
+	 * @return boolean. True if a snapshot was read.
+	 */
+	public boolean isLoaded() {
+		return loaded != null;
+	}
+
+	/**
+	 * Return the compiled file of a symbol list, if the snapshot has one made from the same source.
+	 * @param name String. The symbol name, with the @.
+	 * @param crc String. The checksum of the source file.
+	 * @return String. The compiled file, or null to load the source.
+	 */
+	public String compiled(String name, String crc) {
+		JsonNode root = loaded;
+		if (root == null || crc == null)
+			return null;
+		JsonNode s = root.path("symbols").get(name);
+		if (s == null || !crc.equalsIgnoreCase(s.path("crc").asText()))
+			return null;
+		String path = s.path("compiled").asText();
+		return new File(path).exists() ? path : null;
+	}
+
+	/**
+	 * Return the snapshot's campaigns, made the way the campaign cache makes them. They are handed out once,
+	 * after that the cache is the source.
+	 * @return List. The campaigns, or null if there is no snapshot or they were already taken.
+	 */
+	public synchronized List<Campaign> getCampaigns() {
+		JsonNode root = loaded;
+		if (root == null)
+			return null;
+		JsonNode array = ((ObjectNode) root).remove("campaigns");
+		if (array == null)
+			return null;
+		List<Campaign> list = new ArrayList<Campaign>();
+		for (JsonNode node : array) {
+			try {
+				Campaign camp = DbTools.mapper.treeToValue(node, Campaign.class);
+				Campaign c = new Campaign();
+				c.overwrite(camp);
+				list.add(c);
+			} catch (Exception error) {
+				logger.warn("Snapshot campaign {} skipped: {}", node.path("id"), error.toString());
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Write the snapshot of the running bidder. Nothing is written until it has caught up with the campaign
+	 * cache, its campaigns would otherwise be saved again as new and outlive the maxage.
+	 * @throws Exception on I/O or compile errors.
+	 */
+	public void write() throws Exception {
+		if (!caughtUp) {
+			logger.info("Startup snapshot {} not written, not caught up with the campaign cache", fileName);
+			return;
+		}
+		Configuration config = Configuration.getInstance();
+		write(fileName, config.getCampaignsList(), config.filesList);
+	}
+
+	/**
+	 * Write a snapshot. The lists that can be compiled are compiled next to it, in file.symbols, unless the
+	 * compiled file for the source's checksum is already there. The snapshot is replaced in one move.
+	 * @param file String. The snapshot file.
+	 * @param campaigns List. The campaigns.
+	 * @param lists List. The "lists" of the config file, may be null.
+	 * @throws Exception on I/O or compile errors.
+	 */
+	public synchronized void write(String file, List<Campaign> campaigns, List<Map> lists) throws Exception {
+		long time = System.currentTimeMillis();
+		ObjectNode root = DbTools.mapper.createObjectNode();
+		root.put("version", VERSION);
+		root.put("created", time);
+		root.put("instance", Configuration.instanceName);
+		ArrayNode camps = root.putArray("campaigns");
+		for (Campaign c : campaigns)
+			camps.add(DbTools.mapper.valueToTree(c));
+
+		ObjectNode symbols = root.putObject("symbols");
+		File dir = new File(file + ".symbols");
+		Set<String> keep = new HashSet<String>();
+		for (Map m : lists == null ? new ArrayList<Map>() : lists) {
+			String source = (String) m.get("filename");
+			String name = (String) m.get("name");
+			if (source == null || source.length() == 0 || name == null || Boolean.TRUE.equals(m.get("delta")))
+				continue;
+			if (!name.startsWith("@"))
+				name = "@" + name;
+			String kind = kind(name, (String) m.get("type"));
+			if (kind == null)
+				continue;
+			String crc = SymbolStore.checksum(source);
+			dir.mkdirs();
+			File out = new File(dir, name.substring(1) + "-" + crc + ".sym");
+			// The symbol file is written to a temporary file of its own and moved in
+			if (!out.exists())
+				CompileSymbols.compile(kind, source, out.getPath(), 0.003);
+			ObjectNode s = symbols.putObject(name);
+			s.put("source", source);
+			s.put("crc", crc);
+			s.put("compiled", out.getPath());
+			keep.add(out.getName());
+		}
+
+		// The bidders on a host can share the snapshot, each writes a file of its own and moves it in
+		File target = new File(file).getAbsoluteFile();
+		File part = Files.createTempFile(target.getParentFile().toPath(), target.getName(), ".part").toFile();
+		try {
+			try (OutputStream os = new GZIPOutputStream(new FileOutputStream(part))) {
+				os.write(DbTools.mapper.writeValueAsBytes(root));
+			}
+			Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(part.toPath());
+		}
+
+		// Compiled files of old sources, bidders that mapped them keep their mapping
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.getName().endsWith(".sym") && !keep.contains(f.getName()))
+					f.delete();
+			}
+		}
+		logger.info("Startup snapshot {} written, {} campaigns, {} compiled symbols, {} ms", file, camps.size(),
+				symbols.size(), System.currentTimeMillis() - time);
+	}
+
+	/**
+	 * Which CompileSymbols type a list compiles to. Blooms are left alone, the IDL operator needs a Bloom, and
+	 * so is the master CIDR list, which must be a NavMap.
+	 * @param name String. The symbol name.
+	 * @param type String. The type in the config file.
+	 * @return String. "range" or "set", or null if the list is loaded from its source.
+	 */
+	static String kind(String name, String type) {
+		if (type == null || name.equals("@MASTERCIDR"))
+			return null;
+		String t = type.toLowerCase();
+		if (t.contains("compiled"))
+			return null;
+		if (t.contains("cidr") || t.contains("range"))
+			return "range";
+		if (t.endsWith("simpleset"))
+			return "set";
+		return null;
+	}
+
+	/**
+	 * Write the snapshot every interval seconds, if there is a file and an interval.
+	 */
+	public synchronized void startWriter() {
+		if (writer != null || fileName == null || interval <= 0)
+			return;
+		writer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "snapshot-writer");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		writer.scheduleWithFixedDelay(() -> {
+			try {
+				write();
+			} catch (Exception error) {
+				logger.error("Startup snapshot {} not written: {}", fileName, error.toString());
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Set the catch-up with the campaign cache, run by startCatchUp() once the bidder is taking traffic.
+	 * @param task Callable. Loads the campaigns from the cache and recompiles, returns the number loaded.
+	 */
+	public synchronized void catchUp(Callable<?> task) {
+		catchup = task;
+		caughtUp = false;
+	}
+
+	/**
+	 * Run the catch-up in the background, if there is one, trying again until it succeeds.
+	 */
+	public synchronized void startCatchUp() {
+		Callable<?> task = catchup;
+		catchup = null;
+		if (task == null)
+			return;
+		Thread thread = new Thread(() -> {
+			long time = System.currentTimeMillis();
+			long wait = Math.min(1000, Math.max(1, retry));
+			for (int tries = 1;; tries++) {
+				try {
+					Object n = task.call();
+					time = System.currentTimeMillis() - time;
+					caughtUp = true;
+					StartupReport.getInstance().background("catchup", time);
+					logger.info("*** Caught up with the campaign cache, {} campaigns, {} ms, {} tries", n, time, tries);
+					return;
+				} catch (Exception error) {
+					logger.error("Campaign catch up failed, try {}, again in {} ms: {}", tries, wait, error.toString());
+				}
+				try {
+					Thread.sleep(wait);
+				} catch (InterruptedException error) {
+					return;
+				}
+				wait = Math.min(wait * 2, Math.max(1, retry));
+			}
+		}, "snapshot-catchup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Has the bidder caught up with the campaign cache?
+	 * @return boolean. False from a snapshot start until the catch-up succeeds, true otherwise.
+	 */
+	public boolean isCaughtUp() {
+		return caughtUp;
+	}
+
+	/**
+	 * Run the warm-up requests through the bid path, rounds times each, so the JIT has compiled it before
+	 * the bidder takes traffic. Nothing is sent or recorded, and the probe counts are cleared after.
+	 * @return int. The number of requests run.
+	 */
+	public int warmup() {
+		if (warmup.size() == 0 || rounds <= 0)
+			return 0;
+		List<BidRequest> exchanges = new ArrayList<BidRequest>();
+		List<byte[]> bodies = new ArrayList<byte[]>();
+		for (Map.Entry<String, String> e : warmup.entrySet()) {
+			BidRequest x = RTBServer.exchanges.get(e.getKey());
+			if (x == null) {
+				logger.warn("Warm-up endpoint {} is not configured", e.getKey());
+				continue;
+			}
+			try {
+				bodies.add(Files.readAllBytes(Paths.get(e.getValue())));
+				exchanges.add(x);
+			} catch (Exception error) {
+				logger.warn("Warm-up request {} not read: {}", e.getValue(), error.toString());
+			}
+		}
+
+		int n = 0;
+		for (int i = 0; i < rounds; i++) {
+			for (int j = 0; j < bodies.size(); j++) {
+				try {
+					BidRequest br = exchanges.get(j).copy(new ByteArrayInputStream(bodies.get(j)));
+					if (!br.notABidRequest()) {
+						BidResponse resp = CampaignSelector.getInstance().getMaxConnections(br);
+						if (resp != null)
+							resp.toString();
+					}
+					n++;
+				} catch (Exception error) {
+					if (i == 0)
+						logger.warn("Warm-up request to {} failed: {}", exchanges.get(j).getExchange(), error.toString());
+				}
+			}
+		}
+		CampaignProcessor.probe.reset();
+		return n;
+	}
+}
@@ -0,0 +1,270 @@
+package com.jacamars.dsp.rtb.exchanges;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The HMAC-SHA1 price and id encryption used by Google/AdX and OpenX, with the expensive parts done
+ * once. Each thread gets its own pair of Macs, already initialized with the exchange's encryption and
+ * integrity keys, and its own scratch buffers, so a win notice costs two HMACs and no provider lookups.
+ * <p>
+ * The results are the same as Decrypter.decrypt() and SsRtbCrypter, byte for byte. Create one context
+ * per key pair and keep it, uses() tells the holder when the keys it was made from were replaced.
+ * @author Ben M. Faul
+ *
+ */
+public class CryptoContext {
+
+	static final String HMAC_SHA1 = "HmacSHA1";
+	/** Size of the initialization vector at the front of the ciphertext */
+	public static final int IV_SIZE = 16;
+	/** Size of the signature at the end of the ciphertext */
+	public static final int SIGNATURE_SIZE = 4;
+	/** Size of an encrypted price */
+	public static final int PRICE_SIZE = 8;
+	// Bytes of pad per HMAC
+	static final int BLOCK_SIZE = 20;
+	// The longest base 64 text of an encrypted price, padded
+	static final int PRICE_TEXT_SIZE = 4 * ((IV_SIZE + PRICE_SIZE + SIGNATURE_SIZE + 2) / 3);
+
+	// Web safe and standard base 64 alphabets to values, -1 for everything else
+	static final int[] DECODE = new int[128];
+	static {
+		Arrays.fill(DECODE, -1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+		for (int i = 0; i < alphabet.length(); i++)
+			DECODE[alphabet.charAt(i)] = i;
+		DECODE['+'] = DECODE['-'] = 62;
+		DECODE['/'] = DECODE['_'] = 63;
+	}
+
+	// What the caller made us from, for uses()
+	final Object encryptionRef, integrityRef;
+	final SecretKey encryptionKey, integrityKey;
+
+	// Per thread Macs and buffers
+	final ThreadLocal<State> state = ThreadLocal.withInitial(() -> new State());
+
+	/**
+	 * The per thread part.
+	 */
+	final class State {
+		final Mac encrypt;
+		final Mac integrity;
+		final byte[] pad = new byte[BLOCK_SIZE];
+		final byte[] iv = new byte[IV_SIZE + 8];
+		final byte[] price = new byte[PRICE_SIZE];
+		final byte[] decoded = new byte[64];
+
+		State() {
+			try {
+				encrypt = Mac.getInstance(HMAC_SHA1);
+				encrypt.init(encryptionKey);
+				integrity = Mac.getInstance(HMAC_SHA1);
+				integrity.init(integrityKey);
+			} catch (GeneralSecurityException error) {
+				throw new RuntimeException("HmacSHA1 not usable: " + error.getMessage(), error);
+			}
+		}
+	}
+
+	/**
+	 * Create a context from raw key bytes.
+	 * @param encryptionKey byte[]. The encryption key.
+	 * @param integrityKey byte[]. The integrity key.
+	 */
+	public CryptoContext(byte[] encryptionKey, byte[] integrityKey) {
+		this.encryptionRef = encryptionKey;
+		this.integrityRef = integrityKey;
+		this.encryptionKey = new SecretKeySpec(encryptionKey, HMAC_SHA1);
+		this.integrityKey = new SecretKeySpec(integrityKey, HMAC_SHA1);
+	}
+
+	/**
+	 * Create a context from keys.
+	 * @param encryptionKey SecretKey. The encryption key.
+	 * @param integrityKey SecretKey. The integrity key.
+	 */
+	public CryptoContext(SecretKey encryptionKey, SecretKey integrityKey) {
+		this.encryptionRef = encryptionKey;
+		this.integrityRef = integrityKey;
+		this.encryptionKey = encryptionKey;
+		this.integrityKey = integrityKey;
+	}
+
+	/**
+	 * Return true if this context was made from these very objects. Identity, not content, so it
+	 * costs nothing on the win path.
+	 * @param encryptionKey Object. The byte[] or SecretKey the caller holds now.
+	 * @param integrityKey Object. The byte[] or SecretKey the caller holds now.
+	 * @return boolean. True if the context can be used for these keys.
+	 */
+	public boolean uses(Object encryptionKey, Object integrityKey) {
+		return encryptionRef == encryptionKey && integrityRef == integrityKey;
+	}
+
+	/**
+	 * Decode and decrypt a price, the web safe base 64 text of the win macro.
+	 * @param websafe CharSequence. The encrypted price, padded or not.
+	 * @return long. The price, in the exchange's micros.
+	 * @throws Exception if the text is not base 64, is the wrong size or the signature doesn't match.
+	 */
+	public long decryptPrice(CharSequence websafe) throws Exception {
+		// Too long for the decode buffer, and for a price
+		if (websafe.length() > PRICE_TEXT_SIZE)
+			throw new Exception("Encrypted price has " + websafe.length() * 3 / 4 + " bytes: " + websafe);
+		State s = state.get();
+		int n = decodeWebSafe(websafe, s.decoded, 0);
+		if (n != IV_SIZE + PRICE_SIZE + SIGNATURE_SIZE)
+			throw new Exception("Encrypted price has " + n + " bytes: " + websafe);
+		decrypt(s, s.decoded, 0, n, s.price);
+		long value = 0;
+		for (int i = 0; i < PRICE_SIZE; i++)
+			value = (value << 8) | (s.price[i] & 0xff);
+		return value;
+	}
+
+	/**
+	 * Decrypt a value of any length, for example hyperlocal or advertising ids.
+	 * @param ciphertext byte[]. {iv (16 bytes)}{ciphertext}{signature (4 bytes)}.
+	 * @return byte[]. The plain text.
+	 * @throws Exception if the signature doesn't match.
+	 */
+	public byte[] decrypt(byte[] ciphertext) throws Exception {
+		int length = ciphertext.length - IV_SIZE - SIGNATURE_SIZE;
+		if (length < 0)
+			throw new RuntimeException("The plain text length can't be negative.");
+		byte[] plaintext = new byte[length];
+		decrypt(state.get(), ciphertext, 0, ciphertext.length, plaintext);
+		return plaintext;
+	}
+
+	/**
+	 * Decrypt into the caller's buffer.
+	 * @param ciphertext byte[]. The buffer holding the ciphertext.
+	 * @param off int. Start of the ciphertext.
+	 * @param len int. Length of the ciphertext, iv and signature included.
+	 * @param plaintext byte[]. Receives len - 20 bytes.
+	 * @throws Exception if the signature doesn't match.
+	 */
+	public void decrypt(byte[] ciphertext, int off, int len, byte[] plaintext) throws Exception {
+		if (len < IV_SIZE + SIGNATURE_SIZE)
+			throw new RuntimeException("The plain text length can't be negative.");
+		decrypt(state.get(), ciphertext, off, len, plaintext);
+	}
+
+	/**
+	 * Decrypt with this thread's Macs.
+	 * @param s State. This thread's Macs.
+	 * @param ciphertext byte[]. The buffer holding the ciphertext.
+	 * @param off int. Start of the ciphertext.
+	 * @param len int. Length of the ciphertext, iv and signature included.
+	 * @param plaintext byte[]. Receives len - 20 bytes.
+	 * @throws Exception if the signature doesn't match.
+	 */
+	void decrypt(State s, byte[] ciphertext, int off, int len, byte[] plaintext) throws Exception {
+		int length = len - IV_SIZE - SIGNATURE_SIZE;
+		int end = off + IV_SIZE + length;
+		byte[] iv = s.iv;
+		System.arraycopy(ciphertext, off, iv, 0, IV_SIZE);
+		int ivLength = IV_SIZE;
+
+		// Pad blocks are HMAC(iv), then HMAC(iv + counter byte), the counter growing by a byte when it wraps
+		boolean addCounterByte = true;
+		for (int c = off + IV_SIZE, p = 0; c < end;) {
+			s.encrypt.update(iv, 0, ivLength);
+			s.encrypt.doFinal(s.pad, 0);
+			for (int i = 0; i < BLOCK_SIZE && c != end;)
+				plaintext[p++] = (byte) (ciphertext[c++] ^ s.pad[i++]);
+
+			if (!addCounterByte)
+				addCounterByte = ++iv[ivLength - 1] == 0;
+			if (addCounterByte) {
+				addCounterByte = false;
+				if (ivLength == iv.length)
+					iv = Arrays.copyOf(iv, ivLength + 1);
+				iv[ivLength++] = 0;
+			}
+		}
+
+		s.integrity.update(plaintext, 0, length);
+		s.integrity.update(ciphertext, off, IV_SIZE);
+		s.integrity.doFinal(s.pad, 0);
+		int diff = 0;
+		for (int i = 0; i < SIGNATURE_SIZE; i++)
+			diff |= s.pad[i] ^ ciphertext[end + i];
+		if (diff != 0)
+			throw new Exception("Signature mismatch.");
+	}
+
+	/**
+	 * Encrypt an 8 byte value the way SsRtbCrypter does.
+	 * @param unciphered byte[]. The 8 bytes.
+	 * @param iv byte[]. The 16 byte initialization vector.
+	 * @param out byte[]. Receives iv, ciphertext and signature, 28 bytes.
+	 */
+	public void encrypt(byte[] unciphered, byte[] iv, byte[] out) {
+		State s = state.get();
+		try {
+			System.arraycopy(iv, 0, out, 0, IV_SIZE);
+			s.encrypt.update(iv, 0, IV_SIZE);
+			s.encrypt.doFinal(s.pad, 0);
+			for (int i = 0; i < PRICE_SIZE; i++)
+				out[IV_SIZE + i] = (byte) (s.pad[i] ^ unciphered[i]);
+
+			s.integrity.update(unciphered, 0, PRICE_SIZE);
+			s.integrity.update(out, 0, IV_SIZE);
+			s.integrity.doFinal(s.pad, 0);
+			System.arraycopy(s.pad, 0, out, IV_SIZE + PRICE_SIZE, SIGNATURE_SIZE);
+		} catch (ShortBufferException error) {
+			throw new RuntimeException(error);
+		}
+	}
+
+	/**
+	 * Decode web safe (or standard) base 64 into the caller's buffer. Padding is optional. The inner
+	 * loop has no data dependent branches, bad characters are collected in a flag and reported at the
+	 * end.
+	 * @param text CharSequence. The base 64 text.
+	 * @param out byte[]. Receives the bytes, must hold len * 3 / 4.
+	 * @param off int. Where to start writing.
+	 * @return int. The number of bytes written, or -1 if the text isn't base 64.
+	 */
+	public static int decodeWebSafe(CharSequence text, byte[] out, int off) {
+		int len = text.length();
+		while (len > 0 && text.charAt(len - 1) == '=')
+			len--;
+		int tail = len & 3;
+		if (tail == 1)
+			return -1;
+
+		int bad = 0;
+		int o = off;
+		int full = len - tail;
+		for (int i = 0; i < full; i += 4) {
+			int a = text.charAt(i), b = text.charAt(i + 1), c = text.charAt(i + 2), d = text.charAt(i + 3);
+			int va = DECODE[a & 0x7f], vb = DECODE[b & 0x7f], vc = DECODE[c & 0x7f], vd = DECODE[d & 0x7f];
+			bad |= ((a | b | c | d) & ~0x7f) | ((va | vb | vc | vd) & ~0x3f);
+			int bits = (va << 18) | (vb << 12) | (vc << 6) | vd;
+			out[o] = (byte) (bits >> 16);
+			out[o + 1] = (byte) (bits >> 8);
+			out[o + 2] = (byte) bits;
+			o += 3;
+		}
+		if (tail != 0) {
+			int a = text.charAt(full), b = text.charAt(full + 1), c = tail == 3 ? text.charAt(full + 2) : 'A';
+			int va = DECODE[a & 0x7f], vb = DECODE[b & 0x7f], vc = DECODE[c & 0x7f];
+			bad |= ((a | b | c) & ~0x7f) | ((va | vb | vc) & ~0x3f);
+			int bits = (va << 18) | (vb << 12) | (vc << 6);
+			out[o++] = (byte) (bits >> 16);
+			if (tail == 3)
+				out[o++] = (byte) (bits >> 8);
+		}
+		return bad != 0 ? -1 : o - off;
+	}
+}
@@ -12,10 +12,11 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.codec.binary.Base64;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.protobuf.ByteString;
 import com.jacamars.dsp.rtb.bidder.Controller;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
@@ -29,442 +30,50 @@ import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.BidResponse
 import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.Device;
 import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.Mobile;
 import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.AdSlot.MatchingAdData;
-import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.AdSlot.SlotVisibility;
 import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.AdSlot.MatchingAdData.DirectDeal;
 import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.Device.OsVersion;
 import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.Hyperlocal.Point;
-import com.jacamars.dsp.rtb.exchanges.adx.RealtimeBidding.BidRequest.Video.VideoFormat;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.pojo.BidResponse;
 import com.jacamars.dsp.rtb.pojo.Impression;
 import com.jacamars.dsp.rtb.pojo.Video;
 import com.jacamars.dsp.rtb.tools.GeoPatch;
 
-interface Command {
-	void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map db, String key) throws Exception;
-}
-
 public class AdxBidRequest extends BidRequest {
 
 	public static byte e_key[];
 	public static byte i_key[];
 
-	static Map<String, Command> methodMap = new HashMap<String, Command>();
-
 	static AdxGeoCodes lookingGlass = (AdxGeoCodes) LookingGlass.symbols.get("@ADXGEO");
 
-	static {
-
-		methodMap.put("device", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) throws Exception {
-				String ip = AdxBidRequest.convertIp(x.getIp());
-				String ua = x.getUserAgent();
-
-				ObjectNode device = AdxBidRequest.factory.objectNode();
-				device.put("ua", ua);
-				device.put("ip", ip);
-				root.set("device", device);
-				
-				Mobile m = x.getMobile();
-				if (m != null) {
-					ObjectNode app = null;
-					if (m.getIsApp() == true) {
-						app = (ObjectNode) root.get("app");
-						if (app == null) {
-							app = AdxBidRequest.factory.objectNode();
-						}
-						root.set("app", app);
-						app.put("name", m.getAppName());
-						br.siteName = m.getAppName();
-						String apid = m.getAppId();
-						app.put("id", apid);
-						br.siteId = apid;
-					} else {
-						app = AdxBidRequest.factory.objectNode();
-						root.set("site", app);
-					}
-
-					if (m.hasEncryptedHashedIdfa()) {
-						ByteString bs = m.getEncryptedHashedIdfa();
-						byte[] barry = bs.toByteArray();
-						String adId = null;
-						try {
-							adId = AdxWinObject.decryptIfa(barry);
-							device.put("ifa", adId);
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-
-					}
-
-					if (m.hasEncryptedAdvertisingId()) {
-						ByteString bs = m.getEncryptedAdvertisingId();
-						byte[] barry = bs.toByteArray();
-						String id;
-						try {
-							id = AdxWinObject.decryptAdvertisingId(barry);
-							device.put("ifa", id);
-						} catch (Exception e) {
-							if (! RTBServer.spurious("AdxBidRequest.encryptedadid", 60)) {
-								e.printStackTrace();
-							}
-						}
-					}
-
-				} else {
-					// Site, not mobile
-				}
-
-				Device dev = x.getDevice();
-				if (device != null) {
-					if (dev.hasBrand())
-						device.put("make", dev.getBrand());
-					if (dev.hasScreenWidth())
-						device.put("w", dev.getScreenWidth());
-					if (dev.hasScreenHeight())
-						device.put("h", dev.getScreenHeight());
-
-	
-					if (dev.hasDeviceType()) {
-						device.put("devicetype", DeviceType.adxToRtb(dev.getDeviceType().toString()));
-					} else
-						device.put("devicetype", DeviceType.MobileTablet);
-
-					if (dev.hasModel()) {
-						device.set("model", BidRequest.factory.textNode(dev.getModel()));
-					}
-					if (dev.hasCarrierId()) {
-						device.set("carrier", BidRequest.factory.numberNode(dev.getCarrierId()));
-					}
-
-					if (dev.hasPlatform()) {
-						device.put("os", dev.getPlatform());
-					}
-
-					if (dev.hasOsVersion()) {
-						OsVersion osv = dev.getOsVersion();
-						StringBuilder sb = new StringBuilder();
-						if (osv.hasMajor()) {
-							sb.append(osv.getMajor());
-						}
-						if (osv.hasMinor()) {
-							sb.append(".");
-							sb.append(osv.getMinor());
-						}
-						if (osv.hasMicro()) {
-							sb.append(".");
-							sb.append(osv.getMicro());
-						}
-						device.set("osv", BidRequest.factory.textNode(sb.toString()));
-					}
-				} else {
-					device.put("language", x.getDetectedLanguage(0));
-					device.put("devicetype", DeviceType.PersonalComputer);
-				}
-
-				ObjectNode geo = BidRequest.factory.objectNode();
-				device.set("geo", geo);
-				String postal = null;
-				if (x.hasPostalCode()) {
-					postal = x.getPostalCode();
-					geo.put("zip", postal);
-				}
-
-				if (x.hasGeoCriteriaId() && lookingGlass != null) {
-					Integer geoKey = x.getGeoCriteriaId();
-					AdxGeoCode item = lookingGlass.query(geoKey);
-					if (item != null) {
-						String type = item.type.toLowerCase();
-						if (type.equals("city")) {
-							LookingGlass cz = (LookingGlass) LookingGlass.symbols.get("@ZIPCODES");
-
-							if (cz != null && postal != null) {
-								String[] parts = (String[]) cz.query(postal);
-								if (parts != null) {
-									geo.put("city", parts[3]);
-									geo.put("state", parts[4]);
-									geo.put("region", parts[5]);
-								}
-							} else {
-								if (GeoPatch.getInstance() != null) {
-									GeoPatch.getInstance().patch(device);
-								}
-							}
-						} else {
-							geo.put(type, item.name);
-							geo.put("country", item.iso3);
-							if (item.iso3.equals("USA")) {
-								LookingGlass cz = (LookingGlass) LookingGlass.symbols.get("@ZIPCODES");
-								if (cz != null) {
-									String[] parts = (String[]) cz.query(postal);
-									if (parts != null) {
-										geo.put("state", parts[4]);
-										geo.put("county", parts[5]);
-									}
-								}
-							}
-						}
-						geo.put("country", item.iso3);
-						if (geo.get("city")==null) {
-							if (GeoPatch.getInstance() != null) {
-								double [] rc = GeoPatch.getInstance().patch(device);
-								br.lat = rc[0];
-								br.lon = rc[1];
-							}
-						}
-					}
-				} else {
-					if (GeoPatch.getInstance() != null) {
-						double [] rc = GeoPatch.getInstance().patch(device);
-						br.lat = rc[0];
-						br.lon = rc[1];
-					}
-				}
-
-			};
-		});
-
-		methodMap.put("user", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-
-			};
-		});
-
-		methodMap.put("imp", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				int ads = x.getAdslotCount();
-
-				boolean isVideo = false;
-				Impression impression = new Impression();
-				br.addImpression(impression);
-				if (x.hasVideo()) {
-					RealtimeBidding.BidRequest.Video gv = x.getVideo();
-					impression.video = new Video();
-					impression.video.maxduration = gv.getMaxAdDuration();
-					impression.video.minduration = gv.getMinAdDuration();
-					List<VideoFormat> formats = gv.getAllowedVideoFormatsList();
-					isVideo = true;
-				}
-
-				ArrayNode impressions = BidRequest.factory.arrayNode();
-				root.set("imp", impressions);
-
-				for (int i = 0; i < ads; i++) {
-
-					ObjectNode imp = BidRequest.factory.objectNode();
-					impressions.add(imp);
-
-					ObjectNode xx = BidRequest.factory.objectNode();
-					if (isVideo) {
-						imp.set("video", xx);
-						xx.set("maxduration", BidRequest.factory.numberNode(impression.video.maxduration));
-						xx.set("minduration", BidRequest.factory.numberNode(impression.video.minduration));
-					} else {
-						imp.set("banner", xx);
-					}
-
-					AdSlot as = x.getAdslot(i);
-
-					MatchingAdData adData = as.getMatchingAdData(0);
-					
-					/** TBD: Direct deals here */
-					if (adData.getDirectDealCount() > 0) {
-						ObjectNode pmp = BidRequest.factory.objectNode();
-						pmp.put("private_auction",1);
-						pmp.put("ext_k", adData.getDirectDealCount());
-						ArrayNode array = BidRequest.factory.arrayNode();
-						pmp.set("deals", array);
-						for (int j=0; j<adData.getDirectDealCount();j++) {
-							DirectDeal xxx = adData.getDirectDeal(j);
-							ObjectNode deal = BidRequest.factory.objectNode();
-							Long id = xxx.getDirectDealId();
-							String name = xxx.getDealType().name();
-							long fixedCpmMicros = xxx.getFixedCpmMicros();
-							deal.put("id", id.toString());
-							deal.put("bidfloor",fixedCpmMicros);
-							deal.put("ext_name",name);
-							array.add(deal);
-						}
-						imp.set("pmp",pmp);
-					}
-					////////////////////////////
-					
-					double min = adData.getMinimumCpmMicros();
-					if (min != 0) {
-						imp.put("bidfloor", min);
-					}
-
-					List<Integer> list = as.getExcludedAttributeList();
-					ArrayNode arn = BidRequest.factory.arrayNode();
-					for (int j = 0; j < list.size(); j++) {
-						arn.add(list.get(j));
-					}
-					imp.set("battr", arn);
-
-					int n = 0;
-					if (as.hasSlotVisibility()) {
-						SlotVisibility sv = as.getSlotVisibility();
-						n = sv.getNumber();
-						switch (n) {
-						case 0: // none
-							break;
-						case 1: // above
-							break;
-						case 2: // below
-							n = 3;
-							break;
-						default:
-							n = 0;
-						}
-					} else {
-						xx.put("pos", n);
-					}
-
-					int w = 0, h = 0;
-					try {
-						w = as.getWidth(i);
-						h = as.getHeight(i);
-
-					} catch (Exception error) {
-						w = -1;
-						h = -1;
-					}
-					xx.set("w", BidRequest.factory.numberNode(w));
-					xx.set("h", BidRequest.factory.numberNode(h));
-
-					double bidFloor = new Double(as.getMatchingAdData(i).getMinimumCpmMicros());
-					int adSlotId = as.getId();
-
-					imp.set("bidfloor", BidRequest.factory.numberNode(bidFloor));
-					imp.set("id", BidRequest.factory.textNode(Integer.toString(adSlotId)));
-
-				}
-
-			};
-		});
-
-		methodMap.put("site", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasMobile())
-					return;
-
-			};
-		});
-
-		methodMap.put("app", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasMobile() == false)
-					return;
-			};
-		});
-
-		methodMap.put("user", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-
-			};
-		});
-
-		methodMap.put("BidRequest.detected_language", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				d.put(key, x.getDetectedLanguage(0));
-			};
-		});
-
-		methodMap.put("BidRequest.postal_code", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasPostalCode())
-					d.put(key, x.getPostalCode());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.postal_code_prefix", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasPostalCodePrefix())
-					d.put(key, x.getPostalCodePrefix());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.google_user_id", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasGoogleUserId())
-					d.put(key, x.getGoogleUserId());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.seller_network_id", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasSellerNetworkId())
-					d.put(key, x.getSellerNetworkId());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.publisher_settings_list_id", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasPublisherSettingsListId())
-					d.put(key, x.getPublisherSettingsListId());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.anonymous_id", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasAnonymousId())
-					d.put(key, x.getAnonymousId());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.constrained_usage_google_user_id", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasConstrainedUsageGoogleUserId())
-					d.put(key, x.getConstrainedUsageGoogleUserId());
-				else
-					d.put(key, null);
-			};
-		});
-
-		methodMap.put("BidRequest.geo_criteria_id", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				if (x.hasGeoCriteriaId())
-					d.put(key, x.getGeoCriteriaId());
-			};
-		});
-
-		methodMap.put("BidRequest.mobile.screen_orientation", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				Device dev = x.getDevice();
-				if (dev == null)
-					return;
-				if (dev.hasScreenOrientation()) {
-					d.put(key, dev.getScreenOrientation());
-				}
-
-			};
-		});
+	/**
+	 * Set to false to build the whole OpenRTB tree in the constructor, the way it was done before the
+	 * tree was made lazy. Read when a request is made.
+	 */
+	public static volatile boolean lazy = true;
 
-		methodMap.put("BidRequest.mobile.is_interstital_request", new Command() {
-			public void runCommand(BidRequest br, RealtimeBidding.BidRequest x, ObjectNode root, Map d, String key) {
-				Mobile m = x.getMobile();
-				if (m == null)
-					return;
-				if (m.hasIsInterstitialRequest()) {
-					d.put(key, m.getIsInterstitialRequest());
-				}
+	// Parts of the OpenRTB tree, each built the first time something asks for it
+	static final int DEVICE = 1, IMP = 2, SITE = 4, BCAT = 8, VENDORS = 16, PROTOBUF = 32;
+	static final Map<String, Integer> SECTIONS = new HashMap<String, Integer>();
+	static {
+		SECTIONS.put("device", DEVICE);
+		SECTIONS.put("imp", IMP);
+		SECTIONS.put("site", SITE);
+		SECTIONS.put("app", SITE);
+		SECTIONS.put("bcat", BCAT);
+		SECTIONS.put("allowedvendortypes", VENDORS);
+		SECTIONS.put("protobuf", PROTOBUF);
+	}
 
-			};
-		});
+	/** The device fields read straight from the protobuf, in the order they go into the tree */
+	static final String[] DEVICE_FIELDS = { "ua", "ip", "ifa", "make", "w", "h", "devicetype", "model", "carrier",
+			"os", "osv" };
+	/** The fields of an impression read straight from the protobuf */
+	static final String[] IMP_FIELDS = { "id", "bidfloor", "battr" };
+	/** The fields of an impression's banner or video read straight from the protobuf */
+	static final String[] SLOT_FIELDS = { "w", "h", "pos", "minduration", "maxduration" };
 
-	}
+	static final JsonNode MISSING = MissingNode.getInstance();
 
 	List<Integer> excludedCategories = new ArrayList<Integer>();
 	List<Integer> allowedVendorTypeList = new ArrayList<Integer>();
@@ -475,6 +84,11 @@ public class AdxBidRequest extends BidRequest {
 
 	boolean isApp = false;
 
+	// The sections of the tree that are built
+	transient int built;
+	// True if paths are answered from the protobuf, false for the whole tree up front
+	transient boolean direct;
+
 	public static final String ADX = "adx";
 
 	/**
@@ -549,6 +163,9 @@ public class AdxBidRequest extends BidRequest {
 		/**
 		 * Make sure this creative is not an excluded creative attribute
 		 */
+		// The response carries the device's lat and lon
+		materialize(DEVICE);
+
 		ArrayNode arn = (ArrayNode) interrogate("imp.0.battr");
 		List<Integer> battr = null;
 
@@ -738,10 +355,10 @@ public class AdxBidRequest extends BidRequest {
 	public AdxBidRequest(InputStream in) throws Exception {
 		impressions = new ArrayList<Impression>();
 		root = BidRequest.factory.objectNode();
+		rootNode = root;
+		direct = lazy;
 		internal = RealtimeBidding.BidRequest.parseFrom(in);
 
-		internalSetup();
-
 		// System.out.println("========>" + TOTAL);
 		TOTAL++;
 
@@ -749,75 +366,343 @@ public class AdxBidRequest extends BidRequest {
 		root.set("id", BidRequest.factory.textNode(this.id));
 		database.put("exchange", ADX);
 
-		if (internal.hasEncryptedHyperlocalSet()) {
-			ByteString bs = internal.getEncryptedHyperlocalSet();
-		}
-
 		if (internal.hasIsTest())
 			root.set("is_test", BidRequest.factory.booleanNode(internal.getIsTest()));
 
-		byte[] bytes = internal.toByteArray();
-		String str = new String(Base64.encodeBase64(bytes));
-		root.put("protobuf", str);
+		Mobile m = internal.getMobile();
+		isApp = m.getIsApp();
+		if (isApp) {
+			siteName = m.getAppName();
+			siteId = m.getAppId();
+		}
+		if (internal.hasUrl())
+			this.pageurl = internal.getUrl();
 
-		AdSlot ad = internal.getAdslot(0);
-		
-		List<Integer> cl = ad.getExcludedProductCategoryList();
-		List<Integer> cs = ad.getExcludedSensitiveCategoryList();
-		ArrayNode list = BidRequest.factory.arrayNode();
-		for (Integer x : cl) {
-			list.add(x);
+		Impression impression = new Impression();
+		addImpression(impression);
+		if (internal.hasVideo()) {
+			RealtimeBidding.BidRequest.Video gv = internal.getVideo();
+			impression.video = new Video();
+			impression.video.maxduration = gv.getMaxAdDuration();
+			impression.video.minduration = gv.getMinAdDuration();
 		}
-		for (Integer x : cs) {
-			list.add(x);
+
+		// Every slot needs its matching ad data, the request is no good without it
+		for (int i = 0; i < internal.getAdslotCount(); i++) {
+			AdSlot as = internal.getAdslot(i);
+			as.getMatchingAdData(0);
+			as.getMatchingAdData(i);
 		}
+		adSlotId = internal.getAdslot(0).getId();
 
-		root.set("bcat", list);
-		
-		/**
-		 * Allowed vendor type, no openRTB analog
-		 */
-		List<Integer> allowedVendorTypes = ad.getAllowedVendorTypeList();
-		if (allowedVendorTypes != null && allowedVendorTypes.size() > 0) {
-			list = BidRequest.factory.arrayNode();
-			for (Integer x : allowedVendorTypes) {
-				list.add(x);
+		if (!direct)
+			materializeAll();
+
+		//System.out.println("========================= INCOMING ====================================");
+		//System.out.println(internal);
+		//System.out.println("========================= RTB EQUIVALENT ============================");
+		//System.out.println(root);
+		handleFeedBack();
+	}
+
+	/**
+	 * Interrogate the request. Paths that AdxPaths can compile are read from the protobuf without
+	 * building the tree, the rest build the section of the tree they are in and walk it.
+	 * @param line String. The dotted name, for example imp.0.banner.w.
+	 * @return Object. The value, the same as the tree would have, or null if it doesn't exist.
+	 */
+	@Override
+	public Object interrogate(String line) {
+		if (direct && !line.equals("domain") && !line.equals("exchange")) {
+			Object obj = database.get(line);
+			if (obj != null)
+				return obj;
+			AdxPaths.Accessor a = AdxPaths.get(line);
+			if (a != null) {
+				obj = a.get(this);
+				if (obj != null)
+					database.put(line, obj);
+				return obj;
 			}
-			root.set("allowedvendortypes", list);
 		}
+		return super.interrogate(line);
+	}
 
-		ArrayNode nodes = (ArrayNode) root.get("imp");
-		ObjectNode node = (ObjectNode) nodes.get(0);
-		if (node.get("video") != null) {
-			node = (ObjectNode) node.get("video");
-		} else {
-			node = (ObjectNode) node.get("banner");
+	/**
+	 * Walk the tree, building the section the path is in first.
+	 */
+	@Override
+	public Object walkTree(List<String> list) {
+		if (!list.isEmpty())
+			materialize(list.get(0));
+		return super.walkTree(list);
+	}
+
+	/**
+	 * Return the whole OpenRTB tree, for logging.
+	 */
+	@Override
+	public JsonNode getOriginal() {
+		materializeAll();
+		return rootNode;
+	}
+
+	@Override
+	public String toString() {
+		materializeAll();
+		return super.toString();
+	}
+
+	@Override
+	public int getNativeAdAssetIndex(String type, String subtype, int value) {
+		materialize(IMP);
+		return super.getNativeAdAssetIndex(type, subtype, value);
+	}
+
+	/**
+	 * Build the section of the tree with this top level name, if it isn't already.
+	 * @param name String. The top level name, for example device.
+	 */
+	void materialize(String name) {
+		Integer section = SECTIONS.get(name);
+		if (section != null)
+			materialize(section);
+	}
+
+	/**
+	 * Build all of the tree.
+	 */
+	void materializeAll() {
+		for (int section = DEVICE; section <= PROTOBUF; section <<= 1)
+			materialize(section);
+	}
+
+	/**
+	 * Build a section of the tree, if it isn't already.
+	 * @param section int. The section.
+	 */
+	synchronized void materialize(int section) {
+		if ((built & section) != 0)
+			return;
+		built |= section;
+		try {
+			switch (section) {
+			case DEVICE:
+				buildDevice();
+				break;
+			case IMP:
+				buildImp();
+				break;
+			case SITE:
+				buildSite();
+				break;
+			case BCAT:
+				buildBcat();
+				break;
+			case VENDORS:
+				buildVendors();
+				break;
+			case PROTOBUF:
+				byte[] bytes = internal.toByteArray();
+				String str = new String(Base64.encodeBase64(bytes));
+				root.put("protobuf", str);
+				break;
+			}
+		} catch (Exception error) {
+			logger.warn("Adx request {} section {} not built: {}", id, section, error.toString());
 		}
+	}
 
-		if (root.get("app") == null) {
-			isApp = false;
-			node = (ObjectNode) root.get("site");
-			if (node == null) {
-				node = BidRequest.factory.objectNode();
-				root.set("site", node);
+	/**
+	 * Return a device field as it appears in the tree.
+	 * @param name String. One of DEVICE_FIELDS.
+	 * @return JsonNode. The value, or MissingNode if the tree doesn't have it.
+	 */
+	JsonNode deviceField(String name) {
+		RealtimeBidding.BidRequest x = internal;
+		Device dev = x.getDevice();
+		switch (name) {
+		case "ua":
+			return BidRequest.factory.textNode(x.getUserAgent());
+		case "ip":
+			return BidRequest.factory.textNode(AdxBidRequest.convertIp(x.getIp()));
+		case "ifa":
+			Mobile m = x.getMobile();
+			String ifa = null;
+			if (m.hasEncryptedHashedIdfa()) {
+				try {
+					ifa = AdxWinObject.decryptIfa(m.getEncryptedHashedIdfa().toByteArray());
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			}
-		} else {
-			isApp = true;
-			node = (ObjectNode) root.get("app");
+			if (m.hasEncryptedAdvertisingId()) {
+				try {
+					ifa = AdxWinObject.decryptAdvertisingId(m.getEncryptedAdvertisingId().toByteArray());
+				} catch (Exception e) {
+					if (! RTBServer.spurious("AdxBidRequest.encryptedadid", 60)) {
+						e.printStackTrace();
+					}
+				}
+			}
+			return ifa == null ? MISSING : BidRequest.factory.textNode(ifa);
+		case "make":
+			return dev.hasBrand() ? BidRequest.factory.textNode(dev.getBrand()) : MISSING;
+		case "w":
+			return dev.hasScreenWidth() ? BidRequest.factory.numberNode(dev.getScreenWidth()) : MISSING;
+		case "h":
+			return dev.hasScreenHeight() ? BidRequest.factory.numberNode(dev.getScreenHeight()) : MISSING;
+		case "devicetype":
+			if (dev.hasDeviceType())
+				return BidRequest.factory.numberNode(DeviceType.adxToRtb(dev.getDeviceType().toString()));
+			return BidRequest.factory.numberNode(DeviceType.MobileTablet);
+		case "model":
+			return dev.hasModel() ? BidRequest.factory.textNode(dev.getModel()) : MISSING;
+		case "carrier":
+			return dev.hasCarrierId() ? BidRequest.factory.numberNode(dev.getCarrierId()) : MISSING;
+		case "os":
+			return dev.hasPlatform() ? BidRequest.factory.textNode(dev.getPlatform()) : MISSING;
+		case "osv":
+			if (!dev.hasOsVersion())
+				return MISSING;
+			OsVersion osv = dev.getOsVersion();
+			StringBuilder sb = new StringBuilder();
+			if (osv.hasMajor()) {
+				sb.append(osv.getMajor());
+			}
+			if (osv.hasMinor()) {
+				sb.append(".");
+				sb.append(osv.getMinor());
+			}
+			if (osv.hasMicro()) {
+				sb.append(".");
+				sb.append(osv.getMicro());
+			}
+			return BidRequest.factory.textNode(sb.toString());
 		}
-		if (internal.hasUrl()) {
-			if (internal.hasSellerNetworkId())
-				node.put("id", Integer.toString(internal.getSellerNetworkId()));
-			
-			if (isApp) {
-				ObjectNode contentNode = null;
-				contentNode = BidRequest.factory.objectNode();
-				node.set("content", contentNode);
-				contentNode.put("url", internal.getUrl());
-			} else 
-				node.put("url", internal.getUrl());
-			
-			this.pageurl = internal.getUrl();
+		return MISSING;
+	}
+
+	/**
+	 * Return a field of an impression, or of its banner or video, as it appears in the tree.
+	 * @param i int. The ad slot.
+	 * @param name String. One of IMP_FIELDS or SLOT_FIELDS.
+	 * @return JsonNode. The value, or MissingNode if the tree doesn't have it.
+	 */
+	JsonNode impField(int i, String name) {
+		AdSlot as = internal.getAdslot(i);
+		switch (name) {
+		case "id":
+			return BidRequest.factory.textNode(Integer.toString(as.getId()));
+		case "bidfloor":
+			double bidFloor = new Double(as.getMatchingAdData(i).getMinimumCpmMicros());
+			return BidRequest.factory.numberNode(bidFloor);
+		case "battr":
+			List<Integer> list = as.getExcludedAttributeList();
+			ArrayNode arn = BidRequest.factory.arrayNode();
+			for (int j = 0; j < list.size(); j++) {
+				arn.add(list.get(j));
+			}
+			return arn;
+		case "w":
+		case "h":
+			int w = 0, h = 0;
+			try {
+				w = as.getWidth(i);
+				h = as.getHeight(i);
+
+			} catch (Exception error) {
+				w = -1;
+				h = -1;
+			}
+			return BidRequest.factory.numberNode(name.equals("w") ? w : h);
+		case "pos":
+			return as.hasSlotVisibility() ? MISSING : BidRequest.factory.numberNode(0);
+		case "minduration":
+			return internal.hasVideo() ? BidRequest.factory.numberNode(internal.getVideo().getMinAdDuration()) : MISSING;
+		case "maxduration":
+			return internal.hasVideo() ? BidRequest.factory.numberNode(internal.getVideo().getMaxAdDuration()) : MISSING;
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Set a field of an object node, unless it's missing.
+	 */
+	static void set(ObjectNode node, String name, JsonNode value) {
+		if (value != MISSING)
+			node.set(name, value);
+	}
+
+	/**
+	 * Build the device, with geo from the geo criteria, the zip codes and the IP address.
+	 * @throws Exception on lookup errors.
+	 */
+	void buildDevice() throws Exception {
+		RealtimeBidding.BidRequest x = internal;
+		AdxBidRequest br = this;
+		ObjectNode device = AdxBidRequest.factory.objectNode();
+		for (String name : DEVICE_FIELDS)
+			set(device, name, deviceField(name));
+		root.set("device", device);
+
+		ObjectNode geo = BidRequest.factory.objectNode();
+		device.set("geo", geo);
+		String postal = null;
+		if (x.hasPostalCode()) {
+			postal = x.getPostalCode();
+			geo.put("zip", postal);
+		}
+
+		if (x.hasGeoCriteriaId() && lookingGlass != null) {
+			Integer geoKey = x.getGeoCriteriaId();
+			AdxGeoCode item = lookingGlass.query(geoKey);
+			if (item != null) {
+				String type = item.type.toLowerCase();
+				if (type.equals("city")) {
+					LookingGlass cz = (LookingGlass) LookingGlass.symbols.get("@ZIPCODES");
+
+					if (cz != null && postal != null) {
+						String[] parts = (String[]) cz.query(postal);
+						if (parts != null) {
+							geo.put("city", parts[3]);
+							geo.put("state", parts[4]);
+							geo.put("region", parts[5]);
+						}
+					} else {
+						if (GeoPatch.getInstance() != null) {
+							GeoPatch.getInstance().patch(device);
+						}
+					}
+				} else {
+					geo.put(type, item.name);
+					geo.put("country", item.iso3);
+					if (item.iso3.equals("USA")) {
+						LookingGlass cz = (LookingGlass) LookingGlass.symbols.get("@ZIPCODES");
+						if (cz != null) {
+							String[] parts = (String[]) cz.query(postal);
+							if (parts != null) {
+								geo.put("state", parts[4]);
+								geo.put("county", parts[5]);
+							}
+						}
+					}
+				}
+				geo.put("country", item.iso3);
+				if (geo.get("city")==null) {
+					if (GeoPatch.getInstance() != null) {
+						double [] rc = GeoPatch.getInstance().patch(device);
+						br.lat = rc[0];
+						br.lon = rc[1];
+					}
+				}
+			}
+		} else {
+			if (GeoPatch.getInstance() != null) {
+				double [] rc = GeoPatch.getInstance().patch(device);
+				br.lat = rc[0];
+				br.lon = rc[1];
+			}
 		}
 
 		if (internal.hasEncryptedHyperlocalSet()) {
@@ -830,21 +715,8 @@ public class AdxBidRequest extends BidRequest {
 				if (p != null) {
 					lat = (double) p.getLatitude();
 					lon = (double) p.getLongitude();
-
-					ObjectNode geo = (ObjectNode) interrogate("device.geo");
-					if (geo == null) {
-						geo = BidRequest.factory.objectNode();
-						ObjectNode device = (ObjectNode) interrogate("device");
-						if (device == null) {
-							node = BidRequest.factory.objectNode();
-							root.set("device", device);
-							device.set("geo", geo);
-						}
-						device.set("geo", geo);
-					} else {
-						geo.put("lat", lat);
-						geo.put("lon", lon);
-					}
+					geo.put("lat", lat);
+					geo.put("lon", lon);
 					// System.out.println("LAT = " + lat + ", LON = " + lon);
 				}
 			} catch (Exception error) {
@@ -853,19 +725,137 @@ public class AdxBidRequest extends BidRequest {
 			}
 		}
 
-		TextNode value = (TextNode) interrogate("imp.0.id");
-		adSlotId = value.asInt();
-
 		if (lat == null) {
 			lat = new Double(0);
 			lon = new Double(0);
 		}
+	}
 
-		//System.out.println("========================= INCOMING ====================================");
-		//System.out.println(internal);
-		//System.out.println("========================= RTB EQUIVALENT ============================");
-		//System.out.println(root);
-		handleFeedBack();
+	/**
+	 * Build the impressions, one per ad slot.
+	 */
+	void buildImp() {
+		RealtimeBidding.BidRequest x = internal;
+		int ads = x.getAdslotCount();
+		boolean isVideo = x.hasVideo();
+
+		ArrayNode impressions = BidRequest.factory.arrayNode();
+		root.set("imp", impressions);
+
+		for (int i = 0; i < ads; i++) {
+
+			ObjectNode imp = BidRequest.factory.objectNode();
+			impressions.add(imp);
+
+			ObjectNode xx = BidRequest.factory.objectNode();
+			if (isVideo) {
+				imp.set("video", xx);
+				xx.set("maxduration", impField(i, "maxduration"));
+				xx.set("minduration", impField(i, "minduration"));
+			} else {
+				imp.set("banner", xx);
+			}
+
+			AdSlot as = x.getAdslot(i);
+
+			MatchingAdData adData = as.getMatchingAdData(0);
+
+			/** TBD: Direct deals here */
+			if (adData.getDirectDealCount() > 0) {
+				ObjectNode pmp = BidRequest.factory.objectNode();
+				pmp.put("private_auction",1);
+				pmp.put("ext_k", adData.getDirectDealCount());
+				ArrayNode array = BidRequest.factory.arrayNode();
+				pmp.set("deals", array);
+				for (int j=0; j<adData.getDirectDealCount();j++) {
+					DirectDeal xxx = adData.getDirectDeal(j);
+					ObjectNode deal = BidRequest.factory.objectNode();
+					Long id = xxx.getDirectDealId();
+					String name = xxx.getDealType().name();
+					long fixedCpmMicros = xxx.getFixedCpmMicros();
+					deal.put("id", id.toString());
+					deal.put("bidfloor",fixedCpmMicros);
+					deal.put("ext_name",name);
+					array.add(deal);
+				}
+				imp.set("pmp",pmp);
+			}
+			////////////////////////////
+
+			double min = adData.getMinimumCpmMicros();
+			if (min != 0) {
+				imp.put("bidfloor", min);
+			}
+
+			imp.set("battr", impField(i, "battr"));
+			set(xx, "pos", impField(i, "pos"));
+			xx.set("w", impField(i, "w"));
+			xx.set("h", impField(i, "h"));
+
+			imp.set("bidfloor", impField(i, "bidfloor"));
+			imp.set("id", impField(i, "id"));
+		}
+	}
+
+	/**
+	 * Build the site, or the app if this is an app.
+	 */
+	void buildSite() {
+		ObjectNode node = BidRequest.factory.objectNode();
+		if (isApp) {
+			Mobile m = internal.getMobile();
+			node.put("name", m.getAppName());
+			node.put("id", m.getAppId());
+			root.set("app", node);
+		} else
+			root.set("site", node);
+
+		if (internal.hasUrl()) {
+			if (internal.hasSellerNetworkId())
+				node.put("id", Integer.toString(internal.getSellerNetworkId()));
+			
+			if (isApp) {
+				ObjectNode contentNode = null;
+				contentNode = BidRequest.factory.objectNode();
+				node.set("content", contentNode);
+				contentNode.put("url", internal.getUrl());
+			} else 
+				node.put("url", internal.getUrl());
+		}
+	}
+
+	/**
+	 * Build the blocked categories, the excluded product and sensitive categories of the first slot.
+	 */
+	void buildBcat() {
+		AdSlot ad = internal.getAdslot(0);
+		
+		List<Integer> cl = ad.getExcludedProductCategoryList();
+		List<Integer> cs = ad.getExcludedSensitiveCategoryList();
+		ArrayNode list = BidRequest.factory.arrayNode();
+		for (Integer x : cl) {
+			list.add(x);
+		}
+		for (Integer x : cs) {
+			list.add(x);
+		}
+
+		root.set("bcat", list);
+	}
+
+	/**
+	 * Allowed vendor type, no openRTB analog
+	 */
+	void buildVendors() {
+		AdSlot ad = internal.getAdslot(0);
+		List<Integer> allowedVendorTypes = ad.getAllowedVendorTypeList();
+		if (allowedVendorTypes != null && allowedVendorTypes.size() > 0) {
+			ArrayNode list = BidRequest.factory.arrayNode();
+			for (Integer x : allowedVendorTypes) {
+				list.add(x);
+			}
+			root.set("allowedvendortypes", list);
+		}
 	}
 
 	static String makeKey(String s) {
@@ -898,24 +888,6 @@ public class AdxBidRequest extends BidRequest {
 		} 
 	}
 
-	void internalSetup() throws Exception {
-
-		List<String> beenThere = new ArrayList<String>();
-		for (int i = 0; i < keys.size(); i++) {
-			String key = keys.get(i);
-			if (key != null) {
-				String[] codes = key.split("\\.");
-				Command c = methodMap.get(codes[0]);
-				if (c != null && beenThere.contains(codes[0]) == false) {
-					c.runCommand(this, internal, root, database, key);
-					beenThere.add(codes[0]);
-				}
-			}
-		}
-
-		rootNode = root;
-	}
-
 	/**
 	 * Convert IP address to dotted decimal (ipv4) and coloned decimal (ipv6)
 	 * 
@@ -26,7 +26,7 @@ public class AdxGeoCodes extends LookingGlass {
 			AdxGeoCode x = new AdxGeoCode(parts);
 			geocodes.put(x.code, x);
 		}
-		symbols.put(name, this);
+		register(name);
 	}
 	
 	public AdxGeoCodes(String name, S3Object object) throws Exception {
@@ -39,7 +39,7 @@ public class AdxGeoCodes extends LookingGlass {
 			AdxGeoCode x = new AdxGeoCode(parts);
 			geocodes.put(x.code, x);
 		}
-		symbols.put(name, this);
+		register(name);
 	}
 
 	
@@ -0,0 +1,97 @@
+package com.jacamars.dsp.rtb.exchanges.adx;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Compiled hierarchy paths for Adx bid requests. A campaign's hierarchy, like device.os or
+ * imp.0.banner.w, is compiled once into an Accessor that reads the value straight out of the protobuf,
+ * as the JsonNode the OpenRTB tree would have had there. Paths that can't be compiled, device.geo.* for
+ * example, return null here and AdxBidRequest builds that section of the tree and walks it.
+ * <p>
+ * The walk rules are the same as BidRequest.walkTree(): an index is the first digit of the name, a slot
+ * that doesn't exist is null, and a field that isn't there is a MissingNode.
+ * @author Ben M. Faul
+ *
+ */
+class AdxPaths {
+
+	/**
+	 * Reads one path from the protobuf.
+	 */
+	interface Accessor {
+		/**
+		 * Return the value at the path.
+		 * @param br AdxBidRequest. The request.
+		 * @return JsonNode. The value, MissingNode or null, the same as the tree.
+		 */
+		JsonNode get(AdxBidRequest br);
+	}
+
+	// Marks a path that has to be walked in the tree
+	static final Accessor TREE = br -> null;
+
+	static final List<String> DEVICE_FIELDS = Arrays.asList(AdxBidRequest.DEVICE_FIELDS);
+	static final List<String> IMP_FIELDS = Arrays.asList(AdxBidRequest.IMP_FIELDS);
+	static final List<String> SLOT_FIELDS = Arrays.asList(AdxBidRequest.SLOT_FIELDS);
+
+	// Compiled paths, the set of hierarchies is small and fixed by the campaigns
+	static final Map<String, Accessor> compiled = new ConcurrentHashMap<String, Accessor>();
+
+	/**
+	 * Return the accessor for a path.
+	 * @param path String. The dotted hierarchy.
+	 * @return Accessor. The accessor, or null if the path must be walked in the tree.
+	 */
+	static Accessor get(String path) {
+		Accessor a = compiled.get(path);
+		if (a == null) {
+			a = compile(path);
+			compiled.put(path, a);
+		}
+		return a == TREE ? null : a;
+	}
+
+	/**
+	 * Compile a path.
+	 * @param path String. The dotted hierarchy.
+	 * @return Accessor. The accessor, or TREE.
+	 */
+	static Accessor compile(String path) {
+		String[] parts = path.split("\\.");
+		if (parts.length == 2 && parts[0].equals("device") && DEVICE_FIELDS.contains(parts[1])) {
+			String name = parts[1];
+			return br -> br.deviceField(name);
+		}
+
+		if (parts.length < 3 || !parts[0].equals("imp") || parts[1].length() == 0)
+			return TREE;
+		char c = parts[1].charAt(0);
+		if (c < '0' || c > '9')
+			return TREE;
+		int slot = c - '0';
+
+		if (parts.length == 3 && IMP_FIELDS.contains(parts[2])) {
+			String name = parts[2];
+			return br -> slot < br.internal.getAdslotCount() ? br.impField(slot, name) : null;
+		}
+
+		if (parts.length == 4 && (parts[2].equals("banner") || parts[2].equals("video"))
+				&& SLOT_FIELDS.contains(parts[3])) {
+			boolean video = parts[2].equals("video");
+			String name = parts[3];
+			return br -> {
+				if (slot >= br.internal.getAdslotCount())
+					return null;
+				if (br.internal.hasVideo() != video)
+					return AdxBidRequest.MISSING;
+				return br.impField(slot, name);
+			};
+		}
+		return TREE;
+	}
+}
@@ -1,19 +1,14 @@
 package com.jacamars.dsp.rtb.exchanges.adx;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
-import java.util.Arrays;
-import java.util.Date;
-
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
-
+import com.jacamars.dsp.rtb.exchanges.CryptoContext;
 import com.jacamars.dsp.rtb.pojo.WinObject;
 
 public class AdxWinObject extends WinObject {
 
 	static byte[] encryptionKeyBytes;
 	static byte[] integrityKeyBytes;
+	/** Macs for the current keys, remade when the keys are replaced */
+	static volatile CryptoContext crypto;
 	
 	public AdxWinObject(String hash,String cost,String lat,
 			String lon, String adId, String crid, String pubId,String image, 
@@ -40,6 +35,17 @@ public class AdxWinObject extends WinObject {
 		this.adm = null;
 	}
 	
+	/**
+	 * Return the crypto context for the current keys.
+	 * @return CryptoContext. The context.
+	 */
+	static CryptoContext crypto() {
+		CryptoContext c = crypto;
+		if (c == null || !c.uses(encryptionKeyBytes, integrityKeyBytes))
+			crypto = c = new CryptoContext(encryptionKeyBytes, integrityKeyBytes);
+		return c;
+	}
+	
 	/**
 	 * DoubleClick price decypter
 	 * @param websafeB64EncodedCiphertext String. The encoded crypto text
@@ -48,29 +54,11 @@ public class AdxWinObject extends WinObject {
 	 * @throws Exception on crypto errors.
 	 */
 	public static long decrypt(String websafeB64EncodedCiphertext, long utc) throws Exception {
-		String b64EncodedCiphertext = Decrypter.unWebSafeAndPad(websafeB64EncodedCiphertext);
-		byte[] codeString = Base64.decodeBase64(b64EncodedCiphertext.getBytes("US-ASCII"));
-		byte[] plaintext;
-		
-	    SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-	    SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
 	    try {
-	      plaintext = Decrypter.decrypt(codeString, encryptionKey, integrityKey);
-	    } catch (DecrypterException e) {
+	      return crypto().decryptPrice(websafeB64EncodedCiphertext);
+	    } catch (Exception e) {
 	      throw new Exception("Failed to decode ciphertext. " + e.getMessage());
 	    }
-	    
-	    DataInputStream dis = new DataInputStream( new ByteArrayInputStream(plaintext));
-	    
-	    final long value = dis.readLong();
-	    final byte[] initializationVector = Arrays.copyOf(codeString, Decrypter.INITIALIZATION_VECTOR_SIZE);
-	    // Date timestamp = Decrypter.getTimeFromInitializationVector(initializationVector);
-	    /*System.out.println("The value is: " + value + " generated on "
-	        + DateFormat.getDateTimeInstance().format(timestamp) + " + "
-	        + timestamp.getTime() % 1000);
-	    System.out.println("    Expected: 709959680 generated on "
-	        + "Jun 18, 2009 12:45:59 PM + 123");*/
-	    return value;
 	}
 	
 	
@@ -84,21 +72,11 @@ public class AdxWinObject extends WinObject {
 	 * @throws Exception
 	 */
 	public static byte[] decryptHyperLocal(byte [] code) throws Exception {
-
-		byte[] plaintext;
-	    SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-	    SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
-	 
-	    plaintext = Decrypter.decrypt(code, encryptionKey, integrityKey);
-
-	    return plaintext;
+	    return crypto().decrypt(code);
 	}
 	
 	public static String decryptAdvertisingId(byte [] encrypted) throws Exception {
-		 SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-		 SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
-		 
-		 byte [] rc = Decrypter.decrypt(encrypted, encryptionKey, integrityKey);
+		 byte [] rc = crypto().decrypt(encrypted);
 		 StringBuffer sb = new StringBuffer();
 		 for (int i=0;i<rc.length;i++) {
 			 sb.append(Integer.toHexString(0xff & rc[i]));
@@ -111,10 +89,7 @@ public class AdxWinObject extends WinObject {
 	}
 	
 	public static String decryptIfa(byte [] encrypted) throws Exception {
-		 SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-		 SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
-		 
-		 byte [] rc = Decrypter.decrypt(encrypted, encryptionKey, integrityKey);
+		 byte [] rc = crypto().decrypt(encrypted);
 		 StringBuffer sb = new StringBuffer();
 		 for (int i=0;i<rc.length;i++) {
 			 sb.append(Integer.toHexString(0xff & rc[i]));
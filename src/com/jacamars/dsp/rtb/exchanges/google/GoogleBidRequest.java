@@ -7,10 +7,14 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -47,12 +51,18 @@ import com.jacamars.dsp.rtb.bidder.RTBServer;
 import com.jacamars.dsp.rtb.common.Campaign;
 import com.jacamars.dsp.rtb.common.Creative;
 import com.jacamars.dsp.rtb.exchanges.adx.Base64;
+import com.jacamars.dsp.rtb.geo.IpIntelligence;
 import com.jacamars.dsp.rtb.pojo.BidRequest;
 import com.jacamars.dsp.rtb.pojo.Impression;
 
 /**
  * A class that creates a BidRequest from openRTB protobuf that supports most of
  * openRTB.
+ * <p>
+ * The impressions are made into JSON up front, the Impression objects need them. The device, site or
+ * app, and user are not. Their fields are read straight from the protobuf through GooglePaths, and a
+ * section of the JSON tree is only made when a path GooglePaths can't compile needs it, or when the
+ * request is logged. The base64 copy of the protobuf is made only for the log.
  * 
  * @author Ben M. Faul
  *
@@ -63,12 +73,57 @@ public class GoogleBidRequest extends BidRequest {
 	public static byte e_key[];
 	public static byte i_key[];
 
+	/**
+	 * Set to false to build the whole JSON tree in the constructor, the way it was done before the
+	 * tree was made lazy. Read when a request is made.
+	 */
+	public static volatile boolean lazy = true;
+
+	// Parts of the JSON tree, each built the first time something asks for it
+	static final int DEVICE = 1, SITE = 2, USER = 4, PROTOBUF = 8;
+	static final Map<String, Integer> SECTIONS = new HashMap<String, Integer>();
+	static {
+		SECTIONS.put("device", DEVICE);
+		SECTIONS.put("site", SITE);
+		SECTIONS.put("app", SITE);
+		SECTIONS.put("user", USER);
+		SECTIONS.put("protobuf", PROTOBUF);
+	}
+
+	/** The device fields, in the order they go into the tree */
+	static final String[] DEVICE_FIELDS = { "ip", "language", "os", "osv", "carrier", "connectiontype", "didmd5",
+			"didsha1", "dpidsha1", "dnt", "devicetype", "ua", "js" };
+	/** The geo fields of the device and user */
+	static final String[] GEO_FIELDS = { "country", "type", "lat", "lon", "city", "region", "metro", "utcoffset",
+			"zip" };
+	/** The user fields, other than geo */
+	static final String[] USER_FIELDS = { "buyeruid", "customdata", "gender", "id", "keywords", "yob" };
+	/** The site fields, other than cat and publisher */
+	static final String[] SITE_FIELDS = { "id", "name", "keywords", "mobile", "domain", "page", "ref", "search",
+			"privacypolicy" };
+	/** The app fields, other than cat, content and publisher */
+	static final String[] APP_FIELDS = { "id", "name", "keywords", "bundle", "domain", "privacypolicy" };
+	/** The publisher fields of the site or app */
+	static final String[] PUBLISHER_FIELDS = { "id", "name", "domain" };
+	/** The app content fields, other than cat */
+	static final String[] CONTENT_FIELDS = { "album", "artist", "contentrating", "context22", "embeddable",
+			"episode", "src", "genre", "isrc", "keyword", "language", "len", "livestream", "season", "series",
+			"title", "url", "userrating" };
+
+	static final JsonNode MISSING = MissingNode.getInstance();
+
 	// Not a bid request, sometimes google returns no bytes on a read.
 	private transient boolean notABidRequest = false;
 	// The internal JSON form
 	private ObjectNode root;
 	// The internal protobuf form.
 	transient private com.google.openrtb.OpenRtb.BidRequest internal;
+	// The sections of the tree that are built
+	transient int built;
+	// True if paths are answered from the protobuf, false for the whole tree up front
+	transient boolean direct;
+	// The site domain made from the page, when the site has a page but no domain
+	transient String pageDomain;
 
 	/**
 	 * Simple constructor
@@ -85,6 +140,89 @@ public class GoogleBidRequest extends BidRequest {
 		return super.interrogate(line);
 	}
 
+	/**
+	 * Walk the tree. Paths that GooglePaths can compile are read from the protobuf while their section
+	 * isn't built, the rest build the section they are in first.
+	 * @param list List. The path, for example ['device','geo','lat'].
+	 * @return Object. The value, the same as the tree would have, or null if it doesn't exist.
+	 */
+	@Override
+	public Object walkTree(List<String> list) {
+		if (!list.isEmpty()) {
+			Integer section = SECTIONS.get(list.get(0));
+			if (section != null && internal != null) {
+				if (direct && (built & section) == 0) {
+					GooglePaths.Accessor a = GooglePaths.get(list);
+					if (a != null)
+						return a.get(this);
+				}
+				materialize(section);
+			}
+		}
+		return super.walkTree(list);
+	}
+
+	/**
+	 * The geo patch edits the device in the tree, so build it first if there is a patch to make.
+	 */
+	@Override
+	protected void setup() throws Exception {
+		if (direct && IpIntelligence.hasCity())
+			materialize(DEVICE);
+		super.setup();
+	}
+
+	/**
+	 * Return the whole JSON tree, for logging.
+	 */
+	@Override
+	public JsonNode getOriginal() {
+		materializeAll();
+		return super.getOriginal();
+	}
+
+	@Override
+	public String toString() {
+		materializeAll();
+		return super.toString();
+	}
+
+	/**
+	 * Build all of the tree.
+	 */
+	void materializeAll() {
+		if (internal == null)
+			return;
+		for (int section = DEVICE; section <= PROTOBUF; section <<= 1)
+			materialize(section);
+	}
+
+	/**
+	 * Build a section of the tree, if it isn't already.
+	 * @param section int. The section.
+	 */
+	synchronized void materialize(int section) {
+		if ((built & section) != 0)
+			return;
+		built |= section;
+		switch (section) {
+		case DEVICE:
+			makeDevice();
+			break;
+		case SITE:
+			makeSiteOrApp();
+			break;
+		case USER:
+			makeUser();
+			break;
+		case PROTOBUF:
+			byte[] bytes = internal.toByteArray();
+			String str = new String(Base64.encodeBase64(bytes));
+			root.put("protobuf", str);
+			break;
+		}
+	}
+
 	/**
 	 * Return the internal protobuf representation
 	 * 
@@ -166,11 +304,11 @@ public class GoogleBidRequest extends BidRequest {
 	private void doInternal() throws Exception {
 		impressions = new ArrayList<>();
 		root = BidRequest.factory.objectNode();
+		direct = lazy;
 
 		// Add this to the log
-		byte[] bytes = internal.toByteArray();
-		String str = new String(Base64.encodeBase64(bytes));
-		root.put("protobuf", str);
+		if (!direct)
+			materialize(PROTOBUF);
 
 		root.put("at", internal.getAt().getNumber());
 		ProtocolStringList list = internal.getBadvList();
@@ -183,10 +321,29 @@ public class GoogleBidRequest extends BidRequest {
 		String id = internal.getId();
 
 		root.put("id", id);
-		makeSiteOrApp();
-		makeDevice();
+
+		/**
+		 * If the site has a page but no domain, fake the domain out.
+		 */
+		if (internal.hasSite() && internal.getSite().hasPage() && !internal.getSite().hasDomain()) {
+			String value = internal.getSite().getPage();
+			value = URLDecoder.decode(value, java.nio.charset.StandardCharsets.UTF_8.toString());
+			value = value.replace("https://", "");
+			value = value.replace("http://", "");
+			value = value.replace("www.", "");
+			int i = value.indexOf("/");
+			if (i != -1)
+				value = value.substring(0, i);
+			pageDomain = value;
+		}
+
+		if (!direct) {
+			materialize(SITE);
+			materialize(DEVICE);
+		}
 		makeImpressions();
-		makeUser();
+		if (!direct)
+			materialize(USER);
 
 		rootNode = root;
 		setup();
@@ -196,27 +353,16 @@ public class GoogleBidRequest extends BidRequest {
 	/**
 	 * Make a user object
 	 */
-	private void makeUser() {
+	void makeUser() {
 		if (!internal.hasUser())
 			return;
 
 		User u = internal.getUser();
 
 		ObjectNode node = BidRequest.factory.objectNode();
-		if (u.hasBuyeruid())
-			node.put("buyeruid", u.getBuyeruid());
-		if (u.hasCustomdata())
-			node.put("customdata", u.getCustomdata());
-		if (u.hasGender())
-			node.put("gender", u.getGender());
+		put(node, USER_FIELDS, name -> userField(u, name));
 		if (u.hasGeo())
 			addGeo(node, u.getGeo());
-		if (u.hasId())
-			node.put("id", u.getId());
-		if (u.hasKeywords())
-			node.put("keywords", u.getKeywords());
-		if (u.hasYob())
-			node.put("yob", u.getYob());
 
 		root.set("user", node);
 
@@ -231,24 +377,7 @@ public class GoogleBidRequest extends BidRequest {
 	void addGeo(ObjectNode node, Geo g) {
 		ObjectNode geo = BidRequest.factory.objectNode();
 		node.set("geo", geo);
-		if (g.hasCountry())
-			geo.put("country", g.getCountry());
-		if (g.hasType())
-			geo.put("type", g.getType().getNumber());
-		if (g.hasLat())
-			geo.put("lat", g.getLat());
-		if (g.hasLon())
-			geo.put("lon", g.getLon());
-		if (g.hasCity())
-			geo.put("city", g.getCity());
-		if (g.hasRegion())
-			geo.put("region", g.getRegion());
-		if (g.hasMetro())
-			geo.put("metro", g.getMetro());
-		if (g.hasUtcoffset())
-			geo.put("utcoffset", g.getUtcoffset());
-		if (g.hasZip())
-			geo.put("zip", g.getZip());
+		put(geo, GEO_FIELDS, name -> geoField(g, name));
 	}
 
 	/**
@@ -261,33 +390,8 @@ public class GoogleBidRequest extends BidRequest {
 
 		Device d = internal.getDevice();
 		ObjectNode node = BidRequest.factory.objectNode();
-		if (d.hasIp())
-			node.put("ip", d.getIp());
-		if (d.hasLanguage())
-			node.put("language", d.getLanguage());
-		if (d.hasOs())
-			node.put("os", d.getOs());
-		if (d.hasOsv())
-			node.put("osv", d.getOsv());
-		if (d.hasCarrier())
-			node.put("carrier", d.getCarrier());
-		if (d.hasConnectiontype())
-			node.put("connectiontype", d.getConnectiontype().getNumber());
-		if (d.hasDidmd5())
-			node.put("didmd5", d.getDidmd5());
-		if (d.hasDidsha1())
-			node.put("didsha1", d.getDidsha1());
-		if (d.hasDpidsha1())
-			node.put("dpidsha1", d.getDpidsha1());
-		if (d.hasDnt())
-			node.put("dnt", d.getDnt());
-		if (d.hasDevicetype())
-			node.put("devicetype", d.getDevicetype().getNumber());
-		if (d.hasUa())
-			node.put("ua", d.getUa());
-		if (d.hasJs())
-			node.put("js", d.getJs());
-		if (internal.getDevice().hasGeo())
+		put(node, DEVICE_FIELDS, name -> deviceField(d, name));
+		if (d.hasGeo())
 			addGeo(node, d.getGeo());
 		root.set("device", node);
 
@@ -296,131 +400,31 @@ public class GoogleBidRequest extends BidRequest {
 	/**
 	 * Make either the site or app object.
 	 */
-	void makeSiteOrApp() throws Exception {
+	void makeSiteOrApp() {
 		ObjectNode node = BidRequest.factory.objectNode();
 		if (internal.hasSite()) {
 			Site s = internal.getSite();
 			root.set("site", node);
 
-			if (s.hasId())
-				node.put("id", s.getId());
-			if (s.hasName())
-				node.put("name", s.getName());
+			put(node, SITE_FIELDS, name -> siteField(s, name));
 			node.set("cat", getAsStringList(BidRequest.factory.arrayNode(), s.getCatList()));
-			if (s.hasKeywords())
-				node.put("keywords", s.getKeywords());
-			if (s.hasMobile()) {
-				if (s.getMobile())
-					node.put("mobile", 1);
-				else
-					node.put("mobile", 0);
-			}
-
-			if (s.hasDomain())
-				node.put("domain", s.getDomain());
-
-			if (s.hasPage()) {
-				node.put("page", s.getPage());
-				/**
-				 * If the domain is empty, fake it out.
-				 */
-				if (!s.hasDomain()) {
-					String value = s.getPage();
-					value = URLDecoder.decode(value, java.nio.charset.StandardCharsets.UTF_8.toString());
-					value = value.replace("https://", "");
-					value = value.replace("http://", "");
-					value = value.replace("www.", "");
-					int i = value.indexOf("/");
-					if (i != -1)
-						value = value.substring(0, i);
-					node.put("domain", value);
-				}
-			}
-
-			if (s.hasRef())
-				node.put("ref", s.getRef());
-			if (s.hasSearch())
-				node.put("search", s.getSearch());
-			if (s.hasPrivacypolicy())
-				node.put("privacypolicy", s.getPrivacypolicy());
-			if (s.hasPublisher()) {
-				Publisher p = s.getPublisher();
-				ObjectNode pub = BidRequest.factory.objectNode();
-				pub.put("id", p.getId());
-				pub.put("name", p.getId());
-				if (p.hasDomain())
-					pub.put("domain", p.getDomain());
-				node.set("publisher", pub);
-			}
+			if (s.hasPublisher())
+				node.set("publisher", makePublisher(s.getPublisher()));
 		} else {
 			App a = internal.getApp();
 			root.set("app", node);
-			if (a.hasId())
-				node.put("id", a.getId());
-			if (a.hasName())
-				node.put("name", a.getName());
-			node.set("cat", getAsStringList(BidRequest.factory.arrayNode(), a.getCatList()));
 
-			if (a.hasKeywords())
-				node.put("keywords", a.getKeywords());
+			put(node, APP_FIELDS, name -> appField(a, name));
 			if (a.hasContent()) {
 				Content c = a.getContent();
 				ObjectNode content = BidRequest.factory.objectNode();
 				node.set("content", content);
-				if (c.hasAlbum())
-					content.put("album", c.getAlbum());
-				if (c.hasArtist())
-					content.put("artist", c.getArtist());
-				if (c.hasContentrating())
-					content.put("contentrating", c.getContentrating());
-				if (c.hasContext22())
-					content.put("context22", c.getContext22());
-				if (c.hasEmbeddable())
-					content.put("embeddable", c.getEmbeddable());
-				if (c.hasEpisode())
-					content.put("episode", c.getEpisode());
-				if (c.hasSourcerelationship())
-					content.put("src", c.getSourcerelationship());
-				if (c.hasGenre())
-					content.put("genre", c.getGenre());
-				if (c.hasIsrc())
-					content.put("isrc", c.getIsrc());
-				if (c.hasKeywords())
-					content.put("keyword", c.getKeywords());
-				if (c.hasLanguage())
-					content.put("language", c.getLanguage());
-				if (c.hasLen())
-					content.put("len", c.getLen());
-				if (c.hasLivestream())
-					content.put("livestream", c.getLivestream());
+				put(content, CONTENT_FIELDS, name -> contentField(c, name));
 				content.set("cat", getAsStringList(BidRequest.factory.arrayNode(), c.getCatList()));
-				if (c.hasSeason())
-					content.put("season", c.getSeason());
-				if (c.hasSeries())
-					content.put("series", c.getSeries());
-				if (c.hasTitle())
-					content.put("title", c.hasTitle());
-				if (c.hasUrl())
-					content.put("url", c.getUrl());
-				if (c.hasUserrating())
-					content.put("userrating", c.getUserrating());
-			}
-			if (a.hasBundle())
-				node.put("bundle", internal.getApp().getBundle());
-			if (a.hasDomain())
-				node.put("domain", internal.getApp().getDomain());
-			node.set("cat", getAsStringList(BidRequest.factory.arrayNode(), internal.getApp().getCatList()));
-			if (a.hasPrivacypolicy())
-				node.put("privacypolicy", internal.getApp().getPrivacypolicy());
-			if (internal.getApp().hasPublisher()) {
-				Publisher p = a.getPublisher();
-				ObjectNode pub = BidRequest.factory.objectNode();
-				pub.put("id", internal.getApp().getPublisher().getId());
-				pub.put("name", internal.getApp().getPublisher().getId());
-				if (p.hasDomain())
-					pub.put("domain", p.getDomain());
-				node.set("publisher", pub);
 			}
+			node.set("cat", getAsStringList(BidRequest.factory.arrayNode(), a.getCatList()));
+			if (a.hasPublisher())
+				node.set("publisher", makePublisher(a.getPublisher()));
 		}
 
 		/**
@@ -447,6 +451,349 @@ public class GoogleBidRequest extends BidRequest {
 
 	}
 
+	/**
+	 * Make the publisher of the site or app.
+	 * 
+	 * @param p Publisher. The protobuf publisher.
+	 * @return ObjectNode. The publisher as JSON.
+	 */
+	ObjectNode makePublisher(Publisher p) {
+		ObjectNode pub = BidRequest.factory.objectNode();
+		put(pub, PUBLISHER_FIELDS, name -> publisherField(p, name));
+		return pub;
+	}
+
+	/**
+	 * Put the fields that are there into a JSON object.
+	 * 
+	 * @param node   ObjectNode. The object to fill in.
+	 * @param fields String[]. The field names, in order.
+	 * @param field  Function. Returns the value of a field, or null if it isn't there.
+	 */
+	static void put(ObjectNode node, String[] fields, Function<String, JsonNode> field) {
+		for (String name : fields) {
+			JsonNode value = field.apply(name);
+			if (value != null)
+				node.set(name, value);
+		}
+	}
+
+	/**
+	 * Return a device field as it goes in the tree.
+	 * 
+	 * @param d    Device. The protobuf device.
+	 * @param name String. One of DEVICE_FIELDS.
+	 * @return JsonNode. The value, or null if the device doesn't have it.
+	 */
+	static JsonNode deviceField(Device d, String name) {
+		switch (name) {
+		case "ip":
+			return d.hasIp() ? node(d.getIp()) : null;
+		case "language":
+			return d.hasLanguage() ? node(d.getLanguage()) : null;
+		case "os":
+			return d.hasOs() ? node(d.getOs()) : null;
+		case "osv":
+			return d.hasOsv() ? node(d.getOsv()) : null;
+		case "carrier":
+			return d.hasCarrier() ? node(d.getCarrier()) : null;
+		case "connectiontype":
+			return d.hasConnectiontype() ? node(d.getConnectiontype().getNumber()) : null;
+		case "didmd5":
+			return d.hasDidmd5() ? node(d.getDidmd5()) : null;
+		case "didsha1":
+			return d.hasDidsha1() ? node(d.getDidsha1()) : null;
+		case "dpidsha1":
+			return d.hasDpidsha1() ? node(d.getDpidsha1()) : null;
+		case "dnt":
+			return d.hasDnt() ? node(d.getDnt()) : null;
+		case "devicetype":
+			return d.hasDevicetype() ? node(d.getDevicetype().getNumber()) : null;
+		case "ua":
+			return d.hasUa() ? node(d.getUa()) : null;
+		case "js":
+			return d.hasJs() ? node(d.getJs()) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Return a geo field as it goes in the tree.
+	 * 
+	 * @param g    Geo. The protobuf geo.
+	 * @param name String. One of GEO_FIELDS.
+	 * @return JsonNode. The value, or null if the geo doesn't have it.
+	 */
+	static JsonNode geoField(Geo g, String name) {
+		switch (name) {
+		case "country":
+			return g.hasCountry() ? node(g.getCountry()) : null;
+		case "type":
+			return g.hasType() ? node(g.getType().getNumber()) : null;
+		case "lat":
+			return g.hasLat() ? node(g.getLat()) : null;
+		case "lon":
+			return g.hasLon() ? node(g.getLon()) : null;
+		case "city":
+			return g.hasCity() ? node(g.getCity()) : null;
+		case "region":
+			return g.hasRegion() ? node(g.getRegion()) : null;
+		case "metro":
+			return g.hasMetro() ? node(g.getMetro()) : null;
+		case "utcoffset":
+			return g.hasUtcoffset() ? node(g.getUtcoffset()) : null;
+		case "zip":
+			return g.hasZip() ? node(g.getZip()) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Return a user field as it goes in the tree.
+	 * 
+	 * @param u    User. The protobuf user.
+	 * @param name String. One of USER_FIELDS.
+	 * @return JsonNode. The value, or null if the user doesn't have it.
+	 */
+	static JsonNode userField(User u, String name) {
+		switch (name) {
+		case "buyeruid":
+			return u.hasBuyeruid() ? node(u.getBuyeruid()) : null;
+		case "customdata":
+			return u.hasCustomdata() ? node(u.getCustomdata()) : null;
+		case "gender":
+			return u.hasGender() ? node(u.getGender()) : null;
+		case "id":
+			return u.hasId() ? node(u.getId()) : null;
+		case "keywords":
+			return u.hasKeywords() ? node(u.getKeywords()) : null;
+		case "yob":
+			return u.hasYob() ? node(u.getYob()) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Return a site field as it goes in the tree. The domain is made from the page if there isn't one.
+	 * 
+	 * @param s    Site. The protobuf site.
+	 * @param name String. One of SITE_FIELDS.
+	 * @return JsonNode. The value, or null if the site doesn't have it.
+	 */
+	JsonNode siteField(Site s, String name) {
+		switch (name) {
+		case "id":
+			return s.hasId() ? node(s.getId()) : null;
+		case "name":
+			return s.hasName() ? node(s.getName()) : null;
+		case "keywords":
+			return s.hasKeywords() ? node(s.getKeywords()) : null;
+		case "mobile":
+			return s.hasMobile() ? node(s.getMobile() ? 1 : 0) : null;
+		case "domain":
+			if (s.hasDomain())
+				return node(s.getDomain());
+			return pageDomain == null ? null : node(pageDomain);
+		case "page":
+			return s.hasPage() ? node(s.getPage()) : null;
+		case "ref":
+			return s.hasRef() ? node(s.getRef()) : null;
+		case "search":
+			return s.hasSearch() ? node(s.getSearch()) : null;
+		case "privacypolicy":
+			return s.hasPrivacypolicy() ? node(s.getPrivacypolicy()) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Return an app field as it goes in the tree.
+	 * 
+	 * @param a    App. The protobuf app.
+	 * @param name String. One of APP_FIELDS.
+	 * @return JsonNode. The value, or null if the app doesn't have it.
+	 */
+	static JsonNode appField(App a, String name) {
+		switch (name) {
+		case "id":
+			return a.hasId() ? node(a.getId()) : null;
+		case "name":
+			return a.hasName() ? node(a.getName()) : null;
+		case "keywords":
+			return a.hasKeywords() ? node(a.getKeywords()) : null;
+		case "bundle":
+			return a.hasBundle() ? node(a.getBundle()) : null;
+		case "domain":
+			return a.hasDomain() ? node(a.getDomain()) : null;
+		case "privacypolicy":
+			return a.hasPrivacypolicy() ? node(a.getPrivacypolicy()) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Return a publisher field as it goes in the tree. The name is the id.
+	 * 
+	 * @param p    Publisher. The protobuf publisher.
+	 * @param name String. One of PUBLISHER_FIELDS.
+	 * @return JsonNode. The value, or null if the publisher doesn't have it.
+	 */
+	static JsonNode publisherField(Publisher p, String name) {
+		switch (name) {
+		case "id":
+		case "name":
+			return node(p.getId());
+		case "domain":
+			return p.hasDomain() ? node(p.getDomain()) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Return an app content field as it goes in the tree.
+	 * 
+	 * @param c    Content. The protobuf content.
+	 * @param name String. One of CONTENT_FIELDS.
+	 * @return JsonNode. The value, or null if the content doesn't have it.
+	 */
+	static JsonNode contentField(Content c, String name) {
+		switch (name) {
+		case "album":
+			return c.hasAlbum() ? node(c.getAlbum()) : null;
+		case "artist":
+			return c.hasArtist() ? node(c.getArtist()) : null;
+		case "contentrating":
+			return c.hasContentrating() ? node(c.getContentrating()) : null;
+		case "context22":
+			return c.hasContext22() ? node(c.getContext22()) : null;
+		case "embeddable":
+			return c.hasEmbeddable() ? node(c.getEmbeddable()) : null;
+		case "episode":
+			return c.hasEpisode() ? node(c.getEpisode()) : null;
+		case "src":
+			return c.hasSourcerelationship() ? node(c.getSourcerelationship()) : null;
+		case "genre":
+			return c.hasGenre() ? node(c.getGenre()) : null;
+		case "isrc":
+			return c.hasIsrc() ? node(c.getIsrc()) : null;
+		case "keyword":
+			return c.hasKeywords() ? node(c.getKeywords()) : null;
+		case "language":
+			return c.hasLanguage() ? node(c.getLanguage()) : null;
+		case "len":
+			return c.hasLen() ? node(c.getLen()) : null;
+		case "livestream":
+			return c.hasLivestream() ? node(c.getLivestream()) : null;
+		case "season":
+			return c.hasSeason() ? node(c.getSeason()) : null;
+		case "series":
+			return c.hasSeries() ? node(c.getSeries()) : null;
+		case "title":
+			return c.hasTitle() ? node(c.hasTitle()) : null;
+		case "url":
+			return c.hasUrl() ? node(c.getUrl()) : null;
+		case "userrating":
+			return c.hasUserrating() ? node(c.getUserrating()) : null;
+		}
+		return null;
+	}
+
+	/*
+	 * The values as JSON, the same node types ObjectNode.put() makes for each.
+	 */
+
+	static JsonNode node(String value) {
+		return BidRequest.factory.textNode(value);
+	}
+
+	static JsonNode node(int value) {
+		return BidRequest.factory.numberNode(value);
+	}
+
+	static JsonNode node(long value) {
+		return BidRequest.factory.numberNode(value);
+	}
+
+	static JsonNode node(float value) {
+		return BidRequest.factory.numberNode(value);
+	}
+
+	static JsonNode node(double value) {
+		return BidRequest.factory.numberNode(value);
+	}
+
+	static JsonNode node(boolean value) {
+		return BidRequest.factory.booleanNode(value);
+	}
+
+	/*
+	 * The values GooglePaths reads from the protobuf. Null if the section isn't in the tree at all,
+	 * MissingNode if the field isn't.
+	 */
+
+	JsonNode device(String name) {
+		if (!internal.hasDevice())
+			return null;
+		return orMissing(deviceField(internal.getDevice(), name));
+	}
+
+	JsonNode deviceGeo(String name) {
+		if (!internal.hasDevice())
+			return null;
+		Device d = internal.getDevice();
+		return d.hasGeo() ? orMissing(geoField(d.getGeo(), name)) : MISSING;
+	}
+
+	JsonNode user(String name) {
+		if (!internal.hasUser())
+			return null;
+		return orMissing(userField(internal.getUser(), name));
+	}
+
+	JsonNode userGeo(String name) {
+		if (!internal.hasUser())
+			return null;
+		User u = internal.getUser();
+		return u.hasGeo() ? orMissing(geoField(u.getGeo(), name)) : MISSING;
+	}
+
+	JsonNode site(String name) {
+		if (!internal.hasSite())
+			return null;
+		return orMissing(siteField(internal.getSite(), name));
+	}
+
+	JsonNode sitePublisher(String name) {
+		if (!internal.hasSite())
+			return null;
+		Site s = internal.getSite();
+		return s.hasPublisher() ? orMissing(publisherField(s.getPublisher(), name)) : MISSING;
+	}
+
+	JsonNode app(String name) {
+		if (internal.hasSite())
+			return null;
+		return orMissing(appField(internal.getApp(), name));
+	}
+
+	JsonNode appPublisher(String name) {
+		if (internal.hasSite())
+			return null;
+		App a = internal.getApp();
+		return a.hasPublisher() ? orMissing(publisherField(a.getPublisher(), name)) : MISSING;
+	}
+
+	JsonNode appContent(String name) {
+		if (internal.hasSite())
+			return null;
+		App a = internal.getApp();
+		return a.hasContent() ? orMissing(contentField(a.getContent(), name)) : MISSING;
+	}
+
+	static JsonNode orMissing(JsonNode node) {
+		return node == null ? MISSING : node;
+	}
+
 	/**
 	 * Make JSON based impressions.
 	 */
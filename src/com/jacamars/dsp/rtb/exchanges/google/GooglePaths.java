@@ -0,0 +1,123 @@
+package com.jacamars.dsp.rtb.exchanges.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Compiled hierarchy paths for Google bid requests. A campaign's hierarchy, like device.os or
+ * site.publisher.id, is compiled once into an Accessor that reads the value straight out of the
+ * OpenRtb protobuf, as the JsonNode the JSON tree would have had there. Paths that can't be compiled,
+ * site.cat for example, return null here and GoogleBidRequest builds that section of the tree and walks
+ * it.
+ * <p>
+ * The walk rules are the same as BidRequest.walkTree(): a section that isn't in the request is null,
+ * and a field that isn't there is a MissingNode.
+ * @author Ben M. Faul
+ *
+ */
+class GooglePaths {
+
+	/**
+	 * Reads one path from the protobuf.
+	 */
+	interface Accessor {
+		/**
+		 * Return the value at the path.
+		 * @param br GoogleBidRequest. The request.
+		 * @return JsonNode. The value, MissingNode or null, the same as the tree.
+		 */
+		JsonNode get(GoogleBidRequest br);
+	}
+
+	// Marks a path that has to be walked in the tree
+	static final Accessor TREE = br -> null;
+
+	static final List<String> DEVICE_FIELDS = Arrays.asList(GoogleBidRequest.DEVICE_FIELDS);
+	static final List<String> GEO_FIELDS = Arrays.asList(GoogleBidRequest.GEO_FIELDS);
+	static final List<String> USER_FIELDS = Arrays.asList(GoogleBidRequest.USER_FIELDS);
+	static final List<String> SITE_FIELDS = Arrays.asList(GoogleBidRequest.SITE_FIELDS);
+	static final List<String> APP_FIELDS = Arrays.asList(GoogleBidRequest.APP_FIELDS);
+	static final List<String> PUBLISHER_FIELDS = Arrays.asList(GoogleBidRequest.PUBLISHER_FIELDS);
+	static final List<String> CONTENT_FIELDS = Arrays.asList(GoogleBidRequest.CONTENT_FIELDS);
+
+	// Compiled paths, keyed by the split hierarchy, the set is small and fixed by the campaigns
+	static final Map<List<String>, Accessor> compiled = new ConcurrentHashMap<List<String>, Accessor>();
+
+	/**
+	 * Return the accessor for a path.
+	 * @param path List. The split hierarchy, for example ['device','geo','lat'].
+	 * @return Accessor. The accessor, or null if the path must be walked in the tree.
+	 */
+	static Accessor get(List<String> path) {
+		Accessor a = compiled.get(path);
+		if (a == null) {
+			a = compile(path);
+			compiled.put(new ArrayList<String>(path), a);
+		}
+		return a == TREE ? null : a;
+	}
+
+	/**
+	 * Compile a path.
+	 * @param path List. The split hierarchy.
+	 * @return Accessor. The accessor, or TREE.
+	 */
+	static Accessor compile(List<String> path) {
+		String section = path.get(0);
+		if (path.size() == 2) {
+			String name = path.get(1);
+			switch (section) {
+			case "device":
+				if (DEVICE_FIELDS.contains(name))
+					return br -> br.device(name);
+				break;
+			case "user":
+				if (USER_FIELDS.contains(name))
+					return br -> br.user(name);
+				break;
+			case "site":
+				if (SITE_FIELDS.contains(name))
+					return br -> br.site(name);
+				break;
+			case "app":
+				if (APP_FIELDS.contains(name))
+					return br -> br.app(name);
+				break;
+			}
+			return TREE;
+		}
+
+		if (path.size() == 3) {
+			String object = path.get(1);
+			String name = path.get(2);
+			switch (section + "." + object) {
+			case "device.geo":
+				if (GEO_FIELDS.contains(name))
+					return br -> br.deviceGeo(name);
+				break;
+			case "user.geo":
+				if (GEO_FIELDS.contains(name))
+					return br -> br.userGeo(name);
+				break;
+			case "site.publisher":
+				if (PUBLISHER_FIELDS.contains(name))
+					return br -> br.sitePublisher(name);
+				break;
+			case "app.publisher":
+				if (PUBLISHER_FIELDS.contains(name))
+					return br -> br.appPublisher(name);
+				break;
+			case "app.content":
+				if (CONTENT_FIELDS.contains(name))
+					return br -> br.appContent(name);
+				break;
+			}
+		}
+		return TREE;
+	}
+}
@@ -1,15 +1,8 @@
 package com.jacamars.dsp.rtb.exchanges.google;
 
-import java.io.ByteArrayInputStream;
-
-import java.io.DataInputStream;
 import java.net.URLDecoder;
 
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
-
-import com.jacamars.dsp.rtb.exchanges.adx.Base64;
-import com.jacamars.dsp.rtb.exchanges.adx.Decrypter;
+import com.jacamars.dsp.rtb.exchanges.CryptoContext;
 import com.jacamars.dsp.rtb.pojo.WinObject;
 
 import org.slf4j.Logger;
@@ -24,6 +17,8 @@ public class GoogleWinObject extends WinObject {
 
 	public static byte[] encryptionKeyBytes;
 	public static byte[] integrityKeyBytes;
+	/** Macs for the current keys, remade when the keys are replaced */
+	static volatile CryptoContext crypto;
 
 	protected static final Logger logger = LoggerFactory.getLogger(GoogleWinObject.class);
 	
@@ -71,6 +66,17 @@ public class GoogleWinObject extends WinObject {
 		this.adm = null;
 	}
 	
+	/**
+	 * Return the crypto context for the current keys.
+	 * @return CryptoContext. The context.
+	 */
+	static CryptoContext crypto() {
+		CryptoContext c = crypto;
+		if (c == null || !c.uses(encryptionKeyBytes, integrityKeyBytes))
+			crypto = c = new CryptoContext(encryptionKeyBytes, integrityKeyBytes);
+		return c;
+	}
+	
 	/**
 	 * Google price decrypter
 	 * @param websafeB64EncodedCiphertext String. The encoded crypto text
@@ -79,24 +85,12 @@ public class GoogleWinObject extends WinObject {
 	 * @throws Exception on crypto errors.
 	 */
 	public static double decrypt(String websafeB64EncodedCiphertext, long utc) throws Exception {
-		String b64EncodedCiphertext = Decrypter.unWebSafeAndPad(websafeB64EncodedCiphertext);
-		byte[] codeString = Base64.decodeBase64(b64EncodedCiphertext.getBytes("US-ASCII"));
-		byte[] plaintext;
-		double value;
-		
-	    SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-	    SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
 	    try {
-	      plaintext = Decrypter.decrypt(codeString, encryptionKey, integrityKey);
-			DataInputStream dis = new DataInputStream( new ByteArrayInputStream(plaintext));
-
-			value = dis.readLong();
-			return value;
+			return crypto().decryptPrice(websafeB64EncodedCiphertext);
 	    } catch (Exception e) {
 	      // might be a test, we will try to just use it as is.
 	      try {
-	    	  value = Double.parseDouble(websafeB64EncodedCiphertext);
-			  return value;
+	    	  return Double.parseDouble(websafeB64EncodedCiphertext);
 		  } catch (Exception ee) {
 	    	  logger.warn("Failed to decode ciphertext; {}, error: {}", websafeB64EncodedCiphertext, e.getMessage());
 	    	  throw ee;
@@ -114,14 +108,7 @@ public class GoogleWinObject extends WinObject {
 	 * @throws Exception on protobuf or encryption errors.
 	 */
 	public static byte[] decryptHyperLocal(byte [] code) throws Exception {
-
-		byte[] plaintext;
-	    SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-	    SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
-	 
-	    plaintext = Decrypter.decrypt(code, encryptionKey, integrityKey);
-
-	    return plaintext;
+	    return crypto().decrypt(code);
 	}
 	
 	/**
@@ -131,10 +118,7 @@ public class GoogleWinObject extends WinObject {
 	 * @throws Exception on decryption errors.
 	 */
 	public static String decryptAdvertisingId(byte [] encrypted) throws Exception {
-		 SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-		 SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
-		 
-		 byte [] rc = Decrypter.decrypt(encrypted, encryptionKey, integrityKey);
+		 byte [] rc = crypto().decrypt(encrypted);
 		 StringBuffer sb = new StringBuffer();
 		 for (int i=0;i<rc.length;i++) {
 			 sb.append(Integer.toHexString(0xff & rc[i]));
@@ -153,10 +137,7 @@ public class GoogleWinObject extends WinObject {
 	 * @throws Exception
 	 */
 	public static String decryptIfa(byte [] encrypted) throws Exception {
-		 SecretKey encryptionKey = new SecretKeySpec(encryptionKeyBytes, "HmacSHA1");
-		 SecretKey integrityKey = new SecretKeySpec(integrityKeyBytes, "HmacSHA1");
-		 
-		 byte [] rc = Decrypter.decrypt(encrypted, encryptionKey, integrityKey);
+		 byte [] rc = crypto().decrypt(encrypted);
 		 StringBuffer sb = new StringBuffer();
 		 for (int i=0;i<rc.length;i++) {
 			 sb.append(Integer.toHexString(0xff & rc[i]));
@@ -5,18 +5,18 @@ import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Hex;
 
-import javax.crypto.Mac;
+import com.jacamars.dsp.rtb.exchanges.CryptoContext;
+
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.Random;
 
 /**
  * A class that can encrypt and decrypt the price macro used in
- * Server-Side Real-time bidders.
+ * Server-Side Real-time bidders. The HMACs run on a CryptoContext that is
+ * kept as long as the same key objects are passed in.
  */
 public class SsRtbCrypter {
   private static final Charset US_ASCII = Charset.forName("US-ASCII");
@@ -28,6 +28,9 @@ public class SsRtbCrypter {
 
   private final Random rand;
 
+  /** Macs for the last keys used */
+  private volatile CryptoContext context;
+
   public SsRtbCrypter() {
     this.rand = new Random();
   }
@@ -59,10 +62,23 @@ public class SsRtbCrypter {
   }
 
   public long decodeDecrypt(String base64Websafe, SecretKey encryptKey, SecretKey integrityKey) throws SsRtbDecryptingException {
-    String base64NonWebsafe = base64Websafe.replace("-", "+").replace("_", "/") + "==";
-    byte[] encrypted = Base64.decodeBase64(base64NonWebsafe.getBytes(US_ASCII));
-    byte[] decrypted = decrypt(encrypted, encryptKey, integrityKey);
-    return toLong(decrypted);
+    try {
+      return context(encryptKey, integrityKey).decryptPrice(base64Websafe);
+    } catch (Exception e) {
+      throw new SsRtbDecryptingException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Return the crypto context for these keys, reusing the last one if they
+   * are the same objects.
+   */
+  CryptoContext context(SecretKey encryptionKey, SecretKey integrityKey) {
+    CryptoContext c = context;
+    if (c == null || !c.uses(encryptionKey, integrityKey)) {
+      context = c = new CryptoContext(encryptionKey, integrityKey);
+    }
+    return c;
   }
 
   public byte[] encrypt(byte[] unciphered, String b64EncryptKey, String b64IntegrityKey) {
@@ -81,57 +97,15 @@ public class SsRtbCrypter {
     // Byte array to store the encrypted value
     byte[] out = new byte[IV_SIZE + CIPHERTEXT_SIZE + INTEGRITY_SIZE];
 
-    // Wrap byte array in ByteBuffer
-    ByteBuffer outBuff = ByteBuffer.wrap(out);
-
-    // First 8 bytes of IV are set to current time in millis
-    outBuff.putLong(System.currentTimeMillis());
-
-    // Second 8 bytes should be set to time in micros, but java doesn't
-    // have a way to get that, so we just set it to random bytes
-    outBuff.putLong(rand.nextLong());
-
-    // Flip the buffer so that we can read the IV when creating keypad
-    outBuff.flip();
+    // First 8 bytes of IV are set to current time in millis. Second 8 bytes
+    // should be set to time in micros, but java doesn't have a way to get
+    // that, so we just set it to random bytes
+    byte[] iv = new byte[IV_SIZE];
+    ByteBuffer.wrap(iv).putLong(System.currentTimeMillis()).putLong(rand.nextLong());
 
-    try {
-      // Create MAC
-      Mac mac = Mac.getInstance(HMAC_SHA1);
-      mac.init(encryptionKey);
-
-      // Update it with the IV
-      mac.update(outBuff);
-
-      // Update limit for writing
-      outBuff.limit(IV_SIZE + CIPHERTEXT_SIZE + INTEGRITY_SIZE);
-
-      // Now write 8 bytes of the keypad to the buffer
-      outBuff.put(mac.doFinal(), 0, CIPHERTEXT_SIZE);
-
-      // Update the buffer by xor-ing the keypad values with the the
-      // plaintext values.
-      for (int i = 0; i < CIPHERTEXT_SIZE; i++) {
-        out[IV_SIZE + i] = (byte)(out[IV_SIZE + i] ^ unciphered[i]);
-      }
-
-      // Now compute the signature
-      mac.init(integrityKey);
-
-      // First put unciphered
-      mac.update(unciphered);
-
-      // Now put IV
-      mac.update(out, 0, 16);
-
-      // Take first four bytes as integrity check
-      outBuff.put(mac.doFinal(), 0, INTEGRITY_SIZE);
-
-      return out;
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("HmacSHA1 not supported.", e);
-    } catch (InvalidKeyException e) {
-      throw new RuntimeException("Key not valid for HmacSHA1", e);
-    }
+    // Keypad xor plaintext, then the first four bytes of the signature
+    context(encryptionKey, integrityKey).encrypt(unciphered, iv, out);
+    return out;
   }
   
   public byte[] decrypt(byte[] crypted, SecretKey encryptionKey, SecretKey integrityKey)
@@ -141,35 +115,12 @@ public class SsRtbCrypter {
     byte[] unciphered = new byte[CIPHERTEXT_SIZE];
     
     try {
-      // Create encrypting MAC
-      Mac mac = Mac.getInstance(HMAC_SHA1);
-      mac.init(encryptionKey);
-      
-      // Create keypad
-      mac.update(crypted, 0, IV_SIZE);
-      byte[] pad = mac.doFinal();
-      
-      // XOR values to get unciphered value
-      for (int i = 0; i < CIPHERTEXT_SIZE; i++) {
-        unciphered[i] = (byte)(pad[i] ^ crypted[IV_SIZE + i]);
-      }
-
-      // Calculate signature bytes
-      mac.init(integrityKey);
-      mac.update(unciphered);
-      mac.update(crypted, 0, IV_SIZE);
-      byte[] signature = mac.doFinal();
-      
-      // Check signature
-      for (int i = 0; i < INTEGRITY_SIZE; i++) {
-        if (signature[i] != crypted[IV_SIZE + CIPHERTEXT_SIZE + i]) {
-          throw new SsRtbDecryptingException("Signature does not match.", null);
-        }
-      }
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("HmacSHA1 not supported.", e);
-    } catch (InvalidKeyException e) {
-      throw new RuntimeException("Key not valid for HmacSHA1", e);
+      context(encryptionKey, integrityKey).decrypt(crypted, 0, IV_SIZE + CIPHERTEXT_SIZE + INTEGRITY_SIZE,
+          unciphered);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SsRtbDecryptingException("Signature does not match.", e);
     }
 
     return unciphered;
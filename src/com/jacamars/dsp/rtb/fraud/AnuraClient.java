@@ -1,8 +1,14 @@
 package com.jacamars.dsp.rtb.fraud;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -41,6 +47,9 @@ public enum AnuraClient implements FraudIF {
 
 	static CloseableHttpClient httpclient;
 
+	/** Non-blocking client used by bidAsync */
+	static HttpClient asyncClient;
+
 	/** Anura round trip time */
 	public static AtomicLong forensiqXtime = new AtomicLong(0);
 	/** forensiq count */
@@ -127,6 +136,7 @@ public enum AnuraClient implements FraudIF {
 		cm.setDefaultMaxPerRoute(connections);
 
 		httpclient = HttpClients.custom().setConnectionManager(cm).build();
+		asyncClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
 	}
 
 	public static void reset() {
@@ -192,7 +202,48 @@ public enum AnuraClient implements FraudIF {
 
 		}
 		result = rootNode.get("result").asText("error: does not conform");
+		return verdict(result, xtime, ip, url, ua, seller);
+	}
 
+	/**
+	 * Start the check on the non-blocking client. A failed call completes the future exceptionally,
+	 * so the caller applies bidOnError. A request that is not sampled gets UNCHECKED.
+	 */
+	@Override
+	public CompletableFuture<FraudLog> bidAsync(String rt, String ip, String url, String ua, String seller,
+			String crid) {
+		if (checkPercentage() == false || asyncClient == null)
+			return UNCHECKED;
+		if (ip == null) {
+			if (bidOnError)
+				return CompletableFuture.completedFuture(null);
+			return CompletableFuture.failedFuture(new Exception("Required field ip is missing"));
+		}
+		try {
+			HttpRequest request = HttpRequest.newBuilder(URI.create(preamble + "ip=" + ip))
+					.timeout(Duration.ofMillis(FraudCheck.getBudget())).GET().build();
+			long xtime = System.currentTimeMillis();
+			return asyncClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(response -> {
+				try {
+					String result = mapper.readTree(new String(response.body())).get("result")
+							.asText("error: does not conform");
+					return verdict(result, xtime, ip, url, ua, seller);
+				} catch (Exception error) {
+					throw new IllegalStateException("Bad Anura response: " + error.getMessage(), error);
+				}
+			});
+		} catch (Exception error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+
+	/**
+	 * Turn the Anura result into a verdict.
+	 * @param result String. The result field of the reply.
+	 * @param xtime long. When the call started.
+	 * @return FraudLog. Null if the result is non-suspect, else the log record.
+	 */
+	FraudLog verdict(String result, long xtime, String ip, String url, String ua, String seller) {
 		xtime = System.currentTimeMillis() - xtime;
 
 		if (printxtime)
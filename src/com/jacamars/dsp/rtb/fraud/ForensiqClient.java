@@ -1,6 +1,12 @@
 package com.jacamars.dsp.rtb.fraud;
 
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -37,6 +43,9 @@ public enum  ForensiqClient implements FraudIF {
 	
 	static CloseableHttpClient httpclient;
 	
+	/** Non-blocking client used by bidAsync */
+	static HttpClient asyncClient;
+	
 	/** Forensiq round trip time */
 	public static AtomicLong forensiqXtime = new AtomicLong(0);
 	/** forensiq count */
@@ -105,6 +114,7 @@ public enum  ForensiqClient implements FraudIF {
 	     cm.setDefaultMaxPerRoute(connections);
 
 	    httpclient = HttpClients.custom().setConnectionManager(cm).build();
+	    asyncClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
 	}
 	
 	public static void reset() {
@@ -124,13 +134,77 @@ public enum  ForensiqClient implements FraudIF {
 	 */
 	public FraudLog bid(String rt, String ip, String url, String ua, String seller, String crid) throws Exception {
 		byte[] bytes = null;
-		StringBuilder sb = new StringBuilder(preamble);
-		JsonNode rootNode = null;		
 
 		if (httpclient == null) {
 			return null;
 		}
 		
+		String query = makeQuery(rt, ip, url, ua, seller, crid);
+		BasicHttpContext context = new BasicHttpContext();
+		HttpGet httpget = new HttpGet(query);
+		
+		try {
+
+			long xtime = System.currentTimeMillis();
+			
+			 CloseableHttpResponse response = httpclient.execute(httpget, context);
+
+			 HttpEntity entity = response.getEntity();
+             if (entity != null) {
+                 bytes = EntityUtils.toByteArray(entity);
+             }
+             response.close();
+			
+			return verdict(bytes, xtime, ip, url, ua, seller);
+		} catch (Exception e) {
+			logger.error("{}",e.getMessage());
+		} finally {
+
+		}
+		
+		FraudLog m = new FraudLog();
+		m.source = "Forensiq";
+		m.ip = ip;
+		m.url = url;
+		m.ua = ua;
+		m.seller = seller;
+		m.xtime = 5;
+		return m;
+	}
+	
+	/**
+	 * Start the check on the non-blocking client. Unlike bid(), a failed call completes the future
+	 * exceptionally, so the caller applies bidOnError.
+	 */
+	@Override
+	public CompletableFuture<FraudLog> bidAsync(String rt, String ip, String url, String ua, String seller, String crid) {
+		if (asyncClient == null)
+			return UNCHECKED;
+		try {
+			String query = makeQuery(rt, ip, url, ua, seller, crid);
+			HttpRequest request = HttpRequest.newBuilder(URI.create(query))
+					.timeout(Duration.ofMillis(FraudCheck.getBudget())).GET().build();
+			long xtime = System.currentTimeMillis();
+			return asyncClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+					.thenApply(response -> {
+						try {
+							return verdict(response.body(), xtime, ip, url, ua, seller);
+						} catch (Exception error) {
+							throw new IllegalStateException("Bad Forensiq response: " + error.getMessage(), error);
+						}
+					});
+		} catch (Exception error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+	
+	/**
+	 * Make the query url.
+	 * @throws Exception on missing required fields - seller and IP.
+	 */
+	String makeQuery(String rt, String ip, String url, String ua, String seller, String crid) throws Exception {
+		StringBuilder sb = new StringBuilder(preamble);
+		
 		if (seller == null || ip == null) {
 			if (seller == null)
 				throw new Exception("Required field seller is missing");
@@ -170,63 +244,37 @@ public enum  ForensiqClient implements FraudIF {
 		}
 		
 		sb.append("&sub=s");
+		return sb.toString();
+	}
+	
+	/**
+	 * Turn the Forensiq reply into a verdict.
+	 * @param bytes byte[]. The reply body.
+	 * @param xtime long. When the call started.
+	 * @return FraudLog. Null if under the threshhold, else the log record.
+	 * @throws Exception if the reply isn't JSON with a riskScore.
+	 */
+	FraudLog verdict(byte[] bytes, long xtime, String ip, String url, String ua, String seller) throws Exception {
+		JsonNode rootNode = mapper.readTree(new String(bytes));
+		int risk = rootNode.get("riskScore").asInt();
 		
-		BasicHttpContext context = new BasicHttpContext();
-		HttpGet httpget = new HttpGet(sb.toString());
-		
-		try {
-
-			long xtime = System.currentTimeMillis();
-			
-			 CloseableHttpResponse response = httpclient.execute(httpget, context);
-
-			 HttpEntity entity = response.getEntity();
-             if (entity != null) {
-                 bytes = EntityUtils.toByteArray(entity);
-             }
-             response.close();
-			
-			 String content = new String(bytes);;
-			
-			//System.out.println("--->"+content);
-			
-			// System.err.println("---->" + RTBServer.);
-			
-			rootNode = mapper.readTree(content);
-			int risk = rootNode.get("riskScore").asInt();
-			int time = rootNode.get("timeMs").asInt();
-			
-			xtime = System.currentTimeMillis() - xtime;
-			forensiqXtime.addAndGet(xtime);
-			forensiqCount.incrementAndGet();
-
-			if (risk > threshhold) {
-				FraudLog m = new FraudLog();
-				m.source = "Forensiq";
-				m.ip = ip;
-				m.url = url;
-				m.ua = ua;
-				m.seller = seller;
-				m.risk = risk;
-				m.xtime = xtime;
-				return m;
-			}
-			
-			return null;
-		} catch (Exception e) {
-			logger.error("{}",e.getMessage());
-		} finally {
+		xtime = System.currentTimeMillis() - xtime;
+		forensiqXtime.addAndGet(xtime);
+		forensiqCount.incrementAndGet();
 
+		if (risk > threshhold) {
+			FraudLog m = new FraudLog();
+			m.source = "Forensiq";
+			m.ip = ip;
+			m.url = url;
+			m.ua = ua;
+			m.seller = seller;
+			m.risk = risk;
+			m.xtime = xtime;
+			return m;
 		}
 		
-		FraudLog m = new FraudLog();
-		m.source = "Forensiq";
-		m.ip = ip;
-		m.url = url;
-		m.ua = ua;
-		m.seller = seller;
-		m.xtime = 5;
-		return m;
+		return null;
 	}
 	
 	public boolean bidOnError() {
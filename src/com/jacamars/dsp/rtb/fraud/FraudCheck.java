@@ -0,0 +1,190 @@
+package com.jacamars.dsp.rtb.fraud;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the fraud check next to campaign selection instead of in front of it. The bidder starts the
+ * check as soon as the request is parsed and joins it, under the exchange's deadline, only when there
+ * is a bid to send.
+ * <p>
+ * Verdicts are cached by IP and domain for ttl, and a check that is still in flight is shared, so a
+ * burst of requests from one device costs one call to the service. Failed checks are not cached, and
+ * neither are requests the service was never asked about. A check that misses its deadline is dropped too,
+ * so a hung service is asked again instead of holding every request for the key to the deadline.
+ * @author Ben M. Faul
+ *
+ */
+public class FraudCheck {
+
+	/** How long to wait for a verdict, in ms, when the exchange has no deadline of its own */
+	public static volatile long deadline = 20;
+	/** Deadlines in ms by exchange name */
+	public static final Map<String, Long> deadlines = new ConcurrentHashMap<String, Long>();
+	/** How long a verdict is reused, in ms */
+	public static volatile long ttl = 300000;
+	/** Upper bound on cached verdicts, the expired ones are swept when it is reached */
+	public static volatile int maxEntries = 100000;
+
+	/** Verdicts answered from the cache */
+	public static final AtomicLong hits = new AtomicLong(0);
+	/** Checks sent to the service */
+	public static final AtomicLong calls = new AtomicLong(0);
+	/** Joins that ran out of time */
+	public static final AtomicLong timeouts = new AtomicLong(0);
+
+	// Verdicts, and checks in flight, by ip|domain
+	static final Map<String, Verdict> verdicts = new ConcurrentHashMap<String, Verdict>();
+
+	// The key of each check in flight, to drop it when a join times out
+	static final Map<CompletableFuture<FraudLog>, String> pending = new ConcurrentHashMap<CompletableFuture<FraudLog>, String>();
+
+	/**
+	 * A cached or pending verdict.
+	 */
+	static class Verdict {
+		final CompletableFuture<FraudLog> future;
+		final long expires;
+
+		Verdict(CompletableFuture<FraudLog> future, long expires) {
+			this.future = future;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Start a fraud check, or return the cached one.
+	 * @param fraud FraudIF. The fraud service.
+	 * @param rt String. The record type, usually "display".
+	 * @param ip String. The device ip.
+	 * @param url String. The page url, encoded.
+	 * @param ua String. The user agent, encoded.
+	 * @param seller String. The seller, site or app name.
+	 * @param domain String. The site domain, part of the cache key, may be null.
+	 * @return CompletableFuture. Completes with null if not a bot, the log record if it is, or
+	 *         exceptionally if the service failed.
+	 */
+	public static CompletableFuture<FraudLog> start(FraudIF fraud, String rt, String ip, String url, String ua,
+			String seller, String domain) {
+		if (ip == null)
+			return fraud.bidAsync(rt, ip, url, ua, seller, "na");
+
+		String key = domain == null ? ip : ip + "|" + domain;
+		long now = System.currentTimeMillis();
+		Verdict v = verdicts.get(key);
+		if (v != null && v.expires > now && !v.future.isCompletedExceptionally()) {
+			hits.incrementAndGet();
+			return v.future;
+		}
+
+		if (verdicts.size() >= maxEntries)
+			sweep(now);
+
+		CompletableFuture<FraudLog> future = fraud.bidAsync(rt, ip, url, ua, seller, "na");
+		if (future == FraudIF.UNCHECKED)
+			return future;
+
+		calls.incrementAndGet();
+		Verdict mine = new Verdict(future, now + ttl);
+		verdicts.put(key, mine);
+		pending.put(future, key);
+		future.whenComplete((log, error) -> {
+			pending.remove(future);
+			if (error != null)
+				verdicts.remove(key, mine);
+		});
+		return future;
+	}
+
+	/**
+	 * Wait for a verdict.
+	 * @param future CompletableFuture. The value returned by start().
+	 * @param exchange String. The exchange, selects the deadline.
+	 * @return FraudLog. Null if not a bot, else the log record.
+	 * @throws Exception TimeoutException if the deadline passed, the check is then no longer cached, or the
+	 *         error of the check.
+	 */
+	public static FraudLog join(CompletableFuture<FraudLog> future, String exchange) throws Exception {
+		try {
+			return future.get(getDeadline(exchange), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException error) {
+			timeouts.incrementAndGet();
+			String key = pending.get(future);
+			if (key != null)
+				verdicts.computeIfPresent(key, (k, v) -> v.future == future ? null : v);
+			throw error;
+		} catch (ExecutionException error) {
+			if (error.getCause() instanceof Exception)
+				throw (Exception) error.getCause();
+			throw error;
+		}
+	}
+
+	/**
+	 * Return the deadline for an exchange.
+	 * @param exchange String. The exchange name, may be null.
+	 * @return long. The deadline in ms.
+	 */
+	public static long getDeadline(String exchange) {
+		if (exchange != null) {
+			Long x = deadlines.get(exchange);
+			if (x != null)
+				return x;
+		}
+		return deadline;
+	}
+
+	/**
+	 * Return how long the service has to answer: the longest deadline. An answer after that is of no use to
+	 * any exchange, the request fails and the check is not cached.
+	 * @return long. The budget in ms.
+	 */
+	public static long getBudget() {
+		long budget = deadline;
+		for (long x : deadlines.values())
+			budget = Math.max(budget, x);
+		return budget;
+	}
+
+	/**
+	 * Drop the expired verdicts, and everything if that isn't enough.
+	 * @param now long. The current time.
+	 */
+	static void sweep(long now) {
+		for (Iterator<Verdict> it = verdicts.values().iterator(); it.hasNext();) {
+			if (it.next().expires <= now)
+				it.remove();
+		}
+		if (verdicts.size() >= maxEntries)
+			verdicts.clear();
+	}
+
+	/**
+	 * Forget all verdicts.
+	 */
+	public static void clear() {
+		verdicts.clear();
+		pending.clear();
+	}
+
+	/**
+	 * Return the statistics, for the summary.
+	 * @return Map. The counters by name.
+	 */
+	public static Map<String, Object> getStats() {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("cached", verdicts.size());
+		m.put("hits", hits.get());
+		m.put("calls", calls.get());
+		m.put("timeouts", timeouts.get());
+		m.put("deadline", deadline);
+		return m;
+	}
+}
@@ -1,5 +1,7 @@
 package com.jacamars.dsp.rtb.fraud;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for Fraud implementations
  * @author Ben M. Faul
@@ -7,6 +9,12 @@ package com.jacamars.dsp.rtb.fraud;
  */
 public interface FraudIF {
 
+	/**
+	 * What bidAsync() returns for a request it did not send to the service, because it was not sampled or
+	 * there is no client. It says nothing about the request, so it is never cached. Do not complete it.
+	 */
+	public static final CompletableFuture<FraudLog> UNCHECKED = CompletableFuture.completedFuture(null);
+
 	/**
 	 * The interface that all fraud detection clases use.
 	 * @param rt String, record type. Some kind of marker to use for logging, usually 'display'
@@ -20,6 +28,26 @@ public interface FraudIF {
 	 */
 	public FraudLog bid(String rt, String ip, String url, String ua, String seller, String crid) throws Exception;
 	
+	/**
+	 * Start the check without blocking the caller. Services that answer locally just run bid(), the
+	 * ones behind HTTP override this with a non-blocking call.
+	 * @param rt String, record type, usually 'display'.
+	 * @param ip String. The string representation of the ip address.
+	 * @param url String. The page url.
+	 * @param ua String. The user agent.
+	 * @param seller String. The seller, usually app.id or site.id.
+	 * @param crid String. Not used, deprecated.
+	 * @return CompletableFuture. Completes with the value bid() would return, or with its exception.
+	 */
+	public default CompletableFuture<FraudLog> bidAsync(String rt, String ip, String url, String ua, String seller,
+			String crid) {
+		try {
+			return CompletableFuture.completedFuture(bid(rt, ip, url, ua, seller, crid));
+		} catch (Exception error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+	
 	/**
 	 * If you want to bid on an error (like when the underlying service is unavailable, then return true.
 	 * @return
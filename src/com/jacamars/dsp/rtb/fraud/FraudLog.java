@@ -38,4 +38,22 @@ public class FraudLog {
 	public FraudLog() {
 		
 	}
+	
+	/**
+	 * Copy a log record. Cached verdicts are shared, so each request gets its own copy to fill in.
+	 * @param other FraudLog. The record to copy.
+	 */
+	public FraudLog(FraudLog other) {
+		source = other.source;
+		ip = other.ip;
+		url = other.url;
+		ua = other.ua;
+		seller = other.seller;
+		exchange = other.exchange;
+		id = other.id;
+		risk = other.risk;
+		domain = other.domain;
+		organization = other.organization;
+		xtime = other.xtime;
+	}
 }
@@ -1,9 +1,5 @@
 package com.jacamars.dsp.rtb.fraud;
 
-import java.io.File;
-
-
-import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -12,11 +8,12 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.model.IspResponse;
+import com.jacamars.dsp.rtb.geo.IpIntelligence;
+import com.jacamars.dsp.rtb.geo.IpRecord;
 
 /**
- * A Singleton class that implements the Max Mind bot detection class.
+ * A Singleton class that implements the Max Mind bot detection class. The ISP database is read through
+ * IpIntelligence, which caches the organization and the watch list verdict per /24.
  * @author Ben M. Faul
  *
  */
@@ -24,8 +21,6 @@ public enum MMDBClient implements FraudIF {
 
 	INSTANCE;
 	
-	static DatabaseReader reader;
-	
 	/** Forensiq round trip time */
 	public volatile static AtomicLong forensiqXtime = new AtomicLong(0);
 	/** forensiq count */
@@ -75,10 +70,23 @@ public enum MMDBClient implements FraudIF {
 	 * @throws Exception on I/O errors.
 	 */
 	public static void setup() throws Exception {
-		File f = new File(file);
-		if (!f.exists())
-			throw new Exception("No such file: " + file);
-		reader = new DatabaseReader.Builder(f).build();
+		IpIntelligence.setIspDatabase(file);
+		IpIntelligence.setScreen(MMDBClient::suspect);
+	}
+	
+	/**
+	 * Test an organization against the watch and filter lists.
+	 * @param organization String. The lower case organization.
+	 * @return boolean. True if it is on the watch list or contains a filter list entry.
+	 */
+	static boolean suspect(String organization) {
+		if (watchlist.contains(organization))
+			return true;
+		for (int i=0;i<filterList.size();i++) {
+			if (organization.contains(filterList.get(i)))
+				return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -89,6 +97,7 @@ public enum MMDBClient implements FraudIF {
 		for (String s : theList) {
 			watchlist.add(s.trim().toLowerCase());
 		}
+		IpIntelligence.clear();
 	}
 	
 	/**
@@ -99,6 +108,7 @@ public enum MMDBClient implements FraudIF {
 		for (String s : theList) {
 			filterList.add(s.trim().toLowerCase());
 		}	
+		IpIntelligence.clear();
 	}
 	
 	/**
@@ -113,7 +123,7 @@ public enum MMDBClient implements FraudIF {
 	 * @throws Exception on missing required fields - seller and IP.
 	 */
 	public FraudLog bid(String rt, String ip, String url, String ua, String seller, String crid) throws Exception {
-		if (reader == null) {
+		if (!IpIntelligence.hasIsp()) {
 			return null;
 		}
 		
@@ -134,46 +144,12 @@ public enum MMDBClient implements FraudIF {
 			return m;
 		}
 		
-		try {
-
-			long xtime = System.currentTimeMillis();
-			forensiqCount.incrementAndGet();
-			InetAddress ip4 = InetAddress.getByName(ip);
-			IspResponse r = reader.isp(ip4);
-			String test = r.getOrganization().toLowerCase();
-			
-			// System.out.println("--- FRAUD ----->" + test + ", size = " + watchlist.size());
-			xtime = System.currentTimeMillis() - xtime;
-			forensiqXtime.addAndGet(xtime);
-			if (watchlist.contains(test)) {
-					FraudLog m = new FraudLog();
-					m.source = "MMDB";
-					m.ip = ip;
-					m.url = url;
-					m.ua = ua;
-					m.seller = seller;
-					m.risk = 1;
-					m.organization = test;
-					m.xtime = xtime;
-					return m;
-				}
-			for (int i=0;i<filterList.size();i++) {
-				String s = filterList.get(i);
-				if (test.contains(s)) {
-					FraudLog m = new FraudLog();
-					m.source = "MMDB";
-					m.ip = ip;
-					m.url = url;
-					m.ua = ua;
-					m.seller = seller;
-					m.risk = 1;
-					m.organization = test;
-					m.xtime = xtime;
-					return m;
-				}
-			} 
-			
-		} catch (Exception e) {
+		long xtime = System.currentTimeMillis();
+		forensiqCount.incrementAndGet();
+		IpRecord r = IpIntelligence.lookup(ip);
+		xtime = System.currentTimeMillis() - xtime;
+		forensiqXtime.addAndGet(xtime);
+		if (r == null || r.organization == null) {
 			FraudLog m = new FraudLog();
 			m.source = "MMDB";
 			m.ip = ip;
@@ -184,8 +160,18 @@ public enum MMDBClient implements FraudIF {
 			m.organization = "NOT IN DATABASE";
 			m.xtime = 1;
 			return m;
-		} finally {
-
+		}
+		if (r.suspect) {
+			FraudLog m = new FraudLog();
+			m.source = "MMDB";
+			m.ip = ip;
+			m.url = url;
+			m.ua = ua;
+			m.seller = seller;
+			m.risk = 1;
+			m.organization = r.organization;
+			m.xtime = xtime;
+			return m;
 		}
 		return null;
 	}
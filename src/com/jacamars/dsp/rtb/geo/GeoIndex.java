@@ -0,0 +1,289 @@
+package com.jacamars.dsp.rtb.geo;
+
+/**
+ * A static spatial index over GPS points, each with an optional range in meters. Built once, when a
+ * campaign compiles or the zip code database loads, then shared read-only by the bidding threads.
+ * <p>
+ * Points are stored as unit vectors in a balanced kd-tree kept in flat arrays. The straight line
+ * (chord) distance between unit vectors grows with the great circle distance, so it works as a cheap
+ * pre-filter with no trig and no problems at the date line. Only candidates that pass the chord test
+ * get the exact haversine, the same one Node uses, so range decisions don't change.
+ * Queries are O(log n), range queries don't allocate.
+ * @author Ben M. Faul
+ *
+ */
+public class GeoIndex {
+
+	/** Equatorial radius of the earth in meters, the same value Node.getRange uses */
+	public static final double EARTH = 6378.137 * 1000;
+
+	// Slack on the chord test so rounding never rejects a point the haversine would accept
+	static final double SLACK = 1e-9;
+
+	// Number of points
+	final int n;
+	// Unit vectors in tree order
+	final double[] xs, ys, zs;
+	// Original coordinates and ranges in tree order
+	final double[] lats, lons, ranges;
+	// Chord equivalent of each range, and the largest one in the subtree rooted at each node
+	final double[] chords, maxChords;
+	// Split axis of each node
+	final byte[] axes;
+	// Index into the caller's arrays, in tree order
+	final int[] ids;
+
+	/**
+	 * Build the index.
+	 * @param lat double[]. Latitudes in degrees.
+	 * @param lon double[]. Longitudes in degrees.
+	 * @param range double[]. Range of each point in meters, or null if only nearest() is used.
+	 */
+	public GeoIndex(double[] lat, double[] lon, double[] range) {
+		n = lat.length;
+		xs = new double[n];
+		ys = new double[n];
+		zs = new double[n];
+		lats = new double[n];
+		lons = new double[n];
+		ranges = new double[n];
+		chords = new double[n];
+		maxChords = new double[n];
+		axes = new byte[n];
+		ids = new int[n];
+
+		double[][] v = new double[3][n];
+		int[] idx = new int[n];
+		for (int i = 0; i < n; i++) {
+			double la = Math.toRadians(lat[i]);
+			double lo = Math.toRadians(lon[i]);
+			v[0][i] = Math.cos(la) * Math.cos(lo);
+			v[1][i] = Math.cos(la) * Math.sin(lo);
+			v[2][i] = Math.sin(la);
+			idx[i] = i;
+		}
+		build(idx, v, 0, n);
+		for (int i = 0; i < n; i++) {
+			int k = idx[i];
+			ids[i] = k;
+			xs[i] = v[0][k];
+			ys[i] = v[1][k];
+			zs[i] = v[2][k];
+			lats[i] = lat[k];
+			lons[i] = lon[k];
+			ranges[i] = range == null ? 0 : range[k];
+			chords[i] = chord(ranges[i]);
+		}
+		computeMax(0, n);
+	}
+
+	/**
+	 * Recursively order idx[lo,hi) so the median on the widest axis is at the middle.
+	 */
+	void build(int[] idx, double[][] v, int lo, int hi) {
+		if (hi - lo <= 1) {
+			if (hi > lo)
+				axes[lo] = 0;
+			return;
+		}
+		int axis = 0;
+		double widest = -1;
+		for (int a = 0; a < 3; a++) {
+			double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+			for (int i = lo; i < hi; i++) {
+				double c = v[a][idx[i]];
+				if (c < min)
+					min = c;
+				if (c > max)
+					max = c;
+			}
+			if (max - min > widest) {
+				widest = max - min;
+				axis = a;
+			}
+		}
+		int mid = (lo + hi) >>> 1;
+		select(idx, v[axis], lo, hi - 1, mid);
+		axes[mid] = (byte) axis;
+		build(idx, v, lo, mid);
+		build(idx, v, mid + 1, hi);
+	}
+
+	/**
+	 * Quickselect, places the k'th smallest at k with smaller to the left and larger to the right.
+	 */
+	static void select(int[] idx, double[] c, int lo, int hi, int k) {
+		while (hi > lo) {
+			double pivot = c[idx[(lo + hi) >>> 1]];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (c[idx[i]] < pivot)
+					i++;
+				while (c[idx[j]] > pivot)
+					j--;
+				if (i <= j) {
+					int t = idx[i];
+					idx[i] = idx[j];
+					idx[j] = t;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	/**
+	 * Fill maxChords for the subtree [lo,hi).
+	 */
+	double computeMax(int lo, int hi) {
+		if (hi <= lo)
+			return 0;
+		int mid = (lo + hi) >>> 1;
+		double m = Math.max(chords[mid], Math.max(computeMax(lo, mid), computeMax(mid + 1, hi)));
+		maxChords[mid] = m;
+		return m;
+	}
+
+	/**
+	 * Convert a range in meters to the chord length between unit vectors.
+	 * @param meters double. The range.
+	 * @return double. The chord length.
+	 */
+	static double chord(double meters) {
+		double angle = Math.min(meters / EARTH, Math.PI);
+		return 2 * Math.sin(angle / 2) + SLACK;
+	}
+
+	/**
+	 * Return the number of points.
+	 * @return int. The size of the index.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Determine if the position is within the range of any point.
+	 * @param lat double. Latitude in degrees.
+	 * @param lon double. Longitude in degrees.
+	 * @return boolean. True if some point's haversine distance is less than its range.
+	 */
+	public boolean inRange(double lat, double lon) {
+		return firstInRange(lat, lon) >= 0;
+	}
+
+	/**
+	 * Return a point whose range covers the position.
+	 * @param lat double. Latitude in degrees.
+	 * @param lon double. Longitude in degrees.
+	 * @return int. The caller's index of the point, or -1 if none.
+	 */
+	public int firstInRange(double lat, double lon) {
+		if (n == 0)
+			return -1;
+		double la = Math.toRadians(lat);
+		double lo = Math.toRadians(lon);
+		double qx = Math.cos(la) * Math.cos(lo);
+		double qy = Math.cos(la) * Math.sin(lo);
+		double qz = Math.sin(la);
+		return inRange(0, n, qx, qy, qz, lat, lon);
+	}
+
+	int inRange(int lo, int hi, double qx, double qy, double qz, double lat, double lon) {
+		if (hi <= lo)
+			return -1;
+		int mid = (lo + hi) >>> 1;
+		double diff = axisValue(mid, qx, qy, qz);
+		double reach = maxChords[mid];
+		if (Math.abs(diff) > reach)
+			return diff < 0 ? inRange(lo, mid, qx, qy, qz, lat, lon) : inRange(mid + 1, hi, qx, qy, qz, lat, lon);
+
+		double dx = xs[mid] - qx, dy = ys[mid] - qy, dz = zs[mid] - qz;
+		double c = chords[mid];
+		if (dx * dx + dy * dy + dz * dz <= c * c && haversine(lats[mid], lons[mid], lat, lon) < ranges[mid])
+			return ids[mid];
+
+		int r = inRange(lo, mid, qx, qy, qz, lat, lon);
+		if (r >= 0)
+			return r;
+		return inRange(mid + 1, hi, qx, qy, qz, lat, lon);
+	}
+
+	/**
+	 * Return the point nearest the position.
+	 * @param lat double. Latitude in degrees.
+	 * @param lon double. Longitude in degrees.
+	 * @return int. The caller's index of the nearest point, or -1 if the index is empty.
+	 */
+	public int nearest(double lat, double lon) {
+		if (n == 0)
+			return -1;
+		double la = Math.toRadians(lat);
+		double lo = Math.toRadians(lon);
+		double[] best = { Double.MAX_VALUE, -1 };
+		nearest(0, n, Math.cos(la) * Math.cos(lo), Math.cos(la) * Math.sin(lo), Math.sin(la), best);
+		return ids[(int) best[1]];
+	}
+
+	void nearest(int lo, int hi, double qx, double qy, double qz, double[] best) {
+		if (hi <= lo)
+			return;
+		int mid = (lo + hi) >>> 1;
+		double dx = xs[mid] - qx, dy = ys[mid] - qy, dz = zs[mid] - qz;
+		double d = dx * dx + dy * dy + dz * dz;
+		if (d < best[0]) {
+			best[0] = d;
+			best[1] = mid;
+		}
+		double diff = axisValue(mid, qx, qy, qz);
+		if (diff < 0) {
+			nearest(lo, mid, qx, qy, qz, best);
+			if (diff * diff < best[0])
+				nearest(mid + 1, hi, qx, qy, qz, best);
+		} else {
+			nearest(mid + 1, hi, qx, qy, qz, best);
+			if (diff * diff < best[0])
+				nearest(lo, mid, qx, qy, qz, best);
+		}
+	}
+
+	/**
+	 * Signed distance of the query from the split plane of a node, on the node's axis.
+	 */
+	double axisValue(int node, double qx, double qy, double qz) {
+		switch (axes[node]) {
+		case 0:
+			return qx - xs[node];
+		case 1:
+			return qy - ys[node];
+		default:
+			return qz - zs[node];
+		}
+	}
+
+	/**
+	 * Haversine distance in meters, same formula as Node.getRange without the boxing.
+	 * @param lat1 double. First latitude in degrees.
+	 * @param lon1 double. First longitude in degrees.
+	 * @param lat2 double. Second latitude in degrees.
+	 * @param lon2 double. Second longitude in degrees.
+	 * @return double. The distance in meters.
+	 */
+	public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+		double dlat1 = lat1 * (Math.PI / 180);
+		double dlat2 = lat2 * (Math.PI / 180);
+		double dLong = lon1 * (Math.PI / 180) - lon2 * (Math.PI / 180);
+		double dLat = dlat1 - dlat2;
+		double s1 = Math.sin(dLat / 2.0);
+		double s2 = Math.sin(dLong / 2);
+		double aHarv = s1 * s1 + Math.cos(dlat1) * Math.cos(dlat2) * s2 * s2;
+		double cHarv = 2 * Math.atan2(Math.sqrt(aHarv), Math.sqrt(1.0 - aHarv));
+		return EARTH * cHarv;
+	}
+}
@@ -4,6 +4,7 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,16 @@ public class GeoTag {
 	Map<String, List<Solution>> table = new HashMap();
 	Map<Integer, List<String>> zipStates = new HashMap();
 
+	// The solutions in file order
+	List<Solution> all = new ArrayList<Solution>();
+	// Latitude band key, longitude and file order of each solution, sorted by band then longitude
+	int[] bandKeys;
+	double[] bandLons;
+	int[] bandOrder;
+	Solution[] bandSols;
+	// Spatial index over all the centroids, for getNearest()
+	GeoIndex index;
+
 	public GeoTag() {
 		
 	}
@@ -76,6 +87,7 @@ public class GeoTag {
 			}
 			Solution sol = new Solution();
 			sol.code = c;
+			sol.lat = nkey;
 			sol.lon = lonb;
 			List<String> v = zipStates.get(c);
 			int j = 0;
@@ -91,7 +103,52 @@ public class GeoTag {
 				}
 			}
 			s.add(sol);
+			all.add(sol);
+		}
+		buildIndex();
+	}
+
+	/**
+	 * Build the sorted band arrays used by getSolution() and the spatial index used by getNearest().
+	 */
+	void buildIndex() {
+		int n = all.size();
+		Integer[] order = new Integer[n];
+		int[] keys = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+			keys[i] = bandKey(all.get(i).lat);
+		}
+		Arrays.sort(order, (x, y) -> {
+			int c = Integer.compare(keys[x], keys[y]);
+			if (c != 0)
+				return c;
+			c = Double.compare(all.get(x).lon, all.get(y).lon);
+			if (c != 0)
+				return c;
+			return Integer.compare(x, y);
+		});
+
+		int[] bk = new int[n];
+		double[] bl = new double[n];
+		int[] bo = new int[n];
+		Solution[] bs = new Solution[n];
+		double[] lats = new double[n];
+		double[] lons = new double[n];
+		for (int i = 0; i < n; i++) {
+			int k = order[i];
+			bk[i] = keys[k];
+			bl[i] = all.get(k).lon;
+			bo[i] = k;
+			bs[i] = all.get(k);
+			lats[i] = all.get(i).lat;
+			lons[i] = all.get(i).lon;
 		}
+		index = new GeoIndex(lats, lons, null);
+		bandLons = bl;
+		bandOrder = bo;
+		bandSols = bs;
+		bandKeys = bk;
 	}
 
 	/**
@@ -145,6 +202,8 @@ public class GeoTag {
 	 * @return Solution. Where this GPS location is.
 	 */
 	public Solution getSolution(double lat, double lon) {
+		if (bandKeys != null)
+			return getBandSolution(lat, lon);
 		double d = 0;
 		String key = makeKey(lat);
 		//key = "33.75";
@@ -166,6 +225,92 @@ public class GeoTag {
 		return bestSolutions;
 	}
 
+	/**
+	 * Same answer as the table scan in getSolution(), the closest centroid in the latitude band, but
+	 * by binary search over the sorted band arrays.
+	 * @param lat double. The GPS latitude.
+	 * @param lon double. The GPS longitude
+	 * @return Solution. Where this GPS location is, or null if there is nothing in the band.
+	 */
+	Solution getBandSolution(double lat, double lon) {
+		int key = bandKey(lat);
+		int start = lowerBound(key);
+		if (start == bandKeys.length || bandKeys[start] != key)
+			return null;
+		int end = lowerBound(key + 1);
+
+		// Within a band the distance only depends on the wrapped longitude difference, so the answer
+		// is next to the insertion point or, across the date line, at one of the ends.
+		int lo = start, hi = end;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (bandLons[mid] < lon)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		int best = -1;
+		double dist = 0;
+		int[] candidates = { lo, lo - 1, start, end - 1 };
+		for (int c : candidates) {
+			if (c < start || c >= end)
+				continue;
+			// Among equal longitudes the file order decides, as in the scan
+			while (c > start && bandLons[c - 1] == bandLons[c])
+				c--;
+			double test = getRange(lat, lon, lat, bandLons[c]);
+			if (best < 0 || test < dist || (test == dist && bandOrder[c] < bandOrder[best])) {
+				dist = test;
+				best = c;
+			}
+		}
+		return bandSols[best];
+	}
+
+	/**
+	 * Return the first position in the band arrays with a key not less than key.
+	 * @param key int. The band key.
+	 * @return int. The position.
+	 */
+	int lowerBound(int key) {
+		int lo = 0, hi = bandKeys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (bandKeys[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Return the centroid nearest to a GPS coordinate, by great circle distance.
+	 * @param lat double. The GPS latitude.
+	 * @param lon double. The GPS longitude
+	 * @return Solution. The nearest zip code, or null if the database is not loaded.
+	 */
+	public Solution getNearest(double lat, double lon) {
+		if (index == null)
+			return null;
+		int i = index.nearest(lat, lon);
+		if (i < 0)
+			return null;
+		return all.get(i);
+	}
+
+	/**
+	 * Integer equivalent of makeKey(), two values get the same key exactly when makeKey() returns
+	 * the same string.
+	 * @param d double. The latitude.
+	 * @return int. The band key.
+	 */
+	static int bandKey(double d) {
+		int a = (int)d;
+		int b = Math.abs((int)((d*100)%100));
+		return (a + 1000) * 100 + b;
+	}
+
 	/**
 	 * Returns the range in km between two GPS points.
 	 * @param lat1 double. The latitiude of the first point.
@@ -0,0 +1,190 @@
+package com.jacamars.dsp.rtb.geo;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded cache of IpRecords keyed by the /24 of the address. Lookups and inserts don't lock and
+ * don't allocate, beyond the entry on insert.
+ * <p>
+ * The table is set associative, 8 entries per set. Admission is TinyLFU: a 4 bit count-min sketch
+ * counts how often each /24 is asked for, and when a set is full a newcomer only replaces the least
+ * frequent entry of the set if it is asked for more often. Ties are admitted 1 time in 16 so a new hot
+ * block isn't locked out. The sketch is halved periodically so old popularity fades.
+ * <p>
+ * Races between bidding threads can lose a count or an insert, which only costs a lookup later.
+ * Entries are immutable, so a reader sees either the old or the new entry of a slot.
+ * @author Ben M. Faul
+ *
+ */
+class IpCache {
+
+	static final int WAYS = 8;
+	static final int ROWS = 4;
+	static final long RESET_MASK = 0x7777777777777777L;
+	static final int[] SEEDS = { 0x97cb3127, 0xb11bb7a5, 0xcd7d2a6f, 0x6c6b5b6d };
+
+	/**
+	 * One cached /24.
+	 */
+	static final class Entry {
+		final int key;
+		final IpRecord value;
+
+		Entry(int key, IpRecord value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	// The sets, WAYS entries each
+	final Entry[] table;
+	// Number of sets - 1
+	final int setMask;
+	// The count-min sketch, ROWS rows of 4 bit counters, 16 to a long
+	final long[] sketch;
+	// Counters per row - 1
+	final int counterMask;
+	// Increments before the sketch is halved
+	final int sampleSize;
+	// Increments since the last halving, racy on purpose
+	int additions;
+
+	/**
+	 * Create the cache.
+	 * @param capacity int. Number of /24 blocks to hold, rounded up to a power of two.
+	 */
+	IpCache(int capacity) {
+		int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS - 1) << 1);
+		table = new Entry[sets * WAYS];
+		setMask = sets - 1;
+		int counters = Math.max(64, table.length);
+		counterMask = counters - 1;
+		sketch = new long[ROWS * counters / 16];
+		sampleSize = 10 * table.length;
+	}
+
+	/**
+	 * Return the cached record and count the access.
+	 * @param key int. The /24, the address shifted right 8.
+	 * @return IpRecord. The record, or null on a miss.
+	 */
+	IpRecord get(int key) {
+		int h = spread(key);
+		increment(h);
+		int base = (h & setMask) * WAYS;
+		for (int i = 0; i < WAYS; i++) {
+			Entry e = table[base + i];
+			if (e != null && e.key == key)
+				return e.value;
+		}
+		return null;
+	}
+
+	/**
+	 * Offer a record to the cache. It is stored if its set has room or if it is asked for more often
+	 * than the least popular entry of the set.
+	 * @param key int. The /24.
+	 * @param value IpRecord. The record.
+	 */
+	void put(int key, IpRecord value) {
+		int h = spread(key);
+		int base = (h & setMask) * WAYS;
+		int victim = -1;
+		int victimFreq = Integer.MAX_VALUE;
+		for (int i = 0; i < WAYS; i++) {
+			Entry e = table[base + i];
+			if (e == null || e.key == key) {
+				table[base + i] = new Entry(key, value);
+				return;
+			}
+			int f = frequency(spread(e.key));
+			if (f < victimFreq) {
+				victimFreq = f;
+				victim = base + i;
+			}
+		}
+		int f = frequency(h);
+		if (f > victimFreq || (f == victimFreq && (ThreadLocalRandom.current().nextInt() & 15) == 0))
+			table[victim] = new Entry(key, value);
+	}
+
+	/**
+	 * Drop everything, the sketch is kept.
+	 */
+	void clear() {
+		for (int i = 0; i < table.length; i++)
+			table[i] = null;
+	}
+
+	/**
+	 * Return the number of cached blocks. Scans the table, for statistics only.
+	 * @return int. The number of entries.
+	 */
+	int size() {
+		int n = 0;
+		for (int i = 0; i < table.length; i++)
+			if (table[i] != null)
+				n++;
+		return n;
+	}
+
+	/**
+	 * Return the capacity.
+	 * @return int. The maximum number of entries.
+	 */
+	int capacity() {
+		return table.length;
+	}
+
+	/**
+	 * Estimated access count of a hashed key.
+	 * @param h int. The spread key.
+	 * @return int. The smallest of its counters, 0 to 15.
+	 */
+	int frequency(int h) {
+		int min = 15;
+		for (int r = 0; r < ROWS; r++) {
+			int c = r * (counterMask + 1) + (rehash(h, r) & counterMask);
+			int v = (int) (sketch[c >>> 4] >>> ((c & 15) << 2)) & 15;
+			if (v < min)
+				min = v;
+		}
+		return min;
+	}
+
+	/**
+	 * Count an access. A counter is only written if it is below 15, so a lost race can drop a count but
+	 * never carry into the neighbouring counter.
+	 * @param h int. The spread key.
+	 */
+	void increment(int h) {
+		for (int r = 0; r < ROWS; r++) {
+			int c = r * (counterMask + 1) + (rehash(h, r) & counterMask);
+			int shift = (c & 15) << 2;
+			long w = sketch[c >>> 4];
+			if (((w >>> shift) & 15) < 15)
+				sketch[c >>> 4] = w + (1L << shift);
+		}
+		if (++additions >= sampleSize)
+			reset();
+	}
+
+	/**
+	 * Halve every counter.
+	 */
+	void reset() {
+		additions = 0;
+		for (int i = 0; i < sketch.length; i++)
+			sketch[i] = (sketch[i] >>> 1) & RESET_MASK;
+	}
+
+	static int spread(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	static int rehash(int h, int row) {
+		h *= SEEDS[row];
+		return h ^ (h >>> 15);
+	}
+}
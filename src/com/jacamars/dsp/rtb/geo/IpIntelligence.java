@@ -0,0 +1,262 @@
+package com.jacamars.dsp.rtb.geo;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jacamars.dsp.rtb.blocks.CIDRUtils;
+import com.jacamars.dsp.rtb.blocks.LookingGlass;
+import com.jacamars.dsp.rtb.tools.IsoTwo2Iso3;
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.model.CityResponse;
+import com.maxmind.geoip2.model.IspResponse;
+import com.maxmind.geoip2.record.Location;
+
+/**
+ * The one place the bidder asks the MaxMind databases about an IP address. GeoPatch uses the city
+ * database, MMDBClient the ISP database, and both get their answers from here, so a request costs at
+ * most one trip into each database and usually none.
+ * <p>
+ * The databases are opened once, memory mapped, with the MaxMind node cache. IPv4 addresses are parsed
+ * by hand and the answers cached per /24 in an IpCache, on the assumption that a /24 shares its geo and
+ * ISP, which is how MaxMind's data is organized for nearly all of the address space. IPv6 addresses are
+ * looked up without caching.
+ * @author Ben M. Faul
+ *
+ */
+public enum IpIntelligence {
+
+	INSTANCE;
+
+	static final Logger logger = LoggerFactory.getLogger(IpIntelligence.class);
+
+	/** Default number of /24 blocks cached */
+	public static final int DEFAULT_CAPACITY = 65536;
+
+	static volatile DatabaseReader cityReader;
+	static volatile DatabaseReader ispReader;
+	static volatile IpCache cache = new IpCache(DEFAULT_CAPACITY);
+	// Decides the suspect flag from the organization, set by MMDBClient
+	static volatile Predicate<String> screen;
+
+	static final LongAdder hits = new LongAdder();
+	static final LongAdder misses = new LongAdder();
+	static final LongAdder hitNanos = new LongAdder();
+	static final LongAdder missNanos = new LongAdder();
+
+	/**
+	 * Return the instance.
+	 * @return IpIntelligence. The singleton.
+	 */
+	public static IpIntelligence getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Open the city database.
+	 * @param fileName String. The GeoIP2/GeoLite2 city mmdb.
+	 * @throws Exception on I/O errors.
+	 */
+	public static void setCityDatabase(String fileName) throws Exception {
+		cityReader = open(fileName);
+		cache.clear();
+		logger.info("City database set to {}", fileName);
+	}
+
+	/**
+	 * Open the ISP database.
+	 * @param fileName String. The GeoIP2 ISP mmdb.
+	 * @throws Exception on I/O errors.
+	 */
+	public static void setIspDatabase(String fileName) throws Exception {
+		ispReader = open(fileName);
+		cache.clear();
+		logger.info("ISP database set to {}", fileName);
+	}
+
+	/**
+	 * Set the fraud test applied to the organization when a record is made. Clears the cache so the
+	 * records are remade with it.
+	 * @param test Predicate. Returns true if the lower case organization is suspect.
+	 */
+	public static void setScreen(Predicate<String> test) {
+		screen = test;
+		cache.clear();
+	}
+
+	/**
+	 * Resize the cache, the contents are dropped.
+	 * @param capacity int. Number of /24 blocks to hold.
+	 */
+	public static void setCapacity(int capacity) {
+		cache = new IpCache(capacity);
+	}
+
+	/**
+	 * Forget the cached records, for example after the watch lists change.
+	 */
+	public static void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * Return true if the city database is loaded.
+	 * @return boolean. True if geo lookups are possible.
+	 */
+	public static boolean hasCity() {
+		return cityReader != null;
+	}
+
+	/**
+	 * Return true if the ISP database is loaded.
+	 * @return boolean. True if ISP lookups are possible.
+	 */
+	public static boolean hasIsp() {
+		return ispReader != null;
+	}
+
+	static DatabaseReader open(String fileName) throws Exception {
+		File f = new File(fileName);
+		if (!f.exists())
+			throw new Exception("No such file: " + fileName);
+		return new DatabaseReader.Builder(f).fileMode(Reader.FileMode.MEMORY_MAPPED).withCache(new CHMCache())
+				.build();
+	}
+
+	/**
+	 * Return what is known about an address.
+	 * @param ip String. The address, IPv4 dotted quad or IPv6.
+	 * @return IpRecord. The record, IpRecord.NOT_FOUND if no database has it, or null if the address is
+	 *         not an address.
+	 */
+	public static IpRecord lookup(String ip) {
+		if (ip == null)
+			return null;
+		long time = System.nanoTime();
+		long v = CIDRUtils.parseIPv4(ip);
+		if (v >= 0) {
+			IpCache c = cache;
+			int key = (int) (v >>> 8);
+			IpRecord r = c.get(key);
+			if (r != null) {
+				hits.increment();
+				hitNanos.add(System.nanoTime() - time);
+				return r;
+			}
+			byte[] bytes = { (byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v };
+			try {
+				r = resolve(InetAddress.getByAddress(bytes));
+			} catch (Exception error) {
+				return null;
+			}
+			c.put(key, r);
+			misses.increment();
+			missNanos.add(System.nanoTime() - time);
+			return r;
+		}
+
+		// Only IPv6 literals, never let getByName go to DNS
+		if (ip.indexOf(':') < 0)
+			return null;
+		try {
+			IpRecord r = resolve(InetAddress.getByName(ip));
+			misses.increment();
+			missNanos.add(System.nanoTime() - time);
+			return r;
+		} catch (Exception error) {
+			return null;
+		}
+	}
+
+	/**
+	 * Ask the databases about an address.
+	 * @param address InetAddress. The address.
+	 * @return IpRecord. The combined record.
+	 */
+	static IpRecord resolve(InetAddress address) {
+		boolean found = false;
+		String country = null, region = null, city = null, zip = null, organization = null, isp = null;
+		double lat = Double.NaN, lon = Double.NaN;
+
+		DatabaseReader reader = cityReader;
+		if (reader != null) {
+			try {
+				CityResponse response = reader.city(address);
+				found = true;
+				country = response.getCountry().getIsoCode();
+				if (country != null && country.length() == 2) {
+					IsoTwo2Iso3 isoMap = (IsoTwo2Iso3) LookingGlass.symbols.get("@ISO2-3");
+					if (isoMap != null)
+						country = isoMap.query(country);
+				}
+				city = response.getCity().getName();
+				region = response.getMostSpecificSubdivision().getIsoCode();
+				zip = response.getPostal().getCode();
+				Location location = response.getLocation();
+				if (location != null && location.getLatitude() != null && location.getLongitude() != null) {
+					lat = location.getLatitude();
+					lon = location.getLongitude();
+				}
+			} catch (Exception error) {
+				// not in the database
+			}
+		}
+
+		reader = ispReader;
+		if (reader != null) {
+			try {
+				IspResponse response = reader.isp(address);
+				found = true;
+				isp = response.getIsp();
+				if (response.getOrganization() != null)
+					organization = response.getOrganization().toLowerCase();
+			} catch (Exception error) {
+				// not in the database
+			}
+		}
+
+		if (!found)
+			return IpRecord.NOT_FOUND;
+		Predicate<String> test = screen;
+		boolean suspect = organization != null && test != null && test.test(organization);
+		return new IpRecord(found, country, region, city, zip, lat, lon, organization, isp, suspect);
+	}
+
+	/**
+	 * Return the fraction of IPv4 lookups answered from the cache.
+	 * @return double. Hits over lookups, 0 before the first lookup.
+	 */
+	public static double getHitRatio() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Return the cache and latency statistics, for the summary.
+	 * @return Map. The statistics by name.
+	 */
+	public static Map<String, Object> getStats() {
+		long h = hits.sum();
+		long m = misses.sum();
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("city", cityReader != null);
+		map.put("isp", ispReader != null);
+		map.put("size", cache.size());
+		map.put("capacity", cache.capacity());
+		map.put("hits", h);
+		map.put("misses", m);
+		map.put("hitratio", getHitRatio());
+		map.put("hitnanos", h == 0 ? 0 : hitNanos.sum() / h);
+		map.put("missnanos", m == 0 ? 0 : missNanos.sum() / m);
+		return map;
+	}
+}
@@ -0,0 +1,64 @@
+package com.jacamars.dsp.rtb.geo;
+
+/**
+ * What the MaxMind databases know about an IP address, reduced to the fields the bidder uses. Shared
+ * by every request from the same /24, so it is immutable.
+ * @author Ben M. Faul
+ *
+ */
+public class IpRecord {
+
+	/** Returned for addresses none of the databases know about */
+	public static final IpRecord NOT_FOUND = new IpRecord(false, null, null, null, null, Double.NaN, Double.NaN,
+			null, null, false);
+
+	/** True if at least one database had the address */
+	public final boolean found;
+	/** Country, iso3 when the converter is loaded */
+	public final String country;
+	/** Most specific subdivision iso code */
+	public final String region;
+	/** City name */
+	public final String city;
+	/** Postal code */
+	public final String zip;
+	/** Latitude, NaN if unknown */
+	public final double lat;
+	/** Longitude, NaN if unknown */
+	public final double lon;
+	/** Organization from the ISP database, lower case */
+	public final String organization;
+	/** ISP name from the ISP database */
+	public final String isp;
+	/** True if the organization is on the fraud watch or filter list */
+	public final boolean suspect;
+
+	public IpRecord(boolean found, String country, String region, String city, String zip, double lat, double lon,
+			String organization, String isp, boolean suspect) {
+		this.found = found;
+		this.country = country;
+		this.region = region;
+		this.city = city;
+		this.zip = zip;
+		this.lat = lat;
+		this.lon = lon;
+		this.organization = organization;
+		this.isp = isp;
+		this.suspect = suspect;
+	}
+
+	/**
+	 * Return true if the record has a position.
+	 * @return boolean. True if lat and lon are known.
+	 */
+	public boolean hasLocation() {
+		return !Double.isNaN(lat) && !Double.isNaN(lon);
+	}
+
+	@Override
+	public String toString() {
+		return "IpRecord{country=" + country + ", region=" + region + ", city=" + city + ", zip=" + zip + ", lat="
+				+ lat + ", lon=" + lon + ", organization=" + organization + ", isp=" + isp + ", suspect=" + suspect
+				+ "}";
+	}
+}
@@ -11,6 +11,7 @@ public class Solution {
 	public String county;
 	public String city;
 	public int code;
+	public double lat;
 	public double lon;
 	
 	public Solution() {
@@ -0,0 +1,292 @@
+package com.jacamars.dsp.rtb.jmq;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * A compact, rotating, binary log for the high volume channels, in place of one JSON line per message. Messages
+ * are written straight from the objects as Smile, the binary JSON already used for the shared maps, so they are
+ * never turned into JSON text. Within a block Smile keeps a dictionary of the field names and short string
+ * values it has seen and refers back to them, then the block is deflated. The block is length prefixed, so a
+ * reader can skip it without inflating it.
+ * <p>
+ * The file is:
+ * <pre>
+ * header:  int MAGIC, int VERSION
+ * block:   int rawLength, int compressedLength, int records, long firstTime, long lastTime, compressed Smile
+ * ...
+ * index:   per block: long offset, int records, long firstTime, long lastTime
+ * trailer: int blocks, long indexOffset, int INDEX_MAGIC
+ * </pre>
+ * The index and trailer are written when the file is closed or rotated. A file cut short, by a crash for
+ * example, has no trailer, and is read by walking the block headers. At most the block being filled is lost.
+ * <p>
+ * Files rotate by size or time, and are named base-yyyy-MM-dd-HH:mm.rtbl like the rotating text logs, with
+ * _001, _002 and so on when more than one starts in the same minute, so the names sort in order.
+ * BinaryLogReader reads them, and the BinLog tool converts them back to JSON lines.
+ * <p>
+ * The publisher queues the messages and writes them from its own thread, so the request threads never
+ * serialize, compress or touch the file.
+ * @author Ben M. Faul
+ *
+ */
+public class BinaryLog {
+
+	/** Start of every file, "RTBL" */
+	public static final int MAGIC = 0x5254424c;
+	/** End of the trailer, "RTBI" */
+	public static final int INDEX_MAGIC = 0x52544249;
+	public static final int VERSION = 1;
+	/** Bytes in a file header */
+	public static final int HEADER = 8;
+	/** Bytes in a block header */
+	public static final int BLOCK_HEADER = 28;
+	/** Bytes in a trailer */
+	public static final int TRAILER = 16;
+	/** The extension of the files */
+	public static final String EXTENSION = ".rtbl";
+
+	/** Uncompressed bytes in a block before it is sealed */
+	public static volatile int BLOCK_SIZE = 64 * 1024;
+	/** A block is sealed after this long, even if not full, so a quiet channel still reaches the disk */
+	public static volatile long LINGER = 1000;
+
+	/** The mapper the messages are written with */
+	static final ObjectMapper smile;
+	static {
+		SmileFactory f = new SmileFactory();
+		f.enable(SmileGenerator.Feature.CHECK_SHARED_NAMES);
+		f.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+		smile = new ObjectMapper(f);
+		smile.setSerializationInclusion(Include.NON_NULL);
+	}
+
+	/** Reads messages that arrive already as JSON text */
+	static final ObjectMapper json = new ObjectMapper();
+
+	// Logging formatter yyyy-mm-dd-hh:ss part, the same as the text logs.
+	final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH:mm");
+
+	final String base;
+	final long maxBytes;
+	final long maxMillis;
+
+	String fileName;
+	DataOutputStream out;
+	long offset;
+	long rotateAt;
+	final List<long[]> index = new ArrayList<long[]>();
+
+	final ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_SIZE + 4096);
+	JsonGenerator gen;
+	int records;
+	long first;
+	long last;
+
+	final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	byte[] compressed = new byte[BLOCK_SIZE + 4096];
+
+	long totalRecords;
+	long totalRaw;
+	long totalDisk;
+
+	/**
+	 * Open a binary log.
+	 * @param base String. The file name, without the time stamp and extension.
+	 * @param maxBytes long. Rotate once a file reaches this many bytes, 0 for no limit.
+	 * @param maxMillis long. Rotate after this many milliseconds, 0 for no limit.
+	 * @throws Exception on file errors.
+	 */
+	public BinaryLog(String base, long maxBytes, long maxMillis) throws Exception {
+		this.base = base;
+		this.maxBytes = maxBytes;
+		this.maxMillis = maxMillis;
+		File f = new File(base);
+		if (f.getParentFile() != null)
+			f.getParentFile().mkdirs();
+		open();
+	}
+
+	/**
+	 * Log a message. Called by the publisher's thread.
+	 * @param msg Object. The message, an object to serialize, or a String that is already JSON.
+	 * @throws Exception on serialization or file errors.
+	 */
+	public synchronized void write(Object msg) throws Exception {
+		long now = System.currentTimeMillis();
+		if (gen == null) {
+			gen = smile.getFactory().createGenerator(raw);
+			first = now;
+		}
+		if (msg instanceof String) {
+			String s = (String) msg;
+			if (s.startsWith("{") || s.startsWith("["))
+				smile.writeTree(gen, json.readTree(s));
+			else
+				gen.writeString(s);
+		} else
+			smile.writeValue(gen, msg);
+		records++;
+		last = now;
+
+		gen.flush();
+		if (raw.size() >= BLOCK_SIZE)
+			seal();
+	}
+
+	/**
+	 * Seal the block if it has lingered, and rotate the file if its time is up. Called by the publisher's
+	 * thread.
+	 * @throws Exception on file errors.
+	 */
+	public synchronized void tick() throws Exception {
+		long now = System.currentTimeMillis();
+		if (records != 0 && now - first >= LINGER)
+			seal();
+		if (rotateAt != 0 && now >= rotateAt)
+			rotate();
+	}
+
+	/**
+	 * Seal the block, write the index and close the file.
+	 * @throws Exception on file errors.
+	 */
+	public synchronized void close() throws Exception {
+		if (out == null)
+			return;
+		seal();
+		finish();
+		deflater.end();
+	}
+
+	/**
+	 * Return the name of the file being written.
+	 * @return String. The file name.
+	 */
+	public synchronized String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Return the number of messages logged.
+	 * @return long. The count.
+	 */
+	public synchronized long getRecords() {
+		return totalRecords + records;
+	}
+
+	/**
+	 * Return the Smile bytes of the sealed blocks, before compression.
+	 * @return long. The bytes.
+	 */
+	public synchronized long getRawBytes() {
+		return totalRaw;
+	}
+
+	/**
+	 * Return the bytes written to disk, headers included.
+	 * @return long. The bytes.
+	 */
+	public synchronized long getDiskBytes() {
+		return totalDisk;
+	}
+
+	/**
+	 * Compress the block and append it to the file.
+	 * @throws Exception on file errors.
+	 */
+	void seal() throws Exception {
+		if (records == 0)
+			return;
+		gen.close();
+		gen = null;
+
+		byte[] data = raw.toByteArray();
+		raw.reset();
+		if (compressed.length < data.length + 1024)
+			compressed = new byte[data.length + 1024];
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		int n = 0;
+		while (!deflater.finished()) {
+			n += deflater.deflate(compressed, n, compressed.length - n);
+			if (n == compressed.length && !deflater.finished()) {
+				byte[] bigger = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, bigger, 0, n);
+				compressed = bigger;
+			}
+		}
+
+		index.add(new long[] { offset, records, first, last });
+		out.writeInt(data.length);
+		out.writeInt(n);
+		out.writeInt(records);
+		out.writeLong(first);
+		out.writeLong(last);
+		out.write(compressed, 0, n);
+		out.flush();
+
+		offset += BLOCK_HEADER + n;
+		totalRecords += records;
+		totalRaw += data.length;
+		totalDisk += BLOCK_HEADER + n;
+		records = 0;
+
+		if (maxBytes != 0 && offset >= maxBytes)
+			rotate();
+	}
+
+	void rotate() throws Exception {
+		seal();
+		finish();
+		open();
+	}
+
+	void open() throws Exception {
+		String stamp = base + "-" + sdf.format(new Date());
+		String name = stamp + EXTENSION;
+		for (int i = 1; new File(name).exists(); i++)
+			name = stamp + String.format("_%03d", i) + EXTENSION;
+		fileName = name;
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.flush();
+		offset = HEADER;
+		totalDisk += HEADER;
+		index.clear();
+		rotateAt = maxMillis == 0 ? 0 : System.currentTimeMillis() + maxMillis;
+	}
+
+	void finish() throws Exception {
+		long at = offset;
+		for (long[] entry : index) {
+			out.writeLong(entry[0]);
+			out.writeInt((int) entry[1]);
+			out.writeLong(entry[2]);
+			out.writeLong(entry[3]);
+		}
+		out.writeInt(index.size());
+		out.writeLong(at);
+		out.writeInt(INDEX_MAGIC);
+		out.close();
+		out = null;
+		totalDisk += index.size() * 28L + TRAILER;
+	}
+}
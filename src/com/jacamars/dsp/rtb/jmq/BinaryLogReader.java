@@ -0,0 +1,182 @@
+package com.jacamars.dsp.rtb.jmq;
+
+import java.io.Closeable;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Reads a file written by BinaryLog, a message at a time. The blocks come from the trailer index when the file
+ * was closed properly, otherwise from walking the block headers, which stops at a block cut short. A time range
+ * skips the blocks outside it without inflating them.
+ * @author Ben M. Faul
+ *
+ */
+public class BinaryLogReader implements Closeable {
+
+	/**
+	 * Where a block is and what is in it.
+	 */
+	public static class Block {
+		/** Offset of the block header in the file */
+		public long offset;
+		/** Messages in the block */
+		public int records;
+		/** Time the first message was logged */
+		public long first;
+		/** Time the last message was logged */
+		public long last;
+	}
+
+	final RandomAccessFile file;
+	final List<Block> blocks = new ArrayList<Block>();
+	boolean indexed;
+
+	long from = Long.MIN_VALUE;
+	long to = Long.MAX_VALUE;
+
+	int next;
+	Iterator<JsonNode> messages;
+	final Inflater inflater = new Inflater();
+
+	/**
+	 * Open a binary log.
+	 * @param fileName String. The file.
+	 * @throws Exception on file errors, or if it is not a binary log.
+	 */
+	public BinaryLogReader(String fileName) throws Exception {
+		file = new RandomAccessFile(fileName, "r");
+		if (file.length() < BinaryLog.HEADER || file.readInt() != BinaryLog.MAGIC) {
+			file.close();
+			throw new Exception("Not a binary log: " + fileName);
+		}
+		int version = file.readInt();
+		if (version != BinaryLog.VERSION) {
+			file.close();
+			throw new Exception("Unknown binary log version " + version + " in " + fileName);
+		}
+		if (!readIndex())
+			scan();
+	}
+
+	/**
+	 * Only read the blocks that overlap a time range.
+	 * @param from long. The earliest time, in milliseconds since the epoch.
+	 * @param to long. The latest time.
+	 */
+	public void setRange(long from, long to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Was the file closed properly, with its index?
+	 * @return boolean. True if the blocks came from the index.
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * Return the blocks in the file.
+	 * @return List. The blocks, in order.
+	 */
+	public List<Block> getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Return the next message.
+	 * @return JsonNode. The message, or null at the end of the file.
+	 * @throws Exception on file or format errors.
+	 */
+	public JsonNode next() throws Exception {
+		while (messages == null || !messages.hasNext()) {
+			if (next == blocks.size())
+				return null;
+			Block b = blocks.get(next++);
+			if (b.last < from || b.first > to)
+				continue;
+			messages = read(b);
+		}
+		return messages.next();
+	}
+
+	@Override
+	public void close() {
+		try {
+			file.close();
+		} catch (Exception error) {
+
+		}
+		inflater.end();
+	}
+
+	Iterator<JsonNode> read(Block b) throws Exception {
+		file.seek(b.offset);
+		int rawLength = file.readInt();
+		int length = file.readInt();
+		file.seek(b.offset + BinaryLog.BLOCK_HEADER);
+		byte[] data = new byte[length];
+		file.readFully(data);
+
+		byte[] raw = new byte[rawLength];
+		inflater.reset();
+		inflater.setInput(data);
+		int n = 0;
+		while (n < rawLength && !inflater.finished())
+			n += inflater.inflate(raw, n, rawLength - n);
+		if (n != rawLength)
+			throw new Exception("Binary log block at " + b.offset + " is corrupt");
+
+		JsonParser parser = BinaryLog.smile.getFactory().createParser(raw);
+		return BinaryLog.smile.readValues(parser, JsonNode.class);
+	}
+
+	boolean readIndex() throws Exception {
+		long length = file.length();
+		if (length < BinaryLog.HEADER + BinaryLog.TRAILER)
+			return false;
+		file.seek(length - BinaryLog.TRAILER);
+		int count = file.readInt();
+		long at = file.readLong();
+		if (file.readInt() != BinaryLog.INDEX_MAGIC || at + count * 28L + BinaryLog.TRAILER != length)
+			return false;
+
+		file.seek(at);
+		for (int i = 0; i < count; i++) {
+			Block b = new Block();
+			b.offset = file.readLong();
+			b.records = file.readInt();
+			b.first = file.readLong();
+			b.last = file.readLong();
+			blocks.add(b);
+		}
+		indexed = true;
+		return true;
+	}
+
+	void scan() throws Exception {
+		long length = file.length();
+		long at = BinaryLog.HEADER;
+		while (at + BinaryLog.BLOCK_HEADER <= length) {
+			file.seek(at);
+			int rawLength = file.readInt();
+			int n = file.readInt();
+			if (rawLength <= 0 || n <= 0 || at + BinaryLog.BLOCK_HEADER + n > length)
+				break;
+			Block b = new Block();
+			b.offset = at;
+			b.records = file.readInt();
+			b.first = file.readLong();
+			b.last = file.readLong();
+			blocks.add(b);
+			at += BinaryLog.BLOCK_HEADER + n;
+		}
+	}
+}
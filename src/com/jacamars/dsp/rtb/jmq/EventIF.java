@@ -1,7 +1,20 @@
 package com.jacamars.dsp.rtb.jmq;
 
+import java.util.List;
+
 public interface EventIF {
 
 	public void handleMessage(String id, String msg);
 	public void shutdown();
+
+	/**
+	 * Handle a batch of messages, in order. Kafka subscribers hand over a partition's share of each poll at
+	 * once, override this to take them as a batch.
+	 * @param id String. The topic.
+	 * @param msgs List. The messages.
+	 */
+	public default void handleMessages(String id, List<String> msgs) {
+		for (String msg : msgs)
+			handleMessage(id, msg);
+	}
 }
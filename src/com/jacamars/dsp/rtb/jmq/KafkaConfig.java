@@ -4,12 +4,30 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+
 /**
  * A common configuration handler for both kafka consumers and subscribers.
  * Created by ben on 12/23/17.
  */
 public class KafkaConfig {
 
+    /**
+     * Producer and consumer settings every kafka address starts with, from the "kafka" object in the
+     * configuration file. The options in the address override them.
+     */
+    static final Properties defaults = new Properties();
+    static {
+        defaults.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        defaults.put(ProducerConfig.BATCH_SIZE_CONFIG, 65536);
+        defaults.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        defaults.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+    }
+
+    /** The default number of consumer workers */
+    static int defaultWorkers = 1;
+
     /**
      * Holds the peoperties for use with kafka
      */
@@ -30,6 +48,83 @@ public class KafkaConfig {
      * The groupid
      */
     String groupid;
+    /**
+     * The field messages are keyed on, null for no key
+     */
+    String key;
+    /**
+     * The number of consumer workers, each partition is handled by one of them
+     */
+    int workers = defaultWorkers;
+
+    /**
+     * Set the defaults from the configuration file, for example:
+     * "kafka": {"linger": 5, "size": 65536, "compression": "lz4", "acks": "1", "workers": 4}
+     *
+     * @param m Map. The kafka object from the configuration file.
+     * @throws Exception on unknown options.
+     */
+    public static void setDefaults(Map<String, Object> m) throws Exception {
+        for (Map.Entry<String, Object> e : m.entrySet()) {
+            String value = e.getValue().toString();
+            switch (e.getKey()) {
+                case "workers":
+                    defaultWorkers = Integer.parseInt(value);
+                    break;
+                case "key":
+                    throw new Exception("Kafka keys are set per channel, not as a default");
+                default:
+                    apply(defaults, e.getKey(), value);
+            }
+        }
+    }
+
+    /**
+     * Set a producer or consumer property from its short name.
+     * @param props Properties. The properties to set.
+     * @param name String. The short name.
+     * @param value String. The value.
+     * @throws Exception on unknown options.
+     */
+    static void apply(Properties props, String name, String value) throws Exception {
+        switch (name) {
+            case "offset":
+                props.setProperty("auto.offset.reset", value);
+                break;
+            case "autocommit":
+                props.put("enable.auto.commit", Boolean.parseBoolean(value));
+                break;
+            case "acks":
+                props.put("acks", value);
+                break;
+            case "retries":
+                props.put("retries", Integer.parseInt(value));
+                break;
+            case "size":
+                props.put("batch.size", Integer.parseInt(value));
+                break;
+            case "linger":
+                props.put("linger.ms", Integer.parseInt(value));
+                break;
+            case "buffer":
+                props.put("buffer.memory", Integer.parseInt(value));
+                break;
+            case "compression":
+                props.put("compression.type", value);
+                break;
+            case "block":
+                props.put("max.block.ms", Integer.parseInt(value));
+                break;
+            case "maxpoll":
+                props.put("max.poll.records", Integer.parseInt(value));
+                break;
+            case "timeout":
+                props.put("request.timeout.ms", Integer.parseInt(value));
+                break;
+            default:
+                throw new Exception("Unknown kafka option: " + name);
+        }
+    }
 
     /**
      * Constructor for the configurator.
@@ -53,6 +148,7 @@ public class KafkaConfig {
 
         props.put("enable.auto.commit", true);
         props.put("request.timeout.ms", 50000);
+        props.putAll(defaults);
 
         for (String part : parts) {
             if (i != 0) {
@@ -63,27 +159,6 @@ public class KafkaConfig {
                     case "topic":
                         topic = t[1];
                         break;
-                    case "offset":
-                        props.setProperty("auto.offset.reset", t[1]);
-                        break;
-                    case "autocommit":
-                        props.put("auto.offset.reset", Boolean.parseBoolean(t[1]));
-                        break;
-                    case "acks":
-                        props.put("acks", t[1]);
-                        break;
-                    case "retries":
-                        props.put("retries", Integer.parseInt(t[1]));
-                        break;
-                    case "size":
-                        props.put("batch.size", Integer.parseInt(t[1]));
-                        break;
-                    case "linger":
-                        props.put("linger.ms", Integer.parseInt(t[1]));
-                        break;
-                    case "buffer":
-                        props.put("buffer.memory", Integer.parseInt(t[1]));
-                        break;
                     case "partition":
                         partition = Integer.parseInt(t[1]);
                         break;
@@ -91,11 +166,14 @@ public class KafkaConfig {
                         props.put("group.id", t[1]);
                         groupid = t[1];
                         break;
-                    case "timeout":
-                        props.put("request.timeout.ms", Integer.parseInt(t[1]));
+                    case "key":
+                        key = t[1];
+                        break;
+                    case "workers":
+                        workers = Integer.parseInt(t[1]);
                         break;
                     default:
-                        throw new Exception("Unknown kafka option: " + part);
+                        apply(props, t[0], t[1]);
                 }
             }
             i++;
@@ -144,6 +222,24 @@ public class KafkaConfig {
         return props;
     }
 
+    /**
+     * Return the field messages are keyed on.
+     *
+     * @return String. The field name, null for no key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Return the number of consumer workers.
+     *
+     * @return int. The number of workers, 1 handles every partition on the polling thread.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
     /**
      * Returns the partition.
      *
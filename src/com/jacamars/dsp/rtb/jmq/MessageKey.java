@@ -0,0 +1,66 @@
+package com.jacamars.dsp.rtb.jmq;
+
+import java.lang.reflect.Field;
+
+/**
+ * Pulls the Kafka partition key out of a message before it is serialized: the value of a named public field,
+ * for example the bid id of a bid or a win, or the campaign id. Messages with the same key land on the same
+ * partition, in order, and different keys spread over all the partitions. The field is looked up once per
+ * message class.
+ * <p>
+ * Messages that are already strings, or that have no such field, or a null value, get no key, and the
+ * producer spreads them round robin.
+ * Created by Ben M. Faul.
+ */
+public class MessageKey {
+
+	/** The name of the field */
+	final String name;
+
+	/** The field in each class, null if the class has none */
+	final ClassValue<Field> fields = new ClassValue<Field>() {
+		@Override
+		protected Field computeValue(Class<?> type) {
+			try {
+				return type.getField(name);
+			} catch (Exception error) {
+				return null;
+			}
+		}
+	};
+
+	/**
+	 * Key messages on a field.
+	 * @param name String. The name of the public field holding the key.
+	 */
+	public MessageKey(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Return the key of a message.
+	 * @param msg Object. The message.
+	 * @return String. The key, or null for none.
+	 */
+	public String of(Object msg) {
+		if (msg == null || msg instanceof String)
+			return null;
+		Field f = fields.get(msg.getClass());
+		if (f == null)
+			return null;
+		try {
+			Object value = f.get(msg);
+			return value == null ? null : value.toString();
+		} catch (Exception error) {
+			return null;
+		}
+	}
+
+	/**
+	 * Return the name of the field.
+	 * @return String. The field name.
+	 */
+	public String getName() {
+		return name;
+	}
+}
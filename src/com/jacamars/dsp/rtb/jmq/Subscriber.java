@@ -15,11 +15,16 @@ import io.krakens.grok.api.Match;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.Tailer;
 import org.apache.commons.io.input.TailerListenerAdapter;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 import org.zeromq.ZMQ;
@@ -31,6 +36,8 @@ import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.JedisPubSub;
 
 import org.eclipse.jetty.server.Server;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -39,6 +46,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -47,7 +58,10 @@ import java.util.zip.GZIPInputStream;
  * @author ben
  *
  */
-public class Subscriber extends TailerListenerAdapter implements Runnable, SubscriberIF, ConsumerRebalanceListener {
+public class Subscriber extends TailerListenerAdapter implements Runnable, SubscriberIF, ConsumerRebalanceListener,
+		OffsetCommitCallback {
+
+	static final Logger logger = LoggerFactory.getLogger(Subscriber.class);
 
 	public static ObjectMapper mapper = new ObjectMapper();
 
@@ -56,8 +70,13 @@ public class Subscriber extends TailerListenerAdapter implements Runnable, Subsc
 	Socket subscriber;
 	Thread me;
 
-	KafkaConsumer<String, String> consumer;
+	Consumer<String, String> consumer;
 	String topic;
+	// Kafka workers, each partition is always handled by the same one, 1 handles them on the polling thread
+	int workers = 1;
+	// Kafka messages handled, and commits that failed
+	final AtomicLong received = new AtomicLong();
+	final AtomicLong commitErrors = new AtomicLong();
 
 	JedisPoolConfig poolConfig;
 	JedisPool jedisPool;
@@ -108,6 +127,24 @@ public class Subscriber extends TailerListenerAdapter implements Runnable, Subsc
 		me = new Thread(this);
 		me.start();
 	}
+
+	/**
+	 * A subscriber on a kafka consumer that is already subscribed or assigned, used by the benchmarks and
+	 * tests to stand in for a broker.
+	 * @param handler EventIF, the classes that will get the messages.
+	 * @param consumer Consumer. The kafka consumer.
+	 * @param topic String. The topic.
+	 * @param workers int. The number of workers, 1 handles every partition on the polling thread.
+	 */
+	public Subscriber(EventIF handler, Consumer<String, String> consumer, String topic, int workers) {
+		this.handler = handler;
+		this.consumer = consumer;
+		this.topic = topic;
+		this.workers = workers;
+
+		me = new Thread(this);
+		me.start();
+	}
 	
 	/**
 	 * A subscriber using Hazelcast
@@ -177,6 +214,9 @@ public class Subscriber extends TailerListenerAdapter implements Runnable, Subsc
                 address += "&groupid=a";
             }
 			KafkaConfig c = new KafkaConfig(address);
+			// Offsets are committed after each batch is handled
+			c.getProperties().put("enable.auto.commit", false);
+			workers = c.getWorkers();
 			consumer = new KafkaConsumer<>(c.getProperties());
 			consumer.subscribe(Collections.singletonList(c.getTopic()), this);
 
@@ -509,18 +549,8 @@ public class Subscriber extends TailerListenerAdapter implements Runnable, Subsc
 	public void run() {
 
 		if (consumer != null) {
-			while(true) {
-				ConsumerRecords<String, String> records = consumer.poll(1000);
-				for (ConsumerRecord<String, String> record : records) {
-					String line = useGrok(record.value());
-					handler.handleMessage(topic,line);
-				}
-
-				if (consumer == null)
-					return;
-				if (!records.isEmpty())
-					consumer.commitSync();
-			}
+			runKafka();
+			return;
 		}
 
 		while (me.isInterrupted()==false) {
@@ -534,10 +564,118 @@ public class Subscriber extends TailerListenerAdapter implements Runnable, Subsc
 
         if (subscriber != null)
             subscriber.close();
-        if (consumer != null) {
-            consumer.close();
-            consumer = null;
-        }
+	}
+
+	/**
+	 * Poll kafka and handle each partition's records as a batch. With more than one worker the partitions are
+	 * spread over them, each partition always on the same worker so its order is kept. Once a poll's batches
+	 * are handled their offsets are committed asynchronously, while the next poll goes ahead. A batch's offset
+	 * is only committed after its worker finishes it, on shutdown or failure the rest is read again.
+	 */
+	void runKafka() {
+		ExecutorService[] lanes = null;
+		if (workers > 1) {
+			lanes = new ExecutorService[workers];
+			for (int i = 0; i < workers; i++) {
+				String name = "kafka-" + topic + "-" + i;
+				lanes[i] = Executors.newSingleThreadExecutor(r -> {
+					Thread t = new Thread(r, name);
+					t.setDaemon(true);
+					return t;
+				});
+			}
+		}
+
+		// Only offsets of batches the handler is done with, so no commit ever covers a record that was not handled
+		Map<TopicPartition, OffsetAndMetadata> handled = new HashMap<TopicPartition, OffsetAndMetadata>();
+		try {
+			while (!me.isInterrupted()) {
+				ConsumerRecords<String, String> records = consumer.poll(1000);
+				if (records.isEmpty())
+					continue;
+
+				Map<TopicPartition, Future<?>> pending = new HashMap<TopicPartition, Future<?>>();
+				Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+				for (TopicPartition tp : records.partitions()) {
+					List<ConsumerRecord<String, String>> batch = records.records(tp);
+					OffsetAndMetadata next = new OffsetAndMetadata(batch.get(batch.size() - 1).offset() + 1);
+					if (lanes == null) {
+						dispatch(batch);
+						handled.put(tp, next);
+					} else {
+						offsets.put(tp, next);
+						pending.put(tp, lanes[Math.floorMod(tp.partition(), lanes.length)].submit(() -> dispatch(batch)));
+					}
+				}
+				for (Map.Entry<TopicPartition, Future<?>> e : pending.entrySet()) {
+					e.getValue().get();
+					handled.put(e.getKey(), offsets.get(e.getKey()));
+				}
+				consumer.commitAsync(new HashMap<TopicPartition, OffsetAndMetadata>(handled), this);
+			}
+		} catch (WakeupException | InterruptException | InterruptedException error) {
+			// Shutting down
+		} catch (Exception error) {
+			logger.error("Kafka subscriber on {} stopped: {}", topic, error.toString());
+		} finally {
+			if (lanes != null) {
+				for (ExecutorService lane : lanes)
+					lane.shutdownNow();
+			}
+			try {
+				if (!handled.isEmpty())
+					consumer.commitSync(handled);
+			} catch (Exception error) {
+				logger.warn("Kafka subscriber on {} final commit failed: {}", topic, error.toString());
+			}
+			consumer.close();
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Hand one partition's records to the handler.
+	 * @param batch List. The records, in order.
+	 */
+	void dispatch(List<ConsumerRecord<String, String>> batch) {
+		List<String> lines = new ArrayList<String>(batch.size());
+		for (ConsumerRecord<String, String> record : batch)
+			lines.add(useGrok(record.value()));
+		try {
+			handler.handleMessages(topic, lines);
+		} catch (Exception error) {
+			logger.error("Kafka handler error on {}: {}", topic, error.toString());
+		}
+		received.addAndGet(lines.size());
+	}
+
+	/**
+	 * Kafka commit callback.
+	 * @param offsets Map. The offsets committed.
+	 * @param e Exception. Non-null if the commit failed, the next one covers these offsets.
+	 */
+	@Override
+	public void onComplete(Map<TopicPartition, OffsetAndMetadata> offsets, Exception e) {
+		if (e != null) {
+			commitErrors.incrementAndGet();
+			logger.warn("Kafka commit on {} failed: {}", topic, e.toString());
+		}
+	}
+
+	/**
+	 * Return the number of kafka messages handled.
+	 * @return long. The count.
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * Return the number of kafka commits that failed.
+	 * @return long. The count.
+	 */
+	public long getCommitErrors() {
+		return commitErrors.get();
 	}
 
     /**
@@ -557,6 +695,9 @@ public class Subscriber extends TailerListenerAdapter implements Runnable, Subsc
 
         if (me != null)
         	me.interrupt();
+        Consumer<String, String> c = consumer;
+        if (c != null)
+        	c.wakeup();
 	}
 	
 	public void close() {
@@ -43,6 +43,7 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -97,6 +98,13 @@ public class ZPublisher implements Runnable, Callback {
     // The kafka topic
     String topic;
     int partition = 0;
+    // The kafka partition key, null for none
+    MessageKey key;
+    // Kafka messages handed to the producer, acknowledged, failed in the callback, and dropped on send
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong acked = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
 
     Connection sqlConnect = null;
 
@@ -118,6 +126,9 @@ public class ZPublisher implements Runnable, Callback {
     PrintWriter pipe;
     KinesisConfig kinesis;
 
+    // The binary log, when specified
+    BinaryLog binlog;
+
     String name;
 
     public void setName(String name) {
@@ -135,6 +146,23 @@ public class ZPublisher implements Runnable, Callback {
 
     }
 
+    /**
+     * A kafka publisher on a producer that is already set up, used by the benchmarks and tests to stand in
+     * for a broker.
+     *
+     * @param producer Producer. The kafka producer.
+     * @param topic    String. The topic to publish to.
+     */
+    public ZPublisher(Producer<String, String> producer, String topic) {
+        this.producer = producer;
+        this.topic = topic;
+        this.address = "kafka://" + topic;
+        mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        me = new Thread(this);
+        me.start();
+    }
+
     /**
      * A non hazelcast publisher
      *
@@ -200,6 +228,8 @@ public class ZPublisher implements Runnable, Callback {
             }
 
             this.fileName = address;
+        } else if (address.startsWith("binlog://")) {
+            doBinaryLog(address);
         } else if (address.startsWith("pipe://")) {
             address = address.substring(7);
             this.topic = address;
@@ -254,17 +284,49 @@ public class ZPublisher implements Runnable, Callback {
         return address;
     }
 
+    /**
+     * Set up a binary log, binlog://logs/bids&time=60&size=256 rotates every 60 minutes or 256 megabytes,
+     * whichever comes first.
+     *
+     * @param saddress String. The address.
+     * @throws Exception on parsing or file errors.
+     */
+    void doBinaryLog(String saddress) throws Exception {
+        String[] parts = saddress.substring(9).split("&");
+        long size = 0;
+        long minutes = 0;
+        for (int i = 1; i < parts.length; i++) {
+            String[] x = parts[i].split("=");
+            if (x.length != 2)
+                throw new Exception("Bad binlog option at " + parts[i]);
+            switch (x[0]) {
+                case "time":
+                    minutes = Long.parseLong(x[1]);
+                    break;
+                case "size":
+                    size = Long.parseLong(x[1]);
+                    break;
+                default:
+                    throw new Exception("Unknown binlog option: " + x[0]);
+            }
+        }
+        binlog = new BinaryLog(parts[0], size * 1024 * 1024, minutes * 60000);
+        clogger.info("Binary log at {}", binlog.getFileName());
+    }
+
     // kafka://[a:b,b:c]&topic=bids&partition=0
     void doKafka(String saddress) throws Exception {
         KafkaConfig c = new KafkaConfig(saddress);
         Properties props = c.getProperties();
-        props.put(ProducerConfig.ACKS_CONFIG, "all");
-        props.put(ProducerConfig.RETRIES_CONFIG, 0);
+        props.putIfAbsent(ProducerConfig.ACKS_CONFIG, "all");
+        props.putIfAbsent(ProducerConfig.RETRIES_CONFIG, 0);
 
         if (c.getTopic() == null)
             throw new Exception("Kafka publisher needs a topic: " + saddress);
 
         topic = c.getTopic();
+        if (c.getKey() != null)
+            key = new MessageKey(c.getKey());
         producer = new KafkaProducer<String, String>(props);
     }
 
@@ -586,6 +648,50 @@ public class ZPublisher implements Runnable, Callback {
         }
     }
 
+    /**
+     * Run the binary logger in a loop. The request threads only queue the messages, this thread writes them,
+     * seals the blocks that are full or have waited long enough and rotates the files.
+     */
+    public void runBinaryLogger() {
+        long tick = 0;
+        while (!me.isInterrupted()) {
+            try {
+                drainBinaryLog();
+                long now = System.currentTimeMillis();
+                if (now - tick >= 100) {
+                    binlog.tick();
+                    tick = now;
+                }
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                clogger.error("Binary log error on {}: {}", binlog.getFileName(), e.toString());
+            }
+        }
+        try {
+            drainBinaryLog();
+            binlog.close();
+        } catch (Exception e) {
+            clogger.error("Binary log close error on {}: {}", binlog.getFileName(), e.toString());
+        }
+    }
+
+    /**
+     * Write the queued messages to the binary log.
+     */
+    void drainBinaryLog() {
+        Object msg;
+        while ((msg = queue.poll()) != null) {
+            try {
+                binlog.write(msg);
+            } catch (Exception error) {
+                clogger.error("Binary log write error on {}: {}", binlog.getFileName(), error.toString());
+            }
+        }
+    }
+
     /**
      * Run the kafka logger in a loop
      */
@@ -598,10 +704,13 @@ public class ZPublisher implements Runnable, Callback {
                     if (ping != null)
                         ping.cancelPing();
                     str = serialize(msg);
-                    ProducerRecord record = new ProducerRecord<String, String>(topic, "key", str);
-                    producer.send(record, this);
+                    send(key == null ? null : key.of(msg), str);
                 }
                 Thread.sleep(1);
+            } catch (InterruptedException e) {
+                // Closed, keep the flag so run() falls through
+                Thread.currentThread().interrupt();
+                return;
             } catch (Exception e) {
                 e.printStackTrace();
                 // return;
@@ -609,6 +718,86 @@ public class ZPublisher implements Runnable, Callback {
         }
     }
 
+    /**
+     * Hand a message to the kafka producer. The producer batches and compresses it and sends it later, the
+     * callback counts how it went. A message the producer will not take is counted as dropped.
+     *
+     * @param k        String. The partition key, null for none.
+     * @param contents String. The message.
+     */
+    void send(String k, String contents) {
+        sent.incrementAndGet();
+        try {
+            producer.send(new ProducerRecord<String, String>(topic, k, contents), this);
+        } catch (Exception error) {
+            dropped.incrementAndGet();
+            clogger.debug("Dropped message to topic '{}': {}", topic, error.toString());
+        }
+    }
+
+    /**
+     * Key kafka messages on a field, unless the address already set one.
+     *
+     * @param field String. The name of the public field holding the key, for example "hash" for wins.
+     */
+    public void setKey(String field) {
+        if (key == null && field != null)
+            key = new MessageKey(field);
+    }
+
+    /**
+     * Return the field kafka messages are keyed on.
+     *
+     * @return String. The field name, null for no key.
+     */
+    public String getKey() {
+        return key == null ? null : key.getName();
+    }
+
+    /**
+     * Return the number of messages handed to the kafka producer.
+     *
+     * @return long. The count.
+     */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Return the number of messages the brokers acknowledged.
+     *
+     * @return long. The count.
+     */
+    public long getAcked() {
+        return acked.get();
+    }
+
+    /**
+     * Return the number of messages that failed after they were handed to the producer.
+     *
+     * @return long. The count.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Return the number of messages the producer would not take.
+     *
+     * @return long. The count.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Send everything the kafka producer is holding, and wait for it.
+     */
+    public void flush() {
+        if (producer != null)
+            producer.flush();
+    }
+
     /**
      * Is the queue empty.
      *
@@ -694,6 +883,9 @@ public class ZPublisher implements Runnable, Callback {
             if (producer != null)     // kafka
                 runKafkaLogger();
 
+            if (binlog != null)       // binary log
+                runBinaryLogger();
+
             if (logger != null)       // jmq
                 runJmqLogger();
 
@@ -885,6 +1077,12 @@ public class ZPublisher implements Runnable, Callback {
      * @param s . String. JSON formatted message.
      */
     public void add(Object s) {
+        if (binlog != null) {
+            if (s instanceof Ping == false)
+                queue.add(s);
+            return;
+        }
+
         if (fileName != null || http != null) {
 
             if (s instanceof Ping)    // don't ping files or http
@@ -922,8 +1120,12 @@ public class ZPublisher implements Runnable, Callback {
      */
     public void addString(String contents) {
         if (producer != null) {
-            ProducerRecord record = new ProducerRecord<String, String>(topic, "key", contents);
-            producer.send(record, this);
+            send(null, contents);
+            return;
+        }
+
+        if (binlog != null) {
+            add(contents);
             return;
         }
 
@@ -953,7 +1155,10 @@ public class ZPublisher implements Runnable, Callback {
 
     @Override
     public void onCompletion(RecordMetadata recordMetadata, Exception e) {
-        if (e != null) {
+        if (e == null)
+            acked.incrementAndGet();
+        else {
+            failed.incrementAndGet();
             clogger.error("Error while producing message to topic '{}', refer: {}: {}", topic, address, e.toString());
             if (e instanceof org.apache.kafka.common.errors.TimeoutException) {
                 clogger.error("Restarting to try to recover");
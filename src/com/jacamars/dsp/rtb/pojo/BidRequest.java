@@ -10,22 +10,26 @@ import java.net.URLDecoder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletResponse;
 
 import com.fasterxml.jackson.databind.node.*;
+import com.jacamars.dsp.rtb.bidder.Bulkhead;
 import com.jacamars.dsp.rtb.bidder.RTBServer;
 import com.jacamars.dsp.rtb.bidder.SelectedCreative;
 import com.jacamars.dsp.rtb.blocks.LookingGlass;
 import com.jacamars.dsp.rtb.common.*;
 import com.jacamars.dsp.rtb.exchanges.adx.AdxBidRequest;
+import com.jacamars.dsp.rtb.fraud.FraudCheck;
 import com.jacamars.dsp.rtb.fraud.FraudLog;
 import com.jacamars.dsp.rtb.geo.Solution;
 import com.jacamars.dsp.rtb.tools.AmalgamatedKey;
 import com.jacamars.dsp.rtb.tools.DbTools;
 import com.jacamars.dsp.rtb.tools.GeoPatch;
 import com.jacamars.dsp.rtb.tools.HexDump;
+import com.jacamars.dsp.rtb.tools.IABCategories;
 import com.jacamars.dsp.rtb.tools.IsoTwo2Iso3;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -74,6 +78,8 @@ public class BidRequest {
 	 * The bid request values are mapped into a hashmap for fast lookup by campaigns
 	 */
 	public transient Map<String, Object> database = new HashMap();
+	/** The category fields campaigns use, as bitsets, null if none. See IABCategories */
+	public transient Map<String, long[]> categories;
 
 	/** The exchange this request came from */
 	private String exchange;
@@ -95,6 +101,8 @@ public class BidRequest {
 
 	/** Forensiq fraud record */
 	public FraudLog fraudRecord;
+	/** The fraud check started by startFraudCheck(), joined by forensiqPassed() */
+	transient CompletableFuture<FraudLog> fraudCheck;
 
 	// The impressions objects;
 	protected List<Impression> impressions;
@@ -136,6 +144,9 @@ public class BidRequest {
 	/** Set to true to force bid response to be gzipped */
 	public boolean usesGzipResponse = false;
 
+	/** The exchange's bulkhead, set on the prototype from its seat, null if it has none */
+	transient public Bulkhead bulkhead;
+
 	/** Set this to false to mark as an app */
 	boolean isSite = true;
 
@@ -231,6 +242,9 @@ public class BidRequest {
 
 		// Shuffle the campaigns
 		Preshuffle.getInstance().compile();
+		DealIndex.getInstance().compile();
+		FormatIndex.getInstance().compile();
+		Eligibility.getInstance().compile();
 
 		// Restart the bidder
 		startBidder();
@@ -430,7 +444,7 @@ public class BidRequest {
 			throw new Exception("Required field 'id' is missing or wrong type");
 		}
 		
-		GeoPatch.getInstance().patch(rootNode.get("device"));
+		GeoPatch.getInstance().patch(rootNode.get("device"), database);
 
 		IntNode in = null;
 		Object test = null;
@@ -444,6 +458,7 @@ public class BidRequest {
 				if (list.size() != 0)
 					compileList(key, list);
 			}
+			compileCategories();
 
 			// ////////////////////////////////////////////////////////////////////
 			if ((test = getNode("site.id")) != null)
@@ -649,24 +664,13 @@ public class BidRequest {
 	}
 
 	/**
-	 * Does this bid request pass muster for bot detection.
-	 * 
-	 * @return boolean. Returns true if not configured for bot detection or if
-	 *         configured and the bid was not deemed a bot.
-	 * @throws Exception on I/O errors.
+	 * Start the bot detection check without waiting for it, so it runs while the campaigns are
+	 * selected. Does nothing if bot detection is not configured.
 	 */
-	public boolean forensiqPassed() throws Exception {
-
-		// This can happen on exchanges like appnexus and google which have some other
-		// crazy signals
-		if (notABidRequest())
-			return true;
-
-		if (Configuration.forensiq == null) {
-			return true;
-		}
+	public void startFraudCheck() {
+		if (fraudCheck != null || Configuration.forensiq == null || notABidRequest())
+			return;
 
-		Object node = null;
 		String ip = null, ua = null, url = null, seller;
 		ip = findValue(this, "device.ip");
 		ua = findValue(this, "device.ua");
@@ -680,8 +684,33 @@ public class BidRequest {
 		if (url != null)
 			url = URIEncoder.myUri(url);
 
+		fraudCheck = FraudCheck.start(Configuration.forensiq, "display", ip, url, ua, seller, siteDomain);
+	}
+
+	/**
+	 * Does this bid request pass muster for bot detection. Joins the check started by
+	 * startFraudCheck(), starting it first if necessary, and waits no longer than the exchange's
+	 * deadline.
+	 * 
+	 * @return boolean. Returns true if not configured for bot detection or if
+	 *         configured and the bid was not deemed a bot.
+	 * @throws Exception on I/O errors, or TimeoutException if the deadline passed, when
+	 *         bidOnError is false.
+	 */
+	public boolean forensiqPassed() throws Exception {
+
+		// This can happen on exchanges like appnexus and google which have some other
+		// crazy signals
+		if (notABidRequest())
+			return true;
+
+		if (Configuration.forensiq == null) {
+			return true;
+		}
+
+		startFraudCheck();
 		try {
-			fraudRecord = Configuration.forensiq.bid("display", ip, url, ua, seller, "na");
+			fraudRecord = FraudCheck.join(fraudCheck, exchange);
 		} catch (Exception e) {
 			if (Configuration.forensiq.bidOnError())
 				return true;
@@ -689,6 +718,7 @@ public class BidRequest {
 		}
 		if (fraudRecord == null)
 			return true;
+		fraudRecord = new FraudLog(fraudRecord);
 		fraudRecord.id = id;
 		fraudRecord.domain = siteDomain;
 		fraudRecord.exchange = exchange;
@@ -785,6 +815,23 @@ public class BidRequest {
 		}
 	}
 
+	/**
+	 * Make bitsets of the category fields the campaigns query, once per request.
+	 */
+	void compileCategories() {
+		for (String path : IABCategories.PATHS) {
+			Object o = database.get(path);
+			if (o instanceof ArrayNode) {
+				long[] bits = IABCategories.bits((ArrayNode) o);
+				if (bits != null) {
+					if (categories == null)
+						categories = new HashMap<String, long[]>();
+					categories.put(path, bits);
+				}
+			}
+		}
+	}
+
 	// //////////////////
 
 	/**
@@ -211,6 +211,8 @@ public class BidResponse {
 
 			this.imp = x.getImpression();
 			this.impid = imp.getImpid();
+			imp.strW = x.strW;
+			imp.strH = x.strH;
 			/** Set the response type ****************/
 			if (imp.nativead)
 				this.adtype="native";
@@ -0,0 +1,56 @@
+package com.jacamars.dsp.rtb.pojo;
+
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * A bid request as it arrived, for the capture channel: the body bytes, already unzipped, the headers, the
+ * endpoint and when. The Replay tool reads them back and runs them through the bidder again.
+ * @author Ben M. Faul
+ *
+ */
+public class CapturedRequest {
+
+	/** When it arrived, in milliseconds since the epoch */
+	public long timestamp;
+	/** The endpoint, e.g. /rtb/bids/nexage */
+	public String target;
+	/** The exchange the endpoint belongs to */
+	public String exchange;
+	/** The HTTP headers */
+	public Map<String, String> headers;
+	/** The request body */
+	public byte[] body;
+	public String logtype = "capture";
+
+	/**
+	 * Default constructor for Jackson.
+	 */
+	public CapturedRequest() {
+
+	}
+
+	/**
+	 * Capture a request.
+	 * @param target String. The endpoint.
+	 * @param exchange String. The exchange.
+	 * @param request HttpServletRequest. The request, for its headers.
+	 * @param body byte[]. The body, unzipped.
+	 * @param timestamp long. When it arrived.
+	 */
+	public CapturedRequest(String target, String exchange, HttpServletRequest request, byte[] body, long timestamp) {
+		this.target = target;
+		this.exchange = exchange;
+		this.body = body;
+		this.timestamp = timestamp;
+		headers = new TreeMap<String, String>();
+		Enumeration<String> names = request.getHeaderNames();
+		while (names != null && names.hasMoreElements()) {
+			String name = names.nextElement();
+			headers.put(name, request.getHeader(name));
+		}
+	}
+}
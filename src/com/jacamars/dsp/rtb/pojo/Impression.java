@@ -14,6 +14,8 @@ import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.jacamars.dsp.rtb.common.Deal;
+import com.jacamars.dsp.rtb.common.DealIndex;
+import com.jacamars.dsp.rtb.common.FormatIndex;
 import com.jacamars.dsp.rtb.nativeads.creative.Data;
 import com.jacamars.dsp.rtb.nativeads.creative.Img;
 import com.jacamars.dsp.rtb.nativeads.creative.NativeVideo;
@@ -50,6 +52,12 @@ public class Impression {
 	/** Private and preferred deals */
 	public List<Deal> deals;
 
+	/** The deals joined against the deal index, made on first use */
+	public transient volatile DealIndex.Join dealJoin;
+
+	/** The creatives that could fit this impression, made on first use */
+	public transient volatile FormatIndex.Candidates formats;
+
 	/** Interstitial flag */
 	public Integer instl = 0;
 
@@ -79,6 +87,9 @@ public class Impression {
 	/** Optional format objects, found only in banner */
 	public List<Format> format;
 
+	/** Creative size picked for this impression by the ImpressionEvaluator, null for the creative's own */
+	public transient String strW, strH;
+
 	/**
 	 * Compiles the builtin attributes
 	 */
@@ -22,7 +22,7 @@ import java.net.URLDecoder;
 import java.util.Map;
 
 /**
- * TODO: This needs work, this is a performance pig
+ * A win notification. getJson() takes the url apart with WinUrl, which doesn't split or copy.
  * 
  * @author Ben M. Faul
  *
@@ -99,41 +99,27 @@ public class WinObject {
 	 */
 	@JsonIgnore
 	public static String getJson(String target) throws Exception {
-		String image = null;
 		String adm = StringUtils.EMPTY;
 		String cost = StringUtils.EMPTY;
-		String[] parts = target.split("http");
-
-		String forward = "http:" + parts[1];
-		if (parts.length > 2)
-			image = "http:" + parts[2];
-
-		parts = parts[1].split("/");
-
-		if (parts.length < 14) {
+		WinUrl url = WinUrl.get();
+		if (!url.parse(target)) {
 			logger.error("Error, badly formed win record: {}", target);
 			return "";
 		}
 
-		String domain = parts[5];
-
-		String bidType = parts[6];
-		String pubId = parts[7];
-		String price = parts[8];
-		String lat = parts[9];
-		String lon = parts[10];
-		String adId = parts[11];
-		String cridId = parts[12];
-		String hash = parts[13];
-
-		if (parts.length > 14) {
-			for (int i=14;i<parts.length;i++) {
-				hash += "/" + parts[i];
-			}
-		}
+		String domain = url.get(WinUrl.DOMAIN);
+		String bidType = url.get(WinUrl.BIDTYPE);
+		String pubId = url.get(WinUrl.PUBID);
+		String price = url.get(WinUrl.PRICE);
+		String lat = url.get(WinUrl.LAT);
+		String lon = url.get(WinUrl.LON);
+		String adId = url.get(WinUrl.ADID);
+		String cridId = url.get(WinUrl.CRIDID);
 		// watch out for special characters encoded in the hash.
-		hash = URLDecoder.decode(hash, "UTF-8");
+		String hash = url.getHash();
 
+		String image = url.getImage();
+		String forward = url.getForward();
 		try {
 			if (image != null)
 				image = URLDecoder.decode(image, "UTF-8");
@@ -163,12 +149,12 @@ public class WinObject {
 				dv /= 1000;
 			} catch (Exception error) {
 				try {
-					dv = Double.parseDouble(price);
+					dv = url.getDouble(WinUrl.PRICE);
 				} catch (Exception err) {
 					logger.warn("Error parsing price from {}", target);
 				}
 			}
-			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, dv.toString(), pubId, domain, bidType);
+			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, dv.toString(), dv, pubId, domain, bidType);
 			BidRequest.incrementWins(pubId);
 			return adm;
 		}
@@ -183,7 +169,7 @@ public class WinObject {
 				logger.warn("Google win, price {} and hash {} are swapped", price, hash);
 			}
 			dv /= 1000;
-			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, dv.toString(), pubId, domain, bidType);
+			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, dv.toString(), dv, pubId, domain, bidType);
 			BidRequest.incrementWins(pubId);
 			return adm;
 		}
@@ -192,15 +178,21 @@ public class WinObject {
 			// DO NOT DECCRYPT OpenX here, we already did it when we created the synthetic from the pixel.
 			// Already divided! dv /= 1000;
 			// Refer PixelClickConvertLog.doClick()
-			Double dv = Double.parseDouble(price);
-			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, dv.toString(), pubId, domain, bidType);
+			double dv = url.getDouble(WinUrl.PRICE);
+			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, Double.toString(dv), dv, pubId, domain, bidType);
 			BidRequest.incrementWins(pubId);
 			return adm;
 		}
 
 		// If the adm can't be retrieved, go ahead and convert it to win so that the accounting works. just return ""
 		try {
-			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, price, adm, domain, bidType);
+			double value;
+			try {
+				value = url.getDouble(WinUrl.PRICE);
+			} catch (NumberFormatException error) {
+				value = Double.NaN;
+			}
+			convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, price, value, adm, domain, bidType);
 		} catch (Exception error) {
 			error.printStackTrace();
 			logger.error("Error: {}, target: {}",error.toString(),target);
@@ -252,16 +244,35 @@ public class WinObject {
 	 */
 	public static double convertBidToWin(String hash, String cost, String lat, String lon, String adId, String cridId,
 			String pubId, String image, String forward, String price, String adm, String domain, String bidType) {
+		double value;
+		try {
+			value = Double.parseDouble(price);
+		} catch (Exception error) {
+			value = Double.NaN;
+		}
+		return convertBidToWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, price, value, adm, domain,
+				bidType);
+	}
+
+	/**
+	 * Same as above, with the price already parsed.
+	 * @param value double. The price as a number, NaN if it is not one.
+	 * @return double. The price added to adspend, 0 on errors.
+	 */
+	static double convertBidToWin(String hash, String cost, String lat, String lon, String adId, String cridId,
+			String pubId, String image, String forward, String price, double value, String adm, String domain,
+			String bidType) {
 		String adType = null;
-		double value = 0.0;
 		try {
 			Controller c = Controller.getInstance();
 			adType = c.deleteBidFromCache(hash);
 			c.getInstance().sendWin(hash, cost, lat, lon, adId, cridId, pubId, image, forward, price, adm, adType, domain, bidType);
-			value = Double.parseDouble(price);
+			if (Double.isNaN(value))
+				throw new NumberFormatException("For input string: \"" + price + "\"");
 			RTBServer.adspend += value;
 		} catch (Exception error) {
 			logger.error("Failed to delete bid from cache on exchange: {}, id: {}, error: {}", pubId, hash, error.toString());
+			return 0.0;
 		}
 		return value;
 	}
@@ -0,0 +1,261 @@
+package com.jacamars.dsp.rtb.pojo;
+
+import java.net.URLDecoder;
+
+/**
+ * A one pass tokenizer for the win notification url. Instead of splitting the url on "http" and then
+ * on "/", it records where each positional field starts and ends, and only makes a String for a field
+ * when somebody asks for it. Fields are URL decoded only if they contain '%' or '+', and the price is
+ * parsed straight from the characters.
+ * <p>
+ * The results are the same as the old split based parser in WinObject, including its quirks: the
+ * forward url is "http:" followed by everything after the first "http", the image is whatever follows
+ * the second "http", and everything after the cridid is the bid id, slashes and all.
+ * <p>
+ * Not thread safe, use one per thread with get().
+ * @author Ben M. Faul
+ *
+ */
+public class WinUrl {
+
+	/** Positional fields, in the order they appear after /rtb/win/ */
+	public static final int DOMAIN = 0, BIDTYPE = 1, PUBID = 2, PRICE = 3, LAT = 4, LON = 5, ADID = 6, CRIDID = 7,
+			HASH = 8;
+	// The field count
+	static final int FIELDS = 9;
+	// Where DOMAIN is, counting the "/" separated pieces after the first "http"
+	static final int FIRST = 5;
+	static final String HTTP = "http";
+
+	// Powers of ten that are exact as doubles
+	static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	static final ThreadLocal<WinUrl> local = ThreadLocal.withInitial(() -> new WinUrl());
+
+	String target;
+	final int[] start = new int[FIELDS];
+	final int[] end = new int[FIELDS];
+	int forwardStart, forwardEnd;
+	int imageStart, imageEnd;
+
+	/**
+	 * Return this thread's tokenizer.
+	 * @return WinUrl. The reusable tokenizer.
+	 */
+	public static WinUrl get() {
+		return local.get();
+	}
+
+	/**
+	 * Tokenize a win url.
+	 * @param target String. The full url of the win notification.
+	 * @return boolean. False if there are too few fields, the old parser's "badly formed win record".
+	 * @throws Exception if there is nothing after the first "http".
+	 */
+	public boolean parse(String target) throws Exception {
+		this.target = target;
+		int len = target.length();
+
+		int m0 = target.indexOf(HTTP);
+		if (m0 < 0)
+			throw new Exception("Win url has no http: " + target);
+		forwardStart = m0 + HTTP.length();
+		int m1 = target.indexOf(HTTP, forwardStart);
+		forwardEnd = m1 < 0 ? len : m1;
+
+		imageStart = imageEnd = -1;
+		if (m1 >= 0) {
+			int s2 = m1 + HTTP.length();
+			if (!onlyHttp(target, s2)) {
+				int m2 = target.indexOf(HTTP, s2);
+				imageStart = s2;
+				imageEnd = m2 < 0 ? len : m2;
+			}
+		}
+		if (forwardStart == forwardEnd && imageStart < 0)
+			throw new Exception("Win url has nothing after http: " + target);
+
+		// Trailing empty pieces don't count, and the last field runs to the end
+		int e = forwardEnd;
+		while (e > forwardStart && target.charAt(e - 1) == '/')
+			e--;
+
+		int piece = 0;
+		int field = 0;
+		int from = forwardStart;
+		while (field < FIELDS) {
+			int slash = field == HASH ? -1 : target.indexOf('/', from);
+			if (slash >= e)
+				slash = -1;
+			if (piece >= FIRST) {
+				start[field] = from;
+				end[field] = slash < 0 ? e : slash;
+				field++;
+			}
+			if (slash < 0)
+				break;
+			from = slash + 1;
+			piece++;
+		}
+		return field == FIELDS;
+	}
+
+	/**
+	 * Return true if the string from here on is nothing but "http" repeated, which split() would drop.
+	 */
+	static boolean onlyHttp(String s, int from) {
+		while (from < s.length()) {
+			if (!s.startsWith(HTTP, from))
+				return false;
+			from += HTTP.length();
+		}
+		return true;
+	}
+
+	/**
+	 * Return a field as it appears in the url.
+	 * @param field int. One of the field constants.
+	 * @return String. The field.
+	 */
+	public String get(int field) {
+		return target.substring(start[field], end[field]);
+	}
+
+	/**
+	 * Return true if a field equals a value, without making a String.
+	 * @param field int. One of the field constants.
+	 * @param value String. The value to compare with.
+	 * @return boolean. True if equal.
+	 */
+	public boolean is(int field, String value) {
+		int n = end[field] - start[field];
+		return n == value.length() && target.regionMatches(start[field], value, 0, n);
+	}
+
+	/**
+	 * Return the bid id, URL decoded.
+	 * @return String. The hash of the bid.
+	 * @throws Exception on a bad % escape.
+	 */
+	public String getHash() throws Exception {
+		return decode(target, start[HASH], end[HASH]);
+	}
+
+	/**
+	 * Return the forward url, not decoded.
+	 * @return String. "http:" and everything up to the next "http".
+	 */
+	public String getForward() {
+		return "http:" + target.substring(forwardStart, forwardEnd);
+	}
+
+	/**
+	 * Return the image url, not decoded.
+	 * @return String. "http:" and what follows the second "http", or null if none.
+	 */
+	public String getImage() {
+		if (imageStart < 0)
+			return null;
+		return "http:" + target.substring(imageStart, imageEnd);
+	}
+
+	/**
+	 * Return a field as a double, parsed from the characters when it is a plain decimal number.
+	 * @param field int. One of the field constants.
+	 * @return double. The value, same as Double.parseDouble() of the field.
+	 * @throws NumberFormatException if the field is not a number.
+	 */
+	public double getDouble(int field) {
+		double v = parseDecimal(target, start[field], end[field]);
+		if (Double.isNaN(v))
+			return Double.parseDouble(get(field));
+		return v;
+	}
+
+	/**
+	 * Parse [-]digits[.digits] exactly. A mantissa of at most 2^53 divided by an exact power of ten is
+	 * correctly rounded, so the answer is the same as Double.parseDouble().
+	 * @param s String. Holds the number.
+	 * @param from int. The first character.
+	 * @param to int. One past the last character.
+	 * @return double. The value, or NaN if the text is anything else, or too long for the fast path.
+	 */
+	public static double parseDecimal(String s, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0, scale = -1;
+		for (; i < to; i++) {
+			char c = s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				if (++digits > 15)
+					return Double.NaN;
+				if (scale >= 0)
+					scale++;
+			} else if (c == '.' && scale < 0)
+				scale = 0;
+			else
+				return Double.NaN;
+		}
+		if (digits == 0)
+			return Double.NaN;
+		double v = mantissa;
+		if (scale > 0)
+			v /= POW10[scale];
+		return negative ? -v : v;
+	}
+
+	/**
+	 * URL decode a range, only making the decoder's copy if there is something to decode.
+	 * @param s String. The string.
+	 * @param from int. Start of the range.
+	 * @param to int. End of the range.
+	 * @return String. The decoded range.
+	 * @throws Exception on a bad % escape.
+	 */
+	public static String decode(String s, int from, int to) throws Exception {
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c == '%' || c == '+')
+				return URLDecoder.decode(s.substring(from, to), "UTF-8");
+		}
+		return s.substring(from, to);
+	}
+
+	/**
+	 * Find the redirect url in a click query string, "...url=encoded". Like split("url=") the url ends
+	 * at the next "url=", if there is one.
+	 * @param query String. The query string.
+	 * @return int. The index of "url=", or -1 if there is no url to redirect to.
+	 */
+	public static int redirect(String query) {
+		if (query == null)
+			return -1;
+		int i = query.indexOf("url=");
+		if (i < 0 || i + 4 == query.length())
+			return -1;
+		return i;
+	}
+
+	/**
+	 * Return the decoded redirect url of a click query string.
+	 * @param query String. The query string.
+	 * @param i int. The value returned by redirect().
+	 * @return String. The url to send the browser to.
+	 * @throws Exception on a bad % escape.
+	 */
+	public static String redirectUrl(String query, int i) throws Exception {
+		int e = query.indexOf("url=", i + 4);
+		return decode(query, i + 4, e < 0 ? query.length() : e);
+	}
+}
@@ -45,8 +45,10 @@ public class Probe {
 	public static final String FREQUENCY_CAPPED = new String("Frequency capped\n");
 	public static final String FREQUENCY_GOVERNED = new String("Frequency governed\n");
 	public static final String CREATIVE_NOTACTIVE = new String("Creative is not in active state\n");
+	public static final String CAMPAIGN_NOTACTIVE = new String("Campaign budget, bid window or daypart not active\n");
 	public static final String WRONG_EXCHANGE = new String("Wrong exchange\n");
 	public static final String SPEND_RATE_EXCEEDED = new String("Spend Rate Exceeded\n");
+	public static final String PACED = new String("Campaign sat out this request to pace its spend\n");
 	public static final String SITE_OR_APP_DOMAIN = new String("site.domain OR app.domain");
 	public static final String FORMAT_NOMATCH = new String("Format in impression does not match any creative size");
 	public static final String BID_CREAT_IS_AUDIO = new String("Creative is audio, request is not\n");
@@ -170,6 +172,26 @@ public class Probe {
         return report.toString();
     }
 	
+	/**
+	 * Return the count of each reason, summed over the exchanges, campaigns and creatives.
+	 * @return Map. The reason to its count, in reason order.
+	 */
+	public Map<String, Long> getReasons() {
+		Map<String, Long> reasons = new TreeMap<String, Long>();
+		for (ExchangeProbe exchange : probes.values()) {
+			for (CampaignProbe campaign : exchange.probes.values()) {
+				for (CreativeProbe creative : campaign.probes.values()) {
+					for (Map.Entry<String, LongAdder> e : creative.probes.entrySet()) {
+						long n = e.getValue().sum();
+						if (n != 0)
+							reasons.merge(e.getKey().trim(), n, Long::sum);
+					}
+				}
+			}
+		}
+		return reasons;
+	}
+
 	/**
 	 * Return a List of objects that denote the exchange, bids, total, and a list of maps of the campaigns.
 	 * @return List. The list of report maps for the exchanges.
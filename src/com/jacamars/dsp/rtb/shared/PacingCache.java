@@ -0,0 +1,145 @@
+package com.jacamars.dsp.rtb.shared;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.jacamars.dsp.rtb.bidder.RTBServer;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Configuration;
+import com.jacamars.dsp.rtb.tools.RandomSource;
+
+/**
+ * The pacing participation of each campaign, shared through Hazelcast. The leader's accounting pass publishes
+ * a campaign's participation when it moves, keyed by campaign id, and every bidder keeps a local copy through
+ * the map listeners, so the bid path reads it without going to the cluster. A campaign with no entry is not
+ * paced.
+ * Created by Ben M. Faul.
+ */
+public enum PacingCache {
+
+	INSTANCE;
+
+	protected static final Logger logger = LoggerFactory.getLogger(PacingCache.class);
+
+	/** The cluster copy, campaign id to participation */
+	static private volatile IMap<String, Double> cache;
+
+	/** This bidder's copy */
+	static final Map<Integer, Double> local = new ConcurrentHashMap<Integer, Double>();
+
+	/** When set, the participation the bid path reads, in place of the live copy */
+	static volatile Map<Integer, Double> frozen;
+
+	/** Smallest change worth publishing */
+	static public double resolution = 0.01;
+
+	/** The default value to read backups, is true */
+	static public boolean readBackup = true;
+
+	public static final String NAME = "PACING";
+
+	public static PacingCache getInstance() {
+		if (cache != null)
+			return INSTANCE;
+
+		Config config = RTBServer.getSharedInstance().getConfig();
+		cache = RTBServer.getSharedInstance().getMap(NAME);
+		config.getMapConfig(NAME).setAsyncBackupCount(Configuration.getInstance().backups)
+				.setReadBackupData(readBackup);
+
+		cache.addEntryListener(new EntryAddedListener<String, Double>() {
+			@Override
+			public void entryAdded(EntryEvent<String, Double> event) {
+				local.put(Integer.parseInt(event.getKey()), event.getValue());
+			}
+		}, true);
+		cache.addEntryListener(new EntryUpdatedListener<String, Double>() {
+			@Override
+			public void entryUpdated(EntryEvent<String, Double> event) {
+				local.put(Integer.parseInt(event.getKey()), event.getValue());
+			}
+		}, true);
+		cache.addEntryListener(new EntryRemovedListener<String, Double>() {
+			@Override
+			public void entryRemoved(EntryEvent<String, Double> event) {
+				local.remove(Integer.parseInt(event.getKey()));
+			}
+		}, true);
+
+		cache.forEach((k, v) -> local.put(Integer.parseInt(k), v));
+		return INSTANCE;
+	}
+
+	/**
+	 * Publish a campaign's participation, if it moved enough to matter.
+	 * @param c Campaign. The campaign.
+	 * @param participation double. The fraction of requests to bid on, 0 to 1.
+	 */
+	public void publish(Campaign c, double participation) {
+		Double old = local.get(c.id);
+		if (old != null && Math.abs(old - participation) < resolution && (participation < 1 || old == 1))
+			return;
+		local.put(c.id, participation);
+		if (cache != null)
+			cache.set("" + c.id, participation);
+		logger.debug("Campaign {} pacing at {}", c.id, participation);
+	}
+
+	/**
+	 * Remove a campaign's pacing.
+	 * @param c Campaign. The campaign.
+	 */
+	public void remove(Campaign c) {
+		local.remove(c.id);
+		if (cache != null)
+			cache.remove("" + c.id);
+	}
+
+	/**
+	 * Return a campaign's participation.
+	 * @param c Campaign. The campaign.
+	 * @return double. The fraction of requests to bid on, 1 if it is not paced.
+	 */
+	public static double participation(Campaign c) {
+		Map<Integer, Double> m = frozen;
+		Double p = (m == null ? local : m).get(c.id);
+		return p == null ? 1 : p;
+	}
+
+	/**
+	 * Should this campaign take part in this bid request? A coin flip weighted by its participation.
+	 * @param c Campaign. The campaign.
+	 * @return boolean. True to go on and run the campaign's targeting.
+	 */
+	public static boolean participate(Campaign c) {
+		Map<Integer, Double> m = frozen;
+		Double p = (m == null ? local : m).get(c.id);
+		return p == null || p >= 1 || RandomSource.nextDouble() < p;
+	}
+
+	/**
+	 * Return a copy of this bidder's participation.
+	 * @return Map. Campaign id to participation.
+	 */
+	public static Map<Integer, Double> snapshot() {
+		return new HashMap<Integer, Double>(local);
+	}
+
+	/**
+	 * Freeze the participation the bid path sees, whatever the leader publishes. The Replay tool uses this.
+	 * @param participation Map. Campaign id to participation, null to go back to the live copy.
+	 */
+	public static void freeze(Map<Integer, Double> participation) {
+		frozen = participation == null ? null : new HashMap<Integer, Double>(participation);
+	}
+}
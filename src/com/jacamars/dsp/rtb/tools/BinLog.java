@@ -0,0 +1,164 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacamars.dsp.rtb.jmq.BinaryLog;
+import com.jacamars.dsp.rtb.jmq.BinaryLogReader;
+
+/**
+ * Streams binary logs back out as JSON lines, with optional filters on field values and on time. With -c it
+ * just counts the messages and blocks. With -w it converts a JSON lines log into a binary log and reports the
+ * bytes and time of each, to see what the binary log saves.
+ * <p>
+ * Usage: BinLog [-f field=value]... [-from millis] [-to millis] [-c] file.rtbl...
+ * <br>
+ * BinLog -w logs/bids base
+ *
+ * This is for testing, this is not operational code.
+ */
+public class BinLog {
+
+	static final ObjectMapper mapper = new ObjectMapper();
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> filters = new HashMap<String, String>();
+		List<String> files = new ArrayList<String>();
+		long from = Long.MIN_VALUE;
+		long to = Long.MAX_VALUE;
+		boolean count = false;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-f":
+				String[] t = args[i + 1].split("=", 2);
+				if (t.length != 2) {
+					System.out.println("Filter is field=value: " + args[i + 1]);
+					System.exit(1);
+				}
+				filters.put(t[0], t[1]);
+				i += 2;
+				break;
+			case "-from":
+				from = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-to":
+				to = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-c":
+				count = true;
+				i++;
+				break;
+			case "-w":
+				convert(args[i + 1], args[i + 2]);
+				return;
+			case "-h":
+				System.out.println("[-f field=value]... [-from millis] [-to millis] [-c] file.rtbl... | -w jsonlines base");
+				System.exit(1);
+			default:
+				if (args[i].startsWith("-")) {
+					System.out.println("Huh? " + args[i]);
+					System.exit(1);
+				}
+				files.add(args[i]);
+				i++;
+			}
+		}
+
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024);
+		long total = 0;
+		for (String file : files) {
+			BinaryLogReader reader = new BinaryLogReader(file);
+			reader.setRange(from, to);
+			long n = 0;
+			JsonNode node;
+			while ((node = reader.next()) != null) {
+				if (!matches(node, filters))
+					continue;
+				n++;
+				if (!count) {
+					out.write(mapper.writeValueAsString(node));
+					out.newLine();
+				}
+			}
+			if (count)
+				out.write(file + ": " + n + " messages in " + reader.getBlocks().size() + " blocks"
+						+ (reader.isIndexed() ? "" : ", not closed") + "\n");
+			total += n;
+			reader.close();
+		}
+		if (count && files.size() > 1)
+			out.write("total: " + total + "\n");
+		out.flush();
+	}
+
+	/**
+	 * Does a message have all the field values?
+	 * @param node JsonNode. The message.
+	 * @param filters Map. Field name to value, the field name can be a path like ext/exchange.
+	 * @return boolean. True if it matches them all.
+	 */
+	public static boolean matches(JsonNode node, Map<String, String> filters) {
+		for (Map.Entry<String, String> e : filters.entrySet()) {
+			JsonNode v = node.at("/" + e.getKey());
+			if (v.isMissingNode() || !v.asText().equals(e.getValue()))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Convert a JSON lines log into a binary log, and print the sizes and times of both.
+	 * @param in String. The JSON lines file.
+	 * @param base String. The binary log's base name.
+	 * @throws Exception on file errors.
+	 */
+	static void convert(String in, String base) throws Exception {
+		List<JsonNode> messages = new ArrayList<JsonNode>();
+		long jsonBytes = 0;
+		try (BufferedReader br = new BufferedReader(new FileReader(in))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.trim().length() == 0)
+					continue;
+				messages.add(mapper.readTree(line));
+				jsonBytes += line.length() + 1;
+			}
+		}
+
+		// What the text logger spends per message, serializing to a line of JSON
+		long time = System.nanoTime();
+		long check = 0;
+		for (JsonNode node : messages)
+			check += mapper.writeValueAsString(node).length() + 1;
+		long jsonTime = System.nanoTime() - time;
+
+		time = System.nanoTime();
+		BinaryLog log = new BinaryLog(base, 0, 0);
+		for (JsonNode node : messages)
+			log.write(node);
+		log.close();
+		long binTime = System.nanoTime() - time;
+		String fileName = log.getFileName();
+
+		long binBytes = new File(fileName).length();
+
+		System.out.printf("%d messages, %d bytes serialized%n", messages.size(), check);
+		System.out.printf("JSON lines: %12d bytes, %8.2f us/msg%n", jsonBytes, jsonTime / 1000.0 / messages.size());
+		System.out.printf("Binary log: %12d bytes, %8.2f us/msg, %d bytes before compression, %s%n", binBytes,
+				binTime / 1000.0 / messages.size(), log.getRawBytes(), fileName);
+		System.out.printf("Ratio:      %12.1fx%n", (double) jsonBytes / binBytes);
+	}
+}
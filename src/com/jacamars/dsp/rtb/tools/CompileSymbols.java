@@ -0,0 +1,140 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jacamars.dsp.rtb.blocks.CIDRUtils;
+import com.jacamars.dsp.rtb.blocks.LookingGlass;
+import com.jacamars.dsp.rtb.blocks.MappedSymbols;
+import com.jacamars.dsp.rtb.blocks.SymbolFile;
+
+/**
+ * Offline compiler for the symbol lists. Reads the same text files the bidder reads with
+ * NavMap, Bloom and SimpleSet and writes a checksummed SymbolFile the bidder can memory map.
+ * Use type "compiled" in the lists configuration to load the result.
+ * <p>
+ * Example: -type cidr -in data/METHBOT.txt -out data/METHBOT.sym
+ */
+public class CompileSymbols {
+
+    public static void main(String [] args) throws Exception {
+        String type = null;
+        String in = null;
+        String out = null;
+        double fpp = 0.003;
+
+        int i = 0;
+        while(i<args.length) {
+            switch(args[i]) {
+                case "-type":
+                    type = args[i+1];
+                    i+=2;
+                    break;
+                case "-in":
+                    in = args[i+1];
+                    i+=2;
+                    break;
+                case "-out":
+                    out = args[i+1];
+                    i+=2;
+                    break;
+                case "-fpp":
+                    fpp = Double.parseDouble(args[i+1]);
+                    i+=2;
+                    break;
+                case "-h":
+                    System.out.println("-type set|cidr|range|bloom -in textFile -out compiledFile [-fpp probability]");
+                    System.exit(1);
+                default:
+                    System.out.println("Huh? " + args[i]);
+                    System.exit(1);
+            }
+        }
+        if (type == null || in == null || out == null) {
+            System.out.println("-type, -in and -out are required");
+            System.exit(1);
+        }
+
+        long time = System.currentTimeMillis();
+        compile(type, in, out, fpp);
+        time = System.currentTimeMillis() - time;
+
+        MappedSymbols x = MappedSymbols.open(out);
+        System.out.println("Compiled " + in + " to " + out + ", entries = " + x.getMembers()
+            + ", crc = " + Long.toHexString(x.getCrc()) + ", time = " + time + " ms");
+    }
+
+    /**
+     * Compile a text list to a symbol file.
+     * @param type String. One of set, cidr, range or bloom.
+     * @param in String. The text file to read.
+     * @param out String. The compiled file to write.
+     * @param fpp double. False positive probability, bloom only.
+     * @throws Exception on I/O errors or malformed lines.
+     */
+    public static void compile(String type, String in, String out, double fpp) throws Exception {
+        switch(type) {
+            case "set":
+                SymbolFile.writeStrings(out, readKeys(in));
+                break;
+            case "bloom":
+                SymbolFile.writeBloom(out, readKeys(in), fpp);
+                break;
+            case "cidr":
+            case "range":
+                SymbolFile.writeRanges(out, readRanges(in));
+                break;
+            default:
+                throw new Exception("Unknown type: " + type);
+        }
+    }
+
+    /**
+     * Read the first column of each line, same rules as SimpleSet and Bloom.
+     * @param in String. The file name.
+     * @return List. The keys.
+     * @throws Exception on I/O errors.
+     */
+    static List<String> readKeys(String in) throws Exception {
+        List<String> keys = new ArrayList<String>();
+        try (BufferedReader br = new BufferedReader(new FileReader(in))) {
+            for (String line; (line = br.readLine()) != null;) {
+                String [] parts = LookingGlass.eatquotedStrings(line);
+                keys.add(parts[0].replaceAll("\"", "").trim());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Read CIDR or low-high lines, same rules as NavMap. Comments and short lines are skipped.
+     * @param in String. The file name.
+     * @return List. The ranges as long[2].
+     * @throws Exception on I/O errors or malformed addresses.
+     */
+    static List<long[]> readRanges(String in) throws Exception {
+        List<long[]> ranges = new ArrayList<long[]>();
+        try (BufferedReader br = new BufferedReader(new FileReader(in))) {
+            for (String line; (line = br.readLine()) != null;) {
+                line = line.trim();
+                if (line.startsWith("#") || line.length() < 7)
+                    continue;
+                long [] r;
+                int dash = line.indexOf('-');
+                if (dash > 0) {
+                    r = new long[] { CIDRUtils.parseIPv4(line.substring(0, dash).trim()),
+                        CIDRUtils.parseIPv4(line.substring(dash + 1).trim()) };
+                    if (r[0] < 0 || r[1] < 0)
+                        r = null;
+                } else
+                    r = CIDRUtils.cidrToRange(line);
+                if (r == null)
+                    throw new Exception("Malformed address in " + in + ": " + line);
+                ranges.add(r);
+            }
+        }
+        return ranges;
+    }
+}
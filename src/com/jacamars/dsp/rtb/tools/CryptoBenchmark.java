@@ -0,0 +1,219 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.jacamars.dsp.rtb.exchanges.CryptoContext;
+import com.jacamars.dsp.rtb.exchanges.adx.Base64;
+import com.jacamars.dsp.rtb.exchanges.adx.Decrypter;
+
+/**
+ * Timing main for win price decryption. Compares the old path, unWebSafeAndPad, Base64, new
+ * SecretKeySpecs and Decrypter.decrypt() on every call, against CryptoContext. Before timing, it checks
+ * that both give the same answers on the Google sample price, on random prices and on random lengths,
+ * and that both reject corrupted ciphertext.
+ * <p>
+ * Usage: CryptoBenchmark [-n iterations] [-t threads]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class CryptoBenchmark {
+
+	// The sample keys and price from Google's documentation, also in Decrypter.testWinningPrice()
+	static final byte[] EKEY = { (byte) 0xb0, (byte) 0x8c, (byte) 0x70, (byte) 0xcf, (byte) 0xbc, (byte) 0xb0,
+			(byte) 0xeb, (byte) 0x6c, (byte) 0xab, (byte) 0x7e, (byte) 0x82, (byte) 0xc6, (byte) 0xb7, (byte) 0x5d,
+			(byte) 0xa5, (byte) 0x20, (byte) 0x72, (byte) 0xae, (byte) 0x62, (byte) 0xb2, (byte) 0xbf, (byte) 0x4b,
+			(byte) 0x99, (byte) 0x0b, (byte) 0xb8, (byte) 0x0a, (byte) 0x48, (byte) 0xd8, (byte) 0x14, (byte) 0x1e,
+			(byte) 0xec, (byte) 0x07 };
+	static final byte[] IKEY = { (byte) 0xbf, (byte) 0x77, (byte) 0xec, (byte) 0x55, (byte) 0xc3, (byte) 0x01,
+			(byte) 0x30, (byte) 0xc1, (byte) 0xd8, (byte) 0xcd, (byte) 0x18, (byte) 0x62, (byte) 0xed, (byte) 0x2a,
+			(byte) 0x4c, (byte) 0xd2, (byte) 0xc7, (byte) 0x6a, (byte) 0xc3, (byte) 0x3b, (byte) 0xc0, (byte) 0xc4,
+			(byte) 0xce, (byte) 0x8a, (byte) 0x3d, (byte) 0x3b, (byte) 0xbd, (byte) 0x3a, (byte) 0xd5, (byte) 0x68,
+			(byte) 0x77, (byte) 0x92 };
+	static final String SAMPLE = "SjpvRwAB4kB7jEpgW5IA8p73ew9ic6VZpFsPnA";
+	static final long SAMPLE_PRICE = 709959680;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = 1000000;
+		int threads = 1;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-n":
+				iterations = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-t":
+				threads = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("-n iterations -t threads");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		CryptoContext crypto = new CryptoContext(EKEY, IKEY);
+		check(crypto);
+
+		String[] prices = new String[1024];
+		Random rand = new Random(1);
+		for (i = 0; i < prices.length; i++)
+			prices[i] = encode(crypto, rand.nextInt(100000000), rand);
+
+		for (int round = 0; round < 2; round++) {
+			double old = time(threads, iterations, n -> {
+				long sum = 0;
+				for (int k = 0; k < n; k++)
+					sum += oldDecrypt(prices[k & 1023]);
+				return sum;
+			});
+			double now = time(threads, iterations, n -> {
+				long sum = 0;
+				for (int k = 0; k < n; k++)
+					sum += crypto.decryptPrice(prices[k & 1023]);
+				return sum;
+			});
+			System.out.printf("%d threads: old %.0f ns/decrypt, %.0f/s; context %.0f ns/decrypt, %.0f/s; %.1fx%n",
+					threads, old, threads * 1e9 / old, now, threads * 1e9 / now, old / now);
+		}
+	}
+
+	/**
+	 * Compare the two paths, die if they differ.
+	 */
+	static void check(CryptoContext crypto) throws Exception {
+		if (oldDecrypt(SAMPLE) != SAMPLE_PRICE || crypto.decryptPrice(SAMPLE) != SAMPLE_PRICE)
+			throw new Exception("Sample price does not decrypt to " + SAMPLE_PRICE);
+
+		SecretKey e = new SecretKeySpec(EKEY, "HmacSHA1");
+		SecretKey k = new SecretKeySpec(IKEY, "HmacSHA1");
+		Random rand = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			long price = rand.nextLong() >>> rand.nextInt(64);
+			String text = encode(crypto, price, rand);
+			if (oldDecrypt(text) != price || crypto.decryptPrice(text) != price)
+				throw new Exception("Price " + price + " differs, " + text);
+
+			byte[] plain = new byte[rand.nextInt(i < 1000 ? 6000 : 100)];
+			rand.nextBytes(plain);
+			byte[] cipher = encrypt(plain, rand);
+			if (!Arrays.equals(Decrypter.decrypt(cipher, e, k), plain) || !Arrays.equals(crypto.decrypt(cipher), plain))
+				throw new Exception("Decrypt of " + plain.length + " bytes differs");
+
+			cipher[rand.nextInt(cipher.length)] ^= 1 << rand.nextInt(8);
+			boolean oldFailed = false, newFailed = false;
+			try {
+				Decrypter.decrypt(cipher, e, k);
+			} catch (Exception error) {
+				oldFailed = true;
+			}
+			try {
+				crypto.decrypt(cipher);
+			} catch (Exception error) {
+				newFailed = true;
+			}
+			if (!oldFailed || !newFailed)
+				throw new Exception("Corrupted ciphertext accepted");
+		}
+		System.out.println("Same results on the sample, 100000 prices and 100000 byte arrays");
+	}
+
+	/**
+	 * The old win path, as GoogleWinObject and AdxWinObject did it.
+	 */
+	static long oldDecrypt(String websafe) throws Exception {
+		String b64 = Decrypter.unWebSafeAndPad(websafe);
+		byte[] code = Base64.decodeBase64(b64.getBytes("US-ASCII"));
+		SecretKey encryptionKey = new SecretKeySpec(EKEY, "HmacSHA1");
+		SecretKey integrityKey = new SecretKeySpec(IKEY, "HmacSHA1");
+		byte[] plaintext = Decrypter.decrypt(code, encryptionKey, integrityKey);
+		return new DataInputStream(new ByteArrayInputStream(plaintext)).readLong();
+	}
+
+	/**
+	 * Encrypt a price and encode it web safe and unpadded, as the exchange does.
+	 */
+	static String encode(CryptoContext crypto, long price, Random rand) {
+		byte[] plain = new byte[8];
+		for (int i = 0; i < 8; i++)
+			plain[i] = (byte) (price >>> (56 - 8 * i));
+		byte[] iv = new byte[16];
+		rand.nextBytes(iv);
+		byte[] out = new byte[28];
+		crypto.encrypt(plain, iv, out);
+		String b64 = new String(Base64.encodeBase64(out));
+		return b64.replace('+', '-').replace('/', '_').replace("=", "");
+	}
+
+	/**
+	 * Encrypt any length with a fresh Mac per block, straight from the spec.
+	 */
+	static byte[] encrypt(byte[] plain, Random rand) throws Exception {
+		byte[] iv = new byte[16];
+		rand.nextBytes(iv);
+		byte[] out = new byte[16 + plain.length + 4];
+		System.arraycopy(iv, 0, out, 0, 16);
+		byte[] counter = iv;
+		for (int block = 0, p = 0; p < plain.length; block++) {
+			if (block > 0) {
+				counter = Arrays.copyOf(iv, 16 + (block > 256 ? 2 : 1));
+				int c = block - 1;
+				if (block > 256) {
+					c = block - 257;
+					counter[16] = (byte) 0;
+					counter[17] = (byte) c;
+				} else
+					counter[16] = (byte) c;
+			}
+			Mac mac = Mac.getInstance("HmacSHA1");
+			mac.init(new SecretKeySpec(EKEY, "HmacSHA1"));
+			byte[] pad = mac.doFinal(counter);
+			for (int i = 0; i < 20 && p < plain.length; i++, p++)
+				out[16 + p] = (byte) (plain[p] ^ pad[i]);
+		}
+		Mac mac = Mac.getInstance("HmacSHA1");
+		mac.init(new SecretKeySpec(IKEY, "HmacSHA1"));
+		mac.update(plain);
+		mac.update(iv);
+		System.arraycopy(mac.doFinal(), 0, out, 16 + plain.length, 4);
+		return out;
+	}
+
+	interface Work {
+		long run(int n) throws Exception;
+	}
+
+	/**
+	 * Run the work on some threads.
+	 * @return double. Nanoseconds per iteration per thread.
+	 */
+	static double time(int threads, int iterations, Work work) throws Exception {
+		work.run(Math.min(iterations, 100000));
+		Thread[] t = new Thread[threads];
+		long time = System.nanoTime();
+		for (int i = 0; i < threads; i++) {
+			t[i] = new Thread(() -> {
+				try {
+					work.run(iterations);
+				} catch (Exception error) {
+					error.printStackTrace();
+				}
+			});
+			t[i].start();
+		}
+		for (Thread x : t)
+			x.join();
+		return (double) (System.nanoTime() - time) / iterations;
+	}
+}
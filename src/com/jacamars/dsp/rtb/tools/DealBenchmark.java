@@ -0,0 +1,183 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Deal;
+import com.jacamars.dsp.rtb.common.DealIndex;
+import com.jacamars.dsp.rtb.pojo.Impression;
+
+/**
+ * Timing main for pmp deal matching. Spreads the deals over the creatives of a set of campaigns, makes
+ * impressions that each carry some of the deal ids, and finds every creative's deal for every impression
+ * three ways: the old set intersection per creative, Deals.findDealHighestList(), and the DealIndex join.
+ * The prices are all different, so there are no random ties and all three must agree.
+ * <p>
+ * Usage: DealBenchmark [-d deals] [-c creatives] [-i impressions] [-p dealsPerImpression]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class DealBenchmark {
+
+	// Each creative's deals by id, what Deals kept for the old lookup
+	static Map<Creative, Map<String, Deal>> legacy = new IdentityHashMap<Creative, Map<String, Deal>>();
+
+	public static void main(String[] args) throws Exception {
+		int nDeals = 10000;
+		int nCreatives = 2000;
+		int nImpressions = 500;
+		int perImpression = 20;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-d":
+				nDeals = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-c":
+				nCreatives = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-i":
+				nImpressions = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-p":
+				perImpression = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("-d deals -c creatives -i impressions -p dealsPerImpression");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		Random rand = new Random(1);
+
+		// Every deal goes on at least one creative, then some more at random
+		List<Creative> creatives = new ArrayList<Creative>();
+		for (i = 0; i < nCreatives; i++) {
+			Creative c = new Creative();
+			c.impid = "creative-" + i;
+			creatives.add(c);
+		}
+		int cents = 1;
+		for (i = 0; i < nDeals * 2; i++) {
+			String id = "deal-" + (i % nDeals);
+			Creative c = creatives.get(i < nDeals ? i % nCreatives : rand.nextInt(nCreatives));
+			if (c.findDeal(id) == null)
+				c.deals.add(new Deal(id, cents++ / 100.0));
+		}
+
+		List<Campaign> campaigns = new ArrayList<Campaign>();
+		for (i = 0; i < nCreatives; i += 20) {
+			Campaign camp = new Campaign();
+			camp.name = "campaign-" + i;
+			camp.creatives = new ArrayList<Creative>(creatives.subList(i, Math.min(i + 20, nCreatives)));
+			campaigns.add(camp);
+		}
+
+		for (Creative c : creatives) {
+			Map<String, Deal> map = new HashMap<String, Deal>();
+			for (Deal d : c.deals)
+				map.put(d.id, d);
+			legacy.put(c, map);
+		}
+
+		long time = System.nanoTime();
+		DealIndex.getInstance().compile(campaigns);
+		time = System.nanoTime() - time;
+		System.out.printf("Indexed %d deal ids on %d creatives in %d ms%n", DealIndex.getInstance().size(),
+				nCreatives, time / 1000000);
+
+		List<Impression> imps = new ArrayList<Impression>();
+		for (i = 0; i < nImpressions; i++) {
+			Impression imp = new Impression();
+			imp.deals = new ArrayList<Deal>();
+			for (int k = 0; k < perImpression; k++)
+				imp.deals.add(new Deal("deal-" + rand.nextInt(nDeals + nDeals / 10), rand.nextInt(nDeals * 4) / 100.0));
+			imps.add(imp);
+		}
+
+		// Same answers
+		int found = 0;
+		for (Impression imp : imps) {
+			for (Creative c : creatives) {
+				Deal a = linear(c, imp.deals);
+				Deal b = c.deals.findDealHighestList(imp.deals);
+				Deal d = DealIndex.getInstance().findDealHighest(imp, c);
+				if (a != b || a != d)
+					throw new Exception(c.impid + " differs: " + a + ", " + b + ", " + d);
+				if (a != null)
+					found++;
+			}
+		}
+		System.out.println("Same deals on " + (imps.size() * creatives.size()) + " pairs, " + found + " matched");
+
+		for (int round = 0; round < 3; round++) {
+			for (Impression imp : imps)
+				imp.dealJoin = null;
+			long sum = 0;
+
+			time = System.nanoTime();
+			for (Impression imp : imps)
+				for (Creative c : creatives)
+					sum += linear(c, imp.deals) == null ? 0 : 1;
+			long old = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			for (Impression imp : imps)
+				for (Creative c : creatives)
+					sum += c.deals.findDealHighestList(imp.deals) == null ? 0 : 1;
+			long deals = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			for (Impression imp : imps)
+				for (Creative c : creatives)
+					sum += DealIndex.getInstance().findDealHighest(imp, c) == null ? 0 : 1;
+			long index = System.nanoTime() - time;
+
+			double pairs = imps.size() * creatives.size();
+			System.out.printf(
+					"per creative and impression: intersection %.0f ns, Deals %.0f ns, DealIndex %.0f ns (join included), %.1fx, sum %d%n",
+					old / pairs, deals / pairs, index / pairs, (double) old / index, sum);
+		}
+	}
+
+	/**
+	 * The old Deals.findDealHighestList(), a set intersection and lists per call, no ties here.
+	 */
+	static Deal linear(Creative c, List<Deal> deals) {
+		Map<String, Deal> map = legacy.get(c);
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < deals.size(); i++)
+			list.add(deals.get(i).id);
+		Set<String> intersection = new HashSet<String>(list);
+		intersection.retainAll(map.keySet());
+		Deal me = null;
+		for (String key : new ArrayList<String>(intersection)) {
+			Deal test = map.get(key);
+			if (me == null || me.price < test.price)
+				me = test;
+		}
+		if (me == null)
+			return null;
+		for (Deal test : deals) {
+			if (test.id.equals(me.id) && me.price >= test.price)
+				return me;
+		}
+		return null;
+	}
+}
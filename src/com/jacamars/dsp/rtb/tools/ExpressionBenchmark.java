@@ -0,0 +1,91 @@
+package com.jacamars.dsp.rtb.tools;
+
+import com.jacamars.dsp.rtb.common.Expression;
+import com.jacamars.dsp.rtb.common.JJS;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * Timing main for node code. Compiles a few typical expressions with Expression and times them against a
+ * bid request, then, if Nashorn is on the classpath, times the same tests run through JJS the way the nodes
+ * used to, with the bid request bound to br.
+ * <p>
+ * Usage: ExpressionBenchmark [-n evaluations]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class ExpressionBenchmark {
+
+	static final String REQUEST = "{\"id\":\"bench-1\",\"at\":2,\"bcat\":[\"IAB25\",\"IAB26\"],"
+			+ "\"site\":{\"id\":\"s1\",\"domain\":\"example.com\",\"cat\":[\"IAB1\",\"IAB2-3\"]},"
+			+ "\"device\":{\"ua\":\"Mozilla/5.0\",\"ip\":\"10.0.0.1\",\"devicetype\":4,"
+			+ "\"geo\":{\"country\":\"USA\",\"lat\":42.5,\"lon\":-71.25}},\"user\":{\"id\":\"u1\"},"
+			+ "\"imp\":[{\"id\":\"1\",\"bidfloor\":0.75,\"banner\":{\"w\":300,\"h\":250}}]}";
+
+	// The expression, and the same test in JavaScript
+	static final String[][] CASES = {
+			{ "device.geo.country == 'USA'", "br.interrogate('device.geo.country').textValue() == 'USA'" },
+			{ "imp.0.bidfloor < 1 && device.devicetype in [1, 4, 5]",
+					"br.interrogate('imp.0.bidfloor').doubleValue() < 1 && [1, 4, 5].indexOf(br.interrogate('device.devicetype').intValue()) >= 0" },
+			{ "imp.0.banner.w * imp.0.banner.h >= 75000",
+					"br.interrogate('imp.0.banner.w').intValue() * br.interrogate('imp.0.banner.h').intValue() >= 75000" },
+			{ "site.domain in ['example.com', 'example.org', 'example.net'] and not device.geo.lat < 40",
+					"['example.com', 'example.org', 'example.net'].indexOf(br.interrogate('domain')) >= 0 && !(br.interrogate('device.geo.lat').doubleValue() < 40)" } };
+
+	public static void main(String[] args) throws Exception {
+		int n = 1000000;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-n":
+				n = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("-n evaluations");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		BidRequest.compileBuiltIns();
+		BidRequest br = new BidRequest(new StringBuilder(REQUEST));
+		br.setExchange("nexage");
+
+		JJS shell = JJS.isAvailable() ? new JJS() : null;
+		if (shell == null)
+			System.out.println("No Nashorn on this JVM, timing the expressions only");
+
+		for (String[] test : CASES) {
+			long time = System.nanoTime();
+			Expression e = Expression.compile(test[0]);
+			long compile = System.nanoTime() - time;
+
+			int count = 0;
+			for (i = 0; i < n / 10; i++)
+				count += e.test(br) ? 1 : 0;
+			time = System.nanoTime();
+			for (i = 0; i < n; i++)
+				count += e.test(br) ? 1 : 0;
+			time = System.nanoTime() - time;
+			double fast = (double) time / n;
+			System.out.printf("%s%n    expression: %.1f ns per evaluation, compiled in %d us, true %d times%n", test[0],
+					fast, compile / 1000, count);
+
+			if (shell == null)
+				continue;
+			int m = Math.max(1, n / 100);
+			Object answer = null;
+			for (i = 0; i < m / 10; i++)
+				answer = shell.exec(test[1], br);
+			time = System.nanoTime();
+			for (i = 0; i < m; i++)
+				answer = shell.exec(test[1], br);
+			time = System.nanoTime() - time;
+			System.out.printf("    nashorn:    %.1f ns per evaluation, %s, %.0fx slower%n", (double) time / m, answer,
+					((double) time / m) / fast);
+		}
+	}
+}
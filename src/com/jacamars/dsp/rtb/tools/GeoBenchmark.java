@@ -0,0 +1,161 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.jacamars.dsp.rtb.geo.GeoIndex;
+
+/**
+ * Timing main for the geo index. Uses the zip code centroids as store fences and compares the
+ * linear haversine scan Node used for INRANGE against GeoIndex, then brute force nearest against
+ * GeoIndex.nearest().
+ * <p>
+ * Usage: GeoBenchmark [-f data/zip_codes_states.csv] [-r rangeMeters] [-q queries]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class GeoBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String fileName = "data/zip_codes_states.csv";
+		double range = 5000;
+		int queries = 100000;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-f":
+				fileName = args[i + 1];
+				i += 2;
+				break;
+			case "-r":
+				range = Double.parseDouble(args[i + 1]);
+				i += 2;
+				break;
+			case "-q":
+				queries = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("-f zipfile -r rangeMeters -q queries");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		List<double[]> centers = load(fileName);
+		System.out.println("Loaded " + centers.size() + " centroids from " + fileName);
+
+		Random rand = new Random(1);
+		double[][] q = new double[queries][];
+		for (i = 0; i < queries; i++) {
+			double[] c = centers.get(rand.nextInt(centers.size()));
+			q[i] = new double[] { c[0] + (rand.nextDouble() - 0.5) * 0.2, c[1] + (rand.nextDouble() - 0.5) * 0.2 };
+		}
+
+		for (int n : new int[] { 100, 1000, 10000, centers.size() }) {
+			n = Math.min(n, centers.size());
+			double[] lat = new double[n];
+			double[] lon = new double[n];
+			double[] ranges = new double[n];
+			for (i = 0; i < n; i++) {
+				lat[i] = centers.get(i)[0];
+				lon[i] = centers.get(i)[1];
+				ranges[i] = range;
+			}
+
+			long time = System.nanoTime();
+			GeoIndex index = new GeoIndex(lat, lon, ranges);
+			long build = System.nanoTime() - time;
+
+			int linearHits = 0;
+			int linearQueries = Math.min(queries, (int) Math.max(1000, 50_000_000L / n));
+			time = System.nanoTime();
+			for (i = 0; i < linearQueries; i++) {
+				for (int k = 0; k < n; k++) {
+					if (GeoIndex.haversine(lat[k], lon[k], q[i][0], q[i][1]) < ranges[k]) {
+						linearHits++;
+						break;
+					}
+				}
+			}
+			double linear = (double) (System.nanoTime() - time) / linearQueries;
+
+			int indexHits = 0;
+			int check = 0;
+			time = System.nanoTime();
+			for (i = 0; i < queries; i++) {
+				if (index.inRange(q[i][0], q[i][1])) {
+					indexHits++;
+					if (i < linearQueries)
+						check++;
+				}
+			}
+			double indexed = (double) (System.nanoTime() - time) / queries;
+
+			System.out.printf("INRANGE %6d fences: build %.1f ms, linear %.0f ns/query, index %.0f ns/query, %s%n", n,
+					build / 1e6, linear, indexed, check == linearHits ? "same answers" : "ANSWERS DIFFER");
+		}
+
+		double[] lat = new double[centers.size()];
+		double[] lon = new double[centers.size()];
+		for (i = 0; i < lat.length; i++) {
+			lat[i] = centers.get(i)[0];
+			lon[i] = centers.get(i)[1];
+		}
+		GeoIndex index = new GeoIndex(lat, lon, null);
+		int brute = Math.min(queries, 2000);
+		long time = System.nanoTime();
+		int[] answers = new int[brute];
+		for (i = 0; i < brute; i++) {
+			double best = Double.MAX_VALUE;
+			for (int k = 0; k < lat.length; k++) {
+				double d = GeoIndex.haversine(lat[k], lon[k], q[i][0], q[i][1]);
+				if (d < best) {
+					best = d;
+					answers[i] = k;
+				}
+			}
+		}
+		double linear = (double) (System.nanoTime() - time) / brute;
+		int same = 0;
+		time = System.nanoTime();
+		for (i = 0; i < queries; i++) {
+			int k = index.nearest(q[i][0], q[i][1]);
+			if (i < brute && (k == answers[i] || (lat[k] == lat[answers[i]] && lon[k] == lon[answers[i]])))
+				same++;
+		}
+		double indexed = (double) (System.nanoTime() - time) / queries;
+		System.out.printf("NEAREST %6d zips: linear %.0f ns/query, index %.0f ns/query, %d/%d same answers%n",
+				lat.length, linear, indexed, same, brute);
+	}
+
+	/**
+	 * Load the centroids, skipping the header and rows without coordinates.
+	 * @param fileName String. The zip code csv.
+	 * @return List. Each entry is lat, lon.
+	 * @throws Exception on file errors.
+	 */
+	static List<double[]> load(String fileName) throws Exception {
+		List<double[]> list = new ArrayList<double[]>();
+		try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+			br.readLine();
+			for (String line; (line = br.readLine()) != null;) {
+				String[] parts = line.split(",");
+				if (parts.length < 3 || parts[1].length() == 0 || parts[2].length() == 0)
+					continue;
+				try {
+					list.add(new double[] { Double.parseDouble(parts[1]), Double.parseDouble(parts[2]) });
+				} catch (NumberFormatException error) {
+					// skip it
+				}
+			}
+		}
+		return list;
+	}
+}
@@ -0,0 +1,272 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.openrtb.OpenRtb;
+import com.google.openrtb.OpenRtb.BidRequest.App;
+import com.google.openrtb.OpenRtb.BidRequest.Device;
+import com.google.openrtb.OpenRtb.BidRequest.Geo;
+import com.google.openrtb.OpenRtb.BidRequest.Imp;
+import com.google.openrtb.OpenRtb.BidRequest.Imp.Banner;
+import com.google.openrtb.OpenRtb.BidRequest.Imp.Video;
+import com.google.openrtb.OpenRtb.BidRequest.Publisher;
+import com.google.openrtb.OpenRtb.BidRequest.Site;
+import com.google.openrtb.OpenRtb.BidRequest.User;
+import com.jacamars.dsp.rtb.exchanges.google.GoogleBidRequest;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * Timing main for Google OpenRTB protobuf requests. Makes each request the old way, with the whole
+ * JSON tree and the base64 copy of the protobuf built in the constructor, and the new way, reading
+ * the targeting fields straight from the protobuf, and reports the CPU time and the bytes allocated
+ * per request for each. Before timing, it checks that both answer the built in paths and the
+ * campaign paths the same, and that both log the same tree.
+ * <p>
+ * The requests come from files of base64 protobufs, one per line, bare or as the "protobuf" field of
+ * a logged request, and from synthetic requests.
+ * <p>
+ * Usage: GoogleBenchmark [-f file]... [-s synthetic] [-n iterations] [-l]
+ * <p>
+ * -l logs every request, that is it makes the whole tree on both paths, to show what logging costs.
+ *
+ * This is for testing, this is not operational code.
+ */
+public class GoogleBenchmark {
+
+	// Hierarchies a campaign might use, on top of the built in ones
+	static final String[] PATHS = { "device.os", "device.osv", "device.devicetype", "device.connectiontype",
+			"device.carrier", "device.language", "device.js", "device.geo.city", "device.geo.region",
+			"device.geo.zip", "device.geo.type", "device.geo.utcoffset", "device.geo", "user.yob", "user.gender",
+			"user.buyeruid", "user.geo.country", "site.cat", "site.keywords", "site.mobile", "site.publisher.id",
+			"site.publisher.domain", "app.bundle", "app.cat", "app.publisher.name", "app.content.title",
+			"app.content.len", "app.content", "imp.0.banner.format", "imp.0.ext.blid", "badv", "at", "tmax",
+			"regs.ext.gdpr", "device.ua.x" };
+
+	public static void main(String[] args) throws Exception {
+		List<String> files = new ArrayList<String>();
+		int synthetic = 1000;
+		int iterations = 200000;
+		boolean log = false;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-f":
+				files.add(args[i + 1]);
+				i += 2;
+				break;
+			case "-s":
+				synthetic = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-n":
+				iterations = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-l":
+				log = true;
+				i++;
+				break;
+			case "-h":
+				System.out.println("-f file -s synthetic -n iterations -l");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+		if (files.isEmpty()) {
+			files.add("SampleBids/google-pmp.txt");
+			files.add("SampleBids/nositedomain.proto");
+		}
+
+		BidRequest.compileBuiltIns();
+
+		List<byte[]> requests = new ArrayList<byte[]>();
+		for (String file : files)
+			load(file, requests);
+		System.out.println("Loaded " + requests.size() + " requests from " + files);
+		Random rand = new Random(1);
+		for (i = 0; i < synthetic; i++)
+			requests.add(synthesize(rand, i).toByteArray());
+		System.out.println("Made " + synthetic + " synthetic requests");
+
+		check(requests);
+
+		for (int round = 0; round < 2; round++) {
+			double[] old = time(requests, iterations, false, log);
+			double[] now = time(requests, iterations, true, log);
+			System.out.printf(
+					"%s: full tree %.0f ns/request, %.0f bytes/request; protobuf %.0f ns/request, %.0f bytes/request; %.1fx cpu, %.1fx bytes%n",
+					log ? "logged" : "not logged", old[0], old[1], now[0], now[1], old[0] / now[0], old[1] / now[1]);
+		}
+	}
+
+	/**
+	 * Read base64 protobufs, one per line, bare or in a logged request.
+	 */
+	static void load(String file, List<byte[]> requests) throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		String data;
+		while ((data = br.readLine()) != null) {
+			data = data.trim();
+			if (data.length() == 0)
+				continue;
+			String protobuf = data;
+			if (data.startsWith("{")) {
+				Map map = mapper.readValue(data, Map.class);
+				protobuf = (String) map.get("protobuf");
+				if (protobuf == null)
+					continue;
+			}
+			requests.add(Base64.decodeBase64(protobuf));
+		}
+		br.close();
+	}
+
+	/**
+	 * Make a request with a random mix of site or app, device, geo, user and banner or video slots.
+	 */
+	static OpenRtb.BidRequest synthesize(Random rand, int n) {
+		OpenRtb.BidRequest.Builder b = OpenRtb.BidRequest.newBuilder();
+		b.setId("synthetic-" + n);
+		b.setTmax(100);
+		b.addBadv("competitor.com");
+
+		if (rand.nextBoolean()) {
+			Site.Builder s = Site.newBuilder().setId("site" + rand.nextInt(1000)).setName("Site " + n);
+			s.setPage("http://www.site" + rand.nextInt(1000) + ".com/news/" + n);
+			if (rand.nextBoolean())
+				s.setDomain("site" + rand.nextInt(1000) + ".com");
+			s.addCat("IAB" + (1 + rand.nextInt(26))).setMobile(rand.nextBoolean());
+			if (rand.nextBoolean())
+				s.setPublisher(Publisher.newBuilder().setId("pub" + rand.nextInt(100)));
+			b.setSite(s);
+		} else {
+			App.Builder a = App.newBuilder().setId("app" + rand.nextInt(1000)).setName("App " + n);
+			a.setBundle("com.example.app" + rand.nextInt(1000)).addCat("IAB" + (1 + rand.nextInt(26)));
+			if (rand.nextBoolean())
+				a.setPublisher(Publisher.newBuilder().setId("pub" + rand.nextInt(100)).setDomain("pub.com"));
+			b.setApp(a);
+		}
+
+		if (rand.nextInt(10) != 0) {
+			Device.Builder d = Device.newBuilder();
+			d.setUa("Mozilla/5.0 (Linux; Android 9; SM-G960F) AppleWebKit/537.36 " + rand.nextInt(100));
+			d.setIp("10." + rand.nextInt(256) + "." + rand.nextInt(256) + "." + rand.nextInt(256));
+			d.setOs(rand.nextBoolean() ? "android" : "ios").setOsv(Integer.toString(8 + rand.nextInt(5)));
+			if (rand.nextBoolean())
+				d.setCarrier("carrier" + rand.nextInt(10)).setLanguage("en");
+			if (rand.nextBoolean())
+				d.setDidsha1(Long.toHexString(rand.nextLong()));
+			if (rand.nextInt(4) != 0) {
+				Geo.Builder g = Geo.newBuilder().setCountry("USA");
+				g.setLat(25 + rand.nextDouble() * 20).setLon(-120 + rand.nextDouble() * 50);
+				if (rand.nextBoolean())
+					g.setCity("City" + rand.nextInt(100)).setZip(Integer.toString(10000 + rand.nextInt(89999)));
+				d.setGeo(g);
+			}
+			b.setDevice(d);
+		}
+
+		if (rand.nextBoolean()) {
+			User.Builder u = User.newBuilder().setId(Long.toHexString(rand.nextLong()));
+			if (rand.nextBoolean())
+				u.setYob(1950 + rand.nextInt(50)).setGender(rand.nextBoolean() ? "M" : "F");
+			b.setUser(u);
+		}
+
+		int slots = 1 + rand.nextInt(2);
+		for (int i = 0; i < slots; i++) {
+			Imp.Builder imp = Imp.newBuilder().setId(Integer.toString(i + 1));
+			if (rand.nextInt(4) != 0)
+				imp.setBanner(Banner.newBuilder().setW(300).setH(rand.nextBoolean() ? 250 : 50));
+			else
+				imp.setVideo(Video.newBuilder().setW(640).setH(480).setMinduration(5).setMaxduration(30));
+			imp.setBidfloor(rand.nextInt(100) / 100.0);
+			b.addImp(imp);
+		}
+		return b.build();
+	}
+
+	static GoogleBidRequest make(byte[] bytes, boolean lazy) throws Exception {
+		GoogleBidRequest.lazy = lazy;
+		return new GoogleBidRequest(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Compare the two paths, die if they differ.
+	 */
+	static void check(List<byte[]> requests) throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		List<String> paths = new ArrayList<String>();
+		for (String path : new String[] { "site.id", "site.domain", "site.name", "site.page", "app.id",
+				"app.domain", "app.name", "app.content.url", "device.geo.lat", "device.geo.lon", "device.ua",
+				"device.geo.country", "user.id", "device.ip", "device.ifa", "device.didsha1", "device.didmd5" })
+			paths.add(path);
+		for (String path : PATHS)
+			paths.add(path);
+
+		for (byte[] bytes : requests) {
+			GoogleBidRequest old = make(bytes, false);
+			GoogleBidRequest now = make(bytes, true);
+			if (!same(old.siteDomain, now.siteDomain) || !same(old.siteId, now.siteId)
+					|| !same(old.siteName, now.siteName) || !same(old.pageurl, now.pageurl)
+					|| old.isSite() != now.isSite() || !same(old.lat, now.lat) || !same(old.lon, now.lon)
+					|| !same(old.database.get("synthkey"), now.database.get("synthkey")))
+				throw new Exception("Request " + old.id + " differs in setup");
+			for (String path : paths) {
+				if (!same(old.interrogate(path), now.interrogate(path)))
+					throw new Exception("Request " + old.id + " differs at " + path + ": "
+							+ old.interrogate(path) + " vs " + now.interrogate(path));
+			}
+			if (!mapper.readTree(old.toString()).equals(mapper.readTree(now.toString())))
+				throw new Exception("Request " + old.id + " logs differently");
+		}
+		System.out.println("Same results on " + requests.size() + " requests and " + paths.size() + " paths");
+	}
+
+	static boolean same(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Make the requests on this thread.
+	 * @return double[]. CPU nanoseconds and bytes allocated per request.
+	 */
+	static double[] time(List<byte[]> requests, int iterations, boolean lazy, boolean log) throws Exception {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		run(requests, Math.min(iterations, 50000), lazy, log);
+		long cpu = bean.getCurrentThreadCpuTime();
+		long bytes = bean.getCurrentThreadAllocatedBytes();
+		long sum = run(requests, iterations, lazy, log);
+		cpu = bean.getCurrentThreadCpuTime() - cpu;
+		bytes = bean.getCurrentThreadAllocatedBytes() - bytes;
+		if (sum == 42)
+			System.out.print("");
+		return new double[] { (double) cpu / iterations, (double) bytes / iterations };
+	}
+
+	static long run(List<byte[]> requests, int iterations, boolean lazy, boolean log) throws Exception {
+		long sum = 0;
+		for (int i = 0; i < iterations; i++) {
+			GoogleBidRequest br = make(requests.get(i % requests.size()), lazy);
+			sum += br.getImpressions();
+			if (log)
+				sum += br.getOriginal().size();
+		}
+		return sum;
+	}
+}
@@ -1,17 +1,40 @@
 package com.jacamars.dsp.rtb.tools;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 
 /**
  * Object that defines all the IAB categories (and their sub-categories)
+ * <p>
+ * Category codes are also interned into dense integer ids, so a set of categories can be a long[] bitset
+ * and two sets intersect with a few ANDs. The IAB v1 codes get their ids up front; anything else a campaign
+ * names, IAB v2 ids or codes not in the table, gets one when the campaign is compiled. Codes in a request
+ * that no campaign names have no id, and can't match anything anyway.
+ * <p>
+ * Matching is exact, the same as the string sets were. A campaign code of the form "IAB1-*" stands for
+ * IAB1 and all of its subcategories, worked out when the campaign is compiled.
  * @author Ben M, Faul
  *
  */
 public class IABCategories {
 	public static final Map<String,String> map = new HashMap<String,String>();
+
+	/** The request fields that hold categories */
+	public static final String[] PATHS = { "bcat", "site.cat", "site.pagecat", "site.sectioncat", "site.content.cat",
+			"app.cat", "app.pagecat", "app.sectioncat", "app.content.cat" };
+
+	/** Category code to its id */
+	static final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
 	static {
 		map.put("IAB1", "Arts & Entertainment");
 		map.put("IAB1-1", "Books & Literature");
@@ -405,7 +428,12 @@ public class IABCategories {
 		map.put("IAB26-2", "Warez");
 		map.put("IAB26-3", "Spyware/Malware");
 		map.put("IAB26-4", "CopyrightInfringement");
-		}
+
+		List<String> codes = new ArrayList<String>(map.keySet());
+		Collections.sort(codes);
+		for (String code : codes)
+			intern(code);
+	}
 	
 	public static String getIAB(String key) {
 		String str = map.get(key);
@@ -425,4 +453,107 @@ public class IABCategories {
 	public static String get(String key) {
 		return map.get(key);
 	}
+
+	/**
+	 * Is this request field a list of categories?
+	 * @param path String. The dotted field name.
+	 * @return boolean. True if it is one of PATHS.
+	 */
+	public static boolean isPath(String path) {
+		for (String p : PATHS) {
+			if (p.equals(path))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the id of a category code, giving it one if it has none.
+	 * @param code String. The category code.
+	 * @return int. The id.
+	 */
+	public static synchronized int intern(String code) {
+		Integer id = ids.get(code);
+		if (id == null) {
+			id = ids.size();
+			ids.put(code, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Return the id of a category code.
+	 * @param code String. The category code.
+	 * @return int. The id, or -1 if no campaign uses the code.
+	 */
+	public static int id(String code) {
+		Integer id = ids.get(code);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Make the bitset of a campaign's categories, interning them, and expanding "IAB1-*" to IAB1 and its
+	 * subcategories.
+	 * @param codes List. The category codes.
+	 * @return long[]. The bitset.
+	 */
+	public static long[] bits(List<String> codes) {
+		List<Integer> set = new ArrayList<Integer>();
+		for (String code : codes) {
+			if (code.endsWith("-*")) {
+				String parent = code.substring(0, code.length() - 2);
+				set.add(intern(parent));
+				for (Map.Entry<String, Integer> e : ids.entrySet()) {
+					String key = e.getKey();
+					if (key.startsWith(parent) && key.length() > parent.length() + 1
+							&& key.charAt(parent.length()) == '-')
+						set.add(e.getValue());
+				}
+			} else
+				set.add(intern(code));
+		}
+		int max = 0;
+		for (int id : set)
+			max = Math.max(max, id);
+		long[] bits = new long[(max >>> 6) + 1];
+		for (int id : set)
+			bits[id >>> 6] |= 1L << id;
+		return bits;
+	}
+
+	/**
+	 * Make the bitset of a request's categories.
+	 * @param node ArrayNode. The categories from the request.
+	 * @return long[]. The bitset, or null if the array holds anything but strings.
+	 */
+	public static long[] bits(ArrayNode node) {
+		long[] bits = new long[((ids.size() - 1) >>> 6) + 1];
+		for (int i = 0; i < node.size(); i++) {
+			JsonNode n = node.get(i);
+			if (!n.isTextual())
+				return null;
+			int id = id(n.textValue());
+			if (id < 0)
+				continue;
+			if ((id >>> 6) >= bits.length)
+				bits = Arrays.copyOf(bits, (id >>> 6) + 1);
+			bits[id >>> 6] |= 1L << id;
+		}
+		return bits;
+	}
+
+	/**
+	 * Do two category bitsets have a category in common?
+	 * @param a long[]. One bitset.
+	 * @param b long[]. The other.
+	 * @return boolean. True if they intersect.
+	 */
+	public static boolean intersects(long[] a, long[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			if ((a[i] & b[i]) != 0)
+				return true;
+		}
+		return false;
+	}
 }
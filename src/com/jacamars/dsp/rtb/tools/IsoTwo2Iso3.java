@@ -41,7 +41,7 @@ public class IsoTwo2Iso3 extends LookingGlass {
 			InternalIso x = new InternalIso(parts);
 			iso.put(x.iso2, x.iso3);
 		}
-		symbols.put(name, this);
+		register(name);
 		br.close();
 	}
 	
@@ -58,7 +58,7 @@ public class IsoTwo2Iso3 extends LookingGlass {
 			InternalIso x = new InternalIso(parts);
 			iso.put(x.iso2, x.iso3);
 		}
-		symbols.put(name, this);
+		register(name);
 		br.close();
 	}
 	
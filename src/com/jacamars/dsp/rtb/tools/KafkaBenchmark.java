@@ -0,0 +1,175 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.jacamars.dsp.rtb.commands.PixelClickConvertLog;
+import com.jacamars.dsp.rtb.jmq.EventIF;
+import com.jacamars.dsp.rtb.jmq.Subscriber;
+import com.jacamars.dsp.rtb.jmq.ZPublisher;
+import com.jacamars.dsp.rtb.pojo.BidResponse;
+import com.jacamars.dsp.rtb.pojo.WinObject;
+
+/**
+ * Throughput main for the kafka publishers and subscribers. Publishes bids, wins and clicks, each keyed on the
+ * bid id the way the Controller keys them, and reports messages per second and the sent, acknowledged, failed
+ * and dropped counts per channel. Then reads a topic back through a Subscriber with the given number of
+ * workers.
+ * <p>
+ * With -a the messages go to that broker, with batching, linger and compression from the kafka defaults.
+ * Without it a MockProducer and a MockConsumer stand in for the broker, which measures the bidder's side only.
+ * <p>
+ * Usage: KafkaBenchmark [-a localhost:9092] [-n messagesPerChannel] [-p partitions] [-w workers]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class KafkaBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String broker = null;
+		int n = 100000;
+		int partitions = 8;
+		int workers = 4;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-a":
+				broker = args[i + 1];
+				i += 2;
+				break;
+			case "-n":
+				n = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-p":
+				partitions = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-w":
+				workers = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("-a broker -n messagesPerChannel -p partitions -w workers");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		System.out.println("Publishing " + n + " messages per channel to " + (broker == null ? "a stand in" : broker));
+		System.out.println("channel      msgs/s       sent      acked     failed    dropped");
+		publish("bids", "oidStr", broker, n, id -> {
+			BidResponse r = new BidResponse();
+			r.oidStr = id;
+			r.adid = "1";
+			r.crid = "1";
+			r.cost = 1.0;
+			r.timestamp = System.currentTimeMillis();
+			return r;
+		});
+		publish("wins", "hash", broker, n,
+				id -> new WinObject(id, "1.0", "0", "0", "1", "1", "pub", "", "", "1.0", "", "banner", "example.com", ""));
+		publish("clicks", "bid_id", broker, n, id -> {
+			PixelClickConvertLog c = new PixelClickConvertLog();
+			c.bid_id = id;
+			c.ad_id = "1";
+			c.creative_id = "1";
+			c.type = PixelClickConvertLog.CLICK;
+			c.timestamp = System.currentTimeMillis();
+			return c;
+		});
+
+		if (broker == null)
+			consume(n, partitions, workers);
+	}
+
+	interface Make {
+		Object make(String id);
+	}
+
+	static void publish(String channel, String key, String broker, int n, Make make) throws Exception {
+		ZPublisher z;
+		if (broker == null)
+			z = new ZPublisher(new MockProducer<String, String>(true, new StringSerializer(), new StringSerializer()),
+					channel);
+		else
+			z = new ZPublisher((HazelcastInstance) null, "kafka://[" + broker + "]&topic=" + channel);
+		z.setKey(key);
+
+		long time = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			z.add(make.make("bid-" + i));
+		while (z.getSent() < n)
+			Thread.sleep(1);
+		z.flush();
+		time = System.nanoTime() - time;
+		z.close();
+
+		System.out.printf("%-8s %10.0f %10d %10d %10d %10d%n", channel, n / (time / 1e9), z.getSent(), z.getAcked(),
+				z.getFailed(), z.getDropped());
+	}
+
+	static void consume(int n, int partitions, int workers) throws Exception {
+		MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+		List<TopicPartition> tps = new ArrayList<TopicPartition>();
+		Map<TopicPartition, Long> beginning = new HashMap<TopicPartition, Long>();
+		for (int p = 0; p < partitions; p++) {
+			TopicPartition tp = new TopicPartition("clicks", p);
+			tps.add(tp);
+			beginning.put(tp, 0L);
+		}
+		consumer.assign(tps);
+		consumer.updateBeginningOffsets(beginning);
+		String msg = "{\"bid_id\":\"bid\",\"ad_id\":\"1\",\"creative_id\":\"1\",\"type\":1}";
+		for (int i = 0; i < n; i++)
+			consumer.addRecord(new ConsumerRecord<String, String>("clicks", i % partitions, i / partitions, "bid-" + i, msg));
+
+		AtomicLong handled = new AtomicLong();
+		EventIF handler = new EventIF() {
+			@Override
+			public void handleMessage(String id, String m) {
+				handled.incrementAndGet();
+			}
+
+			@Override
+			public void handleMessages(String id, List<String> msgs) {
+				handled.addAndGet(msgs.size());
+			}
+
+			@Override
+			public void shutdown() {
+
+			}
+		};
+
+		long time = System.nanoTime();
+		Subscriber s = new Subscriber(handler, consumer, "clicks", workers);
+		while (handled.get() < n)
+			Thread.sleep(1);
+		time = System.nanoTime() - time;
+		Thread.sleep(100);
+		long committed = 0;
+		for (TopicPartition tp : tps) {
+			if (consumer.committed(tp) != null)
+				committed += consumer.committed(tp).offset();
+		}
+		s.shutdown();
+
+		System.out.printf("Consumed %d messages from %d partitions with %d workers at %.0f msgs/s, %d committed%n", n,
+				partitions, workers, n / (time / 1e9), committed);
+	}
+}
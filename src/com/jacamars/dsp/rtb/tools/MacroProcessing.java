@@ -279,6 +279,26 @@ public class MacroProcessing {
 		macroList.add(mac);
 	}
 
+	/**
+	 * The width of the ad: the size picked for the impression, else the creative's own.
+	 * @param creat Creative. The creative bid.
+	 * @param imp Impression. The impression bid on, may be null.
+	 * @return String. The width.
+	 */
+	static String adW(Creative creat, Impression imp) {
+		return imp != null && imp.strW != null ? imp.strW : creat.strW;
+	}
+
+	/**
+	 * The height of the ad: the size picked for the impression, else the creative's own.
+	 * @param creat Creative. The creative bid.
+	 * @param imp Impression. The impression bid on, may be null.
+	 * @return String. The height.
+	 */
+	static String adH(Creative creat, Impression imp) {
+		return imp != null && imp.strH != null ? imp.strH : creat.strH;
+	}
+
 	/**
 	 * Macro substitutions.
 	 * 
@@ -399,7 +419,7 @@ public class MacroProcessing {
 			case "{creative_ad_width}":
 			case "{creative_ad_width_enc}":
 			case "%7Bcreative_ad_width%7D":
-				value = encodeIfRequested(item, creat.strW);
+				value = encodeIfRequested(item, adW(creat, imp));
 				replaceAll(sb, item, value);
 				break;
 
@@ -427,7 +447,7 @@ public class MacroProcessing {
 			case "{creative_ad_height}":
 			case "{creative_ad_height_enc}":
 			case "%7Bcreative_ad_height%7D":
-				value = encodeIfRequested(item, creat.strH);
+				value = encodeIfRequested(item, adH(creat, imp));
 				replaceAll(sb, item, value);
 				break;
 
@@ -674,7 +694,7 @@ public class MacroProcessing {
 			case "{adsize}":
 			case "{adsize_enc}":
 			case "%7Badsize%7D":
-				value = creat.strW + "x" + creat.strH;
+				value = adW(creat, imp) + "x" + adH(creat, imp);
 				value = encodeIfRequested(item, value);
 				replaceAll(sb, item, value);
 				break;
@@ -0,0 +1,673 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Open loop load generator for a RTB4FREE bidder. Unlike MaxLoad and SendBids, which wait for each response
+ * before sending the next request, requests go out on a fixed schedule, the way an exchange sends them, whether
+ * or not the bidder is keeping up. Latency is measured from when a request was supposed to go out, not from
+ * when it did, so a stall in the bidder (or in this program) is charged to every request it delayed. That is
+ * the coordinated omission correction; the uncorrected latency is reported alongside for comparison.
+ * <p>
+ * Requests are a weighted mix of exchanges and sample bids. Each sample is turned into variants with random
+ * device IPs, user ids and bid floors, and every request gets a fresh id. The rate follows a profile: constant,
+ * a linear ramp, or steps. Each second it prints the bid, no-bid, timeout and error rates with the latency
+ * percentiles, and at the end a line per step and the rate where the bidder saturated.
+ * <p>
+ * Usage: OpenLoad [-host h] [-port n] [-mix exchange=file[:weight],...] [-rate qps -duration s | -ramp from,to,s
+ * | -step from,to,by,s] [-timeout ms] [-sla ms] [-max n] [-hist file]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class OpenLoad {
+
+	static final ObjectMapper mapper = new ObjectMapper();
+
+	/** Stands in for the request id in a variant, until the request is sent */
+	static final String MARK = "@@OPENLOAD-ID@@";
+
+	/** Variants made of each sample */
+	public static int VARIANTS = 256;
+
+	/** Requests sent to each endpoint, and not measured, before the run */
+	public static int WARM = 50;
+
+	/** Latencies are recorded in microseconds, up to a minute */
+	static final long HIGHEST = TimeUnit.MINUTES.toMicros(1);
+
+	final List<Template> mix;
+	final int totalWeight;
+	final Profile profile;
+	final long timeout;
+	final int max;
+
+	final HttpClient client;
+	final ExecutorService executor;
+	final AtomicInteger outstanding = new AtomicInteger();
+
+	final Recorder corrected = new Recorder(HIGHEST, 3);
+	final Recorder raw = new Recorder(HIGHEST, 3);
+	final Histogram totalCorrected = new Histogram(HIGHEST, 3);
+	final Histogram totalRaw = new Histogram(HIGHEST, 3);
+	final Counts interval = new Counts();
+	final Step[] steps;
+
+	public static void main(String[] args) throws Exception {
+		String host = "localhost";
+		String port = "8080";
+		String mixSpec = "nexage=SampleBids/nexage.txt";
+		Profile profile = null;
+		long timeout = 250;
+		long sla = -1;
+		int max = 20000;
+		String hist = null;
+		double rate = 1000;
+		double duration = 30;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-h":
+				System.out.println("-host host-or-ip              [Where to send the bids, default is localhost   ]");
+				System.out.println("-port n                       [Port number, default is 8080                   ]");
+				System.out.println("-mix ex=file[:weight],...     [Exchanges and samples, default nexage          ]");
+				System.out.println("-rate qps -duration s         [Constant rate, default 1000 for 30 seconds     ]");
+				System.out.println("-ramp from,to,s               [Linear ramp from one rate to another           ]");
+				System.out.println("-step from,to,by,s            [Steps from one rate to another, s at each      ]");
+				System.out.println("-timeout ms                   [Request timeout, default 250                   ]");
+				System.out.println("-sla ms                       [p99 a step must meet, default is the timeout   ]");
+				System.out.println("-max n                        [Most requests in flight, default 20000         ]");
+				System.out.println("-hist file                    [Write the corrected latency distribution       ]");
+				System.exit(0);
+			case "-host":
+				host = args[i + 1];
+				i += 2;
+				break;
+			case "-port":
+				port = args[i + 1];
+				i += 2;
+				break;
+			case "-mix":
+				mixSpec = args[i + 1];
+				i += 2;
+				break;
+			case "-rate":
+				rate = Double.parseDouble(args[i + 1]);
+				i += 2;
+				break;
+			case "-duration":
+				duration = Double.parseDouble(args[i + 1]);
+				i += 2;
+				break;
+			case "-ramp":
+				profile = Profile.parse("ramp", args[i + 1]);
+				i += 2;
+				break;
+			case "-step":
+				profile = Profile.parse("step", args[i + 1]);
+				i += 2;
+				break;
+			case "-timeout":
+				timeout = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-sla":
+				sla = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-max":
+				max = Integer.parseInt(args[i + 1]);
+				i += 2;
+				break;
+			case "-hist":
+				hist = args[i + 1];
+				i += 2;
+				break;
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+		if (sla < 0)
+			sla = timeout;
+		// A ramp or steps carry their own length, -rate and -duration are the constant profile
+		if (profile == null)
+			profile = Profile.constant(rate, duration);
+
+		List<Template> mix = Template.parse("http://" + host + ":" + port + "/rtb/bids/", mixSpec);
+		OpenLoad load = new OpenLoad(mix, profile, timeout, max);
+		Step[] steps = load.run(System.out);
+		load.summary(System.out, steps, sla);
+		if (hist != null) {
+			try (PrintStream out = new PrintStream(hist)) {
+				load.totalCorrected.outputPercentileDistribution(out, 1000.0);
+			}
+			System.out.println("Corrected latency distribution (ms) written to " + hist);
+		}
+		load.close();
+	}
+
+	/**
+	 * A load generator.
+	 * @param mix List. The exchanges and samples to send.
+	 * @param profile Profile. The rate over time.
+	 * @param timeout long. Milliseconds to wait for a response before it counts as a timeout.
+	 * @param max int. The most requests in flight, past that requests are shed and counted as timeouts.
+	 */
+	public OpenLoad(List<Template> mix, Profile profile, long timeout, int max) {
+		this.mix = mix;
+		int w = 0;
+		for (Template t : mix)
+			w += t.weight;
+		this.totalWeight = w;
+		this.profile = profile;
+		this.timeout = timeout;
+		this.max = max;
+		steps = new Step[profile.steps()];
+		for (int i = 0; i < steps.length; i++)
+			steps[i] = new Step(profile.target(i));
+
+		executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), r -> {
+			Thread t = new Thread(r, "openload");
+			t.setDaemon(true);
+			return t;
+		});
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor)
+				.connectTimeout(Duration.ofSeconds(5)).build();
+	}
+
+	/**
+	 * Send requests for the length of the profile, printing a line a second, then wait for the stragglers.
+	 * @param out PrintStream. Where the lines go, or null.
+	 * @return Step[]. The results of each step of the profile.
+	 * @throws Exception if interrupted.
+	 */
+	public Step[] run(PrintStream out) throws Exception {
+		warm();
+		if (out != null)
+			out.printf("%6s %8s %8s %8s %8s %8s %8s %8s %9s %9s %9s %9s %9s%n", "sec", "target", "sent", "bid",
+					"nobid", "timeout", "error", "inflight", "p50", "p99", "p99.9", "max", "p99-raw");
+
+		long start = System.nanoTime();
+		Thread reporter = new Thread(() -> {
+			long next = start;
+			int sec = 0;
+			while (!Thread.currentThread().isInterrupted()) {
+				next += TimeUnit.SECONDS.toNanos(1);
+				long wait = next - System.nanoTime();
+				if (wait > 0)
+					LockSupport.parkNanos(wait);
+				if (Thread.currentThread().isInterrupted())
+					break;
+				report(out, ++sec);
+			}
+		}, "openload-report");
+		reporter.setDaemon(true);
+		reporter.start();
+
+		double duration = profile.duration();
+		double t = 0;
+		long seq = 0;
+		while (t < duration) {
+			double rate = profile.rate(t);
+			if (rate <= 0) {
+				t += 0.001;
+				continue;
+			}
+			long intended = start + (long) (t * 1e9);
+			long wait = intended - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			fire(intended, pick(), steps[profile.step(t)], seq);
+			seq++;
+			t += 1.0 / rate;
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout + 1000);
+		while (outstanding.get() > 0 && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		reporter.interrupt();
+		reporter.join();
+		report(out, -1);
+		return steps;
+	}
+
+	/**
+	 * Print the results of each step, and where the bidder saturated: the first step that missed its rate,
+	 * timed out more than 1% of its requests, or had a p99 over the SLA.
+	 * @param out PrintStream. Where the lines go.
+	 * @param steps Step[]. The results from run().
+	 * @param sla long. The p99 in milliseconds a step must meet.
+	 */
+	public void summary(PrintStream out, Step[] steps, long sla) {
+		double secs = profile.duration() / steps.length;
+		out.printf("%n%8s %8s %7s %7s %7s %9s %9s %9s%n", "target", "done/s", "bid%", "tmo%", "err%", "p50", "p99",
+				"p99.9");
+		Step saturated = null;
+		Step last = null;
+		for (Step s : steps) {
+			long sent = s.counts.sent.sum();
+			if (sent == 0)
+				continue;
+			long done = s.counts.bid.sum() + s.counts.nobid.sum();
+			double p99 = s.latency.getValueAtPercentile(99) / 1000.0;
+			out.printf("%8.0f %8.0f %7.2f %7.2f %7.2f %9.2f %9.2f %9.2f%n", s.target, done / secs,
+					100.0 * s.counts.bid.sum() / sent, 100.0 * s.counts.timeout.sum() / sent,
+					100.0 * s.counts.error.sum() / sent, s.latency.getValueAtPercentile(50) / 1000.0, p99,
+					s.latency.getValueAtPercentile(99.9) / 1000.0);
+			if (saturated == null && (sent < s.target * secs * 0.95 || s.counts.timeout.sum() > sent / 100
+					|| p99 > sla))
+				saturated = s;
+			if (saturated == null)
+				last = s;
+		}
+		if (saturated == null)
+			out.printf("No saturation up to %.0f QPS%n", last == null ? 0 : last.target);
+		else
+			out.printf("Saturated at %.0f QPS, last good step %.0f QPS%n", saturated.target,
+					last == null ? 0 : last.target);
+		out.printf("Overall: p50 %.2f p99 %.2f p99.9 %.2f max %.2f ms, uncorrected p99 %.2f max %.2f ms%n",
+				totalCorrected.getValueAtPercentile(50) / 1000.0, totalCorrected.getValueAtPercentile(99) / 1000.0,
+				totalCorrected.getValueAtPercentile(99.9) / 1000.0, totalCorrected.getMaxValue() / 1000.0,
+				totalRaw.getValueAtPercentile(99) / 1000.0, totalRaw.getMaxValue() / 1000.0);
+	}
+
+	/**
+	 * Return the corrected latencies of the whole run, in microseconds.
+	 * @return Histogram. The latencies.
+	 */
+	public Histogram getCorrected() {
+		return totalCorrected;
+	}
+
+	/**
+	 * Return the latencies of the whole run measured from when each request was actually sent, in microseconds.
+	 * @return Histogram. The latencies.
+	 */
+	public Histogram getRaw() {
+		return totalRaw;
+	}
+
+	/**
+	 * Stop the HTTP client's threads.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Open connections and warm up the client, and the bidder, before anything is measured.
+	 */
+	void warm() {
+		for (Template t : mix) {
+			for (int i = 0; i < WARM; i++) {
+				try {
+					HttpRequest req = HttpRequest.newBuilder(t.uri).timeout(Duration.ofSeconds(5))
+							.header("Content-Type", "application/json").header("x-openrtb-version", "2.5")
+							.POST(HttpRequest.BodyPublishers.ofString(t.body(i))).build();
+					client.send(req, HttpResponse.BodyHandlers.discarding());
+				} catch (Exception error) {
+					// Shows up soon enough in the measured requests
+				}
+			}
+		}
+	}
+
+	Template pick() {
+		if (mix.size() == 1)
+			return mix.get(0);
+		int w = ThreadLocalRandom.current().nextInt(totalWeight);
+		for (Template t : mix) {
+			w -= t.weight;
+			if (w < 0)
+				return t;
+		}
+		return mix.get(mix.size() - 1);
+	}
+
+	void fire(long intended, Template t, Step step, long seq) {
+		interval.sent.increment();
+		step.counts.sent.increment();
+		if (outstanding.incrementAndGet() > max) {
+			outstanding.decrementAndGet();
+			// Never sent, it would have waited at least the timeout
+			long us = TimeUnit.MILLISECONDS.toMicros(timeout);
+			corrected.recordValue(us);
+			step.latency.recordValue(us);
+			interval.timeout.increment();
+			step.counts.timeout.increment();
+			return;
+		}
+
+		long sent = System.nanoTime();
+		HttpRequest req = HttpRequest.newBuilder(t.uri).timeout(Duration.ofMillis(timeout))
+				.header("Content-Type", "application/json").header("x-openrtb-version", "2.5")
+				.POST(HttpRequest.BodyPublishers.ofString(t.body(seq))).build();
+		client.sendAsync(req, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((r, e) -> {
+			long now = System.nanoTime();
+			outstanding.decrementAndGet();
+			long us = Math.min(HIGHEST, (now - intended) / 1000);
+			corrected.recordValue(us);
+			step.latency.recordValue(us);
+			raw.recordValue(Math.min(HIGHEST, (now - sent) / 1000));
+
+			if (e != null) {
+				Throwable cause = e.getCause() == null ? e : e.getCause();
+				if (e instanceof HttpTimeoutException || cause instanceof HttpTimeoutException) {
+					interval.timeout.increment();
+					step.counts.timeout.increment();
+				} else {
+					interval.error.increment();
+					step.counts.error.increment();
+				}
+			} else if (r.statusCode() == 200 && r.body().length > 0) {
+				interval.bid.increment();
+				step.counts.bid.increment();
+			} else if (r.statusCode() == 200 || r.statusCode() == 204) {
+				interval.nobid.increment();
+				step.counts.nobid.increment();
+			} else {
+				interval.error.increment();
+				step.counts.error.increment();
+			}
+		});
+	}
+
+	synchronized void report(PrintStream out, int sec) {
+		Histogram c = corrected.getIntervalHistogram();
+		Histogram r = raw.getIntervalHistogram();
+		totalCorrected.add(c);
+		totalRaw.add(r);
+		long sent = interval.sent.sumThenReset();
+		long bid = interval.bid.sumThenReset();
+		long nobid = interval.nobid.sumThenReset();
+		long tmo = interval.timeout.sumThenReset();
+		long err = interval.error.sumThenReset();
+		if (out == null || sec < 0)
+			return;
+		double t = Math.min(sec - 0.5, profile.duration());
+		out.printf("%6d %8.0f %8d %8d %8d %8d %8d %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", sec, profile.rate(t), sent, bid,
+				nobid, tmo, err, outstanding.get(), c.getValueAtPercentile(50) / 1000.0,
+				c.getValueAtPercentile(99) / 1000.0, c.getValueAtPercentile(99.9) / 1000.0, c.getMaxValue() / 1000.0,
+				r.getValueAtPercentile(99) / 1000.0);
+	}
+
+	/**
+	 * Counts of outcomes.
+	 */
+	public static class Counts {
+		public final LongAdder sent = new LongAdder();
+		public final LongAdder bid = new LongAdder();
+		public final LongAdder nobid = new LongAdder();
+		public final LongAdder timeout = new LongAdder();
+		public final LongAdder error = new LongAdder();
+	}
+
+	/**
+	 * The results of one step of the profile.
+	 */
+	public static class Step {
+		/** The rate the step was to send at */
+		public final double target;
+		public final Counts counts = new Counts();
+		/** Corrected latencies, in microseconds */
+		public final Histogram latency = new ConcurrentHistogram(HIGHEST, 3);
+
+		Step(double target) {
+			this.target = target;
+		}
+	}
+
+	/**
+	 * The rate over time: constant, a linear ramp, or steps. A ramp is reported a step per second.
+	 */
+	public static class Profile {
+		final double from;
+		final double to;
+		final double by;
+		final double seconds;
+		final boolean stepped;
+
+		Profile(double from, double to, double by, double seconds, boolean stepped) {
+			this.from = from;
+			this.to = to;
+			this.by = by;
+			this.seconds = seconds;
+			this.stepped = stepped;
+		}
+
+		/**
+		 * A constant rate.
+		 * @param rate double. Requests per second.
+		 * @param seconds double. How long.
+		 * @return Profile. The profile.
+		 */
+		public static Profile constant(double rate, double seconds) {
+			return new Profile(rate, rate, 0, seconds, true);
+		}
+
+		/**
+		 * A linear ramp.
+		 * @param from double. The starting rate.
+		 * @param to double. The ending rate.
+		 * @param seconds double. How long.
+		 * @return Profile. The profile.
+		 */
+		public static Profile ramp(double from, double to, double seconds) {
+			return new Profile(from, to, 0, seconds, false);
+		}
+
+		/**
+		 * Steps, from one rate to another.
+		 * @param from double. The first step's rate.
+		 * @param to double. The last step's rate.
+		 * @param by double. The increase each step.
+		 * @param seconds double. How long each step lasts.
+		 * @return Profile. The profile.
+		 */
+		public static Profile step(double from, double to, double by, double seconds) {
+			return new Profile(from, to, by, seconds, true);
+		}
+
+		static Profile parse(String kind, String spec) {
+			String[] t = spec.split(",");
+			if (kind.equals("ramp") && t.length == 3)
+				return ramp(Double.parseDouble(t[0]), Double.parseDouble(t[1]), Double.parseDouble(t[2]));
+			if (kind.equals("step") && t.length == 4)
+				return step(Double.parseDouble(t[0]), Double.parseDouble(t[1]), Double.parseDouble(t[2]),
+						Double.parseDouble(t[3]));
+			throw new IllegalArgumentException("Bad -" + kind + ": " + spec);
+		}
+
+		/**
+		 * Return the number of steps.
+		 * @return int. The steps.
+		 */
+		public int steps() {
+			if (!stepped)
+				return (int) Math.ceil(seconds);
+			if (by <= 0)
+				return 1;
+			return (int) Math.floor((to - from) / by + 1e-9) + 1;
+		}
+
+		/**
+		 * Return the total length of the profile.
+		 * @return double. Seconds.
+		 */
+		public double duration() {
+			return stepped ? seconds * steps() : seconds;
+		}
+
+		/**
+		 * Return the step a time falls in.
+		 * @param t double. Seconds from the start.
+		 * @return int. The step.
+		 */
+		public int step(double t) {
+			double len = stepped ? seconds : 1;
+			return Math.min(steps() - 1, (int) (t / len));
+		}
+
+		/**
+		 * Return the rate at a time.
+		 * @param t double. Seconds from the start.
+		 * @return double. Requests per second.
+		 */
+		public double rate(double t) {
+			if (stepped)
+				return from + by * step(t);
+			return from + (to - from) * Math.min(1, t / seconds);
+		}
+
+		/**
+		 * Return the rate of a step, for a ramp the rate halfway through its second.
+		 * @param step int. The step.
+		 * @return double. Requests per second.
+		 */
+		public double target(int step) {
+			if (stepped)
+				return from + by * step;
+			return rate(step + 0.5);
+		}
+	}
+
+	/**
+	 * A sample bid request for an exchange, and random variants of it.
+	 */
+	public static class Template {
+		public final String exchange;
+		public final URI uri;
+		public final int weight;
+		final String[] prefix;
+		final String[] suffix;
+
+		/**
+		 * Read a sample and make its variants. If it isn't JSON it is sent as is.
+		 * @param base String. The bidder's URL, up to the exchange name.
+		 * @param exchange String. The exchange.
+		 * @param fileName String. The sample bid.
+		 * @param weight int. Its share of the mix.
+		 * @throws Exception on file errors.
+		 */
+		public Template(String base, String exchange, String fileName, int weight) throws Exception {
+			this.exchange = exchange;
+			this.uri = URI.create(base + exchange);
+			this.weight = weight;
+			String content = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+
+			JsonNode root = null;
+			try {
+				root = mapper.readTree(content);
+			} catch (Exception error) {
+				// Not JSON, no variants
+			}
+			if (!(root instanceof ObjectNode)) {
+				prefix = new String[] { content };
+				suffix = null;
+				return;
+			}
+			Random rand = new Random(fileName.hashCode());
+			prefix = new String[VARIANTS];
+			suffix = new String[VARIANTS];
+			for (int i = 0; i < VARIANTS; i++) {
+				String s = mapper.writeValueAsString(vary((ObjectNode) root.deepCopy(), rand));
+				int at = s.indexOf(MARK);
+				prefix[i] = s.substring(0, at);
+				suffix[i] = s.substring(at + MARK.length());
+			}
+		}
+
+		static ObjectNode vary(ObjectNode br, Random rand) {
+			br.put("id", MARK);
+			JsonNode device = br.get("device");
+			if (device instanceof ObjectNode) {
+				ObjectNode d = (ObjectNode) device;
+				if (d.has("ip"))
+					d.put("ip", (1 + rand.nextInt(222)) + "." + rand.nextInt(256) + "." + rand.nextInt(256) + "."
+							+ (1 + rand.nextInt(254)));
+				if (d.has("ifa"))
+					d.put("ifa", new UUID(rand.nextLong(), rand.nextLong()).toString());
+			}
+			JsonNode user = br.get("user");
+			if (user instanceof ObjectNode && user.has("id"))
+				((ObjectNode) user).put("id", Long.toHexString(rand.nextLong()));
+			JsonNode imps = br.get("imp");
+			if (imps != null) {
+				for (JsonNode imp : imps) {
+					if (imp instanceof ObjectNode && imp.has("bidfloor")) {
+						double floor = imp.get("bidfloor").asDouble() * (0.5 + rand.nextDouble());
+						((ObjectNode) imp).put("bidfloor", Math.round(floor * 1000) / 1000.0);
+					}
+				}
+			}
+			return br;
+		}
+
+		/**
+		 * Return a request body, a variant with a fresh id.
+		 * @param seq long. The request's sequence number.
+		 * @return String. The body.
+		 */
+		public String body(long seq) {
+			int i = (int) (seq % prefix.length);
+			if (suffix == null)
+				return prefix[i];
+			return prefix[i] + "openload-" + seq + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong())
+					+ suffix[i];
+		}
+
+		/**
+		 * Parse a mix: exchange=file[:weight],...
+		 * @param base String. The bidder's URL, up to the exchange name.
+		 * @param spec String. The mix.
+		 * @return List. The templates.
+		 * @throws Exception on file errors or a bad spec.
+		 */
+		public static List<Template> parse(String base, String spec) throws Exception {
+			List<Template> mix = new ArrayList<Template>();
+			for (String part : spec.split(",")) {
+				String[] t = part.split("=", 2);
+				if (t.length != 2)
+					throw new IllegalArgumentException("Mix is exchange=file[:weight]: " + part);
+				int weight = 1;
+				String file = t[1];
+				int colon = file.lastIndexOf(':');
+				if (colon > 0) {
+					weight = Integer.parseInt(file.substring(colon + 1));
+					file = file.substring(0, colon);
+				}
+				mix.add(new Template(base, t[0], file, weight));
+			}
+			return mix;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.time.ZoneId;
+import java.util.Random;
+
+import com.jacamars.dsp.crosstalk.budget.Pacer;
+import com.jacamars.dsp.rtb.common.Budget;
+
+/**
+ * Deterministic simulator for the spend pacing controller. Plays one day, a minute at a time, of a campaign
+ * with a daily budget against traffic that follows a daily curve. Each minute the campaign bids on the share
+ * of requests its participation allows, wins some, and the spend is accounted at the end of the minute the
+ * way the crosstalk pass does it, caps included, then the controller is fed. Without pacing the campaign
+ * bids on everything until the daily cap trips.
+ * <p>
+ * Usage: PacingSimulator [-d dailyBudget] [-x demandOverBudget] [-s seed]
+ *
+ * This is for testing, this is not operational code.
+ */
+public class PacingSimulator {
+
+	static final ZoneId UTC = ZoneId.of("UTC");
+
+	// Thursday 1 February 2024, 00:00 UTC
+	static final long START = 1706745600000L;
+
+	static final long MINUTE = 60000;
+
+	/**
+	 * What one simulated day spent.
+	 */
+	public static class Result {
+		/** Spend in each hour */
+		public final double[] hourly = new double[24];
+		/** Participation at the end of each hour */
+		public final double[] participation = new double[24];
+		/** Total spend */
+		public double total;
+		/** Minute of the day the daily cap tripped, -1 if it never did */
+		public int capped = -1;
+
+		/**
+		 * Return the coefficient of variation of the hourly spend.
+		 * @return double. Standard deviation over mean, 0 is perfectly even.
+		 */
+		public double unevenness() {
+			double mean = total / 24;
+			double sum = 0;
+			for (double h : hourly)
+				sum += (h - mean) * (h - mean);
+			return mean == 0 ? 0 : Math.sqrt(sum / 24) / mean;
+		}
+	}
+
+	/**
+	 * Run one day.
+	 * @param daily double. The daily budget.
+	 * @param demand double. What bidding on everything would spend in the day, over the daily budget.
+	 * @param seed long. The random seed, the same seed gives the same day.
+	 * @param paced boolean. True to run the controller, false to bid on everything until the cap.
+	 * @return Result. The spend.
+	 */
+	public static Result simulate(double daily, double demand, long seed, boolean paced) {
+		Random rand = new Random(seed);
+		Budget budget = new Budget();
+		budget.setDailyBudget(daily);
+		budget.activate_time = START;
+		budget.expire_time = START + 24 * 60 * MINUTE;
+
+		// Requests per minute follow the day, a trough at 4am and a peak at 4pm
+		double[] requests = new double[24 * 60];
+		double sum = 0;
+		for (int m = 0; m < requests.length; m++) {
+			requests[m] = 1.0 + 0.7 * Math.sin(2 * Math.PI * (m - 10 * 60) / (24 * 60.0));
+			sum += requests[m];
+		}
+		double price = 2.0; // CPM
+		double winRate = 0.2;
+		// Scale the traffic so bidding on everything spends demand times the budget
+		double scale = demand * daily / (sum * winRate * price / 1000);
+
+		Pacer pacer = new Pacer();
+		Result result = new Result();
+		double participation = 1;
+		pacer.update(START, 0, Pacer.targetRate(budget, START, UTC));
+		for (int m = 0; m < requests.length; m++) {
+			long now = START + m * MINUTE;
+			double spend = 0;
+			if (budget.dailyCost.doubleValue() < daily) {
+				double n = requests[m] * scale * (paced ? participation : 1);
+				double wins = Math.max(0, n * winRate + Math.sqrt(n * winRate * (1 - winRate)) * rand.nextGaussian());
+				spend = wins * price * (1 + 0.1 * rand.nextGaussian()) / 1000;
+				spend = Math.max(0, spend);
+			}
+			budget.totalCost.getAndAdd(spend);
+			budget.dailyCost.getAndAdd(spend);
+			result.hourly[m / 60] += spend;
+			result.total += spend;
+			if (result.capped < 0 && budget.dailyCost.doubleValue() >= daily)
+				result.capped = m;
+
+			if (paced)
+				participation = pacer.update(now + MINUTE, budget.totalCost.doubleValue(),
+						Pacer.targetRate(budget, now + MINUTE, UTC));
+			result.participation[m / 60] = paced ? participation : 1;
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		double daily = 1000;
+		double demand = 4;
+		long seed = 1;
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-d":
+				daily = Double.parseDouble(args[i + 1]);
+				i += 2;
+				break;
+			case "-x":
+				demand = Double.parseDouble(args[i + 1]);
+				i += 2;
+				break;
+			case "-s":
+				seed = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-h":
+				System.out.println("-d dailyBudget -x demandOverBudget -s seed");
+				System.exit(1);
+			default:
+				System.out.println("Huh? " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		Result capped = simulate(daily, demand, seed, false);
+		Result paced = simulate(daily, demand, seed, true);
+		System.out.printf("Daily budget %.2f, bidding on everything would spend %.2f%n", daily, daily * demand);
+		System.out.println("hour     capped      paced  participation");
+		for (i = 0; i < 24; i++)
+			System.out.printf("%4d %10.2f %10.2f %14.3f%n", i, capped.hourly[i], paced.hourly[i],
+					paced.participation[i]);
+		System.out.printf("total %9.2f %10.2f%n", capped.total, paced.total);
+		System.out.printf("capped at minute %d vs %d, hourly unevenness %.2f vs %.2f%n", capped.capped, paced.capped,
+				capped.unevenness(), paced.unevenness());
+	}
+}
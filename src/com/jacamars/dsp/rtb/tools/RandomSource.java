@@ -0,0 +1,68 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The random numbers the bidding decisions draw on: the campaign shuffles, creative rotation, pacing and deal
+ * ties. Normally they come from ThreadLocalRandom. Seeded, they come from one sequence, so the same requests
+ * make the same decisions; the Replay tool seeds it before each request it replays.
+ * @author Ben M. Faul
+ *
+ */
+public class RandomSource {
+
+	// Null unless seeded
+	static volatile Random seeded;
+
+	/**
+	 * Draw from a fixed sequence from now on.
+	 * @param seed long. The seed.
+	 */
+	public static void seed(long seed) {
+		seeded = new Random(seed);
+	}
+
+	/**
+	 * Go back to ThreadLocalRandom.
+	 */
+	public static void unseed() {
+		seeded = null;
+	}
+
+	/**
+	 * Is it seeded?
+	 * @return boolean. True if the numbers are from a fixed sequence.
+	 */
+	public static boolean isSeeded() {
+		return seeded != null;
+	}
+
+	/**
+	 * Return the next random int, from 0 to n-1.
+	 * @param n int. The upper bound.
+	 * @return int. The next random integer.
+	 */
+	public static int nextInt(int n) {
+		Random r = seeded;
+		return r == null ? ThreadLocalRandom.current().nextInt(n) : r.nextInt(n);
+	}
+
+	/**
+	 * Return the next random double, from 0 up to 1.
+	 * @return double. The next random double.
+	 */
+	public static double nextDouble() {
+		Random r = seeded;
+		return r == null ? ThreadLocalRandom.current().nextDouble() : r.nextDouble();
+	}
+
+	/**
+	 * Return the generator itself, for Collections.shuffle.
+	 * @return Random. The seeded generator, or this thread's ThreadLocalRandom.
+	 */
+	public static Random random() {
+		Random r = seeded;
+		return r == null ? ThreadLocalRandom.current() : r;
+	}
+}
@@ -0,0 +1,398 @@
+package com.jacamars.dsp.rtb.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacamars.dsp.rtb.bidder.CampaignProcessor;
+import com.jacamars.dsp.rtb.bidder.CampaignSelector;
+import com.jacamars.dsp.rtb.bidder.RTBServer;
+import com.jacamars.dsp.rtb.common.Configuration;
+import com.jacamars.dsp.rtb.common.Eligibility;
+import com.jacamars.dsp.rtb.common.FrequencyCap;
+import com.jacamars.dsp.rtb.common.Preshuffle;
+import com.jacamars.dsp.rtb.jmq.BinaryLog;
+import com.jacamars.dsp.rtb.jmq.BinaryLogReader;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.BidResponse;
+import com.jacamars.dsp.rtb.shared.FrequencyGoverner;
+import com.jacamars.dsp.rtb.shared.PacingCache;
+
+/**
+ * Replays captured bid requests through the bidder, in process, and writes a digest of each decision: the
+ * campaign, creative and price of each bid, or why there was no bid. Run it on two builds and diff the digests
+ * to see whether a change altered any decision. It also reports the CPU each request took.
+ * <p>
+ * The requests come from the capture channel (pubsub "capture", a binlog:// or file:// address), which records
+ * them as they arrived. To make the decisions repeatable the random numbers are seeded for each request, time
+ * is frozen at the request's capture time (or -now), the selection runs on one thread, the frequency governor
+ * is off, and the frequency caps and pacing come from a snapshot instead of the cluster, empty unless -s is
+ * given. No bids, wins or spend are recorded, so the budgets stay as they were loaded. The fraud check, an
+ * outside service, is not run.
+ * <p>
+ * Usage: Replay [-c config] [-seed n] [-now millis] [-s snapshot.json] [-o digest] [-cpu file] capture...
+ * <br>
+ * Replay -diff digest1 digest2
+ * <br>
+ * Replay -c config -w snapshot.json, writes the pacing the bidder sees now as a snapshot.
+ *
+ * This is for testing, this is not operational code.
+ */
+public class Replay {
+
+	static final ObjectMapper mapper = new ObjectMapper();
+
+	long seed;
+	long now;
+	long nextEvent = Long.MIN_VALUE;
+	long lastTime = Long.MIN_VALUE;
+	final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	long requests;
+	long bids;
+	long cpu;
+	final Histogram cpuTimes = new Histogram(60000000L, 3);
+
+	public static void main(String[] args) throws Exception {
+		String config = "./Campaigns/payday.json";
+		String snapshot = null;
+		String write = null;
+		String digest = null;
+		String cpuFile = null;
+		long seed = 0;
+		long now = 0;
+		List<String> files = new ArrayList<String>();
+
+		int i = 0;
+		while (i < args.length) {
+			switch (args[i]) {
+			case "-c":
+				config = args[i + 1];
+				i += 2;
+				break;
+			case "-seed":
+				seed = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-now":
+				now = Long.parseLong(args[i + 1]);
+				i += 2;
+				break;
+			case "-s":
+				snapshot = args[i + 1];
+				i += 2;
+				break;
+			case "-w":
+				write = args[i + 1];
+				i += 2;
+				break;
+			case "-o":
+				digest = args[i + 1];
+				i += 2;
+				break;
+			case "-cpu":
+				cpuFile = args[i + 1];
+				i += 2;
+				break;
+			case "-diff":
+				System.exit(diff(args[i + 1], args[i + 2], System.out) == 0 ? 0 : 1);
+			case "-h":
+				System.out.println("[-c config] [-seed n] [-now millis] [-s snapshot.json] [-o digest] [-cpu file] capture...");
+				System.out.println("-diff digest1 digest2");
+				System.out.println("-c config -w snapshot.json");
+				System.exit(1);
+			default:
+				if (args[i].startsWith("-")) {
+					System.out.println("Huh? " + args[i]);
+					System.exit(1);
+				}
+				files.add(args[i]);
+				i++;
+			}
+		}
+
+		start(config);
+		if (write != null) {
+			Map<String, Object> m = new LinkedHashMap<String, Object>();
+			m.put("caps", new HashMap<String, Object>());
+			m.put("pacing", PacingCache.snapshot());
+			mapper.writerWithDefaultPrettyPrinter().writeValue(new java.io.File(write), m);
+			System.out.println("Snapshot written to " + write);
+			System.exit(0);
+		}
+
+		Replay replay = new Replay(seed, now);
+		replay.freeze(snapshot == null ? null : mapper.readTree(new java.io.File(snapshot)));
+		try (Writer out = digest == null ? new BufferedWriter(new OutputStreamWriter(System.out))
+				: new BufferedWriter(new FileWriter(digest));
+				Writer cpuOut = cpuFile == null ? null : new BufferedWriter(new FileWriter(cpuFile))) {
+			for (String file : files)
+				replay.replay(file, out, cpuOut);
+		}
+		replay.summary(System.err);
+		System.exit(0);
+	}
+
+	/**
+	 * Start the bidder, the way the tests do.
+	 * @param config String. The configuration file.
+	 * @throws Exception if it doesn't start.
+	 */
+	public static void start(String config) throws Exception {
+		FrequencyGoverner.silent = true;
+		RTBServer server = new RTBServer(config);
+		int wait = 0;
+		while (!server.isReady() && wait < 30) {
+			Thread.sleep(1000);
+			wait++;
+		}
+		if (wait == 30)
+			throw new Exception("Bidder never started");
+	}
+
+	/**
+	 * A replayer, the bidder must be started.
+	 * @param seed long. The seed, each request's random numbers are seeded with it plus the request's number.
+	 * @param now long. The frozen time, 0 for each request's own capture time.
+	 */
+	public Replay(long seed, long now) {
+		this.seed = seed;
+		this.now = now;
+	}
+
+	/**
+	 * Take the caches and the timing out of the decisions.
+	 * @param snapshot JsonNode. The frequency cap counts and pacing, as {"caps":{key:count},"pacing":{id:p}}, or
+	 *        null for none.
+	 * @throws Exception on a bad snapshot.
+	 */
+	public void freeze(JsonNode snapshot) throws Exception {
+		Map<String, Number> caps = new HashMap<String, Number>();
+		Map<Integer, Double> pacing = new HashMap<Integer, Double>();
+		if (snapshot != null) {
+			Iterator<Map.Entry<String, JsonNode>> it = snapshot.path("caps").fields();
+			while (it.hasNext()) {
+				Map.Entry<String, JsonNode> e = it.next();
+				caps.put(e.getKey(), e.getValue().asInt());
+			}
+			it = snapshot.path("pacing").fields();
+			while (it.hasNext()) {
+				Map.Entry<String, JsonNode> e = it.next();
+				pacing.put(Integer.parseInt(e.getKey()), e.getValue().asDouble());
+			}
+		}
+		FrequencyCap.snapshot = caps;
+		PacingCache.freeze(pacing);
+		FrequencyGoverner.silent = true;
+		CampaignSelector.inline = true;
+
+		// No wall clock timer or spend re-evaluates eligibility, replay() moves the frozen time along
+		Eligibility.getInstance().freeze(now != 0 ? now : System.currentTimeMillis());
+
+		// The shuffled campaign lists were made with unseeded random numbers
+		RandomSource.seed(seed);
+		Preshuffle.getInstance().compile();
+	}
+
+	/**
+	 * Replay a capture file, a binary log or JSON lines.
+	 * @param file String. The file.
+	 * @param out Writer. Where the digest lines go.
+	 * @param cpuOut Writer. Where the CPU lines go, or null.
+	 * @throws Exception on file errors.
+	 */
+	public void replay(String file, Writer out, Writer cpuOut) throws Exception {
+		if (file.endsWith(BinaryLog.EXTENSION)) {
+			BinaryLogReader reader = new BinaryLogReader(file);
+			JsonNode node;
+			while ((node = reader.next()) != null)
+				replay(node, out, cpuOut);
+			reader.close();
+		} else {
+			try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.trim().length() != 0)
+						replay(mapper.readTree(line), out, cpuOut);
+				}
+			}
+		}
+		out.flush();
+		if (cpuOut != null)
+			cpuOut.flush();
+	}
+
+	void replay(JsonNode captured, Writer out, Writer cpuOut) throws Exception {
+		if (!captured.has("body") || !captured.has("target"))
+			return;
+		long n = requests++;
+		long time = now != 0 ? now : captured.path("timestamp").asLong();
+		Eligibility.getInstance().freeze(time);
+		if (time >= nextEvent || time < lastTime) {
+			Eligibility.getInstance().refresh(time);
+			nextEvent = Eligibility.getInstance().nextEvent(time);
+		}
+		lastTime = time;
+		RandomSource.seed(seed + n);
+		CampaignProcessor.probe.reset();
+
+		long start = threads.getCurrentThreadCpuTime();
+		Map<String, Object> d = decide(captured.get("target").asText(), captured.get("body").binaryValue());
+		long used = threads.getCurrentThreadCpuTime() - start;
+
+		Map<String, Object> line = new LinkedHashMap<String, Object>();
+		line.put("n", n);
+		line.putAll(d);
+		out.write(mapper.writeValueAsString(line));
+		out.write("\n");
+
+		cpu += used;
+		cpuTimes.recordValue(Math.min(cpuTimes.getHighestTrackableValue(), Math.max(0, used / 1000)));
+		if (cpuOut != null)
+			cpuOut.write(n + "," + d.get("id") + "," + (used / 1000) + "\n");
+	}
+
+	/**
+	 * Run one request through the bidder the way the handler does, without the HTTP or the logging.
+	 * @param target String. The endpoint.
+	 * @param body byte[]. The request.
+	 * @return Map. The decision.
+	 */
+	Map<String, Object> decide(String target, byte[] body) {
+		Map<String, Object> d = new LinkedHashMap<String, Object>();
+		BidRequest x = RTBServer.exchanges.get(target);
+		if (x == null) {
+			d.put("reason", "Wrong target: " + target);
+			return d;
+		}
+		d.put("exchange", x.getExchange());
+		try {
+			BidRequest br = x.copy(new ByteArrayInputStream(body));
+			d.put("id", br.id);
+			if (RTBServer.GDPR_MODE)
+				br.enforceGDPR();
+			if (br.enforceMasterCIDR()) {
+				d.put("reason", "Master CIDR");
+				return d;
+			}
+			if (br.notABidRequest()) {
+				d.put("reason", "Not a bid request");
+				return d;
+			}
+			if (Configuration.getInstance().getCampaignsList().size() == 0) {
+				d.put("reason", "No campaigns loaded");
+				return d;
+			}
+			BidResponse resp = CampaignSelector.getInstance().getMaxConnections(br);
+			if (resp == null || resp.isNoBid()) {
+				d.put("reason", "No matching campaign");
+				d.put("why", CampaignProcessor.probe.getReasons());
+				return d;
+			}
+			bids++;
+			d.put("bids", bids(resp));
+		} catch (Exception error) {
+			d.put("reason", "Error: " + error.toString());
+		}
+		return d;
+	}
+
+	/**
+	 * Return the bids in a response: impression, campaign, creative, price and deal of each.
+	 * @param resp BidResponse. The response.
+	 * @return List. The bids.
+	 */
+	static List<Map<String, Object>> bids(BidResponse resp) {
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		JsonNode root = null;
+		try {
+			root = mapper.readTree(resp.toString());
+		} catch (Exception error) {
+			// Not JSON, Adx for one
+		}
+		if (root != null && root.has("seatbid")) {
+			for (JsonNode seat : root.get("seatbid")) {
+				for (JsonNode bid : seat.path("bid")) {
+					Map<String, Object> b = new LinkedHashMap<String, Object>();
+					b.put("imp", bid.path("impid").asText());
+					b.put("campaign", bid.path("adid").asText());
+					b.put("creative", bid.path("crid").asText());
+					b.put("price", bid.path("price").asDouble());
+					if (bid.has("dealid"))
+						b.put("deal", bid.get("dealid").asText());
+					list.add(b);
+				}
+			}
+		} else {
+			Map<String, Object> b = new LinkedHashMap<String, Object>();
+			b.put("imp", resp.impid);
+			b.put("campaign", resp.adid);
+			b.put("creative", resp.crid);
+			b.put("price", resp.cost);
+			if (resp.dealId != null)
+				b.put("deal", resp.dealId);
+			list.add(b);
+		}
+		return list;
+	}
+
+	/**
+	 * Print the totals and the CPU per request.
+	 * @param out java.io.PrintStream. Where to print.
+	 */
+	public void summary(java.io.PrintStream out) {
+		out.printf("%d requests, %d bids, %d no bids%n", requests, bids, requests - bids);
+		if (requests == 0)
+			return;
+		out.printf("CPU per request: mean %.1f us, p50 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+				cpu / 1000.0 / requests, cpuTimes.getValueAtPercentile(50), cpuTimes.getValueAtPercentile(99),
+				cpuTimes.getValueAtPercentile(99.9), cpuTimes.getMaxValue());
+	}
+
+	/**
+	 * Compare two digests of the same capture, line by line, and print the decisions that differ.
+	 * @param a String. The first digest.
+	 * @param b String. The second digest.
+	 * @param out java.io.PrintStream. Where to print.
+	 * @return int. The number of decisions that differ.
+	 * @throws Exception on file errors.
+	 */
+	public static int diff(String a, String b, java.io.PrintStream out) throws Exception {
+		int differ = 0;
+		long n = 0;
+		try (BufferedReader ra = new BufferedReader(new FileReader(a));
+				BufferedReader rb = new BufferedReader(new FileReader(b))) {
+			String la, lb;
+			while (true) {
+				la = ra.readLine();
+				lb = rb.readLine();
+				if (la == null && lb == null)
+					break;
+				n++;
+				if (la == null || lb == null || !mapper.readTree(la).equals(mapper.readTree(lb))) {
+					differ++;
+					out.println("< " + (la == null ? "(missing)" : la));
+					out.println("> " + (lb == null ? "(missing)" : lb));
+				}
+			}
+		}
+		out.printf("%d decisions, %d differ%n", n, differ);
+		return differ;
+	}
+}
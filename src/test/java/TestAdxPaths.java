@@ -0,0 +1,155 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.exchanges.adx.AdxBidRequest;
+
+/**
+ * Tests the protobuf accessors of AdxBidRequest against the OpenRTB tree it used to build up front.
+ * Each recorded Adx request in SampleBids/adxrequests is made twice, once with the whole tree built in
+ * the constructor and once lazily, and both must answer every path, and every campaign node, the same.
+ * @author Ben M. Faul
+ *
+ */
+public class TestAdxPaths {
+
+	static final String[] PATHS = { "id", "is_test", "device.ua", "device.ip", "device.ifa", "device.make",
+			"device.w", "device.h", "device.devicetype", "device.model", "device.carrier", "device.os",
+			"device.osv", "device.language", "device.geo", "device.geo.country", "device.geo.zip",
+			"device.geo.lat", "imp.0.id", "imp.0.bidfloor", "imp.0.battr", "imp.0.banner", "imp.0.banner.w",
+			"imp.0.banner.h", "imp.0.banner.pos", "imp.0.video.w", "imp.0.video.maxduration",
+			"imp.0.video.minduration", "imp.0.banner.maxduration", "imp.0.pmp", "imp.1.id", "imp.1.banner.w",
+			"imp.2", "app.id", "app.name", "app.content.url", "site.id", "site.url", "bcat",
+			"allowedvendortypes", "user.id", "device.ua.x", "imp.0.battr.0", "imp.*.id" };
+
+	static List<byte[]> samples = new ArrayList<byte[]>();
+	static boolean lazy;
+
+	@BeforeClass
+	public static void testSetup() throws Exception {
+		lazy = AdxBidRequest.lazy;
+		ObjectMapper mapper = new ObjectMapper();
+		BufferedReader br = new BufferedReader(new FileReader("SampleBids/adxrequests"));
+		String data;
+		while ((data = br.readLine()) != null) {
+			Map map = mapper.readValue(data, Map.class);
+			String protobuf = (String) map.get("protobuf");
+			if (protobuf != null)
+				samples.add(Base64.decodeBase64(protobuf));
+		}
+		br.close();
+	}
+
+	@AfterClass
+	public static void testCleanup() {
+		AdxBidRequest.lazy = lazy;
+	}
+
+	static AdxBidRequest make(byte[] bytes, boolean lazy) throws Exception {
+		AdxBidRequest.lazy = lazy;
+		return new AdxBidRequest(new ByteArrayInputStream(bytes));
+	}
+
+	/**
+	 * Every path gives the same value, the lazy request only builds what is asked for, and the whole tree
+	 * is the same when it is logged.
+	 * @throws Exception on parsing errors.
+	 */
+	@Test
+	public void testPaths() throws Exception {
+		assertTrue(samples.size() > 0);
+		ObjectMapper mapper = new ObjectMapper();
+		for (byte[] bytes : samples) {
+			AdxBidRequest eager = make(bytes, false);
+			AdxBidRequest lazy = make(bytes, true);
+
+			assertEquals(eager.id, lazy.id);
+			assertEquals(eager.adSlotId, lazy.adSlotId);
+			assertEquals(eager.siteId, lazy.siteId);
+			assertEquals(eager.siteName, lazy.siteName);
+			assertEquals(eager.pageurl, lazy.pageurl);
+			assertEquals(eager.isSite(), lazy.isSite());
+			assertEquals(eager.getImpressions(), lazy.getImpressions());
+
+			// Read straight from the protobuf, the device isn't built
+			assertEquals(eager.interrogate("device.ua"), lazy.interrogate("device.ua"));
+			assertEquals(eager.interrogate("imp.0.banner.w"), lazy.interrogate("imp.0.banner.w"));
+			assertNull(lazy.root.get("device"));
+			assertNull(lazy.root.get("imp"));
+			assertNull(lazy.root.get("protobuf"));
+
+			for (String path : PATHS)
+				assertEquals(path, eager.interrogate(path), lazy.interrogate(path));
+			// Twice, the second answer is cached
+			for (String path : PATHS)
+				assertEquals(path, eager.interrogate(path), lazy.interrogate(path));
+			assertNotNull(lazy.root.get("device"));
+
+			assertEquals(eager.lat, lazy.lat);
+			assertEquals(eager.lon, lazy.lon);
+			assertEquals(mapper.readTree(eager.toString()), mapper.readTree(lazy.toString()));
+		}
+	}
+
+	/**
+	 * Campaign nodes decide the same on both.
+	 * @throws Exception on node errors.
+	 */
+	@Test
+	public void testDecisions() throws Exception {
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(new Node("w", "imp.0.banner.w", Node.EQUALS, 300));
+		nodes.add(new Node("h", "imp.0.banner.h", Node.MEMBER, Arrays.asList(50, 90, 250)));
+		nodes.add(new Node("pos", "imp.0.banner.pos", Node.EQUALS, 0));
+		nodes.add(new Node("video", "imp.0.video.maxduration", Node.GREATER_THAN, 15));
+		nodes.add(new Node("floor", "imp.0.bidfloor", Node.LESS_THAN, 1000000));
+		nodes.add(new Node("battr", "imp.0.battr", Node.NOT_INTERSECTS, Arrays.asList(1, 2, 3)));
+		nodes.add(new Node("bcat", "bcat", Node.NOT_INTERSECTS, Arrays.asList(10, 20, 30)));
+		nodes.add(new Node("os", "device.os", Node.MEMBER, Arrays.asList("iphone", "android")));
+		nodes.add(new Node("make", "device.make", Node.EQUALS, "apple"));
+		nodes.add(new Node("type", "device.devicetype", Node.MEMBER, Arrays.asList(1, 4, 5)));
+		nodes.add(new Node("carrier", "device.carrier", Node.EXISTS, null));
+		nodes.add(new Node("ifa", "device.ifa", Node.NOT_EXISTS, null));
+		nodes.add(new Node("osv", "device.osv", Node.EQUALS, "10.1.1"));
+		nodes.add(new Node("country", "device.geo.country", Node.EQUALS, "USA"));
+		nodes.add(new Node("zip", "device.geo.zip", Node.EXISTS, null));
+		nodes.add(new Node("app", "app.id", Node.EXISTS, null));
+		nodes.add(new Node("site", "site.id", Node.EXISTS, null));
+
+		int agree = 0;
+		for (byte[] bytes : samples) {
+			AdxBidRequest eager = make(bytes, false);
+			AdxBidRequest lazy = make(bytes, true);
+			for (Node node : nodes) {
+				String a = decide(node, eager);
+				String b = decide(node, lazy);
+				assertEquals(node.name + " on " + eager.id, a, b);
+				agree++;
+			}
+		}
+		assertEquals(samples.size() * nodes.size(), agree);
+	}
+
+	static String decide(Node node, AdxBidRequest br) {
+		try {
+			return Boolean.toString(node.test(br, null));
+		} catch (Exception error) {
+			return error.getClass().getName();
+		}
+	}
+}
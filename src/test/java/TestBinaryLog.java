@@ -0,0 +1,164 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jacamars.dsp.rtb.commands.PixelClickConvertLog;
+import com.jacamars.dsp.rtb.jmq.BinaryLog;
+import com.jacamars.dsp.rtb.jmq.BinaryLogReader;
+import com.jacamars.dsp.rtb.tools.BinLog;
+
+/**
+ * Tests the binary log: messages come back as they went in, from objects and from JSON strings, across blocks
+ * and rotated files, with and without the trailer index, and in a fraction of the bytes of JSON lines.
+ * @author Ben M. Faul
+ *
+ */
+public class TestBinaryLog {
+
+	// Leaves out the nulls, the way the publishers do
+	static final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(Include.NON_NULL);
+
+	static PixelClickConvertLog click(int i) {
+		PixelClickConvertLog c = new PixelClickConvertLog();
+		c.bid_id = "3b1a5d7e-" + i;
+		c.ad_id = "" + (i % 7);
+		c.creative_id = "" + (i % 13);
+		c.exchange = i % 2 == 0 ? "smaato" : "openx";
+		c.price = 0.01 * (i % 100);
+		c.type = PixelClickConvertLog.CLICK;
+		c.timestamp = 1706745600000L + i;
+		return c;
+	}
+
+	static File dir() throws Exception {
+		File dir = Files.createTempDirectory("binlog").toFile();
+		dir.deleteOnExit();
+		return dir;
+	}
+
+	static List<String> files(File dir) {
+		List<String> names = new ArrayList<String>();
+		for (File f : dir.listFiles())
+			names.add(f.getPath());
+		names.sort(null);
+		return names;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File dir = dir();
+		BinaryLog log = new BinaryLog(dir.getPath() + "/clicks", 0, 0);
+		long json = 0;
+		int n = 20000;
+		for (int i = 0; i < n; i++) {
+			PixelClickConvertLog c = click(i);
+			json += mapper.writeValueAsString(c).length() + 1;
+			if (i % 2 == 0)
+				log.write(c);
+			else
+				log.write(mapper.writeValueAsString(c));
+		}
+		log.write("not json");
+		log.close();
+		assertEquals(n + 1, log.getRecords());
+
+		BinaryLogReader reader = new BinaryLogReader(log.getFileName());
+		assertTrue(reader.isIndexed());
+		assertTrue(reader.getBlocks().size() > 1);
+		for (int i = 0; i < n; i++) {
+			JsonNode node = reader.next();
+			assertEquals(mapper.valueToTree(click(i)), node);
+		}
+		assertEquals("not json", reader.next().asText());
+		assertNull(reader.next());
+		reader.close();
+
+		long bytes = new File(log.getFileName()).length();
+		assertTrue(json + " vs " + bytes, bytes * 10 < json);
+	}
+
+	@Test
+	public void testRotateAndFilter() throws Exception {
+		File dir = dir();
+		int block = BinaryLog.BLOCK_SIZE;
+		BinaryLog.BLOCK_SIZE = 4096;
+		try {
+			BinaryLog log = new BinaryLog(dir.getPath() + "/clicks", 16 * 1024, 0);
+			for (int i = 0; i < 5000; i++)
+				log.write(click(i));
+			log.close();
+		} finally {
+			BinaryLog.BLOCK_SIZE = block;
+		}
+
+		List<String> names = files(dir);
+		assertTrue(names.size() > 1);
+		Map<String, String> filter = new HashMap<String, String>();
+		filter.put("exchange", "openx");
+		filter.put("ad_id", "3");
+		int total = 0;
+		int matched = 0;
+		for (String name : names) {
+			BinaryLogReader reader = new BinaryLogReader(name);
+			assertTrue(reader.isIndexed());
+			JsonNode node;
+			while ((node = reader.next()) != null) {
+				assertEquals("3b1a5d7e-" + total, node.get("bid_id").asText());
+				total++;
+				if (BinLog.matches(node, filter))
+					matched++;
+			}
+			reader.close();
+		}
+		assertEquals(5000, total);
+		int expected = 0;
+		for (int i = 0; i < 5000; i++)
+			if (i % 2 == 1 && i % 7 == 3)
+				expected++;
+		assertEquals(expected, matched);
+	}
+
+	@Test
+	public void testNotClosed() throws Exception {
+		File dir = dir();
+		long linger = BinaryLog.LINGER;
+		BinaryLog.LINGER = 0;
+		try {
+			BinaryLog log = new BinaryLog(dir.getPath() + "/wins", 0, 0);
+			for (int i = 0; i < 100; i++)
+				log.write(click(i));
+			log.tick();
+			log.write(click(100));
+
+			// The writer died here, the sealed block can be read, the one being filled is lost
+			BinaryLogReader reader = new BinaryLogReader(log.getFileName());
+			assertFalse(reader.isIndexed());
+			assertEquals(1, reader.getBlocks().size());
+			int n = 0;
+			while (reader.next() != null)
+				n++;
+			assertEquals(100, n);
+
+			// Outside the time range, the block is skipped
+			reader = new BinaryLogReader(log.getFileName());
+			reader.setRange(0, 1000);
+			assertNull(reader.next());
+			reader.close();
+			log.close();
+		} finally {
+			BinaryLog.LINGER = linger;
+		}
+	}
+}
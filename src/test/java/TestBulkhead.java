@@ -0,0 +1,136 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.bidder.Bulkhead;
+
+/**
+ * Floods one exchange through a shared thread pool, the way Jetty's pool is shared, and checks that with
+ * bulkheads the other exchange keeps its latency and the flooded one gets its no-bids, counted as its own.
+ * @author Ben M. Faul
+ *
+ */
+public class TestBulkhead {
+
+	static final int THREADS = 32;
+	static final int FLOOD = 1500;
+	static final int SLOW_MILLIS = 20;
+
+	/**
+	 * Run a flood of slow requests with a trickle of fast ones mixed in, return the fast ones' latencies.
+	 * @param slow Bulkhead. The slow exchange's bulkhead, or null for none.
+	 * @param fast Bulkhead. The fast exchange's bulkhead, or null for none.
+	 */
+	static List<Long> flood(Bulkhead slow, Bulkhead fast) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		List<Future<Long>> latencies = new ArrayList<Future<Long>>();
+		try {
+			for (int i = 0; i < FLOOD; i++) {
+				pool.submit(() -> request(slow, SLOW_MILLIS));
+				if (i % 15 == 0) {
+					long queued = System.nanoTime();
+					latencies.add(pool.submit(() -> {
+						request(fast, 0);
+						return (System.nanoTime() - queued) / 1000000;
+					}));
+				}
+			}
+			List<Long> list = new ArrayList<Long>();
+			for (Future<Long> f : latencies)
+				list.add(f.get(60, TimeUnit.SECONDS));
+			Collections.sort(list);
+
+			// Let the slow ones still queued run too, so each is counted as admitted or rejected
+			pool.shutdown();
+			assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+			return list;
+		} finally {
+			pool.shutdownNow();
+			pool.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	/** What the handler does, less the bidding: take a permit or no-bid, work, give it back */
+	static boolean request(Bulkhead b, int millis) throws Exception {
+		if (b != null && !b.acquire())
+			return false;
+		try {
+			if (millis > 0)
+				Thread.sleep(millis);
+			return true;
+		} finally {
+			if (b != null)
+				b.release();
+		}
+	}
+
+	static long p99(List<Long> sorted) {
+		return sorted.get((int) (sorted.size() * 0.99));
+	}
+
+	@Test
+	public void testFlood() throws Exception {
+		// Without bulkheads the fast exchange queues behind the flood
+		long shared = p99(flood(null, null));
+
+		// No queue budget, over its limit the flooded exchange is answered with a no-bid at once
+		Bulkhead slow = new Bulkhead("slowssp", 4, 0);
+		Bulkhead fast = new Bulkhead("fastssp", 8, 5);
+		long isolated = p99(flood(slow, fast));
+
+		assertTrue("shared " + shared + " ms vs isolated " + isolated + " ms", isolated * 4 < shared);
+		assertTrue("isolated p99 " + isolated + " ms", isolated < 200);
+
+		Map<String, Object> s = slow.getStats();
+		Map<String, Object> f = fast.getStats();
+		assertEquals(0, s.get("active"));
+		assertTrue((Integer) s.get("peak") <= 4);
+		assertTrue((Long) s.get("rejected") > FLOOD / 2);
+		assertEquals((long) FLOOD, (Long) s.get("admitted") + (Long) s.get("rejected"));
+		assertEquals(0L, f.get("timedout"));
+		assertEquals(0L, f.get("rejected"));
+	}
+
+	@Test
+	public void testConfigure() throws Exception {
+		double share = Bulkhead.QUEUE_SHARE;
+		try {
+			Bulkhead.QUEUE_SHARE = 0.1;
+			Map<String, Object> m = new HashMap<String, Object>();
+			m.put("permits", 2);
+			m.put("tmax", 120);
+			Bulkhead b = Bulkhead.configure("testssp", m);
+			assertEquals(2, b.permits);
+			assertEquals(12, b.queueMillis);
+
+			m.put("queue", 0);
+			b = Bulkhead.configure("testssp", m);
+			assertEquals(0, b.queueMillis);
+			assertTrue(b.acquire());
+			assertTrue(b.acquire());
+			assertFalse(b.acquire());
+			b.release();
+			assertTrue(b.acquire());
+			assertEquals(1L, b.getStats().get("rejected"));
+			assertTrue(Bulkhead.getAllStats().containsKey("testssp"));
+
+			m.put("permits", 0);
+			assertNull(Bulkhead.configure("testssp", m));
+			assertFalse(Bulkhead.getAllStats().containsKey("testssp"));
+		} finally {
+			Bulkhead.QUEUE_SHARE = share;
+		}
+	}
+}
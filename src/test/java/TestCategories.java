@@ -0,0 +1,112 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.tools.IABCategories;
+
+/**
+ * Tests the category bitsets give the same answers as the string sets did, and the IAB1-* expansion.
+ * @author Ben M. Faul
+ *
+ */
+public class TestCategories {
+
+	@BeforeClass
+	public static void testSetup() throws Exception {
+		BidRequest.compileBuiltIns();
+		BidRequest.addMap("bcat");
+		BidRequest.addMap("site.cat");
+	}
+
+	static BidRequest request(String bcat, String cat) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"id\":\"cat-1\",");
+		if (bcat != null)
+			sb.append("\"bcat\":").append(bcat).append(",");
+		sb.append("\"site\":{\"id\":\"s1\",\"domain\":\"example.com\"");
+		if (cat != null)
+			sb.append(",\"cat\":").append(cat);
+		sb.append("},\"device\":{\"ua\":\"Mozilla/5.0\",\"ip\":\"10.0.0.1\"},");
+		sb.append("\"imp\":[{\"id\":\"1\",\"banner\":{\"w\":300,\"h\":250}}]}");
+		BidRequest br = new BidRequest(sb);
+		br.setExchange("nexage");
+		return br;
+	}
+
+	static String json(List<String> list) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < list.size(); i++) {
+			if (i > 0)
+				sb.append(",");
+			sb.append("\"").append(list.get(i)).append("\"");
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * Random category lists on both sides, the bitset and the string set must agree.
+	 */
+	@Test
+	public void testSameAnswers() throws Exception {
+		List<String> codes = new ArrayList<String>(IABCategories.map.keySet());
+		codes.add("IAB99-1");
+		Random rand = new Random(1);
+		int agree = 0;
+		for (int i = 0; i < 500; i++) {
+			List<String> mine = new ArrayList<String>();
+			List<String> theirs = new ArrayList<String>();
+			for (int k = rand.nextInt(6); k > 0; k--)
+				mine.add(codes.get(rand.nextInt(codes.size())));
+			for (int k = rand.nextInt(20); k > 0; k--)
+				theirs.add(codes.get(rand.nextInt(codes.size())));
+			if (rand.nextInt(4) == 0 && mine.size() > 0)
+				theirs.add(mine.get(0));
+
+			for (int op : new int[] { Node.INTERSECTS, Node.NOT_INTERSECTS }) {
+				Node bcat = new Node("bcat", "bcat", op, new ArrayList<String>(mine));
+				Node cat = new Node("cat", "site.cat", op, new ArrayList<String>(mine));
+				BidRequest br = request(json(theirs), json(theirs));
+				assertNotNull(br.categories);
+				boolean a = bcat.test(br, null);
+				boolean b = cat.test(br, null);
+				br.categories = null;
+				assertEquals(mine + " " + theirs, bcat.test(br, null), a);
+				assertEquals(mine + " " + theirs, cat.test(br, null), b);
+				agree++;
+			}
+		}
+		assertEquals(1000, agree);
+
+		// Absent from the request
+		Node bcat = new Node("bcat", "bcat", Node.NOT_INTERSECTS, new ArrayList<String>(Arrays.asList("IAB25")));
+		assertTrue(bcat.test(request(null, null), null));
+	}
+
+	@Test
+	public void testExpansion() throws Exception {
+		Node node = new Node("cat", "site.cat", Node.INTERSECTS, new ArrayList<String>(Arrays.asList("IAB2-*")));
+		assertTrue(node.test(request(null, "[\"IAB2\"]"), null));
+		assertTrue(node.test(request(null, "[\"IAB2-17\",\"IAB9\"]"), null));
+		assertFalse(node.test(request(null, "[\"IAB20-1\",\"IAB9\"]"), null));
+
+		// Exact codes still only match themselves
+		node = new Node("cat", "site.cat", Node.INTERSECTS, new ArrayList<String>(Arrays.asList("IAB2")));
+		assertFalse(node.test(request(null, "[\"IAB2-17\"]"), null));
+
+		long[] a = IABCategories.bits(Arrays.asList("IAB1", "IAB3-2"));
+		long[] b = IABCategories.bits(Arrays.asList("IAB3-2"));
+		assertTrue(IABCategories.intersects(a, b));
+		assertEquals(IABCategories.id("IAB3-2"), IABCategories.intern("IAB3-2"));
+		assertEquals(-1, IABCategories.id("no such code"));
+	}
+}
@@ -0,0 +1,123 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Deal;
+import com.jacamars.dsp.rtb.common.DealIndex;
+import com.jacamars.dsp.rtb.pojo.Impression;
+
+/**
+ * Tests the deal index gives the same deal as Deals.findDealHighestList().
+ * @author Ben M. Faul
+ *
+ */
+public class TestDealIndex {
+
+	static Creative creative(String impid, Deal... deals) {
+		Creative c = new Creative();
+		c.impid = impid;
+		for (Deal d : deals)
+			c.deals.add(d);
+		return c;
+	}
+
+	static Impression impression(Deal... deals) {
+		Impression imp = new Impression();
+		imp.privateAuction = 1;
+		imp.deals = new ArrayList<Deal>();
+		for (Deal d : deals)
+			imp.deals.add(d);
+		return imp;
+	}
+
+	static void compile(Creative... creatives) {
+		Campaign camp = new Campaign();
+		camp.name = "deals";
+		camp.creatives = new ArrayList<Creative>();
+		for (Creative c : creatives)
+			camp.creatives.add(c);
+		List<Campaign> list = new ArrayList<Campaign>();
+		list.add(camp);
+		DealIndex.getInstance().compile(list);
+	}
+
+	/**
+	 * Highest price wins, but only if it meets the impression's floor for that deal.
+	 */
+	@Test
+	public void testHighest() {
+		Deal a = new Deal("a", 1);
+		Deal b = new Deal("b", 2);
+		Deal c = new Deal("c", 3);
+		Creative x = creative("x", a, b, c);
+		Creative y = creative("y", new Deal("a", 5));
+		Creative z = creative("z");
+		compile(x, y, z);
+		assertEquals(3, DealIndex.getInstance().size());
+
+		Impression imp = impression(new Deal("a", 0.5), new Deal("b", 1.5), new Deal("d", 0));
+		assertSame(b, DealIndex.getInstance().findDealHighest(imp, x));
+		assertSame(b, x.deals.findDealHighestList(imp.deals));
+		assertEquals(5, DealIndex.getInstance().findDealHighest(imp, y).price, 0);
+		assertNull(DealIndex.getInstance().findDealHighest(imp, z));
+
+		// The highest is over the floor, nothing
+		imp = impression(new Deal("a", 0.5), new Deal("b", 2.5));
+		assertNull(DealIndex.getInstance().findDealHighest(imp, x));
+		assertNull(x.deals.findDealHighestList(imp.deals));
+
+		// Unless the deal is listed again with a floor it meets
+		imp = impression(new Deal("b", 2.5), new Deal("b", 1));
+		assertSame(b, DealIndex.getInstance().findDealHighest(imp, x));
+
+		// No deal in common
+		imp = impression(new Deal("q", 0));
+		assertNull(DealIndex.getInstance().findDealHighest(imp, x));
+	}
+
+	/**
+	 * Ties go either way, like Deals.
+	 */
+	@Test
+	public void testTies() {
+		Deal a = new Deal("a", 2);
+		Deal b = new Deal("b", 2);
+		Creative x = creative("x", a, b, new Deal("c", 1));
+		compile(x);
+		Impression imp = impression(new Deal("a", 0), new Deal("b", 0), new Deal("c", 0));
+		int isA = 0;
+		for (int i = 0; i < 100; i++) {
+			Deal d = DealIndex.getInstance().findDealHighest(imp, x);
+			assertTrue(d == a || d == b);
+			if (d == a)
+				isA++;
+		}
+		assertTrue(isA > 0 && isA < 100);
+	}
+
+	/**
+	 * A creative whose deals changed after the index was built is looked up directly.
+	 */
+	@Test
+	public void testChanged() {
+		Creative x = creative("x", new Deal("a", 1));
+		compile(x);
+		Impression imp = impression(new Deal("new", 0));
+		assertNull(DealIndex.getInstance().findDealHighest(imp, x));
+
+		Deal added = new Deal("new", 1);
+		x.deals.add(added);
+		imp = impression(new Deal("new", 0));
+		assertSame(added, DealIndex.getInstance().findDealHighest(imp, x));
+
+		Creative unknown = creative("unknown", new Deal("a", 3));
+		assertEquals(3, DealIndex.getInstance().findDealHighest(impression(new Deal("a", 1)), unknown).price, 0);
+	}
+}
@@ -0,0 +1,262 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.crosstalk.budget.DayPart;
+import com.jacamars.dsp.rtb.common.Budget;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Eligibility;
+
+/**
+ * Tests the daypart week mask and the eligibility bitmap against the per request checks they replace, over a
+ * simulated week of hour changes, activations, expiries and spend.
+ * @author Ben M. Faul
+ *
+ */
+public class TestEligibility {
+
+	static final String[] DAYS = { "sunday", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday" };
+
+	// Sunday 7 January 2024, 00:00 UTC
+	static final long START = 1704585600000L;
+
+	static final long HOUR = 3600000;
+
+	/**
+	 * A random daypart, and the hours it was made from.
+	 */
+	static class Part {
+		int[][] hours = new int[7][24];
+		DayPart daypart;
+
+		Part(Random rand) throws Exception {
+			StringBuilder sb = new StringBuilder("{");
+			for (int d = 0; d < 7; d++) {
+				if (d > 0)
+					sb.append(",");
+				sb.append("\"").append(DAYS[d]).append("\":[");
+				for (int h = 0; h < 24; h++) {
+					hours[d][h] = rand.nextInt(3) == 0 ? 0 : 1;
+					if (h > 0)
+						sb.append(",");
+					sb.append(hours[d][h]);
+				}
+				sb.append("]");
+			}
+			daypart = new DayPart(sb.append("}").toString());
+		}
+
+		/** The way DayPart.isActive() used to work it out, with a UTC calendar */
+		boolean active(long time) {
+			Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			c.setTimeInMillis(time);
+			return hours[c.get(Calendar.DAY_OF_WEEK) - 1][c.get(Calendar.HOUR_OF_DAY)] == 1;
+		}
+	}
+
+	static Budget budget(Random rand, double spend) {
+		Budget budget = new Budget();
+		if (rand.nextBoolean()) {
+			budget.setTotalBudget(spend * (1 + rand.nextInt(8)));
+			budget.setDailyBudget(spend * (1 + rand.nextInt(4)));
+			budget.setHourlyBudget(spend * (1 + rand.nextInt(2)));
+		}
+		return budget;
+	}
+
+	/** Campaign.isActive() without the creative and region checks */
+	static boolean campaign(Campaign c, Part part, long time) {
+		Budget b = c.budget;
+		if (b == null)
+			return true;
+		if (b.totalBudget.doubleValue() != 0) {
+			if (b.totalCost.doubleValue() >= b.totalBudget.doubleValue())
+				return false;
+			if (b.dailyBudget.doubleValue() != 0 && b.dailyCost.doubleValue() >= b.dailyBudget.doubleValue())
+				return false;
+			if (b.hourlyBudget.doubleValue() != 0 && b.hourlyCost.doubleValue() >= b.hourlyBudget.doubleValue())
+				return false;
+		}
+		if (time < b.activate_time || time > b.expire_time)
+			return false;
+		return part == null || part.active(time);
+	}
+
+	/** Creative.budgetExceeded() inverted */
+	static boolean creative(Creative c, Part part, long time) {
+		Budget b = c.budget;
+		if (b == null || b.totalBudget.doubleValue() == 0)
+			return true;
+		double spend = b.totalCost.doubleValue();
+		if (spend != 0 && spend >= b.totalBudget.doubleValue())
+			return false;
+		if (b.dailyCost.doubleValue() >= b.dailyBudget.doubleValue())
+			return false;
+		if (b.hourlyCost.doubleValue() >= b.hourlyBudget.doubleValue())
+			return false;
+		return part == null || part.active(time);
+	}
+
+	@Test
+	public void testMask() throws Exception {
+		Random rand = new Random(3);
+		for (int i = 0; i < 20; i++) {
+			Part part = new Part(rand);
+			for (long t = START - 7 * 24 * HOUR; t < START + 14 * 24 * HOUR; t += HOUR / 2 + rand.nextInt(1000))
+				assertEquals("" + t, part.active(t), part.daypart.isActive(t));
+		}
+		assertEquals(0, DayPart.hourOfWeek(START));
+		assertEquals(167, DayPart.hourOfWeek(START - 1));
+		assertEquals(4 * 24, DayPart.hourOfWeek(0));
+	}
+
+	@Test
+	public void testSimulatedWeek() throws Exception {
+		Random rand = new Random(7);
+		double spend = 0.25;
+		List<Campaign> campaigns = new ArrayList<Campaign>();
+		List<Part> campaignParts = new ArrayList<Part>();
+		List<Creative> creatives = new ArrayList<Creative>();
+		List<Part> creativeParts = new ArrayList<Part>();
+		for (int i = 0; i < 40; i++) {
+			Campaign c = new Campaign();
+			c.name = "c" + i;
+			Part part = null;
+			if (i % 10 != 0) {
+				c.budget = budget(rand, spend);
+				c.budget.activate_time = START + (long) (rand.nextDouble() * 3 * 24 * HOUR);
+				c.budget.expire_time = c.budget.activate_time + (long) (rand.nextDouble() * 5 * 24 * HOUR);
+				if (rand.nextBoolean()) {
+					part = new Part(rand);
+					c.budget.daypart = part.daypart;
+				}
+			}
+			for (int k = 0; k < 3; k++) {
+				Creative cr = new Creative();
+				cr.impid = c.name + "-" + k;
+				cr.budget = k == 2 ? null : budget(rand, spend);
+				Part crPart = null;
+				if (cr.budget != null && rand.nextInt(4) == 0) {
+					crPart = new Part(rand);
+					cr.budget.daypart = crPart.daypart;
+				}
+				c.creatives.add(cr);
+				creatives.add(cr);
+				creativeParts.add(crPart);
+			}
+			campaigns.add(c);
+			campaignParts.add(part);
+		}
+
+		Eligibility eligibility = Eligibility.getInstance();
+		long time = START - HOUR / 3;
+		long end = START + 7 * 24 * HOUR;
+		eligibility.compile(campaigns, time);
+		int events = 0, checks = 0;
+		while (time < end) {
+			long next = eligibility.nextEvent(time);
+			assertTrue(next > time);
+			assertTrue(next - time <= HOUR);
+
+			for (int k = 0; k < 3; k++) {
+				long when = time + (long) (rand.nextDouble() * (next - time));
+				if (rand.nextInt(4) == 0) {
+					// Spend, accounted the way runUsingElk does it
+					int i = rand.nextInt(campaigns.size());
+					Campaign c = campaigns.get(i);
+					if (c.budget != null) {
+						c.budget.totalCost.getAndAdd(spend / 2);
+						c.budget.dailyCost.getAndAdd(spend / 2);
+						c.budget.hourlyCost.getAndAdd(spend / 2);
+					}
+					Creative cr = c.creatives.get(rand.nextInt(c.creatives.size()));
+					if (cr.budget != null) {
+						cr.budget.totalCost.getAndAdd(spend / 2);
+						cr.budget.dailyCost.getAndAdd(spend / 2);
+						cr.budget.hourlyCost.getAndAdd(spend / 2);
+					}
+					eligibility.update(c, when);
+				}
+				for (int i = 0; i < campaigns.size(); i++) {
+					Campaign c = campaigns.get(i);
+					assertEquals(c.name + " at " + when, campaign(c, campaignParts.get(i), when),
+							eligibility.campaign(c));
+					checks++;
+				}
+				for (int i = 0; i < creatives.size(); i++) {
+					Creative cr = creatives.get(i);
+					assertEquals(cr.impid + " at " + when, creative(cr, creativeParts.get(i), when),
+							eligibility.creative(cr));
+					checks++;
+				}
+			}
+
+			// The timer fires, the hour and day budgets roll over on their boundaries
+			time = next;
+			if (time % HOUR == 0) {
+				for (Campaign c : campaigns) {
+					List<Budget> budgets = new ArrayList<Budget>();
+					budgets.add(c.budget);
+					for (Creative cr : c.creatives)
+						budgets.add(cr.budget);
+					for (Budget b : budgets) {
+						if (b == null)
+							continue;
+						b.hourlyCost.set(0.0);
+						if (time % (24 * HOUR) == 0)
+							b.dailyCost.set(0.0);
+					}
+				}
+			}
+			eligibility.refresh(time);
+			events++;
+		}
+		assertTrue(events >= 7 * 24);
+		assertTrue(events < 7 * 24 + 2 * 40 + 2);
+		assertTrue(checks > 0);
+
+		// Not compiled, always eligible
+		assertTrue(eligibility.campaign(new Campaign()));
+		assertTrue(eligibility.creative(new Creative()));
+	}
+
+	@Test
+	public void testFreeze() throws Exception {
+		Campaign c = new Campaign();
+		c.name = "frozen";
+		c.budget = new Budget();
+		c.budget.activate_time = START;
+		c.budget.expire_time = START + HOUR;
+		List<Campaign> campaigns = new ArrayList<Campaign>();
+		campaigns.add(c);
+
+		Eligibility eligibility = Eligibility.getInstance();
+		try {
+			eligibility.freeze(START + HOUR / 2);
+			assertEquals(START + HOUR / 2, eligibility.now());
+			eligibility.compile(campaigns, eligibility.now());
+			assertTrue(eligibility.campaign(c));
+
+			// Spend is evaluated at the frozen time, not the wall clock, long after the expiry
+			eligibility.update(c);
+			assertTrue(eligibility.campaign(c));
+
+			eligibility.freeze(START + 2 * HOUR);
+			eligibility.update(c);
+			assertFalse(eligibility.campaign(c));
+		} finally {
+			eligibility.freeze(0);
+		}
+		assertFalse(eligibility.campaign(c));
+		assertTrue(eligibility.now() > START + 2 * HOUR);
+	}
+}
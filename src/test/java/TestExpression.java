@@ -0,0 +1,108 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.common.Expression;
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+
+/**
+ * Tests the node expression language: fields, arithmetic, comparisons, membership, types checked at compile
+ * time, and the translation of the JavaScript the nodes used to carry.
+ * @author Ben M. Faul
+ *
+ */
+public class TestExpression {
+
+	static BidRequest br;
+
+	@BeforeClass
+	public static void testSetup() throws Exception {
+		BidRequest.compileBuiltIns();
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"id\":\"expr-1\",\"at\":2,\"bcat\":[\"IAB25\",\"IAB26\"],");
+		sb.append("\"site\":{\"id\":\"s1\",\"domain\":\"example.com\",\"cat\":[\"IAB1\",\"IAB2-3\"]},");
+		sb.append("\"device\":{\"ua\":\"Mozilla/5.0\",\"ip\":\"10.0.0.1\",\"devicetype\":4,");
+		sb.append("\"geo\":{\"country\":\"USA\",\"lat\":42.5,\"lon\":-71.25}},");
+		sb.append("\"user\":{\"id\":\"u1\"},");
+		sb.append("\"imp\":[{\"id\":\"1\",\"bidfloor\":0.75,\"banner\":{\"w\":300,\"h\":250}}]}");
+		br = new BidRequest(sb);
+		br.setExchange("nexage");
+	}
+
+	static boolean test(String text) throws Exception {
+		return Expression.compile(text).test(br);
+	}
+
+	@Test
+	public void testFields() throws Exception {
+		assertTrue(test("device.geo.country == 'USA'"));
+		assertTrue(test("device.geo.country != \"GBR\""));
+		assertTrue(test("device.devicetype == 4"));
+		assertTrue(test("imp.0.banner.w * imp.0.banner.h == 75000"));
+		assertTrue(test("imp.0.bidfloor < 1 && imp.0.bidfloor >= 0.75"));
+		assertTrue(test("device.geo.lat - device.geo.lon > 100"));
+		assertTrue(test("(1 + 2) * 3 == 9 && 7 % 4 == 3 && -device.geo.lon == 71.25"));
+		assertTrue(test("device.geo.region == null"));
+		assertFalse(test("device.geo.region > 0"));
+		assertFalse(test("device.geo.region == 'MA'"));
+		assertTrue(test("!device.geo.region"));
+		assertTrue(test("device.geo.country + '-' + site.id == 'USA-s1'"));
+		assertEquals(300.0, Expression.compile("imp.0.banner.w").number(br), 0);
+	}
+
+	@Test
+	public void testMembership() throws Exception {
+		assertTrue(test("device.devicetype in [1, 4, 5]"));
+		assertFalse(test("device.devicetype in [1, 2, 3]"));
+		assertTrue(test("device.geo.country in ['CAN', 'USA']"));
+		assertTrue(test("device.geo.country not in ['CAN', 'MEX']"));
+		assertTrue(test("site.cat in ['IAB2-3']"));
+		assertFalse(test("bcat in ['IAB1', 'IAB2']"));
+		assertTrue(test("'IAB26' in bcat"));
+		assertTrue(test("'IAB9' not in bcat"));
+		assertTrue(test("not device.geo.country in ['CAN'] and site.domain == 'example.com'"));
+	}
+
+	@Test
+	public void testTypes() throws Exception {
+		String[] bad = { "device.devicetype == 'x' + 1 - 2", "1 == 'one'", "'a' * 2", "device.geo.country in [1, 'USA']",
+				"'a' in [1, 2]", "[1, 2] == 1", "device.geo.country ==", "site.cat in 'IAB1'", "foo(1)",
+				"device..geo", "'open" };
+		for (String text : bad) {
+			try {
+				Expression.compile(text);
+				fail(text + " compiled");
+			} catch (Exception error) {
+				assertTrue(error.getMessage(), error.getMessage().contains(text));
+			}
+		}
+		assertEquals(Expression.Type.BOOLEAN, Expression.compile("a.b == 1").type);
+		assertEquals(Expression.Type.NUMBER, Expression.compile("a.b * 2").type);
+		assertEquals(Expression.Type.STRING, Expression.compile("'x' + a.b").type);
+		assertEquals(Expression.Type.ANY, Expression.compile("a.b").type);
+	}
+
+	@Test
+	public void testTranslate() throws Exception {
+		assertTrue(Expression.translate("return device.geo.country === 'USA';").test(br));
+		assertTrue(Expression.translate("br.interrogate('device.devicetype') !== 5").test(br));
+		assertTrue(Expression.translate("br.device.geo.lat > 40 && br.device.geo.country != undefined").test(br));
+		assertNull(Expression.translate("var x = 1; x + 1"));
+		assertNull(Expression.translate("function exec(x) { return x; }"));
+
+		Node node = new Node("country", "device.geo.country", "EQUALS", "USA", "device.devicetype === 4", null);
+		assertTrue(node.test(br, null));
+		node = new Node("country", "device.geo.country", "EQUALS", "USA", "device.devicetype == 5", null);
+		assertFalse(node.test(br, null));
+		try {
+			new Node("country", "device.geo.country", "EQUALS", "USA", "while(true) {}", null);
+			fail("Script compiled without an engine");
+		} catch (Exception error) {
+
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.common.Dimension;
+import com.jacamars.dsp.rtb.common.Dimensions;
+import com.jacamars.dsp.rtb.common.FixedNodeDoSize;
+import com.jacamars.dsp.rtb.common.FixedNodeIsBanner;
+import com.jacamars.dsp.rtb.common.FixedNodeIsVideo;
+import com.jacamars.dsp.rtb.common.FormatIndex;
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.Format;
+import com.jacamars.dsp.rtb.pojo.Impression;
+import com.jacamars.dsp.rtb.pojo.Video;
+import com.jacamars.dsp.rtb.probe.Probe;
+
+/**
+ * Tests the format index never turns away a creative the size and type nodes would let through, and that
+ * it turns away most of them on banner traffic.
+ * @author Ben M. Faul
+ *
+ */
+public class TestFormatIndex {
+
+	static final int[][] SIZES = { { 300, 250 }, { 728, 90 }, { 320, 50 }, { 160, 600 }, { 300, 600 }, { 970, 250 },
+			{ 468, 60 }, { 336, 280 }, { 640, 480 }, { 320, 480 } };
+
+	static Probe probe = new Probe();
+
+	/**
+	 * Make a mix of creatives: single sizes, lists, ranges, no size at all, video.
+	 */
+	static List<Creative> creatives(Random rand, int n) {
+		List<Creative> list = new ArrayList<Creative>();
+		for (int i = 0; i < n; i++) {
+			Creative c = new Creative();
+			c.impid = "c" + i;
+			int[] size = SIZES[rand.nextInt(SIZES.length)];
+			switch (rand.nextInt(10)) {
+			case 0:
+				break;
+			case 1:
+				c.dimensions = new Dimensions();
+				c.dimensions.add(new Dimension(250, 800, -1, -1));
+				break;
+			case 2:
+				c.dimensions = new Dimensions();
+				for (int k = 0; k < 3; k++) {
+					int[] s = SIZES[rand.nextInt(SIZES.length)];
+					c.dimensions.add(new Dimension(s[0], s[1]));
+				}
+				break;
+			case 3:
+				c.isVideo = true;
+				c.videoDuration = 30;
+				break;
+			default:
+				c.w = size[0];
+				c.h = size[1];
+				c.dimensions = new Dimensions();
+				c.dimensions.add(new Dimension(size[0], size[1]));
+			}
+			c.isBanner = !c.isVideo && rand.nextBoolean();
+			list.add(c);
+		}
+		return list;
+	}
+
+	static Impression impression(Random rand) {
+		Impression imp = new Impression();
+		int[] size = SIZES[rand.nextInt(SIZES.length)];
+		switch (rand.nextInt(6)) {
+		case 0:
+			imp.video = new Video();
+			imp.w = 640;
+			imp.h = 480;
+			break;
+		case 1:
+			imp.format = new ArrayList<Format>();
+			for (int k = 0; k < 2; k++) {
+				int[] s = SIZES[rand.nextInt(SIZES.length)];
+				imp.format.add(new Format(s[0], s[1]));
+			}
+			break;
+		case 2:
+			imp.instl = 1;
+			break;
+		default:
+			imp.w = size[0];
+			imp.h = size[1];
+		}
+		return imp;
+	}
+
+	/**
+	 * Run the size and type nodes the way Creative.process() does.
+	 */
+	static boolean nodes(BidRequest br, Creative c, Impression imp) throws Exception {
+		Node[] nodes = { new FixedNodeDoSize(), new FixedNodeIsVideo(), new FixedNodeIsBanner() };
+		for (Node node : nodes) {
+			if (!node.test(br, c, "test", imp, null, probe, new ArrayList<>()))
+				return false;
+		}
+		return true;
+	}
+
+	@Test
+	public void testSuperset() throws Exception {
+		Random rand = new Random(1);
+		List<Creative> creatives = creatives(rand, 500);
+		Campaign camp = new Campaign();
+		camp.creatives = creatives;
+		List<Campaign> campaigns = new ArrayList<Campaign>();
+		campaigns.add(camp);
+		FormatIndex.getInstance().compile(campaigns);
+		assertEquals(500, FormatIndex.getInstance().size());
+
+		BidRequest br = new BidRequest();
+		br.setExchange("nexage");
+		long pass = 0, accepted = 0;
+		for (int i = 0; i < 1000; i++) {
+			Impression imp = impression(rand);
+			for (Creative c : creatives) {
+				boolean exact = nodes(br, c, imp);
+				boolean index = FormatIndex.getInstance().accepts(imp, c);
+				if (exact)
+					assertTrue(c.impid + " turned away", index);
+				pass += exact ? 1 : 0;
+				accepted += index ? 1 : 0;
+			}
+		}
+		System.out.printf("nodes pass %d, index accepts %d of %d%n", pass, accepted, 1000L * creatives.size());
+	}
+
+	/**
+	 * A banner impression of one size only sees the creatives of that size and those without one.
+	 */
+	@Test
+	public void testBanner() throws Exception {
+		Random rand = new Random(2);
+		List<Creative> creatives = new ArrayList<Creative>();
+		for (int i = 0; i < 1000; i++) {
+			Creative c = new Creative();
+			int[] size = SIZES[i % SIZES.length];
+			c.isBanner = true;
+			c.w = size[0];
+			c.h = size[1];
+			c.dimensions = new Dimensions();
+			c.dimensions.add(new Dimension(size[0], size[1]));
+			creatives.add(c);
+		}
+		Campaign camp = new Campaign();
+		camp.creatives = creatives;
+		List<Campaign> campaigns = new ArrayList<Campaign>();
+		campaigns.add(camp);
+		FormatIndex.getInstance().compile(campaigns);
+
+		Impression imp = new Impression();
+		imp.w = 300;
+		imp.h = 250;
+		int accepted = 0;
+		long time = System.nanoTime();
+		for (Creative c : creatives)
+			accepted += FormatIndex.getInstance().accepts(imp, c) ? 1 : 0;
+		time = System.nanoTime() - time;
+		assertEquals(100, accepted);
+		assertEquals(100, FormatIndex.count(imp));
+		System.out.printf("300x250 banner: %d of %d creatives left, %d ns each%n", accepted, creatives.size(),
+				time / creatives.size());
+
+		imp = new Impression();
+		imp.video = new Video();
+		assertFalse(FormatIndex.getInstance().accepts(imp, creatives.get(0)));
+		assertEquals(Probe.BID_CREAT_IS_BANNER, FormatIndex.getInstance().reject(imp, creatives.get(0)));
+	}
+}
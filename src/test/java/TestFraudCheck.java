@@ -0,0 +1,217 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.fraud.AnuraClient;
+import com.jacamars.dsp.rtb.fraud.ForensiqClient;
+import com.jacamars.dsp.rtb.fraud.FraudCheck;
+import com.jacamars.dsp.rtb.fraud.FraudLog;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the asynchronous fraud check against a stub Forensiq server on localhost. The stub answers
+ * by ip: 1.1.1.1 is a bot, 2.2.2.2 is clean, 3.3.3.3 is slow and 4.4.4.4 gets garbage. A stub Anura
+ * says everything is a bot.
+ * @author Ben M. Faul
+ *
+ */
+public class TestFraudCheck {
+
+	static HttpServer server;
+	static AtomicInteger calls = new AtomicInteger();
+	static ForensiqClient forensiq;
+	static AnuraClient anura;
+
+	@BeforeClass
+	public static void testSetup() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/check", exchange -> {
+			calls.incrementAndGet();
+			String query = exchange.getRequestURI().getQuery();
+			String reply = "{\"riskScore\":10,\"timeMs\":1}";
+			if (query.contains("ip=1.1.1.1"))
+				reply = "{\"riskScore\":90,\"timeMs\":1}";
+			else if (query.contains("ip=3.3.3.3")) {
+				try {
+					Thread.sleep(500);
+				} catch (InterruptedException e) {
+				}
+			} else if (query.contains("ip=4.4.4.4"))
+				reply = "not json";
+			byte[] bytes = reply.getBytes();
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(bytes);
+			}
+		});
+		server.createContext("/direct.json", exchange -> {
+			calls.incrementAndGet();
+			byte[] bytes = "{\"result\":\"bad\"}".getBytes();
+			exchange.sendResponseHeaders(200, bytes.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(bytes);
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+
+		ForensiqClient.endpoint = "http://localhost:" + server.getAddress().getPort() + "/check";
+		forensiq = ForensiqClient.build("testkey");
+		AnuraClient.endpoint = "http://localhost:" + server.getAddress().getPort();
+		anura = AnuraClient.build("testkey");
+	}
+
+	@AfterClass
+	public static void testCleanup() {
+		server.stop(0);
+	}
+
+	@Before
+	public void reset() {
+		FraudCheck.clear();
+		FraudCheck.deadlines.clear();
+		FraudCheck.deadline = 2000;
+		calls.set(0);
+	}
+
+	/**
+	 * A bot is reported, and the second request from the same ip and domain uses the cached verdict.
+	 * @throws Exception on network errors.
+	 */
+	@Test
+	public void testBotIsCached() throws Exception {
+		CompletableFuture<FraudLog> f = FraudCheck.start(forensiq, "display", "1.1.1.1", null, null, "seller", "a.com");
+		FraudLog log = FraudCheck.join(f, "test");
+		assertNotNull(log);
+		assertEquals(90, log.risk, 0);
+
+		long hits = FraudCheck.hits.get();
+		f = FraudCheck.start(forensiq, "display", "1.1.1.1", null, null, "seller", "a.com");
+		assertNotNull(FraudCheck.join(f, "test"));
+		assertEquals(hits + 1, FraudCheck.hits.get());
+		assertEquals(1, calls.get());
+
+		// Another domain is another verdict
+		f = FraudCheck.start(forensiq, "display", "1.1.1.1", null, null, "seller", "b.com");
+		assertNotNull(FraudCheck.join(f, "test"));
+		assertEquals(2, calls.get());
+	}
+
+	/**
+	 * A clean ip returns no log.
+	 * @throws Exception on network errors.
+	 */
+	@Test
+	public void testClean() throws Exception {
+		CompletableFuture<FraudLog> f = FraudCheck.start(forensiq, "display", "2.2.2.2", null, null, "seller", "a.com");
+		assertNull(FraudCheck.join(f, "test"));
+	}
+
+	/**
+	 * A slow service is cut off at the exchange's deadline.
+	 * @throws Exception on network errors.
+	 */
+	@Test
+	public void testDeadline() throws Exception {
+		FraudCheck.deadlines.put("slow", 50L);
+		long timeouts = FraudCheck.timeouts.get();
+		CompletableFuture<FraudLog> f = FraudCheck.start(forensiq, "display", "3.3.3.3", null, null, "seller", "a.com");
+		long time = System.currentTimeMillis();
+		try {
+			FraudCheck.join(f, "slow");
+			fail("Should have timed out");
+		} catch (TimeoutException error) {
+			// expected
+		}
+		time = System.currentTimeMillis() - time;
+		assertTrue("Waited " + time + " ms", time < 400);
+		assertEquals(timeouts + 1, FraudCheck.timeouts.get());
+
+		// The late check is dropped, the next request asks the service again
+		long checks = FraudCheck.calls.get();
+		f = FraudCheck.start(forensiq, "display", "3.3.3.3", null, null, "seller", "a.com");
+		assertEquals(checks + 1, FraudCheck.calls.get());
+		assertNull(FraudCheck.join(f, "test"));
+	}
+
+	/**
+	 * A service that does not answer within the longest deadline fails the check, which is not cached.
+	 * @throws Exception on network errors.
+	 */
+	@Test
+	public void testHungService() throws Exception {
+		FraudCheck.deadline = 100;
+		CompletableFuture<FraudLog> f = FraudCheck.start(forensiq, "display", "3.3.3.3", null, null, "seller", "a.com");
+		long time = System.currentTimeMillis();
+		try {
+			f.get();
+			fail("Should have failed");
+		} catch (ExecutionException error) {
+			// expected
+		}
+		time = System.currentTimeMillis() - time;
+		assertTrue("Waited " + time + " ms", time < 400);
+		assertEquals(0, FraudCheck.getStats().get("cached"));
+	}
+
+	/**
+	 * A bad reply is an error, and it is not cached.
+	 * @throws Exception on network errors.
+	 */
+	@Test
+	public void testErrorNotCached() throws Exception {
+		CompletableFuture<FraudLog> f = FraudCheck.start(forensiq, "display", "4.4.4.4", null, null, "seller", "a.com");
+		try {
+			FraudCheck.join(f, "test");
+			fail("Should have failed");
+		} catch (TimeoutException error) {
+			fail("Should have failed, not timed out");
+		} catch (Exception error) {
+			// expected
+		}
+		f = FraudCheck.start(forensiq, "display", "4.4.4.4", null, null, "seller", "a.com");
+		try {
+			FraudCheck.join(f, "test");
+		} catch (Exception error) {
+			// expected
+		}
+		assertEquals(2, calls.get());
+	}
+
+	/**
+	 * A request Anura does not sample is not a clean verdict, the next sampled one is checked for real.
+	 * @throws Exception on network errors.
+	 */
+	@Test
+	public void testUnsampledNotCached() throws Exception {
+		int threshhold = AnuraClient.threshhold;
+		try {
+			AnuraClient.threshhold = 0;
+			CompletableFuture<FraudLog> f = FraudCheck.start(anura, "display", "5.5.5.5", null, null, "seller", "a.com");
+			assertNull(FraudCheck.join(f, "test"));
+			assertEquals(0, calls.get());
+
+			AnuraClient.threshhold = 100;
+			long hits = FraudCheck.hits.get();
+			f = FraudCheck.start(anura, "display", "5.5.5.5", null, null, "seller", "a.com");
+			assertNotNull(FraudCheck.join(f, "test"));
+			assertEquals(hits, FraudCheck.hits.get());
+			assertEquals(1, calls.get());
+		} finally {
+			AnuraClient.threshhold = threshhold;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.bidder.ImpressionEvaluator;
+import com.jacamars.dsp.rtb.bidder.SelectedCreative;
+import com.jacamars.dsp.rtb.common.Budget;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.pojo.Impression;
+import com.jacamars.dsp.rtb.probe.Probe;
+
+/**
+ * Tests the impression evaluator on synthetic requests of 1 to 50 impressions, a mix of banner and video
+ * slots with rising floors. Each creative must get a candidate on exactly the impressions of its type whose
+ * floor it clears, the parallel and the serial evaluation must agree, and the optimizer must keep to one
+ * bid per impression and to the campaign's budget.
+ * @author Ben M. Faul
+ *
+ */
+public class TestImpressionEvaluator {
+
+	static Probe probe = new Probe();
+	static int threshold;
+
+	static Creative banner;
+	static Creative video;
+
+	@BeforeClass
+	public static void testSetup() throws Exception {
+		threshold = ImpressionEvaluator.parallelThreshold;
+		BidRequest.compileBuiltIns();
+
+		banner = new Creative();
+		banner.impid = "banner";
+		banner.isBanner = true;
+		banner.price = 1.0;
+		banner.encodeAttributes();
+
+		video = new Creative();
+		video.impid = "video";
+		video.isVideo = true;
+		video.videoDuration = 30;
+		video.price = 5.0;
+		video.encodeAttributes();
+	}
+
+	@AfterClass
+	public static void testCleanup() {
+		ImpressionEvaluator.parallelThreshold = threshold;
+	}
+
+	/**
+	 * Make a request, every third impression is video, the floors rise by a quarter each impression.
+	 */
+	static BidRequest request(int n) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"id\":\"imps-").append(n).append("\",\"at\":2,");
+		sb.append("\"site\":{\"id\":\"s1\",\"domain\":\"example.com\",\"page\":\"http://example.com/a\"},");
+		sb.append("\"device\":{\"ua\":\"Mozilla/5.0\",\"ip\":\"10.0.0.1\",\"geo\":{\"country\":\"USA\"}},");
+		sb.append("\"user\":{\"id\":\"u1\"},\"imp\":[");
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				sb.append(",");
+			sb.append("{\"id\":\"").append(i + 1).append("\",\"bidfloor\":").append(floor(i)).append(",");
+			if (i % 3 == 2)
+				sb.append("\"video\":{\"w\":640,\"h\":480,\"mimes\":[\"video/mp4\"]}}");
+			else
+				sb.append("\"banner\":{\"w\":300,\"h\":").append(i % 2 == 0 ? 250 : 50).append("}}");
+		}
+		sb.append("]}");
+		BidRequest br = new BidRequest(sb);
+		br.setExchange("nexage");
+		return br;
+	}
+
+	static double floor(int i) {
+		return 0.25 * (i + 1) + 0.01;
+	}
+
+	/**
+	 * Return the impressions the creative should get.
+	 */
+	static List<Integer> expected(Creative creative, int n) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			boolean isVideo = i % 3 == 2;
+			if (isVideo == (creative == video) && floor(i) <= creative.price)
+				list.add(i);
+		}
+		return list;
+	}
+
+	static List<Integer> positions(BidRequest br, List<SelectedCreative> list) {
+		List<Integer> positions = new ArrayList<Integer>();
+		for (SelectedCreative sc : list) {
+			for (int i = 0; i < br.getImpressions(); i++) {
+				if (br.getImpression(i) == sc.getImpression())
+					positions.add(i);
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Each creative gets the impressions of its type it can pay for, the same in parallel or not, and with
+	 * the size of the impression it was picked for.
+	 * @throws Exception on parsing errors.
+	 */
+	@Test
+	public void testEligibility() throws Exception {
+		for (int n = 1; n <= 50; n++) {
+			BidRequest br = request(n);
+			assertEquals(n, br.getImpressions());
+			for (Creative creative : new Creative[] { banner, video }) {
+				ImpressionEvaluator.parallelThreshold = Integer.MAX_VALUE;
+				ImpressionEvaluator serial = new ImpressionEvaluator(br);
+				List<SelectedCreative> a = serial.evaluate(creative, "test", new StringBuilder(), probe);
+
+				ImpressionEvaluator.parallelThreshold = 1;
+				ImpressionEvaluator parallel = new ImpressionEvaluator(br);
+				List<SelectedCreative> b = parallel.evaluate(creative, "test", new StringBuilder(), probe);
+
+				assertEquals(creative.impid + " on " + n, expected(creative, n), positions(br, a));
+				assertEquals(positions(br, a), positions(br, b));
+				for (SelectedCreative sc : a) {
+					Impression imp = sc.getImpression();
+					assertEquals(Integer.toString(imp.w), sc.strW);
+					assertEquals(Integer.toString(imp.h), sc.strH);
+					assertEquals(creative.price, sc.price, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The optimizer gives each impression to the highest bid the campaign can afford.
+	 * @throws Exception on parsing errors.
+	 */
+	@Test
+	public void testOptimizer() throws Exception {
+		Campaign rich = new Campaign();
+		rich.name = "rich";
+		Campaign poor = new Campaign();
+		poor.name = "poor";
+		poor.budget = new Budget();
+		poor.budget.setTotalBudget(0.012); // Two video impressions at 5 CPM
+
+		Creative cheap = new Creative();
+		cheap.impid = "cheap";
+		cheap.price = 0.5;
+		cheap.encodeAttributes();
+
+		BidRequest br = request(12);
+		ImpressionEvaluator evaluator = new ImpressionEvaluator(br);
+		List<SelectedCreative> candidates = new ArrayList<SelectedCreative>();
+		for (SelectedCreative sc : evaluator.evaluate(video, "poor", null, probe)) {
+			sc.setCampaign(poor);
+			candidates.add(sc);
+		}
+		for (Creative creative : new Creative[] { banner, cheap }) {
+			for (SelectedCreative sc : evaluator.evaluate(creative, "rich", null, probe)) {
+				sc.setCampaign(rich);
+				candidates.add(sc);
+			}
+		}
+
+		List<SelectedCreative> winners = evaluator.optimize(candidates);
+
+		// The banner beats the cheap creative on the first two, its floor is too high after that. The budget
+		// covers the first two video slots only, and nothing else can take the others.
+		assertEquals(List.of(0, 1, 2, 5), positions(br, winners));
+		assertSame(banner, winners.get(0).getCreative());
+		assertSame(banner, winners.get(1).getCreative());
+		assertSame(video, winners.get(2).getCreative());
+		assertSame(video, winners.get(3).getCreative());
+		assertSame(rich, winners.get(0).getCampaign());
+		assertSame(poor, winners.get(3).getCampaign());
+
+		// Without the budget every video slot is taken
+		poor.budget = null;
+		winners = evaluator.optimize(candidates);
+		assertEquals(List.of(0, 1, 2, 5, 8, 11), positions(br, winners));
+	}
+
+	/**
+	 * Print the cost per creative as the impressions go from 1 to 50.
+	 * @throws Exception on parsing errors.
+	 */
+	@Test
+	public void testScaling() throws Exception {
+		for (int n : new int[] { 1, 2, 5, 10, 20, 50 }) {
+			BidRequest br = request(n);
+			ImpressionEvaluator evaluator = new ImpressionEvaluator(br);
+			for (int threshold : new int[] { Integer.MAX_VALUE, 8 }) {
+				ImpressionEvaluator.parallelThreshold = threshold;
+				int found = 0;
+				for (int i = 0; i < 2000; i++)
+					found += evaluator.evaluate(banner, "test", new StringBuilder(), probe).size();
+				long time = System.nanoTime();
+				int iterations = 10000;
+				for (int i = 0; i < iterations; i++)
+					found += evaluator.evaluate(banner, "test", new StringBuilder(), probe).size();
+				time = System.nanoTime() - time;
+				System.out.printf("%2d impressions, %s: %6d ns per creative, %d candidates%n", n,
+						threshold == 8 ? "parallel" : "serial  ", time / iterations, found / (iterations + 2000));
+			}
+		}
+	}
+}
@@ -1,17 +1,32 @@
 package test.java;
 
+import static org.junit.Assert.*;
+
 import com.jacamars.dsp.rtb.bidder.RTBServer;
 
+import com.jacamars.dsp.rtb.commands.PixelClickConvertLog;
+import com.jacamars.dsp.rtb.jmq.EventIF;
+import com.jacamars.dsp.rtb.jmq.Subscriber;
 import com.jacamars.dsp.rtb.jmq.ZPublisher;
 
-
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.junit.Test;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -64,4 +79,126 @@ public class TestKafka  {
 
         Thread.sleep(15000);
 	}
+
+	/**
+	 * Messages are keyed on the channel's field, strings go unkeyed, and the callback counts the acks.
+	 * @throws Exception on test errors.
+	 */
+	@Test
+	public void testKeys() throws Exception {
+		MockProducer<String, String> producer = new MockProducer<String, String>(true, new StringSerializer(),
+				new StringSerializer());
+		ZPublisher z = new ZPublisher(producer, "clicks");
+		z.setKey("bid_id");
+		z.setKey("ad_id");
+		assertEquals("bid_id", z.getKey());
+
+		for (String id : new String[] { "a", "b" }) {
+			PixelClickConvertLog c = new PixelClickConvertLog();
+			c.bid_id = id;
+			c.ad_id = "1";
+			z.add(c);
+		}
+		z.add("Hello world");
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (producer.history().size() < 3 && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		z.close();
+
+		assertEquals(3, producer.history().size());
+		assertEquals("a", producer.history().get(0).key());
+		assertEquals("b", producer.history().get(1).key());
+		assertNull(producer.history().get(2).key());
+		assertEquals("Hello world", producer.history().get(2).value());
+		assertEquals(3, z.getSent());
+		assertEquals(3, z.getAcked());
+		assertEquals(0, z.getFailed());
+	}
+
+	/**
+	 * Sends complete asynchronously, the callback counts the acks and the failures.
+	 * @throws Exception on test errors.
+	 */
+	@Test
+	public void testCounters() throws Exception {
+		MockProducer<String, String> producer = new MockProducer<String, String>(false, new StringSerializer(),
+				new StringSerializer());
+		ZPublisher z = new ZPublisher(producer, "wins");
+		z.addString("one");
+		z.addString("two");
+		z.addString("three");
+		assertEquals(3, z.getSent());
+		assertEquals(0, z.getAcked());
+
+		assertTrue(producer.completeNext());
+		assertTrue(producer.errorNext(new RuntimeException("broker went away")));
+		assertTrue(producer.completeNext());
+		z.close();
+
+		assertEquals(2, z.getAcked());
+		assertEquals(1, z.getFailed());
+		assertEquals(0, z.getDropped());
+	}
+
+	/**
+	 * Each partition is handled in order on its own worker, and the offsets are committed once handled.
+	 * @throws Exception on test errors.
+	 */
+	@Test
+	public void testPartitionWorkers() throws Exception {
+		int partitions = 4;
+		int n = 100;
+		MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST);
+		List<TopicPartition> tps = new ArrayList<TopicPartition>();
+		Map<TopicPartition, Long> beginning = new HashMap<TopicPartition, Long>();
+		for (int p = 0; p < partitions; p++) {
+			TopicPartition tp = new TopicPartition("clicks", p);
+			tps.add(tp);
+			beginning.put(tp, 0L);
+		}
+		consumer.assign(tps);
+		consumer.updateBeginningOffsets(beginning);
+		for (int i = 0; i < n; i++) {
+			for (int p = 0; p < partitions; p++)
+				consumer.addRecord(new ConsumerRecord<String, String>("clicks", p, i, "key", p + ":" + i));
+		}
+
+		Map<String, List<Integer>> seen = new ConcurrentHashMap<String, List<Integer>>();
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		AtomicInteger count = new AtomicInteger();
+		EventIF handler = new EventIF() {
+			@Override
+			public void handleMessage(String id, String msg) {
+				String[] parts = msg.split(":");
+				seen.computeIfAbsent(parts[0], k -> new ArrayList<Integer>()).add(Integer.parseInt(parts[1]));
+				threads.add(Thread.currentThread().getName());
+				count.incrementAndGet();
+			}
+
+			@Override
+			public void shutdown() {
+
+			}
+		};
+
+		Subscriber s = new Subscriber(handler, consumer, "clicks", partitions);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (count.get() < n * partitions && System.currentTimeMillis() < deadline)
+			Thread.sleep(1);
+		Thread.sleep(100);
+
+		assertEquals(n * partitions, count.get());
+		assertEquals(n * partitions, s.getReceived());
+		assertEquals(partitions, threads.size());
+		for (int p = 0; p < partitions; p++) {
+			List<Integer> list = seen.get("" + p);
+			assertEquals(n, list.size());
+			for (int i = 0; i < n; i++)
+				assertEquals(i, list.get(i).intValue());
+			assertEquals(n, consumer.committed(tps.get(p)).offset());
+		}
+		assertEquals(0, s.getCommitErrors());
+		s.shutdown();
+	}
 }
@@ -0,0 +1,108 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.tools.OpenLoad;
+import com.jacamars.dsp.rtb.tools.OpenLoad.Profile;
+import com.jacamars.dsp.rtb.tools.OpenLoad.Step;
+import com.jacamars.dsp.rtb.tools.OpenLoad.Template;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the open loop load generator: the rate profiles, the request variants, and that a stall in the bidder
+ * is charged to every request it held up, not just the one it was working on.
+ * @author Ben M. Faul
+ *
+ */
+public class TestOpenLoad {
+
+	@Test
+	public void testProfiles() throws Exception {
+		Profile p = Profile.step(100, 300, 100, 2);
+		assertEquals(3, p.steps());
+		assertEquals(6.0, p.duration(), 0);
+		assertEquals(100.0, p.rate(1.9), 0);
+		assertEquals(300.0, p.rate(5.9), 0);
+		assertEquals(2, p.step(5.9));
+
+		p = Profile.ramp(0, 1000, 10);
+		assertEquals(10, p.steps());
+		assertEquals(500.0, p.rate(5), 0);
+		assertEquals(50.0, p.target(0), 0);
+
+		p = Profile.constant(250, 3);
+		assertEquals(1, p.steps());
+		assertEquals(250.0, p.rate(2.5), 0);
+	}
+
+	@Test
+	public void testVariants() throws Exception {
+		Template t = new Template("http://localhost:8080/rtb/bids/", "nexage", "SampleBids/nexage.txt", 1);
+		String a = t.body(0);
+		String b = t.body(1);
+		assertTrue(a.contains("\"id\":\"openload-0-"));
+		assertTrue(b.contains("\"id\":\"openload-1-"));
+		assertFalse(a.contains("166.137.138.18"));
+		assertFalse(a.equals(b));
+		assertEquals("/rtb/bids/nexage", t.uri.getPath());
+	}
+
+	@Test
+	public void testStall() throws Exception {
+		AtomicInteger n = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/rtb/bids/", ex -> {
+			ex.getRequestBody().readAllBytes();
+			int i = n.incrementAndGet();
+			// Half a second into the run, after the warm up requests to each endpoint
+			if (i == 2 * OpenLoad.WARM + 100) {
+				// A 300 ms pause, a GC for example, everything behind it waits
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException error) {
+				}
+			}
+			if (i % 2 == 0) {
+				byte[] bid = "{\"id\":\"x\",\"seatbid\":[]}".getBytes();
+				ex.sendResponseHeaders(200, bid.length);
+				ex.getResponseBody().write(bid);
+			} else
+				ex.sendResponseHeaders(204, -1);
+			ex.close();
+		});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		server.setExecutor(executor);
+		server.start();
+		try {
+			List<Template> mix = Template.parse(
+					"http://localhost:" + server.getAddress().getPort() + "/rtb/bids/",
+					"nexage=SampleBids/nexage.txt:3,smaato=SampleBids/smaato.json:1");
+			OpenLoad load = new OpenLoad(mix, Profile.constant(200, 2), 1000, 10000);
+			Step[] steps = load.run(null);
+			load.close();
+
+			Step s = steps[0];
+			long sent = s.counts.sent.sum();
+			assertTrue("sent " + sent, sent >= 390 && sent <= 410);
+			assertEquals(0, s.counts.timeout.sum());
+			assertEquals(0, s.counts.error.sum());
+			assertEquals(sent, s.counts.bid.sum() + s.counts.nobid.sum());
+			assertTrue(s.counts.bid.sum() > 0);
+
+			// About 60 requests were sent into the pause, so more than 1% of them waited 150 ms or more
+			assertTrue("max " + load.getCorrected().getMaxValue(), load.getCorrected().getMaxValue() >= 290000);
+			assertTrue("p99 " + s.latency.getValueAtPercentile(99), s.latency.getValueAtPercentile(99) >= 150000);
+		} finally {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.time.ZoneId;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.crosstalk.budget.Pacer;
+import com.jacamars.dsp.rtb.common.Budget;
+import com.jacamars.dsp.rtb.tools.PacingSimulator;
+
+/**
+ * Tests the spend pacing controller with the deterministic simulator: paced spend meets the daily budget
+ * evenly across the day, over a wide range of traffic, where bidding on everything spends it all by morning.
+ * @author Ben M. Faul
+ *
+ */
+public class TestPacing {
+
+	static final double DAILY = 1000;
+
+	@Test
+	public void testSimulatedDay() throws Exception {
+		for (long seed = 1; seed <= 3; seed++) {
+			PacingSimulator.Result capped = PacingSimulator.simulate(DAILY, 4, seed, false);
+			PacingSimulator.Result paced = PacingSimulator.simulate(DAILY, 4, seed, true);
+
+			// Without pacing, the cap trips before noon and nothing is spent after
+			assertTrue(capped.capped > 0 && capped.capped < 12 * 60);
+			assertTrue(capped.unevenness() > 1);
+
+			assertEquals(DAILY, paced.total, DAILY * 0.02);
+			assertTrue("" + paced.unevenness(), paced.unevenness() < 0.1);
+			for (int h = 1; h < 24; h++)
+				assertEquals("hour " + h, DAILY / 24, paced.hourly[h], DAILY / 24 * 0.25);
+		}
+	}
+
+	@Test
+	public void testDemandRange() throws Exception {
+		for (double demand : new double[] { 2, 20, 200 }) {
+			PacingSimulator.Result paced = PacingSimulator.simulate(DAILY, demand, 7, true);
+			assertTrue(demand + ": " + paced.total, paced.total >= DAILY * 0.95);
+			assertTrue(demand + ": " + paced.total, paced.total <= DAILY * 1.01);
+			// After the first minutes at full participation, no hour runs ahead of the budget
+			for (int h = 1; h < 24; h++)
+				assertTrue(demand + ": hour " + h, paced.hourly[h] < DAILY / 24 * 1.25);
+		}
+	}
+
+	@Test
+	public void testDeterministic() throws Exception {
+		PacingSimulator.Result a = PacingSimulator.simulate(DAILY, 4, 11, true);
+		PacingSimulator.Result b = PacingSimulator.simulate(DAILY, 4, 11, true);
+		assertArrayEquals(a.hourly, b.hourly, 0);
+		assertArrayEquals(a.participation, b.participation, 0);
+	}
+
+	@Test
+	public void testTargetRate() throws Exception {
+		ZoneId utc = ZoneId.of("UTC");
+		long midnight = 1706745600000L;
+		long now = midnight + 90 * 60000; // 01:30
+
+		assertEquals(Double.MAX_VALUE, Pacer.targetRate(null, now, utc), 0);
+		Budget budget = new Budget();
+		assertEquals(Double.MAX_VALUE, Pacer.targetRate(budget, now, utc), 0);
+
+		// 30 left in the last 30 minutes of the hour
+		budget.setHourlyBudget(60);
+		budget.hourlyCost.set(30.0);
+		assertEquals(1.0, Pacer.targetRate(budget, now, utc), 1e-9);
+
+		// 450 left in the 22.5 hours left of the day is tighter
+		budget.setDailyBudget(500);
+		budget.dailyCost.set(50.0);
+		assertEquals(450.0 / (22.5 * 60), Pacer.targetRate(budget, now, utc), 1e-9);
+
+		// Spent, nothing more
+		budget.dailyCost.set(600.0);
+		assertEquals(0, Pacer.targetRate(budget, now, utc), 0);
+
+		// With nothing to spend, participation goes to 0
+		Pacer pacer = new Pacer();
+		pacer.update(now, 100, 0);
+		assertEquals(0, pacer.update(now + 60000, 101, 0), 0);
+	}
+}
@@ -0,0 +1,77 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.tools.RandomSource;
+import com.jacamars.dsp.rtb.tools.Replay;
+
+/**
+ * Tests the parts of the replay that don't need a bidder: the seeded random numbers repeat, and the digest
+ * diff finds the decisions that changed.
+ * @author Ben M. Faul
+ *
+ */
+public class TestReplay {
+
+	static List<Integer> draw(long seed) {
+		RandomSource.seed(seed);
+		List<Integer> list = new ArrayList<Integer>();
+		for (int i = 0; i < 20; i++)
+			list.add(RandomSource.nextInt(1000));
+		List<Integer> shuffled = new ArrayList<Integer>(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8));
+		Collections.shuffle(shuffled, RandomSource.random());
+		list.addAll(shuffled);
+		return list;
+	}
+
+	@Test
+	public void testSeeded() throws Exception {
+		try {
+			assertEquals(draw(42), draw(42));
+			assertNotEquals(draw(42), draw(43));
+			assertTrue(RandomSource.isSeeded());
+		} finally {
+			RandomSource.unseed();
+		}
+		assertFalse(RandomSource.isSeeded());
+		double d = RandomSource.nextDouble();
+		assertTrue(d >= 0 && d < 1);
+	}
+
+	@Test
+	public void testDiff() throws Exception {
+		File dir = Files.createTempDirectory("replay").toFile();
+		dir.deleteOnExit();
+		File a = new File(dir, "a.jsonl");
+		File b = new File(dir, "b.jsonl");
+		Files.write(a.toPath(), Arrays.asList(
+				"{\"n\":0,\"id\":\"x\",\"exchange\":\"nexage\",\"bids\":[{\"campaign\":\"1\",\"creative\":\"2\",\"price\":1.5}]}",
+				"{\"n\":1,\"id\":\"y\",\"exchange\":\"nexage\",\"reason\":\"No matching campaign\"}"));
+		Files.write(b.toPath(), Arrays.asList(
+				"{\"n\":0,\"exchange\":\"nexage\",\"id\":\"x\",\"bids\":[{\"campaign\":\"1\",\"creative\":\"2\",\"price\":1.5}]}",
+				"{\"n\":1,\"id\":\"y\",\"exchange\":\"nexage\",\"bids\":[{\"campaign\":\"1\",\"creative\":\"3\",\"price\":1.5}]}",
+				"{\"n\":2,\"id\":\"z\",\"exchange\":\"nexage\",\"reason\":\"No matching campaign\"}"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(bytes);
+		assertEquals(0, Replay.diff(a.getPath(), a.getPath(), out));
+
+		// Key order doesn't matter, the changed decision and the extra line do
+		assertEquals(2, Replay.diff(a.getPath(), b.getPath(), out));
+		out.flush();
+		String text = bytes.toString();
+		assertTrue(text, text.contains("\"creative\":\"3\""));
+		assertTrue(text, text.contains("3 decisions, 2 differ"));
+	}
+}
@@ -0,0 +1,115 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.bidder.Router;
+import com.jacamars.dsp.rtb.pojo.BidRequest;
+import com.jacamars.dsp.rtb.tools.DbTools;
+
+/**
+ * Routing conformance: every endpoint the bid handler serves, and every exchange in Campaigns/payday.json,
+ * routes the way the handler's chain of contains() did.
+ * @author Ben M. Faul
+ *
+ */
+public class TestRouter {
+
+	/** The handler's old chain, in its order */
+	static final String[] CHAIN = { "/rtb/bids", "/rtb/win", "/ready", "/callback", "/pixel", "/delpixel",
+			"/postback", "/track", "/vast", "/redirect", "pinger", "crossdomain.xml", "summary", "favicon" };
+
+	static int legacy(String target) {
+		for (int i = 0; i < CHAIN.length; i++) {
+			if (target.contains(CHAIN[i]))
+				return i;
+		}
+		return Router.OTHER;
+	}
+
+	/** The exchanges the way Configuration registers them, uri to prototype */
+	static Map<String, BidRequest> exchanges() throws Exception {
+		String content = new String(Files.readAllBytes(Paths.get("Campaigns/payday.json")));
+		Map<?, ?> m = DbTools.mapper.readValue(content, Map.class);
+		Map<String, BidRequest> exchanges = new HashMap<String, BidRequest>();
+		for (Object o : (List<?>) m.get("seats")) {
+			String bid = (String) ((Map<?, ?>) o).get("bid");
+			String uri = bid.substring(0, bid.indexOf("="));
+			exchanges.put(uri, new BidRequest());
+			if (bid.contains("Appnexus")) {
+				for (String extra : new String[] { "/ready", "/pixel", "/click", "/delivered" })
+					exchanges.put(uri + extra, new BidRequest());
+			}
+		}
+		return exchanges;
+	}
+
+	@Test
+	public void testConformance() throws Exception {
+		Map<String, BidRequest> exchanges = exchanges();
+		assertTrue(exchanges.size() > 30);
+		Router router = Router.getInstance();
+		router.compile(exchanges);
+
+		List<String> targets = new ArrayList<String>(exchanges.keySet());
+		String[] endpoints = { "/rtb/bids/nosuchexchange", "/rtb/bids/nexage/", "/rtb/bids",
+				"/rtb/win/nexage/1.2/0.5/123/45/abc-def", "/ready", "/callback", "/pixel/nexage/123/45/abc/0.5",
+				"/pixel", "/delpixel", "/postback", "/postback/install", "/track", "/track/start", "/vast",
+				"/vast/123", "/redirect/123/45", "/pinger", "/crossdomain.xml", "/summary", "/favicon.ico", "/",
+				"/index.html", "/info", "/status", "/symbols", "/reasons", "/control", "/campaigns",
+				"/xrtb/simulator/exchange", "/xrtb/simulator/login", "/js/app.js", "/s3/bucket/key",
+				"/rtb/appnexus", "/publish", "/foo/summary", "/x/pinger", "/images/favicon.png", "/a/b/ready",
+				"/exchange/index.html", "/test.html" };
+		for (String t : endpoints)
+			targets.add(t);
+
+		for (String target : targets) {
+			Router.Route route = router.route(target);
+			int expected = legacy(target);
+			assertEquals(target, expected, route.endpoint);
+			if (expected == Router.BIDS)
+				assertSame(target, exchanges.get(target), route.exchange);
+			else
+				assertNull(target, route.exchange);
+		}
+	}
+
+	@Test
+	public void testPrefixWins() throws Exception {
+		Router router = Router.getInstance();
+		router.compile(new HashMap<String, BidRequest>());
+
+		// The old chain took the first pattern anywhere in the target
+		assertEquals(Router.TRACK, legacy("/redirect/12/track"));
+		assertEquals(Router.REDIRECT, router.route("/redirect/12/track").endpoint);
+		assertEquals(Router.PIXEL, router.route("/pixel/nexage/rtb/win/1").endpoint);
+	}
+
+	@Test
+	public void testRecompile() throws Exception {
+		Router router = Router.getInstance();
+		Map<String, BidRequest> exchanges = new HashMap<String, BidRequest>();
+		router.compile(exchanges);
+		assertNull(router.route("/rtb/bids/newssp").exchange);
+
+		BidRequest x = new BidRequest();
+		exchanges.put("/rtb/bids/newssp", x);
+		router.compile(exchanges);
+		assertSame(x, router.route("/rtb/bids/newssp").exchange);
+		assertNull(router.route("/rtb/bids/newss").exchange);
+		assertNull(router.route("/rtb/bids/newsspx").exchange);
+		assertEquals(Router.BIDS, router.route("/rtb/bids/newsspx").endpoint);
+
+		exchanges.remove("/rtb/bids/newssp");
+		router.compile(exchanges);
+		assertNull(router.route("/rtb/bids/newssp").exchange);
+	}
+}
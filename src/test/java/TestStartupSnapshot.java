@@ -0,0 +1,159 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.blocks.MappedSymbols;
+import com.jacamars.dsp.rtb.blocks.SymbolStore;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Node;
+import com.jacamars.dsp.rtb.common.StartupReport;
+import com.jacamars.dsp.rtb.common.StartupSnapshot;
+
+/**
+ * Tests the startup snapshot: campaigns and compiled lists come back as they went in, a changed list source
+ * is loaded from the source again, and a snapshot of another version is ignored. Also the phase report.
+ * @author Ben M. Faul
+ *
+ */
+public class TestStartupSnapshot {
+
+	static Map<String, Object> list(String name, String type, String file) {
+		Map<String, Object> m = new HashMap<String, Object>();
+		m.put("name", name);
+		m.put("type", type);
+		m.put("filename", file);
+		return m;
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		File dir = Files.createTempDirectory("snapshot").toFile();
+		dir.deleteOnExit();
+		File cidr = new File(dir, "cidr.txt");
+		Files.write(cidr.toPath(), Arrays.asList("10.1.0.0/16", "192.168.1.1-192.168.1.20"));
+
+		List<Campaign> campaigns = new ArrayList<Campaign>();
+		for (int i = 0; i < 3; i++) {
+			Campaign c = new Campaign("snap-" + i,
+					Arrays.asList(new Node("country", "device.geo.country", Node.EQUALS, "USA")));
+			c.id = 500 + i;
+			c.stringId = "" + c.id;
+			campaigns.add(c);
+		}
+		List<Map> lists = new ArrayList<Map>();
+		lists.add(list("@SNAPCIDR", "cidr", cidr.getPath()));
+		lists.add(list("@MASTERCIDR", "cidr", cidr.getPath()));
+		lists.add(list("@SNAPBLOOM", "bloom", cidr.getPath()));
+
+		String file = new File(dir, "bidder.snapshot").getPath();
+		StartupSnapshot snapshot = StartupSnapshot.getInstance();
+		snapshot.write(file, campaigns, lists);
+		assertTrue(snapshot.read(file));
+
+		String crc = SymbolStore.checksum(cidr.getPath());
+		String compiled = snapshot.compiled("@SNAPCIDR", crc);
+		assertNotNull(compiled);
+		MappedSymbols x = MappedSymbols.open(compiled);
+		assertTrue(x.contains("10.1.2.3"));
+		assertTrue(x.contains("192.168.1.5"));
+		assertFalse(x.contains("192.168.1.21"));
+
+		// The master list must stay a NavMap, and the IDL operator needs a Bloom
+		assertNull(snapshot.compiled("@MASTERCIDR", crc));
+		assertNull(snapshot.compiled("@SNAPBLOOM", crc));
+
+		List<Campaign> back = snapshot.getCampaigns();
+		assertEquals(3, back.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(500 + i, back.get(i).id);
+			assertEquals("snap-" + i, back.get(i).name);
+			assertEquals(1, back.get(i).attributes.size());
+		}
+		assertNull(snapshot.getCampaigns());
+
+		// The source changed, its compiled file is no good, the next snapshot compiles it again
+		Files.write(cidr.toPath(), Arrays.asList("10.2.0.0/16"));
+		String crc2 = SymbolStore.checksum(cidr.getPath());
+		assertNull(snapshot.compiled("@SNAPCIDR", crc2));
+		snapshot.write(file, campaigns, lists);
+		assertTrue(snapshot.read(file));
+		assertNotNull(snapshot.compiled("@SNAPCIDR", crc2));
+		assertFalse(new File(compiled).exists());
+
+		Files.write(new File(file).toPath(), new byte[] { 1, 2, 3 });
+		assertFalse(snapshot.read(file));
+		assertFalse(snapshot.isLoaded());
+	}
+
+	@Test
+	public void testReport() throws Exception {
+		StartupReport report = StartupReport.getInstance();
+		report.begin();
+		Thread.sleep(20);
+		report.mark("symbols");
+		Thread.sleep(20);
+		report.mark("campaigns");
+		report.ready("listen");
+		report.background("catchup", 42);
+
+		Map<String, Long> phases = report.getPhases();
+		assertEquals(Arrays.asList("jvm", "symbols", "campaigns", "listen"), new ArrayList<String>(phases.keySet()));
+		assertTrue(phases.get("symbols") >= 20);
+		long sum = 0;
+		for (long t : phases.values())
+			sum += t;
+		assertEquals(sum, report.getTotal());
+		assertEquals(Boolean.TRUE, report.getReport().get("ready"));
+		assertTrue(report.toString(), report.toString().contains("catchup 42 ms in the background"));
+	}
+
+	@Test
+	public void testCatchUp() throws Exception {
+		StartupSnapshot snapshot = StartupSnapshot.getInstance();
+		long retry = snapshot.retry;
+		String fileName = snapshot.fileName;
+		try {
+			snapshot.retry = 20;
+			AtomicInteger tries = new AtomicInteger();
+			snapshot.catchUp(() -> {
+				if (tries.incrementAndGet() < 3)
+					throw new Exception("Cache not there yet");
+				return 7;
+			});
+			assertFalse(snapshot.isCaughtUp());
+			assertEquals(Boolean.FALSE, StartupReport.getInstance().getReport().get("caughtup"));
+
+			// Nothing runs until the bidder is up
+			Thread.sleep(50);
+			assertEquals(0, tries.get());
+
+			// Its campaigns may be stale, they are not saved again as a new snapshot
+			File dir = Files.createTempDirectory("snapshot").toFile();
+			dir.deleteOnExit();
+			snapshot.fileName = new File(dir, "bidder.snapshot").getPath();
+			snapshot.write();
+			assertFalse(new File(snapshot.fileName).exists());
+
+			snapshot.startCatchUp();
+			for (int i = 0; i < 100 && !snapshot.isCaughtUp(); i++)
+				Thread.sleep(20);
+			assertTrue(snapshot.isCaughtUp());
+			assertEquals(3, tries.get());
+			assertEquals(Boolean.TRUE, StartupReport.getInstance().getReport().get("caughtup"));
+		} finally {
+			snapshot.retry = retry;
+			snapshot.fileName = fileName;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.crosstalk.api.SetWeightsCmd;
+import com.jacamars.dsp.rtb.bidder.SelectedCreative;
+import com.jacamars.dsp.rtb.blocks.ProportionalEntry;
+import com.jacamars.dsp.rtb.blocks.WeightedSelector;
+import com.jacamars.dsp.rtb.common.Campaign;
+import com.jacamars.dsp.rtb.common.Creative;
+
+/**
+ * Tests creative rotation: the alias table draws in proportion to the weights, smooth round robin delivers
+ * the exact ratios spread out, and the rotation only ever returns a creative that bid.
+ * @author Ben M. Faul
+ *
+ */
+public class TestWeights {
+
+	@Test
+	public void testAlias() throws Exception {
+		ProportionalEntry e = new ProportionalEntry("c1=80,c2=10,c3=7,c4=3");
+		assertFalse(e.smooth());
+		assertEquals(4, e.size());
+		int[] counts = new int[e.size()];
+		int n = 1000000;
+		for (int i = 0; i < n; i++)
+			counts[e.nextOrdinal()]++;
+		int[] weights = { 80, 10, 7, 3 };
+		for (int i = 0; i < counts.length; i++)
+			assertEquals(e.name(i), weights[i] / 100.0, (double) counts[i] / n, 0.005);
+		assertEquals("c1:80.0,c2:90.0,c3:97.0,c4:100.0", e.toString());
+		assertEquals(2, e.ordinal("c3"));
+		assertEquals(-1, e.ordinal("c9"));
+	}
+
+	@Test
+	public void testSmooth() throws Exception {
+		ProportionalEntry e = new ProportionalEntry("smooth:c1=5,c2=1,c3=1");
+		assertTrue(e.smooth());
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 7; i++)
+			sb.append(e.next());
+		assertEquals("c1c1c2c1c3c1c1", sb.toString());
+
+		// Exact ratios from many threads
+		e = new ProportionalEntry("smooth:a=6,b=3,c=1");
+		ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<String, AtomicInteger>();
+		final ProportionalEntry entry = e;
+		IntStream.range(0, 100000).parallel()
+				.forEach(i -> counts.computeIfAbsent(entry.next(), k -> new AtomicInteger()).incrementAndGet());
+		assertEquals(60000, counts.get("a").get());
+		assertEquals(30000, counts.get("b").get());
+		assertEquals(10000, counts.get("c").get());
+	}
+
+	@Test
+	public void testApply() throws Exception {
+		Campaign camp = new Campaign();
+		camp.name = "rotating";
+		List<SelectedCreative> all = new ArrayList<SelectedCreative>();
+		for (int i = 1; i <= 3; i++) {
+			Creative c = new Creative();
+			c.impid = "c" + i;
+			camp.creatives.add(c);
+			SelectedCreative sc = new SelectedCreative(c, null, 1.0, c.impid);
+			sc.setCampaign(camp);
+			all.add(sc);
+		}
+		camp.setWeights("c1=80,c2=10,c3=10");
+
+		int[] counts = new int[3];
+		for (int i = 0; i < 10000; i++)
+			counts[all.indexOf(WeightedSelector.applyAlgorithm(null, all))]++;
+		assertTrue(counts[0] > 3 * (counts[1] + counts[2]));
+
+		// c1 didn't bid, so it is never returned, and the others still split evenly
+		List<SelectedCreative> some = all.subList(1, 3);
+		counts = new int[3];
+		for (int i = 0; i < 10000; i++) {
+			SelectedCreative sc = WeightedSelector.applyAlgorithm(null, some);
+			assertNotNull(sc);
+			counts[all.indexOf(sc)]++;
+		}
+		assertEquals(0, counts[0]);
+		assertEquals(0.5, counts[1] / 10000.0, 0.05);
+	}
+
+	@Test
+	public void testSetWeightsCmd() throws Exception {
+		Campaign camp = new Campaign();
+		camp.name = "rotating";
+		List<SelectedCreative> all = new ArrayList<SelectedCreative>();
+		for (int i = 1; i <= 3; i++) {
+			Creative c = new Creative();
+			c.impid = "c" + i;
+			camp.creatives.add(c);
+			SelectedCreative sc = new SelectedCreative(c, null, 1.0, c.impid);
+			sc.setCampaign(camp);
+			all.add(sc);
+		}
+
+		// No weights before, the command's weights are the rotation
+		SetWeightsCmd cmd = new SetWeightsCmd();
+		cmd.weights = "smooth:c2=1";
+		cmd.apply(camp);
+		assertEquals("smooth:c2=1", camp.weightAssignment);
+		for (int i = 0; i < 100; i++)
+			assertSame(all.get(1), WeightedSelector.applyAlgorithm(null, all));
+
+		// Weights before, the new ordinals map to the new creatives
+		cmd = new SetWeightsCmd();
+		cmd.pe = new ProportionalEntry("smooth:c3=3,c1=1");
+		cmd.apply(camp);
+		assertEquals("smooth:c3=3,c1=1", camp.weightAssignment);
+		int[] counts = new int[3];
+		for (int i = 0; i < 400; i++)
+			counts[all.indexOf(WeightedSelector.applyAlgorithm(null, all))]++;
+		assertArrayEquals(new int[] { 100, 0, 300 }, counts);
+
+		// And with only c1 and c2 bidding, c1 is the one with a weight
+		for (int i = 0; i < 100; i++)
+			assertSame(all.get(0), WeightedSelector.applyAlgorithm(null, all.subList(0, 2)));
+	}
+}
@@ -0,0 +1,235 @@
+package test.java;
+
+import static org.junit.Assert.*;
+
+import java.net.URLDecoder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jacamars.dsp.rtb.pojo.WinUrl;
+
+/**
+ * Fuzz test of WinUrl against the split based parser WinObject.getJson() used before it. Random win
+ * urls, good and bad, must give the same fields, the same forward and image urls, the same price and
+ * the same failures.
+ * @author Ben M. Faul
+ *
+ */
+public class TestWinUrl {
+
+	static final String[] PIECES = { "http", "https", "/", "//", "%2F", "%", "%zz", "+", "=", "?", "&", "a", "b",
+			"google", "openx", "adx", "0.0", "1.25", "-3", "12345678901234567", ".5", "1e3", "NaN", "xhttpx", ":",
+			"www.example.com", "url=", "%E2%82%AC" };
+
+	static final String GOOD = "http://bidder3-europe.c1exchange.com/rtb/win/google/banner/google/"
+			+ "WYuRWwAGdVEK0x94AANFDPfZEZaM1Qrm-d-XrQ/0.0/0.0/623/929/WYuRWwAGdVEK0x949QNFDA";
+
+	/**
+	 * What the old parser produced.
+	 */
+	static class Old {
+		String[] fields;
+		String forward, image;
+		String error;
+	}
+
+	/**
+	 * The parsing part of the old WinObject.getJson(), verbatim.
+	 */
+	static Old oldParse(String target) {
+		Old o = new Old();
+		try {
+			String image = null;
+			String[] parts = target.split("http");
+
+			String forward = "http:" + parts[1];
+			if (parts.length > 2)
+				image = "http:" + parts[2];
+
+			parts = parts[1].split("/");
+
+			if (parts.length < 14)
+				return o;
+
+			String hash = parts[13];
+			if (parts.length > 14) {
+				for (int i = 14; i < parts.length; i++) {
+					hash += "/" + parts[i];
+				}
+			}
+			hash = URLDecoder.decode(hash, "UTF-8");
+
+			try {
+				if (image != null)
+					image = URLDecoder.decode(image, "UTF-8");
+				forward = URLDecoder.decode(forward, "UTF-8");
+			} catch (Exception e) {
+			}
+			o.fields = new String[] { parts[5], parts[6], parts[7], parts[8], parts[9], parts[10], parts[11],
+					parts[12], hash };
+			o.forward = forward;
+			o.image = image;
+		} catch (Exception error) {
+			o.error = error.getClass().getName();
+		}
+		return o;
+	}
+
+	/**
+	 * The same, with WinUrl, the way getJson() does it now.
+	 */
+	static Old newParse(WinUrl url, String target) {
+		Old o = new Old();
+		try {
+			if (!url.parse(target))
+				return o;
+			String hash = url.getHash();
+			String image = url.getImage();
+			String forward = url.getForward();
+			try {
+				if (image != null)
+					image = URLDecoder.decode(image, "UTF-8");
+				forward = URLDecoder.decode(forward, "UTF-8");
+			} catch (Exception e) {
+			}
+			o.fields = new String[WinUrl.HASH + 1];
+			for (int i = 0; i < WinUrl.HASH; i++)
+				o.fields[i] = url.get(i);
+			o.fields[WinUrl.HASH] = hash;
+			o.forward = forward;
+			o.image = image;
+		} catch (Exception error) {
+			o.error = "";
+		}
+		return o;
+	}
+
+	/**
+	 * Make a random url, usually shaped like a win notice.
+	 */
+	static String random(Random rand) {
+		StringBuilder sb = new StringBuilder();
+		if (rand.nextInt(10) != 0)
+			sb.append(rand.nextBoolean() ? "http://" : "https://localhost:8080/");
+		int n = rand.nextInt(20);
+		for (int i = 0; i < n; i++) {
+			int k = rand.nextInt(1 + rand.nextInt(3));
+			for (int j = 0; j < k; j++)
+				sb.append(PIECES[rand.nextInt(PIECES.length)]);
+			if (rand.nextInt(8) != 0)
+				sb.append('/');
+		}
+		if (rand.nextInt(4) == 0)
+			sb.append("http://image.com/x.png");
+		return sb.toString();
+	}
+
+	void compare(WinUrl url, String target) throws Exception {
+		Old a = oldParse(target);
+		Old b = newParse(url, target);
+		assertEquals(target, a.error != null, b.error != null);
+		if (a.error != null)
+			return;
+		assertEquals(target, a.fields == null, b.fields == null);
+		if (a.fields == null)
+			return;
+		assertArrayEquals(target, a.fields, b.fields);
+		assertEquals(target, a.forward, b.forward);
+		assertEquals(target, a.image, b.image);
+
+		String price = a.fields[WinUrl.PRICE];
+		Double expected = null;
+		try {
+			expected = Double.parseDouble(price);
+		} catch (NumberFormatException error) {
+		}
+		try {
+			double v = url.getDouble(WinUrl.PRICE);
+			assertNotNull(target, expected);
+			assertEquals(target, Double.doubleToLongBits(expected), Double.doubleToLongBits(v));
+		} catch (NumberFormatException error) {
+			assertNull(target, expected);
+		}
+		assertTrue(url.is(WinUrl.PUBID, a.fields[WinUrl.PUBID]));
+		assertFalse(url.is(WinUrl.PUBID, a.fields[WinUrl.PUBID] + "x"));
+	}
+
+	/**
+	 * A real Google win.
+	 * @throws Exception on parse errors.
+	 */
+	@Test
+	public void testGoogle() throws Exception {
+		WinUrl url = WinUrl.get();
+		assertTrue(url.parse(GOOD));
+		assertEquals("google", url.get(WinUrl.DOMAIN));
+		assertEquals("banner", url.get(WinUrl.BIDTYPE));
+		assertTrue(url.is(WinUrl.PUBID, "google"));
+		assertEquals("WYuRWwAGdVEK0x94AANFDPfZEZaM1Qrm-d-XrQ", url.get(WinUrl.PRICE));
+		assertEquals(0.0, url.getDouble(WinUrl.LAT), 0);
+		assertEquals("623", url.get(WinUrl.ADID));
+		assertEquals("929", url.get(WinUrl.CRIDID));
+		assertEquals("WYuRWwAGdVEK0x949QNFDA", url.getHash());
+		assertNull(url.getImage());
+		compare(url, GOOD);
+		compare(url, GOOD + "/more/parts//");
+		compare(url, GOOD + "%2Fx");
+		compare(url, GOOD + "http://image.com/a.png");
+	}
+
+	/**
+	 * Random urls give the same answers as the old parser.
+	 * @throws Exception on parse errors.
+	 */
+	@Test
+	public void testFuzz() throws Exception {
+		WinUrl url = WinUrl.get();
+		Random rand = new Random(32);
+		for (int i = 0; i < 200000; i++)
+			compare(url, random(rand));
+	}
+
+	/**
+	 * Prices parsed from the characters are the same doubles as Double.parseDouble().
+	 */
+	@Test
+	public void testPrices() {
+		Random rand = new Random(33);
+		for (int i = 0; i < 200000; i++) {
+			String s;
+			switch (i % 4) {
+			case 0:
+				s = Long.toString(rand.nextLong() >>> rand.nextInt(64));
+				break;
+			case 1:
+				s = Double.toString(rand.nextDouble() * Math.pow(10, rand.nextInt(12)));
+				break;
+			case 2:
+				s = String.format("%." + rand.nextInt(8) + "f", rand.nextDouble() * 100);
+				break;
+			default:
+				s = (rand.nextBoolean() ? "-" : "") + rand.nextInt(1000) + "." + rand.nextInt(1000000);
+			}
+			double v = WinUrl.parseDecimal(s, 0, s.length());
+			if (!Double.isNaN(v))
+				assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(v));
+		}
+	}
+
+	/**
+	 * The click redirect is found the way split("url=") found it.
+	 * @throws Exception on decoding errors.
+	 */
+	@Test
+	public void testRedirect() throws Exception {
+		String q = "ad_id=1/creative_id=2&url=http%3A%2F%2Fexample.com%2F%3Fa%3Db";
+		int i = WinUrl.redirect(q);
+		assertEquals(q.split("url=")[0], q.substring(0, i));
+		assertEquals(URLDecoder.decode(q.split("url=")[1], "UTF-8"), WinUrl.redirectUrl(q, i));
+		assertEquals(-1, WinUrl.redirect("ad_id=1"));
+		assertEquals(-1, WinUrl.redirect("ad_id=1&url="));
+		assertEquals(-1, WinUrl.redirect(null));
+		assertEquals("x", WinUrl.redirectUrl("a=1&url=xurl=y", WinUrl.redirect("a=1&url=xurl=y")));
+	}
+}